@@ -0,0 +1,69 @@
+package carehome.bench.jmh;
+
+import carehome.domain.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of Service.addResidentToVacantBed() over a {@link Facility} of the
+ * given size.
+ *
+ * An admission uses up a bed, so this runs in fixed batches: before each
+ * iteration a new admissions ward with {@link #BATCH} empty beds is added,
+ * and the iteration fills it. Scores are per batch; divide by BATCH for a
+ * single admission.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = AdmissionBench.BATCH)
+@Measurement(iterations = 10, batchSize = AdmissionBench.BATCH)
+@Fork(1)
+public class AdmissionBench {
+
+    static final int BATCH = 1000;
+
+    @Param({"200", "2000", "20000"})
+    int beds;
+
+    @Param({"50", "500"})
+    int staff;
+
+    @Param({"0", "1000000"})
+    int history;
+
+    private Facility f;
+    private String[] vacant;
+    private int iteration;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        f = Facility.build(beds, staff, history);
+        iteration = 0;
+    }
+
+    @Setup(Level.Iteration)
+    public void addAdmissionsWard() {
+        String ward = "ADM" + iteration++;
+        f.db.addWard(new Ward(ward, "Admissions " + ward));
+        vacant = new String[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            String room = ward + "-R" + i / Facility.BEDS_PER_ROOM;
+            if (i % Facility.BEDS_PER_ROOM == 0) {
+                f.db.addRoom(new Room(room, ward));
+            }
+            vacant[i] = Facility.bedId(room, i % Facility.BEDS_PER_ROOM);
+            f.db.addBed(new Bed(vacant[i], room));
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public void addResidentToVacantBed() {
+        int i = next++;
+        String bed = vacant[i];
+        f.svc.addResidentToVacantBed(f.manager, new Resident("ADM-RES-" + bed, "Resident", Gender.F), bed);
+    }
+}
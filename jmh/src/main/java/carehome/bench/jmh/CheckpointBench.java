@@ -0,0 +1,54 @@
+package carehome.bench.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a background checkpoint costs the commits running next to it. One
+ * thread writes checkpoints back to back while another keeps calling
+ * administer(); the sampled administer() latencies show the pause in
+ * their top percentiles, and the checkpoint samples show how long each
+ * write took overall. With a long {@code history} the pause should stay
+ * far below the write time, as the history is encoded after commits
+ * resume.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckpointBench {
+
+    @Param({"2000", "20000"})
+    int beds;
+
+    @Param({"0", "1000000"})
+    int history;
+
+    private Facility f;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        f = Facility.build(beds, 50, history);
+        next = 0;
+    }
+
+    @Benchmark
+    @Group("checkpoint")
+    @GroupThreads(1)
+    public Object write() throws Exception {
+        return f.db.checkpointAsync().get();
+    }
+
+    @Benchmark
+    @Group("checkpoint")
+    @GroupThreads(1)
+    public void administer() {
+        int i = next++;
+        f.svc.administer(f.nurses.get(i % f.nurses.size()), f.occupiedBeds.get(i % f.occupiedBeds.size()),
+                "Paracetamol", 500, "mg", null, Facility.DAY.atTime(8, 0).plusSeconds(i % 28_800));
+    }
+}
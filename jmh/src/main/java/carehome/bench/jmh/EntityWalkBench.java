@@ -0,0 +1,87 @@
+package carehome.bench.jmh;
+
+import carehome.bench.EntityHandleBench;
+import carehome.domain.*;
+import carehome.repo.Store;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Int entity handles against string ids: walking a random resident ->
+ * bed -> room -> ward, over the facility of EntityHandleBench (which
+ * measures its heap).
+ *
+ * {@code path} picks the walk: {@code handles} follows handles through the
+ * Store's EntityTables, {@code ids} follows string ids through the same
+ * tables, and {@code maps} follows string ids through ConcurrentHashMaps
+ * (the Store before handles).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityWalkBench {
+
+    @Param({"200"})
+    int wards;
+
+    @Param({"handles", "ids", "maps"})
+    String path;
+
+    private Store db;
+    private String[] ids;
+    private int[] handles;
+    private Map<String, Resident> residentsById;
+    private Map<String, Bed> bedsById;
+    private Map<String, Room> roomsById;
+    private Map<String, Ward> wardsById;
+    private SplittableRandom rnd;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = Store.get();
+        db.clear();
+        EntityHandleBench.build(db, wards, 2);
+        ids = db.residents.keySet().toArray(new String[0]);
+        handles = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            handles[i] = db.handles().residents.find(ids[i]);
+        }
+        residentsById = new ConcurrentHashMap<>(db.residents);
+        bedsById = new ConcurrentHashMap<>(db.beds);
+        roomsById = new ConcurrentHashMap<>(db.rooms);
+        wardsById = new ConcurrentHashMap<>(db.wards);
+        rnd = new SplittableRandom(18);
+    }
+
+    @Benchmark
+    public Ward walk() {
+        int i = rnd.nextInt(ids.length);
+        switch (path) {
+            case "handles" -> {
+                Resident r = db.residents.get(handles[i]);
+                Bed b = db.beds.get(r.bedHandle());
+                Room room = db.rooms.get(b.roomHandle());
+                return db.wards.get(room.wardHandle());
+            }
+            case "ids" -> {
+                Resident r = db.residents.get(ids[i]);
+                Bed b = db.beds.get(r.currentBedId().get());
+                Room room = db.rooms.get(b.roomId());
+                return db.wards.get(room.wardId());
+            }
+            default -> {
+                Resident r = residentsById.get(ids[i]);
+                Bed b = bedsById.get(r.currentBedId().get());
+                Room room = roomsById.get(b.roomId());
+                return wardsById.get(room.wardId());
+            }
+        }
+    }
+}
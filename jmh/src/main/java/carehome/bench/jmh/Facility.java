@@ -0,0 +1,115 @@
+package carehome.bench.jmh;
+
+import carehome.domain.*;
+import carehome.repo.Mutation;
+import carehome.repo.Store;
+import carehome.service.Service;
+
+import java.time.*;
+import java.util.*;
+
+/**
+ * A populated Store for the benchmarks, sized by the usual parameters:
+ * beds, staff and history length.
+ *
+ * Beds come in four-bed rooms, 50 rooms to a ward, with three beds of each
+ * room occupied and the fourth left vacant for moves. A fifth of the staff
+ * are doctors. On {@link #DAY} every nurse works the morning shift and
+ * every doctor the 09:00 round. Each resident has one prescription, and
+ * {@code history} past administrations are spread over the residents in
+ * the days before DAY.
+ */
+final class Facility {
+
+    static final LocalDate DAY = LocalDate.of(2030, 1, 7);
+    static final int BEDS_PER_ROOM = 4;
+    static final int ROOMS_PER_WARD = 50;
+
+    final Store db;
+    final Service svc = new Service();
+    final Manager manager = new Manager("M-BENCH", "Bench Manager");
+    final List<Nurse> nurses = new ArrayList<>();
+    final List<Doctor> doctors = new ArrayList<>();
+    final List<Staff> staff = new ArrayList<>();
+    final List<String> wards = new ArrayList<>();
+    final List<String> rooms = new ArrayList<>();
+    final List<String> occupiedBeds = new ArrayList<>();
+    final int[] vacantSlot; // per room, which of its beds is empty
+
+    private Facility(int beds) {
+        db = Store.get();
+        db.clear();
+        vacantSlot = new int[(beds + BEDS_PER_ROOM - 1) / BEDS_PER_ROOM];
+    }
+
+    static Facility build(int beds, int staffCount, int history) {
+        Facility f = new Facility(beds);
+        Store db = f.db;
+        db.staff.put(f.manager.id(), f.manager);
+        for (int i = 0; i < staffCount; i++) {
+            Staff s;
+            if (i % 5 == 0) {
+                Doctor d = new Doctor("D-" + i, "Doctor " + i);
+                f.doctors.add(d);
+                s = d;
+            } else {
+                Nurse n = new Nurse("N-" + i, "Nurse " + i);
+                f.nurses.add(n);
+                s = n;
+            }
+            f.svc.addStaff(f.manager, s, "pwd");
+            f.staff.add(s);
+        }
+        List<ShiftAssignment> roster = new ArrayList<>();
+        for (Nurse n : f.nurses) {
+            roster.add(new ShiftAssignment(n.id(), DAY, ShiftType.NURSE_AM));
+        }
+        for (Doctor d : f.doctors) {
+            roster.add(new ShiftAssignment(d.id(), DAY, ShiftType.DOCTOR_1H));
+        }
+        f.svc.allocateShifts(f.manager, roster);
+
+        for (int r = 0; r < f.vacantSlot.length; r++) {
+            String ward = "W" + r / ROOMS_PER_WARD;
+            if (r % ROOMS_PER_WARD == 0) {
+                db.addWard(new Ward(ward, "Ward " + r / ROOMS_PER_WARD));
+                f.wards.add(ward);
+            }
+            String room = ward + "-R" + r % ROOMS_PER_WARD;
+            db.addRoom(new Room(room, ward));
+            f.rooms.add(room);
+            for (int b = 0; b < BEDS_PER_ROOM; b++) {
+                db.addBed(new Bed(bedId(room, b), room));
+            }
+            f.vacantSlot[r] = BEDS_PER_ROOM - 1;
+            for (int b = 0; b < BEDS_PER_ROOM - 1; b++) {
+                String bed = bedId(room, b);
+                Gender g = r % 2 == 0 ? Gender.F : Gender.M;
+                f.svc.addResidentToVacantBed(f.manager, new Resident("RES-" + room + "-" + b, "Resident", g), bed);
+                f.occupiedBeds.add(bed);
+            }
+        }
+
+        LocalDateTime round = DAY.atTime(9, 30);
+        for (int i = 0; i < f.occupiedBeds.size() && !f.doctors.isEmpty(); i++) {
+            f.svc.doctorAttachPrescription(f.doctors.get(i % f.doctors.size()), f.occupiedBeds.get(i),
+                    List.of(new Prescription.MedicationOrder("Paracetamol", 500, "mg", "qds", null)), round);
+        }
+
+        // Past administrations go straight to the Store, as a journal replay would apply them
+        long start = DAY.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String nurse = f.nurses.isEmpty() ? f.manager.id() : f.nurses.get(0).id();
+        int residents = f.occupiedBeds.size();
+        for (int i = 0; i < history && residents > 0; i++) {
+            String resident = db.beds.get(f.occupiedBeds.get(i % residents)).residentId();
+            long minutesBack = 6L * 60 * (1 + i / residents);
+            db.commit(new Mutation.Administer(new AdministrationRecord(resident, "Paracetamol", 500, "mg",
+                    Instant.ofEpochMilli(start - minutesBack * 60_000), nurse, null)));
+        }
+        return f;
+    }
+
+    static String bedId(String room, int b) {
+        return room + "-B" + b;
+    }
+}
@@ -0,0 +1,112 @@
+package carehome.bench.jmh;
+
+import carehome.domain.*;
+import carehome.repo.Store;
+import carehome.service.Service;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads from the occupancy history after a year of bed moves: the bed a
+ * resident was in and the occupant of a bed at a random moment, and a
+ * year-long contact trace for a random resident.
+ *
+ * The setup moves {@code movesPerDay} random residents a day for a year
+ * through Service.moveResident(), among {@code residents} residents in 800
+ * beds. The cost of a move itself is ServiceBench.moveResident.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OccupancyBench {
+
+    @Param({"600"})
+    int residents;
+
+    @Param({"60"})
+    int movesPerDay;
+
+    private final Service svc = new Service();
+    private final List<String> occupied = new ArrayList<>();
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private SplittableRandom rnd;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Store db = Store.get();
+        Random rnd = new Random(17);
+        db.clear();
+        occupied.clear();
+
+        Manager mgr = new Manager("M-BENCH", "Bench Manager");
+        db.staff.put(mgr.id(), mgr);
+        List<Nurse> nurses = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Nurse n = new Nurse("N-" + i, "Nurse " + i);
+            svc.addStaff(mgr, n, "pwd");
+            nurses.add(n);
+        }
+
+        List<String> vacant = new ArrayList<>();
+        for (int w = 0; w < 10; w++) {
+            db.addWard(new Ward("W" + w, "Ward " + w));
+            for (int r = 0; r < 20; r++) {
+                String room = "W" + w + "-R" + r;
+                db.addRoom(new Room(room, "W" + w));
+                for (int b = 0; b < 4; b++) {
+                    db.addBed(new Bed(room + "-B" + b, room));
+                    vacant.add(room + "-B" + b);
+                }
+            }
+        }
+        Collections.shuffle(vacant, rnd);
+        for (int i = 0; i < residents; i++) {
+            String bed = vacant.remove(vacant.size() - 1);
+            svc.addResidentToVacantBed(mgr, new Resident("RES-" + i, "Resident " + i, Gender.M), bed);
+            occupied.add(bed);
+        }
+
+        LocalDate start = LocalDate.now().plusDays(1);
+        List<ShiftAssignment> roster = new ArrayList<>();
+        for (int d = 0; d < 365; d++) {
+            roster.add(new ShiftAssignment(nurses.get(d % 7).id(), start.plusDays(d), ShiftType.NURSE_AM));
+        }
+        svc.allocateShifts(mgr, roster);
+
+        for (int d = 0; d < 365; d++) {
+            Nurse nurse = nurses.get(d % 7);
+            for (int k = 0; k < movesPerDay; k++) {
+                LocalDateTime when = start.plusDays(d).atTime(8, 0).plusSeconds(k * 8 * 3600L / movesPerDay);
+                int i = rnd.nextInt(occupied.size()), j = rnd.nextInt(vacant.size());
+                String bedFrom = occupied.get(i), bedTo = vacant.get(j);
+                svc.moveResident(nurse, bedFrom, bedTo, when);
+                occupied.set(i, bedTo);
+                vacant.set(j, bedFrom);
+            }
+        }
+        from = start.atStartOfDay();
+        to = start.plusDays(365).atStartOfDay();
+        this.rnd = new SplittableRandom(17);
+    }
+
+    @Benchmark
+    public boolean pointQueries() {
+        LocalDateTime when = from.plusMinutes(rnd.nextInt(365 * 24 * 60));
+        boolean a = svc.bedOfResidentAt("RES-" + rnd.nextInt(residents), when).isPresent();
+        boolean b = svc.occupantAt(occupied.get(rnd.nextInt(occupied.size())), when).isPresent();
+        return a & b;
+    }
+
+    @Benchmark
+    public int contactTrace() {
+        return svc.contactTrace("RES-" + rnd.nextInt(residents), from, to).size();
+    }
+}
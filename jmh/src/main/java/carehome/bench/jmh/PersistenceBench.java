@@ -0,0 +1,61 @@
+package carehome.bench.jmh;
+
+import carehome.domain.AdministrationRecord;
+import carehome.repo.Mutation;
+import carehome.repo.Store;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store.save() and Store.load() of a {@link Facility} of the given size,
+ * through the store directory in the working directory. Before each
+ * save() one administration is recorded in {@code changed} wards (one, or
+ * every ward), so only those ward files are rewritten.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBench {
+
+    @Param({"200", "2000", "20000"})
+    int beds;
+
+    @Param({"50", "500"})
+    int staff;
+
+    @Param({"0", "1000000"})
+    int history;
+
+    @Param({"one", "all"})
+    String changed;
+
+    private Facility f;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        f = Facility.build(beds, staff, history);
+        f.db.save();
+    }
+
+    @Benchmark
+    public void save() {
+        int wards = changed.equals("all") ? f.wards.size() : 1;
+        String nurse = f.nurses.isEmpty() ? f.manager.id() : f.nurses.get(0).id();
+        for (int w = 0; w < wards; w++) {
+            String bed = f.occupiedBeds.get(w * Facility.ROOMS_PER_WARD * (Facility.BEDS_PER_ROOM - 1));
+            f.db.commit(new Mutation.Administer(new AdministrationRecord(f.db.beds.get(bed).residentId(),
+                    "Paracetamol", 500, "mg", Instant.now(), nurse, null)));
+        }
+        f.db.save();
+    }
+
+    @Benchmark
+    public Store load() {
+        return Store.load().orElseThrow();
+    }
+}
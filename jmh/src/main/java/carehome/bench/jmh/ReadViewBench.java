@@ -0,0 +1,121 @@
+package carehome.bench.jmh;
+
+import carehome.domain.Bed;
+import carehome.repo.ReadView;
+import carehome.repo.Store;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-heavy mix over a {@link Facility}: every thread does 95% reads and
+ * 5% resident moves, each thread moving residents only within its own
+ * rooms so moves never fail.
+ *
+ * A read is either a lookup of the resident in a random bed or a count of
+ * the occupied beds over a full listing. With {@code source=view} reads go
+ * through a {@link ReadView}; with {@code source=live} they read the Store
+ * maps directly, lookups under the bed lock as checkResidentDetails() did
+ * before views, listings without any lock (and without a consistent
+ * result).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ReadViewBench {
+
+    @Param({"2000", "20000"})
+    int beds;
+
+    @Param({"lookup", "list"})
+    String read;
+
+    @Param({"view", "live"})
+    String source;
+
+    private Facility f;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        f = Facility.build(beds, 50, 0);
+        threads.set(0);
+    }
+
+    /** One benchmark thread: its random stream and the rooms it moves residents in. */
+    @State(Scope.Thread)
+    public static class Worker {
+        SplittableRandom rnd;
+        int firstRoom;
+        int roomStep;
+        int moves;
+
+        @Setup(Level.Trial)
+        public void setUp(ReadViewBench b, BenchmarkParams params) {
+            firstRoom = b.threads.getAndIncrement();
+            roomStep = params.getThreads();
+            rnd = new SplittableRandom(firstRoom);
+        }
+    }
+
+    @Benchmark
+    public Object mix(Worker w) {
+        if (w.rnd.nextInt(100) < 5) {
+            move(w);
+            return null;
+        }
+        return read.equals("lookup") ? lookup(w) : occupied();
+    }
+
+    private void move(Worker w) {
+        // Into the room's empty bed from the bed after it, as in ServiceBench
+        int rooms = (f.rooms.size() - w.firstRoom + w.roomStep - 1) / w.roomStep;
+        int room = w.firstRoom + w.roomStep * (w.moves++ % rooms);
+        int to = f.vacantSlot[room];
+        int from = (to + 1) % Facility.BEDS_PER_ROOM;
+        String roomId = f.rooms.get(room);
+        f.svc.moveResident(f.nurses.get(0), Facility.bedId(roomId, from), Facility.bedId(roomId, to),
+                           Facility.DAY.atTime(10, 0));
+        f.vacantSlot[room] = from;
+    }
+
+    private Object lookup(Worker w) {
+        String bed = Facility.bedId(f.rooms.get(w.rnd.nextInt(f.rooms.size())), w.rnd.nextInt(Facility.BEDS_PER_ROOM));
+        Store db = f.db;
+        if (source.equals("view")) {
+            try (ReadView view = db.openView()) {
+                return view.residentInBed(bed).orElse(null);
+            }
+        }
+        db.bedLocks.lock(bed);
+        try {
+            Bed b = db.beds.get(bed);
+            return b.isVacant() ? null : db.residents.get(b.residentId());
+        } finally {
+            db.bedLocks.unlock(bed);
+        }
+    }
+
+    private int occupied() {
+        int n = 0;
+        if (source.equals("view")) {
+            try (ReadView view = f.db.openView()) {
+                for (ReadView.BedRow b : view.beds()) {
+                    n += b.isVacant() ? 0 : 1;
+                }
+            }
+        } else {
+            for (Bed b : f.db.beds.values()) {
+                n += b.isVacant() ? 0 : 1;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,69 @@
+package carehome.bench.jmh;
+
+import carehome.domain.*;
+import carehome.repo.Store;
+import carehome.service.Service;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a four-week roster for a facility: one allocateShift() call per
+ * shift ({@code perCall}) versus a single allocateShifts() plan
+ * ({@code bulk}). Each iteration starts from a fresh store holding only the
+ * staff, and loads one shift per person per day.
+ *
+ * Add -jvmArgsAppend -Dcarehome.journal=true to include journal writes in
+ * both paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RosterBulkBench {
+
+    @Param({"300"})
+    int staff;
+
+    @Param({"28"})
+    int days;
+
+    private static final LocalDate START = LocalDate.of(2027, 1, 4);
+
+    private final Service svc = new Service();
+    private final Manager mgr = new Manager("M-BENCH", "Bench Manager");
+    private List<ShiftAssignment> plan;
+
+    @Setup(Level.Iteration)
+    public void seed() {
+        Store db = Store.get();
+        db.clear();
+        db.staff.put(mgr.id(), mgr);
+        plan = new ArrayList<>(staff * days);
+        for (int i = 0; i < staff; i++) {
+            Staff s = i % 10 == 0 ? new Doctor("D-" + i, "Doctor " + i) : new Nurse("N-" + i, "Nurse " + i);
+            svc.addStaff(mgr, s, "pwd");
+            ShiftType type = s.role() == Role.DOCTOR ? ShiftType.DOCTOR_1H
+                           : i % 2 == 0 ? ShiftType.NURSE_AM : ShiftType.NURSE_PM;
+            for (int d = 0; d < days; d++) {
+                plan.add(new ShiftAssignment(s.id(), START.plusDays(d), type));
+            }
+        }
+    }
+
+    @Benchmark
+    public void perCall() {
+        for (ShiftAssignment a : plan) {
+            svc.allocateShift(mgr, a.staffId(), a.date(), a.type());
+        }
+    }
+
+    @Benchmark
+    public void bulk() {
+        svc.allocateShifts(mgr, plan);
+    }
+}
@@ -0,0 +1,90 @@
+package carehome.bench.jmh;
+
+import carehome.domain.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the Service operations on the hot paths, over a
+ * {@link Facility} of the given size.
+ *
+ * Every operation here can repeat indefinitely: shifts go to ever later
+ * days, residents move between the beds of their own room, and
+ * prescriptions and administrations append to the history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBench {
+
+    @Param({"200", "2000", "20000"})
+    int beds;
+
+    @Param({"50", "500"})
+    int staff;
+
+    @Param({"0", "1000000"})
+    int history;
+
+    private Facility f;
+    private int next;
+
+    private static final List<Prescription.MedicationOrder> ORDERS =
+            List.of(new Prescription.MedicationOrder("Amoxicillin", 500, "mg", "tds", "after food"));
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        f = Facility.build(beds, staff, history);
+        next = 0;
+    }
+
+    @Benchmark
+    public void allocateShift() {
+        // One nurse at a time gets a morning shift, a day further on once every nurse has one
+        int i = next++;
+        Nurse n = f.nurses.get(i % f.nurses.size());
+        LocalDate day = Facility.DAY.plusDays(1 + i / f.nurses.size());
+        f.svc.allocateShift(f.manager, n.id(), day, ShiftType.NURSE_AM);
+    }
+
+    @Benchmark
+    public void moveResident() {
+        // Into the room's empty bed from the bed after it, which then becomes the empty one
+        int room = next++ % f.rooms.size();
+        int to = f.vacantSlot[room];
+        int from = (to + 1) % Facility.BEDS_PER_ROOM;
+        String roomId = f.rooms.get(room);
+        f.svc.moveResident(f.nurses.get(0), Facility.bedId(roomId, from), Facility.bedId(roomId, to),
+                           Facility.DAY.atTime(10, 0));
+        f.vacantSlot[room] = from;
+    }
+
+    @Benchmark
+    public String doctorAttachPrescription() {
+        int i = next++;
+        return f.svc.doctorAttachPrescription(f.doctors.get(i % f.doctors.size()),
+                f.occupiedBeds.get(i % f.occupiedBeds.size()), ORDERS, Facility.DAY.atTime(9, 30));
+    }
+
+    @Benchmark
+    public void administer() {
+        int i = next++;
+        f.svc.administer(f.nurses.get(i % f.nurses.size()), f.occupiedBeds.get(i % f.occupiedBeds.size()),
+                "Paracetamol", 500, "mg", null, Facility.DAY.atTime(8, 0).plusSeconds(i % 28_800));
+    }
+
+    @Benchmark
+    public boolean isRosteredAt() {
+        int i = next++;
+        Staff s = f.staff.get(i % f.staff.size());
+        LocalDateTime when = Facility.DAY.plusDays(i % 3 - 1).atTime(i % 24, 0);
+        return s.isRosteredAt(when);
+    }
+}
@@ -0,0 +1,58 @@
+package carehome.bench.jmh;
+
+import carehome.domain.Nurse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * administer() throughput when each thread works on a ward of its own, so
+ * the threads share no bed or resident locks. Run it at one thread and at
+ * the core count and compare the scores, e.g.
+ * {@code WardScalingBench -t 1} and {@code WardScalingBench -t 8}; with
+ * per-ward locking the total should grow close to linearly up to the
+ * cores. A {@link Facility} of 1,600 beds has eight wards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WardScalingBench {
+
+    private Facility f;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        f = Facility.build(1_600, 50, 0);
+        threads.set(0);
+    }
+
+    /** One benchmark thread: its nurse and the occupied beds of its ward. */
+    @State(Scope.Thread)
+    public static class Worker {
+        Nurse nurse;
+        List<String> beds;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(WardScalingBench b) {
+            int t = b.threads.getAndIncrement();
+            int perWard = Facility.ROOMS_PER_WARD * (Facility.BEDS_PER_ROOM - 1);
+            int ward = t % b.f.wards.size();
+            nurse = b.f.nurses.get(t % b.f.nurses.size());
+            beds = b.f.occupiedBeds.subList(ward * perWard, (ward + 1) * perWard);
+        }
+    }
+
+    @Benchmark
+    public void administer(Worker w) {
+        int i = w.next++;
+        f.svc.administer(w.nurse, w.beds.get(i % w.beds.size()), "Paracetamol", 500, "mg", null,
+                Facility.DAY.atTime(8, 0).plusSeconds(i % 28_800));
+    }
+}
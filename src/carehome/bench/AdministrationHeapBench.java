@@ -0,0 +1,97 @@
+package carehome.bench;
+
+import carehome.domain.AdministrationRecord;
+import carehome.repo.AdministrationColumns;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Heap footprint of administration history: a plain ArrayList of records
+ * versus the dictionary-encoded AdministrationColumns. About a third of the
+ * rows carry a free-text note that is almost never repeated, as nurses
+ * write them. It measures heap rather than time, so it is a main() of its
+ * own and not one of the JMH benchmarks.
+ *
+ * Usage: java -Xmx4g carehome.bench.AdministrationHeapBench [rows]   (default 10,000,000)
+ */
+public class AdministrationHeapBench {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        // A mid-sized facility: 500 residents, 60 nurses, 40 drugs, 3 units
+        String[] residents = names("R-", 500);
+        String[] nurses = names("N-", 60);
+        String[] drugs = names("Drug-", 40);
+        String[] units = { "mg", "ml", "tab" };
+        Instant start = Instant.parse("2026-01-01T08:00:00Z");
+
+        long base = usedHeap();
+        List<AdministrationRecord> list = new ArrayList<>();
+        fill(list, rows, residents, nurses, drugs, units, start);
+        long listBytes = usedHeap() - base;
+        System.out.printf("ArrayList<AdministrationRecord>: %,d rows, %,d MB, %.1f bytes/row%n",
+                list.size(), listBytes >> 20, (double) listBytes / rows);
+        list = null;
+
+        base = usedHeap();
+        AdministrationColumns columns = new AdministrationColumns();
+        fill(columns, rows, residents, nurses, drugs, units, start);
+        long columnBytes = usedHeap() - base;
+        System.out.printf("AdministrationColumns:           %,d rows, %,d MB, %.1f bytes/row%n",
+                columns.size(), columnBytes >> 20, (double) columnBytes / rows);
+
+        System.out.printf("Saving: %.1fx less heap%n", (double) listBytes / columnBytes);
+    }
+
+    private static void fill(List<AdministrationRecord> out, int rows, String[] residents, String[] nurses,
+                             String[] drugs, String[] units, Instant start) {
+        Random rnd = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            out.add(new AdministrationRecord(
+                residents[rnd.nextInt(residents.length)],
+                drugs[rnd.nextInt(drugs.length)],
+                rnd.nextInt(20) * 50,
+                units[rnd.nextInt(units.length)],
+                start.plusSeconds(i * 30L),
+                nurses[rnd.nextInt(nurses.length)],
+                note(rnd)
+            ));
+        }
+    }
+
+    private static final String[] WORDS = { "yoghurt", "jam", "the hairdresser", "physio", "daughter", "son", "GP visit" };
+
+    // Most doses go by without a note; the rest read like a nurse wrote them, so they hardly ever repeat
+    private static String note(Random rnd) {
+        if (rnd.nextInt(3) != 0) {
+            return "";
+        }
+        String word = WORDS[rnd.nextInt(WORDS.length)];
+        int h = rnd.nextInt(24), m = rnd.nextInt(60);
+        return switch (rnd.nextInt(5)) {
+            case 0 -> String.format("Refused at %02d:%02d, re-offered %d min later and taken", h, m, 5 + rnd.nextInt(55));
+            case 1 -> String.format("Taken crushed in %s, resident drowsy, BP %d/%d", word, 90 + rnd.nextInt(60), 50 + rnd.nextInt(40));
+            case 2 -> String.format("Given late (%02d:%02d) as resident was at %s", h, m, word);
+            case 3 -> String.format("Complained of pain %d/10 before dose, reassess at %02d:%02d", rnd.nextInt(11), h, m);
+            default -> String.format("Family (%s) present, asked about side effects; BP %d/%d", word, 90 + rnd.nextInt(60), 50 + rnd.nextInt(40));
+        };
+    }
+
+    private static String[] names(String prefix, int n) {
+        String[] out = new String[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = prefix + i;
+        }
+        return out;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,68 @@
+package carehome.bench;
+
+import carehome.domain.*;
+import carehome.repo.Store;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Heap a large facility takes with int entity handles: the layout,
+ * residents and prescriptions, measured after a full GC once loaded.
+ *
+ * The time to walk resident -> bed -> room -> ward through handles and
+ * through string ids is carehome.bench.jmh.EntityWalkBench, over the same
+ * facility from {@link #build}. Heap stays a main() of its own: JMH
+ * measures time, not what a loaded store keeps live.
+ *
+ * Usage: java carehome.bench.EntityHandleBench [wards] [prescriptionsPerResident]
+ *        (default 200 wards of 50 four-bed rooms, 40,000 residents, 2 prescriptions each)
+ * Run it in a scratch directory: it clears the Store it loads.
+ */
+public class EntityHandleBench {
+
+    public static void main(String[] args) {
+        int wards = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int perResident = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        Store db = Store.get();
+        db.clear();
+        long before = usedHeap();
+        build(db, wards, perResident);
+        long after = usedHeap();
+        int n = db.residents.size();
+        System.out.printf("%,d residents, %,d beds, %,d prescriptions: %.1f MB heap (%.0f bytes per resident)%n",
+                n, db.beds.size(), db.prescriptions.size(), (after - before) / 1e6, (double) (after - before) / n);
+    }
+
+    /** Fills {@code db} with {@code wards} wards of 50 four-bed rooms, every bed occupied. */
+    public static void build(Store db, int wards, int perResident) {
+        for (int w = 0; w < wards; w++) {
+            db.addWard(new Ward("W" + w, "Ward " + w));
+            for (int r = 0; r < 50; r++) {
+                String room = "W" + w + "-R" + r;
+                db.addRoom(new Room(room, "W" + w));
+                for (int b = 0; b < 4; b++) {
+                    Bed bed = new Bed(room + "-B" + b, room);
+                    db.addBed(bed);
+                    // Fresh strings, as a journal replay or the CLI would produce them
+                    Resident res = new Resident(new String("RES-" + w + "-" + r + "-" + b), "Resident", Gender.F);
+                    bed.occupy(new String(res.id()), res.gender());
+                    res.assignBed(new String(bed.id()));
+                    for (int p = 0; p < perResident; p++) {
+                        Prescription pr = new Prescription("P-" + res.id() + "-" + p, new String(res.id()), "D-1");
+                        db.prescriptions.put(pr.id(), pr);
+                        res.attachPrescription(new String(pr.id()));
+                    }
+                    db.residents.put(res.id(), res);
+                }
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,59 @@
+package carehome.bench;
+
+import carehome.domain.*;
+import carehome.repo.Store;
+import carehome.service.RosterScheduler;
+import carehome.service.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * Generating an eight-week roster for a large facility with
+ * Service.generateRoster(): solver time, shift places left unfilled and
+ * the spread of shifts per nurse and per doctor. The solver runs until
+ * its time budget or a balanced plan, so what matters is the plan it
+ * returns; this stays a main() because a JMH score would mostly be the
+ * budget.
+ *
+ * Usage: java carehome.bench.RosterGeneratorBench [staff] [wards] [nursesPerWard] [budgetMs]
+ *        (default 500 staff, 10 wards, 12 nurses per ward per shift, 5000 ms)
+ * Run it in a scratch directory: it clears the Store it loads.
+ */
+public class RosterGeneratorBench {
+
+    public static void main(String[] args) {
+        int staffCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int wards = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int perWard = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        long budgetMs = args.length > 3 ? Long.parseLong(args[3]) : 5000;
+
+        Store db = Store.get();
+        Service svc = new Service();
+        Manager mgr = new Manager("M-BENCH", "Bench Manager");
+        LocalDate start = LocalDate.of(2027, 1, 4);
+
+        for (int round = 0; round < 3; round++) {
+            db.clear();
+            db.staff.put(mgr.id(), mgr);
+            for (int w = 0; w < wards; w++) {
+                db.addWard(new Ward("W" + w, "Ward " + w));
+            }
+            for (int i = 0; i < staffCount; i++) {
+                svc.addStaff(mgr, i % 10 == 0 ? new Doctor("D-" + i, "Doctor " + i)
+                                              : new Nurse("N-" + i, "Nurse " + i), "pwd");
+            }
+
+            RosterScheduler.Request request = RosterScheduler.Request.weeks(start, 8, perWard)
+                                                                     .withBudget(Duration.ofMillis(budgetMs));
+            long t0 = System.nanoTime();
+            RosterScheduler.Result r = svc.generateRoster(mgr, request);
+            long took = System.nanoTime() - t0;
+
+            System.out.printf("round %d: %,d shifts in %6.1f ms (%d restarts)  shortfall %d  nurses %d..%d  doctors %d..%d%n",
+                    round, r.plan().size(), took / 1e6, r.restarts(), r.shortfall(),
+                    r.nurseShifts().getMin(), r.nurseShifts().getMax(),
+                    r.doctorShifts().getMin(), r.doctorShifts().getMax());
+        }
+    }
+}
@@ -1,35 +1,78 @@
 package carehome.domain;
 
-import java.io.Serializable;
+import java.io.*;
 
 public class Bed implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final String id;
-    private final String roomId;
-    private String residentId;
+    // Serialized form is the original one with string ids, so old files still read
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("roomId", String.class),
+        new ObjectStreamField("residentId", String.class),
+        new ObjectStreamField("genderTag", Gender.class)
+    };
+
+    private int id;
+    private int room;
+    private int resident = Handles.NONE;
     private Gender genderTag;
 
+    // The Store's registries once inserted; until then the ids given here, by position
+    private Handles handles;
+    private String[] unbound; // id, roomId, residentId
+
     public Bed(String id, String roomId) {
-        this.id = id;
-        this.roomId = roomId;
+        this.unbound = new String[] { id, roomId, null };
+        this.id = this.room = Handles.NONE;
+    }
+
+    /**
+     * Called by the Store when the bed is inserted: replaces its ids with
+     * handles from the Store's registries, which it decodes through from
+     * then on.
+     */
+    public void bind(Handles h) {
+        if (h == handles) {
+            return;
+        }
+        String bedId = id(), roomId = roomId(), residentId = residentId();
+        id = h.beds.intern(bedId);
+        room = h.rooms.intern(roomId);
+        resident = h.residents.intern(residentId);
+        handles = h;
+        unbound = null;
     }
 
     public String id() {
+        return handles != null ? handles.beds.id(id) : unbound[0];
+    }
+
+    /** Handle in the Store the bed was inserted into, or Handles.NONE. */
+    public int handle() {
         return id;
     }
 
     public String roomId() {
-        return roomId;
+        return handles != null ? handles.rooms.id(room) : unbound[1];
+    }
+
+    public int roomHandle() {
+        return room;
     }
 
     public boolean isVacant() {
-        return residentId == null;
+        return residentId() == null;
     }
 
     public String residentId() {
-        return residentId;
+        return handles != null ? handles.residents.id(resident) : unbound[2];
+    }
+
+    /** Handle of the occupant, or Handles.NONE if vacant. */
+    public int residentHandle() {
+        return resident;
     }
 
     public Gender genderTag() {
@@ -37,12 +80,36 @@ public class Bed implements Serializable {
     }
 
     public void occupy(String residentId, Gender g) {
-        this.residentId = residentId;
+        if (handles != null) {
+            this.resident = handles.residents.intern(residentId);
+        } else {
+            unbound[2] = residentId;
+        }
         this.genderTag = g;
     }
 
     public void vacate() {
-        this.residentId = null;
+        if (unbound != null) {
+            unbound[2] = null;
+        }
+        this.resident = Handles.NONE;
         this.genderTag = null;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField f = out.putFields();
+        f.put("id", id());
+        f.put("roomId", roomId());
+        f.put("residentId", residentId());
+        f.put("genderTag", genderTag);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        unbound = new String[] { (String) f.get("id", null), (String) f.get("roomId", null),
+                                 (String) f.get("residentId", null) };
+        id = room = resident = Handles.NONE;
+        genderTag = (Gender) f.get("genderTag", null);
+    }
 }
@@ -0,0 +1,9 @@
+package carehome.domain;
+
+import java.time.Instant;
+
+/**
+ * Another resident who shared {@code roomId} with the traced resident,
+ * from {@code bedId}, over [from, to) clipped to the traced window.
+ */
+public record Contact(String residentId, String roomId, String bedId, Instant from, Instant to) { }
@@ -0,0 +1,19 @@
+package carehome.domain;
+
+import java.time.LocalDateTime;
+
+/**
+ * A discrepancy between a resident's prescribed schedule and the doses
+ * actually given. {@code due} is null for UNSCHEDULED doses and
+ * {@code given} is null for MISSED ones.
+ */
+public record DoseFinding(Kind kind, String residentId, String drug, String prescriptionId,
+                          LocalDateTime due, LocalDateTime given) {
+
+    public enum Kind { MISSED, LATE, DUPLICATE, UNSCHEDULED }
+
+    /** When the finding happened: the dose time, or the due time of a missed dose. */
+    public LocalDateTime at() {
+        return given != null ? given : due;
+    }
+}
@@ -0,0 +1,4 @@
+package carehome.domain;
+
+/** Most of {@code drug} (in {@code unit}) any resident may be given in 24 hours. */
+public record DoseLimit(String drug, double maxPer24h, String unit) { }
@@ -0,0 +1,133 @@
+package carehome.domain;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A medication order's free-text schedule compiled to the minutes of the
+ * day at which a dose is due, sorted and without repeats. Schedules recur
+ * daily in local time.
+ *
+ * Accepted parts, separated by commas, semicolons or "and":
+ *  - clock times: "8am", "8:30pm", "08:00", "2000"
+ *  - named times: noon, midday, midnight, morning/mane, evening, night/nocte/bedtime
+ *  - frequencies: daily/od, bd/bid/twice daily, tds/tid, qds/qid
+ *  - intervals dividing the day: "q6h", "every 4 hours"
+ *  - as needed: prn, "as needed", "as required" (no scheduled times)
+ */
+public final class DoseSchedule {
+
+    public static final DoseSchedule AS_NEEDED = new DoseSchedule(new short[0], true);
+
+    private static final Pattern SPLIT = Pattern.compile("\\s*(?:,|;|\\band\\b)\\s*");
+    private static final Pattern CLOCK_12 = Pattern.compile("(\\d{1,2})(?:[:.](\\d{2}))?\\s*([ap])\\.?m\\.?");
+    private static final Pattern CLOCK_24 = Pattern.compile("(\\d{1,2}):(\\d{2})|(\\d{2})(\\d{2})h?");
+    private static final Pattern INTERVAL = Pattern.compile("(?:q|every\\s*)(\\d{1,2})\\s*h(?:ours?|rs?|ourly)?");
+
+    private static final Map<String, int[]> NAMED = new HashMap<>();
+    static {
+        named(new int[] { 12 * 60 }, "noon", "midday");
+        named(new int[] { 0 }, "midnight");
+        named(new int[] { 8 * 60 }, "morning", "mane", "daily", "once daily", "od", "qd");
+        named(new int[] { 18 * 60 }, "evening");
+        named(new int[] { 22 * 60 }, "night", "nocte", "bedtime", "at night");
+        named(new int[] { 8 * 60, 20 * 60 }, "bd", "bid", "twice daily", "twice a day");
+        named(new int[] { 8 * 60, 14 * 60, 20 * 60 }, "tds", "tid", "three times daily", "three times a day");
+        named(new int[] { 8 * 60, 12 * 60, 16 * 60, 20 * 60 }, "qds", "qid", "four times daily", "four times a day");
+    }
+
+    private static void named(int[] minutes, String... names) {
+        for (String n : names) {
+            NAMED.put(n, minutes);
+        }
+    }
+
+    private final short[] minutes;
+    private final boolean asNeeded;
+
+    private DoseSchedule(short[] minutes, boolean asNeeded) {
+        this.minutes = minutes;
+        this.asNeeded = asNeeded;
+    }
+
+    /**
+     * Compiles a schedule string.
+     * @throws IllegalArgumentException if any part is not understood
+     */
+    public static DoseSchedule parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Empty schedule");
+        }
+        String s = text.trim().toLowerCase(Locale.ROOT);
+        if (s.equals("prn") || s.equals("as needed") || s.equals("as required")) {
+            return AS_NEEDED;
+        }
+        BitSet times = new BitSet(24 * 60);
+        for (String part : SPLIT.split(s)) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            int[] named = NAMED.get(part);
+            if (named != null) {
+                for (int m : named) times.set(m);
+                continue;
+            }
+            Matcher m;
+            if ((m = CLOCK_12.matcher(part)).matches()) {
+                int h = Integer.parseInt(m.group(1));
+                int min = m.group(2) == null ? 0 : Integer.parseInt(m.group(2));
+                if (h < 1 || h > 12 || min > 59) {
+                    throw new IllegalArgumentException("Bad time '" + part + "' in schedule: " + text);
+                }
+                times.set((h % 12 + (m.group(3).equals("p") ? 12 : 0)) * 60 + min);
+            } else if ((m = CLOCK_24.matcher(part)).matches()) {
+                int h = Integer.parseInt(m.group(1) != null ? m.group(1) : m.group(3));
+                int min = Integer.parseInt(m.group(2) != null ? m.group(2) : m.group(4));
+                if (h > 23 || min > 59) {
+                    throw new IllegalArgumentException("Bad time '" + part + "' in schedule: " + text);
+                }
+                times.set(h * 60 + min);
+            } else if ((m = INTERVAL.matcher(part)).matches()) {
+                int every = Integer.parseInt(m.group(1));
+                if (every == 0 || 24 % every != 0) {
+                    throw new IllegalArgumentException("Interval must divide 24 hours: " + text);
+                }
+                for (int h = 0; h < 24; h += every) times.set(h * 60);
+            } else {
+                throw new IllegalArgumentException("Unrecognised schedule '" + part + "' in: " + text);
+            }
+        }
+        short[] out = new short[times.cardinality()];
+        for (int i = 0, m = times.nextSetBit(0); m >= 0; m = times.nextSetBit(m + 1)) {
+            out[i++] = (short) m;
+        }
+        return new DoseSchedule(out, false);
+    }
+
+    /** Number of scheduled doses per day. */
+    public int size() {
+        return minutes.length;
+    }
+
+    /** The i-th scheduled minute of the day (0..1439), ascending. */
+    public int minute(int i) {
+        return minutes[i];
+    }
+
+    public boolean isAsNeeded() {
+        return asNeeded;
+    }
+
+    @Override
+    public String toString() {
+        if (asNeeded) {
+            return "PRN";
+        }
+        StringJoiner j = new StringJoiner(", ");
+        for (short m : minutes) {
+            j.add(String.format("%02d:%02d", m / 60, m % 60));
+        }
+        return j.toString();
+    }
+}
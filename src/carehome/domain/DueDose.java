@@ -0,0 +1,7 @@
+package carehome.domain;
+
+import java.time.LocalDateTime;
+
+/** One scheduled dose: order {@code orderIndex} of a prescription, due at {@code due}. */
+public record DueDose(LocalDateTime due, String residentId, String prescriptionId, int orderIndex,
+                      Prescription.MedicationOrder order) { }
@@ -0,0 +1,165 @@
+package carehome.domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+/**
+ * Dense int handles for entity ids: one registry per entity type, and one
+ * set of registries per Store.
+ *
+ * An id is given the next handle when an entity with that id, or one
+ * referring to it, is inserted into the Store. Entities hold only handles
+ * from then on, and decode their string ids through the registries they
+ * were bound to (see their bind() methods). Store.clear() starts a new set
+ * of registries, so handles are only meaningful within one Store between
+ * clears; an entity bound to an older set still decodes through it. -1
+ * stands for "none" (null).
+ *
+ * Lookups are lock-free: an open-addressing table of ids and handles, kept
+ * at most half full and replaced wholesale when it grows. Interning a new
+ * id takes a short lock.
+ */
+public final class Handles {
+
+    public static final int NONE = -1;
+
+    public final Registry wards = new Registry();
+    public final Registry rooms = new Registry();
+    public final Registry beds = new Registry();
+    public final Registry residents = new Registry();
+    public final Registry staff = new Registry();
+    public final Registry prescriptions = new Registry();
+
+    /** The handles of one entity type. */
+    public static final class Registry {
+
+        // Keys are published with release stores after their handle, so a reader that sees a key sees its handle
+        private static final VarHandle KEY = MethodHandles.arrayElementVarHandle(String[].class);
+
+        private static final class Table {
+            final String[] keys;
+            final int[] handles;
+            final int shift;
+
+            Table(int capacity) {
+                keys = new String[capacity];
+                handles = new int[capacity];
+                shift = Integer.numberOfLeadingZeros(capacity) + 1;
+            }
+
+            // Fibonacci hashing: the top bits of the product, as many as the table needs
+            int slot(String id) {
+                return (id.hashCode() * 0x9E3779B9) >>> shift;
+            }
+
+            void place(String id, int h) {
+                int mask = keys.length - 1;
+                int i = slot(id);
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                handles[i] = h;
+                KEY.setRelease(keys, i, id);
+            }
+        }
+
+        private volatile Table table = new Table(64);
+        private volatile String[] ids = new String[64];
+        private volatile int size;
+
+        Registry() { }
+
+        /** The handle of {@code id}, assigning the next one if it is new; NONE for null. */
+        public int intern(String id) {
+            if (id == null) {
+                return NONE;
+            }
+            int h = find(id);
+            return h != NONE ? h : add(id);
+        }
+
+        /** The handle of {@code id}, or NONE if it was never interned. */
+        public int find(String id) {
+            if (id == null) {
+                return NONE;
+            }
+            Table t = table;
+            int mask = t.keys.length - 1;
+            for (int i = t.slot(id); ; i = (i + 1) & mask) {
+                String k = (String) KEY.getAcquire(t.keys, i);
+                if (k == null) {
+                    return NONE;
+                }
+                if (k.equals(id)) {
+                    return t.handles[i];
+                }
+            }
+        }
+
+        /** The id behind {@code handle}; null for NONE. */
+        public String id(int handle) {
+            return handle < 0 ? null : ids[handle];
+        }
+
+        /** Read-only view of {@code handles} as ids. */
+        public List<String> ids(int[] handles) {
+            return ids(handles, handles.length);
+        }
+
+        /** Read-only view of the first {@code n} of {@code handles} as ids. */
+        public List<String> ids(int[] handles, int n) {
+            return new AbstractList<>() {
+                @Override
+                public String get(int i) {
+                    return id(handles[Objects.checkIndex(i, n)]);
+                }
+
+                @Override
+                public int size() {
+                    return n;
+                }
+            };
+        }
+
+        /** The handle of each of {@code ids}, assigning new ones as needed. */
+        public int[] intern(List<String> ids) {
+            int[] out = new int[ids.size()];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = intern(ids.get(i));
+            }
+            return out;
+        }
+
+        /** Number of handles assigned so far; every handle is below this. */
+        public int size() {
+            return size;
+        }
+
+        private synchronized int add(String id) {
+            int h = find(id);
+            if (h != NONE) {
+                return h;
+            }
+            h = size;
+            if (h == ids.length) {
+                ids = Arrays.copyOf(ids, h * 2);
+            }
+            ids[h] = id;
+            Table t = table;
+            if ((h + 1) * 2 > t.keys.length) {
+                Table grown = new Table(t.keys.length * 2);
+                for (int i = 0; i < h; i++) {
+                    grown.place(ids[i], i);
+                }
+                grown.place(id, h);
+                table = grown;
+            } else {
+                // A reader racing this store may miss the new key; intern() then retries under the lock
+                t.place(id, h);
+            }
+            size = h + 1;
+            return h;
+        }
+    }
+}
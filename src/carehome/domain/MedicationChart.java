@@ -0,0 +1,43 @@
+package carehome.domain;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A resident's current medication: every active order with when it
+ * started and who prescribed it, oldest first. Charts are immutable;
+ * a change produces a new chart, so readers can hold one without copying.
+ */
+public record MedicationChart(String residentId, List<Entry> active) {
+
+    public record Entry(String prescriptionId, int orderIndex, Prescription.MedicationOrder order,
+                        Instant started, String prescriberId) { }
+
+    public MedicationChart {
+        active = List.copyOf(active);
+    }
+
+    public static MedicationChart empty(String residentId) {
+        return new MedicationChart(residentId, List.of());
+    }
+
+    /** This chart plus the active orders of {@code p}. */
+    public MedicationChart with(Prescription p) {
+        List<Entry> next = new ArrayList<>(active);
+        List<Prescription.MedicationOrder> orders = p.orders();
+        for (int i = 0; i < orders.size(); i++) {
+            if (p.isActive(i)) {
+                next.add(new Entry(p.id(), i, orders.get(i), p.createdAt(), p.doctorId()));
+            }
+        }
+        return new MedicationChart(residentId, next);
+    }
+
+    /** This chart without order {@code orderIndex} of prescription {@code prescriptionId}. */
+    public MedicationChart without(String prescriptionId, int orderIndex) {
+        List<Entry> next = new ArrayList<>(active);
+        next.removeIf(e -> e.prescriptionId().equals(prescriptionId) && e.orderIndex() == orderIndex);
+        return new MedicationChart(residentId, next);
+    }
+}
@@ -0,0 +1,7 @@
+package carehome.domain;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/** Why a medication order ended: stopped by {@code doctorId}, or replaced by prescription {@code replacedBy}. */
+public record OrderStop(Instant at, String doctorId, String replacedBy) implements Serializable { }
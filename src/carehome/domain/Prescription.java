@@ -1,6 +1,6 @@
 package carehome.domain;
 
-import java.io.Serializable;
+import java.io.*;
 import java.time.Instant;
 import java.util.*;
 
@@ -17,6 +17,8 @@ public class Prescription implements Serializable {
         public final String schedule;
         public final String notes;
 
+        private transient volatile DoseSchedule compiled;
+
         public MedicationOrder(String drug, double dose, String unit, String schedule, String notes) {
             this.drug = drug;
             this.dose = dose;
@@ -25,34 +27,96 @@ public class Prescription implements Serializable {
             this.notes = notes;
         }
 
+        /**
+         * The schedule compiled to times of day. Compiled on first use and
+         * kept for the life of the order.
+         * @throws IllegalArgumentException if the schedule is not understood
+         */
+        public DoseSchedule compiledSchedule() {
+            DoseSchedule c = compiled;
+            if (c == null) {
+                compiled = c = DoseSchedule.parse(schedule);
+            }
+            return c;
+        }
+
         @Override
         public String toString() {
             return drug + " " + dose + unit + " @ " + schedule + (notes == null ? "" : " (" + notes + ")");
         }
     }
 
-    private final String id;
-    private final String residentId;
-    private final String doctorId;
-    private final Instant createdAt = Instant.now();
-    private final List<MedicationOrder> orders = new ArrayList<>();
+    // Serialized form is the original one with string ids, so old files still read
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("residentId", String.class),
+        new ObjectStreamField("doctorId", String.class),
+        new ObjectStreamField("createdAt", Instant.class),
+        new ObjectStreamField("orders", List.class),
+        new ObjectStreamField("stops", Map.class)
+    };
+
+    private int id;
+    private int resident;
+    private int doctor;
+    private Instant createdAt;
+    private List<MedicationOrder> orders = new ArrayList<>();
+    private Map<Integer, OrderStop> stops; // by order index; null in files written before orders could stop
+
+    // The Store's registries once inserted; until then the ids given here, by position
+    private Handles handles;
+    private String[] unbound; // id, residentId, doctorId
 
     public Prescription(String id, String residentId, String doctorId) {
-        this.id = id;
-        this.residentId = residentId;
-        this.doctorId = doctorId;
+        this(id, residentId, doctorId, Instant.now());
+    }
+
+    public Prescription(String id, String residentId, String doctorId, Instant createdAt) {
+        this.unbound = new String[] { id, residentId, doctorId };
+        this.id = this.resident = this.doctor = Handles.NONE;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Called by the Store when the prescription is inserted: replaces its
+     * ids with handles from the Store's registries, which it decodes through
+     * from then on.
+     */
+    public void bind(Handles h) {
+        if (h == handles) {
+            return;
+        }
+        String prescId = id(), residentId = residentId(), doctorId = doctorId();
+        id = h.prescriptions.intern(prescId);
+        resident = h.residents.intern(residentId);
+        doctor = h.staff.intern(doctorId);
+        handles = h;
+        unbound = null;
     }
 
     public String id() {
+        return handles != null ? handles.prescriptions.id(id) : unbound[0];
+    }
+
+    /** Handle in the Store the prescription was inserted into, or Handles.NONE. */
+    public int handle() {
         return id;
     }
 
     public String residentId() {
-        return residentId;
+        return handles != null ? handles.residents.id(resident) : unbound[1];
+    }
+
+    public int residentHandle() {
+        return resident;
     }
 
     public String doctorId() {
-        return doctorId;
+        return handles != null ? handles.staff.id(doctor) : unbound[2];
+    }
+
+    public Instant createdAt() {
+        return createdAt;
     }
 
     public List<MedicationOrder> orders() {
@@ -62,4 +126,41 @@ public class Prescription implements Serializable {
     public void addOrder(MedicationOrder mo) {
         orders.add(mo);
     }
+
+    public synchronized boolean isActive(int orderIndex) {
+        return stops == null || !stops.containsKey(orderIndex);
+    }
+
+    public synchronized Optional<OrderStop> stopOf(int orderIndex) {
+        return stops == null ? Optional.empty() : Optional.ofNullable(stops.get(orderIndex));
+    }
+
+    public synchronized void stopOrder(int orderIndex, OrderStop stop) {
+        if (stops == null) {
+            stops = new HashMap<>();
+        }
+        stops.put(orderIndex, stop);
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField f = out.putFields();
+        f.put("id", id());
+        f.put("residentId", residentId());
+        f.put("doctorId", doctorId());
+        f.put("createdAt", createdAt);
+        f.put("orders", orders);
+        f.put("stops", stops);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        unbound = new String[] { (String) f.get("id", null), (String) f.get("residentId", null),
+                                 (String) f.get("doctorId", null) };
+        id = resident = doctor = Handles.NONE;
+        createdAt = (Instant) f.get("createdAt", null);
+        orders = (List<MedicationOrder>) f.get("orders", null);
+        stops = (Map<Integer, OrderStop>) f.get("stops", null);
+    }
 }
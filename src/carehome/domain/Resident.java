@@ -1,25 +1,64 @@
 package carehome.domain;
 
-import java.io.Serializable;
+import java.io.*;
 import java.util.*;
 
 public class Resident implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final String id;
+    // Serialized form is the original one with string ids, so old files still read
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("gender", Gender.class),
+        new ObjectStreamField("currentBedId", String.class),
+        new ObjectStreamField("prescriptionIds", List.class)
+    };
+
+    private int id;
     private String name;
     private Gender gender;
-    private String currentBedId;
-    private final List<String> prescriptionIds = new ArrayList<>();
+    private int bed = Handles.NONE;
+    private int[] prescriptions = new int[0]; // prescription handles, first prescriptionCount in use
+    private int prescriptionCount;
+
+    // The Store's registries once inserted; until then the ids given here, by position
+    private Handles handles;
+    private String[] unbound; // id, bedId, then the prescription ids
 
     public Resident(String id, String name, Gender gender) {
-        this.id = id;
+        this.unbound = new String[] { id, null };
+        this.id = Handles.NONE;
         this.name = name;
         this.gender = gender;
     }
 
+    /**
+     * Called by the Store when the resident is inserted: replaces its ids
+     * with handles from the Store's registries, which it decodes through
+     * from then on.
+     */
+    public synchronized void bind(Handles h) {
+        if (h == handles) {
+            return;
+        }
+        String residentId = id(), bedId = currentBedId().orElse(null);
+        List<String> prescIds = prescriptions();
+        id = h.residents.intern(residentId);
+        bed = h.beds.intern(bedId);
+        prescriptions = h.prescriptions.intern(prescIds);
+        prescriptionCount = prescriptions.length;
+        handles = h;
+        unbound = null;
+    }
+
     public String id() {
+        return handles != null ? handles.residents.id(id) : unbound[0];
+    }
+
+    /** Handle in the Store the resident was inserted into, or Handles.NONE. */
+    public int handle() {
         return id;
     }
 
@@ -32,18 +71,63 @@ public class Resident implements Serializable {
     }
 
     public Optional<String> currentBedId() {
-        return Optional.ofNullable(currentBedId);
+        return Optional.ofNullable(handles != null ? handles.beds.id(bed) : unbound[1]);
+    }
+
+    /** Handle of the current bed, or Handles.NONE. */
+    public int bedHandle() {
+        return bed;
+    }
+
+    public synchronized void assignBed(String bedId) {
+        if (handles != null) {
+            this.bed = handles.beds.intern(bedId);
+        } else {
+            unbound[1] = bedId;
+        }
+    }
+
+    public synchronized List<String> prescriptions() {
+        return handles != null ? handles.prescriptions.ids(prescriptions, prescriptionCount)
+                               : Arrays.asList(unbound).subList(2, unbound.length);
     }
 
-    public void assignBed(String bedId) {
-        this.currentBedId = bedId;
+    public synchronized void attachPrescription(String prescId) {
+        if (handles == null) {
+            unbound = Arrays.copyOf(unbound, unbound.length + 1);
+            unbound[unbound.length - 1] = prescId;
+            return;
+        }
+        if (prescriptionCount == prescriptions.length) {
+            prescriptions = Arrays.copyOf(prescriptions, Math.max(4, prescriptionCount * 2));
+        }
+        prescriptions[prescriptionCount++] = handles.prescriptions.intern(prescId);
     }
 
-    public List<String> prescriptions() {
-        return Collections.unmodifiableList(prescriptionIds);
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField f = out.putFields();
+        f.put("id", id());
+        f.put("name", name);
+        f.put("gender", gender);
+        f.put("currentBedId", currentBedId().orElse(null));
+        f.put("prescriptionIds", new ArrayList<>(prescriptions()));
+        out.writeFields();
     }
 
-    public void attachPrescription(String prescId) {
-        prescriptionIds.add(prescId);
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        List<String> ids = new ArrayList<>();
+        ids.add((String) f.get("id", null));
+        ids.add((String) f.get("currentBedId", null));
+        List<?> prescIds = (List<?>) f.get("prescriptionIds", null);
+        if (prescIds != null) {
+            prescIds.forEach(p -> ids.add((String) p));
+        }
+        unbound = ids.toArray(new String[0]);
+        id = bed = Handles.NONE;
+        name = (String) f.get("name", null);
+        gender = (Gender) f.get("gender", null);
+        prescriptions = new int[0];
+        prescriptionCount = 0;
     }
 }
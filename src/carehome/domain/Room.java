@@ -1,34 +1,106 @@
 package carehome.domain;
 
-import java.io.Serializable;
+import java.io.*;
 import java.util.*;
 
 public class Room implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final String id;
-    private final String wardId;
-    private final List<String> bedIds = new ArrayList<>();
+    // Serialized form is the original one with string ids, so old files still read
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("wardId", String.class),
+        new ObjectStreamField("bedIds", List.class)
+    };
+
+    private int id;
+    private int ward;
+    private volatile int[] beds = new int[0]; // bed handles; replaced, never written in place
+
+    // The Store's registries once inserted; until then the ids given here, by position
+    private Handles handles;
+    private String[] unbound; // id, wardId, then the bed ids
 
     public Room(String id, String wardId) {
-        this.id = id;
-        this.wardId = wardId;
+        this.unbound = new String[] { id, wardId };
+        this.id = this.ward = Handles.NONE;
+    }
+
+    /**
+     * Called by the Store when the room is inserted: replaces its ids with
+     * handles from the Store's registries, which it decodes through from
+     * then on.
+     */
+    public synchronized void bind(Handles h) {
+        if (h == handles) {
+            return;
+        }
+        String roomId = id(), wardId = wardId();
+        List<String> bedIds = bedIds();
+        id = h.rooms.intern(roomId);
+        ward = h.wards.intern(wardId);
+        beds = h.beds.intern(bedIds);
+        handles = h;
+        unbound = null;
     }
 
     public String id() {
+        return handles != null ? handles.rooms.id(id) : unbound[0];
+    }
+
+    /** Handle in the Store the room was inserted into, or Handles.NONE. */
+    public int handle() {
         return id;
     }
 
     public String wardId() {
-        return wardId;
+        return handles != null ? handles.wards.id(ward) : unbound[1];
+    }
+
+    public int wardHandle() {
+        return ward;
     }
 
     public List<String> bedIds() {
-        return Collections.unmodifiableList(bedIds);
+        return handles != null ? handles.beds.ids(beds) : Arrays.asList(unbound).subList(2, unbound.length);
+    }
+
+    /** Bed handles in the order the beds were added; do not modify. */
+    public int[] bedHandles() {
+        return beds;
+    }
+
+    public synchronized void addBed(String bedId) {
+        if (handles != null) {
+            int[] b = Arrays.copyOf(beds, beds.length + 1);
+            b[b.length - 1] = handles.beds.intern(bedId);
+            beds = b;
+        } else {
+            unbound = Arrays.copyOf(unbound, unbound.length + 1);
+            unbound[unbound.length - 1] = bedId;
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField f = out.putFields();
+        f.put("id", id());
+        f.put("wardId", wardId());
+        f.put("bedIds", new ArrayList<>(bedIds()));
+        out.writeFields();
     }
 
-    public void addBed(String bedId) {
-        bedIds.add(bedId);
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        List<String> ids = new ArrayList<>();
+        ids.add((String) f.get("id", null));
+        ids.add((String) f.get("wardId", null));
+        List<?> bedIds = (List<?>) f.get("bedIds", null);
+        if (bedIds != null) {
+            bedIds.forEach(b -> ids.add((String) b));
+        }
+        unbound = ids.toArray(new String[0]);
+        id = ward = Handles.NONE;
+        beds = new int[0];
     }
 }
@@ -0,0 +1,96 @@
+package carehome.domain;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * One staff member's shifts as a bitmask per day: bit {@code t.ordinal()}
+ * of {@code masks[day - firstDay]} is set when shift {@code t} is assigned.
+ * A year of roster costs 365 bytes, and every lookup is an array index.
+ */
+public final class RosterCalendar implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] HOURS = new int[1 << ShiftType.values().length];
+    static {
+        for (int m = 0; m < HOURS.length; m++) {
+            for (ShiftType t : ShiftType.values()) {
+                if ((m & bit(t)) != 0) HOURS[m] += t.hours;
+            }
+        }
+    }
+
+    private long firstDay;
+    private byte[] masks = new byte[0];
+
+    public static int bit(ShiftType t) {
+        return 1 << t.ordinal();
+    }
+
+    /** Bitmask of the shifts on {@code epochDay}; 0 if none. */
+    public int mask(long epochDay) {
+        long i = epochDay - firstDay;
+        return i >= 0 && i < masks.length ? masks[(int) i] : 0;
+    }
+
+    public boolean has(LocalDate date, ShiftType t) {
+        return (mask(date.toEpochDay()) & bit(t)) != 0;
+    }
+
+    public int hours(LocalDate date) {
+        return HOURS[mask(date.toEpochDay())];
+    }
+
+    /** Total hours of the shifts in {@code mask}. */
+    public static int hoursOf(int mask) {
+        return HOURS[mask];
+    }
+
+    public void add(LocalDate date, ShiftType t) {
+        long day = date.toEpochDay();
+        int i = slot(day);
+        masks[i] |= (byte) bit(t);
+    }
+
+    public void remove(LocalDate date, ShiftType t) {
+        long i = date.toEpochDay() - firstDay;
+        if (i >= 0 && i < masks.length) {
+            masks[(int) i] &= (byte) ~bit(t);
+        }
+    }
+
+    /** First day on or after {@code fromEpochDay} with any shift, or {@code Long.MAX_VALUE}. */
+    public long nextDay(long fromEpochDay) {
+        for (long i = fromEpochDay <= firstDay ? 0 : fromEpochDay - firstDay; i < masks.length; i++) {
+            if (masks[(int) i] != 0) {
+                return firstDay + i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public boolean isEmpty() {
+        return nextDay(firstDay) == Long.MAX_VALUE;
+    }
+
+    // Index for day, growing the covered range (by at least half again) if needed
+    private int slot(long day) {
+        if (masks.length == 0) {
+            firstDay = day;
+            masks = new byte[32];
+        }
+        if (day < firstDay) {
+            int shift = (int) Math.max(firstDay - day, masks.length / 2);
+            byte[] grown = new byte[masks.length + shift];
+            System.arraycopy(masks, 0, grown, shift, masks.length);
+            masks = grown;
+            firstDay -= shift;
+        } else if (day - firstDay >= masks.length) {
+            long need = day - firstDay + 1;
+            masks = Arrays.copyOf(masks, (int) Math.max(need, masks.length + masks.length / 2));
+        }
+        return (int) (day - firstDay);
+    }
+}
@@ -0,0 +1,6 @@
+package carehome.domain;
+
+import java.time.LocalDate;
+
+/** One line of a roster plan: put {@code staffId} on shift {@code type} on {@code date}. */
+public record ShiftAssignment(String staffId, LocalDate date, ShiftType type) { }
@@ -1,14 +1,31 @@
 package carehome.domain;
 
-// Duration hours are used for roster rule checks
+// Duration hours are used for roster rule checks; start hour and duration
+// give the window in which a shift counts as on duty
 public enum ShiftType {
-    NURSE_AM(8),
-    NURSE_PM(8),
-    DOCTOR_1H(1);
+    NURSE_AM(8, 8),
+    NURSE_PM(14, 8),
+    DOCTOR_1H(9, 1);
 
+    public final int startHour;
     public final int hours;
 
-    ShiftType(int h) {
+    ShiftType(int startHour, int h) {
+        this.startHour = startHour;
         this.hours = h;
     }
+
+    private static final int[] ON_DUTY = new int[24];
+    static {
+        for (ShiftType t : values()) {
+            for (int h = t.startHour; h < t.startHour + t.hours; h++) {
+                ON_DUTY[h] |= 1 << t.ordinal();
+            }
+        }
+    }
+
+    /** Bitmask (by ordinal) of the shifts whose window covers {@code hour}. */
+    public static int onDutyAt(int hour) {
+        return ON_DUTY[hour];
+    }
 }
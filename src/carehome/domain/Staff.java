@@ -14,8 +14,8 @@ public abstract class Staff implements Serializable {
     private final Role role;
     private String password;
 
-    // Simple roster: date -> set of shift types
-    private final Map<LocalDate, EnumSet<ShiftType>> roster = new HashMap<>();
+    // Shift bitmask per day
+    private final RosterCalendar roster = new RosterCalendar();
 
     protected Staff(String id, String name, Role role) {
         this.id = id;
@@ -47,43 +47,33 @@ public abstract class Staff implements Serializable {
         return Objects.equals(password, pwd);
     }
 
-    public Map<LocalDate, EnumSet<ShiftType>> roster() {
+    // Raw credential, only for persistence (journal/checkpoint)
+    public String password() {
+        return password;
+    }
+
+    public RosterCalendar roster() {
         return roster;
     }
 
     public void assignShift(LocalDate date, ShiftType type) {
-        roster.computeIfAbsent(date, d -> EnumSet.noneOf(ShiftType.class)).add(type);
+        roster.add(date, type);
     }
 
     public void removeShift(LocalDate date, ShiftType type) {
-        var set = roster.get(date);
-        if (set != null) {
-            set.remove(type);
-            if (set.isEmpty()) {
-                roster.remove(date);
-            }
-        }
+        roster.remove(date, type);
+    }
+
+    public boolean hasShift(LocalDate date, ShiftType type) {
+        return roster.has(date, type);
     }
 
     public int hoursOn(LocalDate date) {
-        return roster.getOrDefault(date, EnumSet.noneOf(ShiftType.class))
-                     .stream()
-                     .mapToInt(t -> t.hours)
-                     .sum();
+        return roster.hours(date);
     }
 
     public boolean isRosteredAt(LocalDateTime when) {
-        var set = roster.get(when.toLocalDate());
-        if (set == null) return false;
-
-        int h = when.getHour();
-        boolean am = h >= 8 && h < 16;
-        boolean pm = h >= 14 && h < 22;
-        boolean doc = h >= 9 && h < 10; // doctor 1h window
-
-        return (am && set.contains(ShiftType.NURSE_AM))
-            || (pm && set.contains(ShiftType.NURSE_PM))
-            || (doc && set.contains(ShiftType.DOCTOR_1H));
+        return (roster.mask(when.toLocalDate().toEpochDay()) & ShiftType.onDutyAt(when.getHour())) != 0;
     }
     
     @Override
@@ -0,0 +1,6 @@
+package carehome.domain;
+
+import java.time.Instant;
+
+/** A resident's time in one bed, {@code from <= t < to}; {@code to} is null while they are still there. */
+public record Stay(String residentId, String bedId, Instant from, Instant to) { }
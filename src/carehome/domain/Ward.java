@@ -1,22 +1,56 @@
 package carehome.domain;
 
-import java.io.Serializable;
+import java.io.*;
 import java.util.*;
 
 public class Ward implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final String id;
-    private final String name;
-    private final List<String> roomIds = new ArrayList<>();
+    // Serialized form is the original one with string ids, so old files still read
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("roomIds", List.class)
+    };
+
+    private int id;
+    private String name;
+    private volatile int[] rooms = new int[0]; // room handles; replaced, never written in place
+
+    // The Store's registries once inserted; until then the ids given here, by position
+    private Handles handles;
+    private String[] unbound; // id, then the room ids
 
     public Ward(String id, String name) {
-        this.id = id;
+        this.unbound = new String[] { id };
+        this.id = Handles.NONE;
         this.name = name;
     }
 
+    /**
+     * Called by the Store when the ward is inserted: replaces its ids with
+     * handles from the Store's registries, which it decodes through from
+     * then on.
+     */
+    public synchronized void bind(Handles h) {
+        if (h == handles) {
+            return;
+        }
+        String wardId = id();
+        List<String> roomIds = roomIds();
+        id = h.wards.intern(wardId);
+        rooms = h.rooms.intern(roomIds);
+        handles = h;
+        unbound = null;
+    }
+
     public String id() {
+        return handles != null ? handles.wards.id(id) : unbound[0];
+    }
+
+    /** Handle in the Store the ward was inserted into, or Handles.NONE. */
+    public int handle() {
         return id;
     }
 
@@ -25,10 +59,44 @@ public class Ward implements Serializable {
     }
 
     public List<String> roomIds() {
-        return Collections.unmodifiableList(roomIds);
+        return handles != null ? handles.rooms.ids(rooms) : Arrays.asList(unbound).subList(1, unbound.length);
+    }
+
+    /** Room handles in the order the rooms were added; do not modify. */
+    public int[] roomHandles() {
+        return rooms;
+    }
+
+    public synchronized void addRoom(String roomId) {
+        if (handles != null) {
+            int[] r = Arrays.copyOf(rooms, rooms.length + 1);
+            r[r.length - 1] = handles.rooms.intern(roomId);
+            rooms = r;
+        } else {
+            unbound = Arrays.copyOf(unbound, unbound.length + 1);
+            unbound[unbound.length - 1] = roomId;
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField f = out.putFields();
+        f.put("id", id());
+        f.put("name", name);
+        f.put("roomIds", new ArrayList<>(roomIds()));
+        out.writeFields();
     }
 
-    public void addRoom(String roomId) {
-        roomIds.add(roomId);
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField f = in.readFields();
+        List<String> ids = new ArrayList<>();
+        ids.add((String) f.get("id", null));
+        List<?> roomIds = (List<?>) f.get("roomIds", null);
+        if (roomIds != null) {
+            roomIds.forEach(r -> ids.add((String) r));
+        }
+        unbound = ids.toArray(new String[0]);
+        id = Handles.NONE;
+        name = (String) f.get("name", null);
+        rooms = new int[0];
     }
 }
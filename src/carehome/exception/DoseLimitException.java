@@ -0,0 +1,7 @@
+package carehome.exception;
+
+public class DoseLimitException extends RuntimeException {
+    public DoseLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package carehome.exception;
+
+/** A write was attempted on a read-only follower; writes go to the primary. */
+public class ReadOnlyException extends RuntimeException {
+    public ReadOnlyException(String message) {
+        super(message);
+    }
+}
@@ -1,7 +1,23 @@
 package carehome.exception;
 
+import java.util.List;
+
 public class RosterException extends RuntimeException {
+
+    private final List<String> violations;
+
     public RosterException(String message) {
         super(message);
+        this.violations = List.of(message);
+    }
+
+    /** A batch rejected for several reasons at once. */
+    public RosterException(List<String> violations) {
+        super(violations.size() + " roster violation(s): " + String.join("; ", violations));
+        this.violations = List.copyOf(violations);
+    }
+
+    public List<String> violations() {
+        return violations;
     }
 }
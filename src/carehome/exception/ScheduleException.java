@@ -0,0 +1,7 @@
+package carehome.exception;
+
+public class ScheduleException extends RuntimeException {
+    public ScheduleException(String message) {
+        super(message);
+    }
+}
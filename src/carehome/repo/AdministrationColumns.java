@@ -0,0 +1,132 @@
+package carehome.repo;
+
+import carehome.domain.AdministrationRecord;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Column store for administration history.
+ *
+ * Rows live in fixed-size chunks of primitive arrays: epoch-millis, dose,
+ * and dictionary codes for resident, drug, unit and nurse, plus the notes
+ * as plain strings. That is 36 bytes a row instead of a record, an Instant
+ * and a list slot, and the handful of distinct drug and unit names are
+ * stored once. Notes are free text that rarely repeats, so a dictionary
+ * would only grow without bound and keep every note twice. The list view
+ * materializes an AdministrationRecord per get(); callers that only need
+ * a field can read it by row without allocating.
+ *
+ * Like AppendOnlyList, appends take a short lock and reads are lock-free.
+ * Times are kept to millisecond precision.
+ */
+public final class AdministrationColumns extends AbstractList<AdministrationRecord> implements RandomAccess {
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int MASK = CHUNK - 1;
+
+    private static final class Chunk {
+        final long[] millis = new long[CHUNK];
+        final double[] dose = new double[CHUNK];
+        final int[] resident = new int[CHUNK];
+        final int[] drug = new int[CHUNK];
+        final int[] unit = new int[CHUNK];
+        final int[] nurse = new int[CHUNK];
+        final String[] notes = new String[CHUNK];
+    }
+
+    private final StringDictionary residents = new StringDictionary();
+    private final StringDictionary drugs = new StringDictionary();
+    private final StringDictionary units = new StringDictionary();
+    private final StringDictionary nurses = new StringDictionary();
+
+    private volatile Chunk[] chunks = new Chunk[4];
+    private volatile int size;
+
+    /** Appends a record and returns its row number. */
+    public synchronized int append(AdministrationRecord r) {
+        int row = size;
+        int c = row >>> CHUNK_BITS;
+        Chunk[] cs = chunks;
+        if (c == cs.length) {
+            cs = Arrays.copyOf(cs, cs.length * 2);
+            chunks = cs;
+        }
+        if (cs[c] == null) {
+            cs[c] = new Chunk();
+        }
+        Chunk k = cs[c];
+        int i = row & MASK;
+        k.millis[i] = r.time().toEpochMilli();
+        k.dose[i] = r.dose();
+        k.resident[i] = residents.encode(r.residentId());
+        k.drug[i] = drugs.encode(r.drug());
+        k.unit[i] = units.encode(r.unit());
+        k.nurse[i] = nurses.encode(r.nurseId());
+        k.notes[i] = r.notes();
+        size = row + 1; // volatile write publishes the row
+        return row;
+    }
+
+    @Override
+    public boolean add(AdministrationRecord r) {
+        append(r);
+        return true;
+    }
+
+    @Override
+    public AdministrationRecord get(int row) {
+        Chunk k = chunk(row);
+        int i = row & MASK;
+        return new AdministrationRecord(
+            residents.decode(k.resident[i]),
+            drugs.decode(k.drug[i]),
+            k.dose[i],
+            units.decode(k.unit[i]),
+            Instant.ofEpochMilli(k.millis[i]),
+            nurses.decode(k.nurse[i]),
+            k.notes[i]
+        );
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        size = 0;
+        chunks = new Chunk[4];
+        residents.clear();
+        drugs.clear();
+        units.clear();
+        nurses.clear();
+    }
+
+    // ---- Field access by row (no allocation) ------------------------------------
+
+    public long millis(int row) {
+        return chunk(row).millis[row & MASK];
+    }
+
+    public double dose(int row) {
+        return chunk(row).dose[row & MASK];
+    }
+
+    public String residentId(int row) {
+        return residents.decode(chunk(row).resident[row & MASK]);
+    }
+
+    public String drug(int row) {
+        return drugs.decode(chunk(row).drug[row & MASK]);
+    }
+
+    private Chunk chunk(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException(row);
+        }
+        return chunks[row >>> CHUNK_BITS];
+    }
+}
@@ -0,0 +1,82 @@
+package carehome.repo;
+
+import carehome.domain.AdministrationRecord;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time-ordered index over administration rows, keyed by resident and by
+ * drug (case-insensitive).
+ *
+ * Each key owns a {@link TimePostings} list of (epoch-millis, row) pairs.
+ * Doses are almost always recorded in time order, so appends are O(1).
+ * Range queries are two binary searches plus O(k) to materialize the rows
+ * from the column store.
+ */
+public final class AdministrationIndex {
+
+    private final AdministrationColumns columns;
+    private final Map<String, TimePostings> byResident = new ConcurrentHashMap<>();
+    private final Map<String, TimePostings> byDrug = new ConcurrentHashMap<>();
+
+    AdministrationIndex(AdministrationColumns columns) {
+        this.columns = columns;
+    }
+
+    void add(int row) {
+        long t = columns.millis(row);
+        byResident.computeIfAbsent(columns.residentId(row), id -> new TimePostings()).add(t, row);
+        byDrug.computeIfAbsent(drugKey(columns.drug(row)), d -> new TimePostings()).add(t, row);
+    }
+
+    void rebuild() {
+        clear();
+        for (int row = 0, n = columns.size(); row < n; row++) {
+            add(row);
+        }
+    }
+
+    void clear() {
+        byResident.clear();
+        byDrug.clear();
+    }
+
+    /** Every row recorded for {@code residentId}, oldest first. */
+    int[] rowsOf(String residentId) {
+        TimePostings p = byResident.get(residentId);
+        return p == null ? new int[0] : p.range(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /** Residents with at least one administration. */
+    Set<String> residentIds() {
+        return byResident.keySet();
+    }
+
+    /** Records for {@code residentId} with {@code from <= time < to}, oldest first. */
+    public List<AdministrationRecord> forResident(String residentId, Instant from, Instant to) {
+        return range(byResident.get(residentId), from, to);
+    }
+
+    /** Records of {@code drug} (any resident) with {@code from <= time < to}, oldest first. */
+    public List<AdministrationRecord> forDrug(String drug, Instant from, Instant to) {
+        return range(byDrug.get(drugKey(drug)), from, to);
+    }
+
+    private List<AdministrationRecord> range(TimePostings p, Instant from, Instant to) {
+        if (p == null || !from.isBefore(to)) {
+            return List.of();
+        }
+        int[] rows = p.range(from.toEpochMilli(), to.toEpochMilli());
+        List<AdministrationRecord> out = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            out.add(columns.get(row));
+        }
+        return out;
+    }
+
+    private static String drugKey(String drug) {
+        return drug.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,65 @@
+package carehome.repo;
+
+import java.util.*;
+
+/**
+ * Append-only list for high-rate history (logs, administrations).
+ *
+ * Elements live in fixed-size chunks, so growing never copies existing
+ * elements. Appends take a short lock; reads and iteration are lock-free
+ * and see every element whose append completed before size() was read.
+ * Iterators are weakly consistent and never throw
+ * ConcurrentModificationException.
+ */
+public final class AppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    private volatile Object[][] chunks = new Object[4][];
+    private volatile int size;
+
+    @Override
+    public boolean add(E e) {
+        append(e);
+        return true;
+    }
+
+    /** Appends {@code e} and returns its index. */
+    public synchronized int append(E e) {
+        int i = size;
+        int c = i >>> CHUNK_BITS;
+        Object[][] cs = chunks;
+        if (c == cs.length) {
+            cs = Arrays.copyOf(cs, cs.length * 2);
+            chunks = cs;
+        }
+        if (cs[c] == null) {
+            cs[c] = new Object[CHUNK];
+        }
+        cs[c][i & (CHUNK - 1)] = e;
+        size = i + 1; // volatile write publishes the element
+        return i;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (E) chunks[index >>> CHUNK_BITS][index & (CHUNK - 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Drops every element. Not meant to race with readers; used for resets. */
+    @Override
+    public synchronized void clear() {
+        size = 0;
+        chunks = new Object[4][];
+    }
+}
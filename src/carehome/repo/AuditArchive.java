@@ -0,0 +1,715 @@
+package carehome.repo;
+
+import carehome.domain.ActionLog;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rolling on-disk archive for the audit log.
+ *
+ * Only the hot segment (the Store's {@code logs} list) stays on heap. It
+ * is cut when it reaches the configured number of entries or when an
+ * entry from a new UTC day arrives, and a background thread seals each
+ * cut: it writes the entries to a gzip segment file and drops them from
+ * the list only once that file is on disk. Appends carry on meanwhile and
+ * never wait for the disk. A small manifest records each sealed segment's
+ * first sequence number, time range and staff IDs, so a query only
+ * decompresses segments that can match. Files are forced to disk before
+ * they are renamed into place, and the directory after.
+ *
+ * Each sealed segment also gets an {@link AuditIndex} of its own, saved
+ * next to it as {@code <firstSeq>.idx.gz}, and {@link #search} reads only the
+ * indexes of segments whose time range and staff can match. Only the hot
+ * segment's index is kept on heap, so opening the archive decompresses
+ * nothing, and retention drops a segment's postings along with its file.
+ *
+ * After each seal the same thread deletes segments older than the
+ * retention period and compacts runs of small adjacent segments (spanning
+ * at most a week) into one. Retention works per segment, so an entry may
+ * outlive the retention period by up to that week. Files that an open
+ * {@link #read} stream may still need are deleted once the last such
+ * stream is closed.
+ *
+ * Every entry has a global sequence number. A checkpoint records the
+ * sequence number of the first hot entry, which lets {@link #attach} drop
+ * entries that were sealed after that checkpoint was written.
+ */
+public final class AuditArchive {
+
+    private static final String MANIFEST = "segments.idx";
+    private static final int MANIFEST_MAGIC = 0x43484131; // "CHA1"
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final long MAX_COMPACTED_SPAN = 7 * DAY_MILLIS; // bounds how late retention can drop an entry
+
+    /** One sealed, compressed segment. Immutable; compaction replaces it. */
+    public record Segment(long firstSeq, int count, long fromMillis, long toMillis, Set<String> staffIds) {
+        String fileName() {
+            return String.format("%016d.seg.gz", firstSeq);
+        }
+
+        String indexFileName() {
+            return String.format("%016d.idx.gz", firstSeq);
+        }
+
+        boolean overlaps(long from, long to) {
+            return fromMillis < to && toMillis >= from;
+        }
+    }
+
+    private final Path dir;
+    private final List<ActionLog> hot;
+    private final int segmentEntries;
+    private final Duration retention;
+
+    private volatile List<Segment> segments = List.of();
+    private long hotBase;
+    private volatile AuditIndex hotIndex = new AuditIndex(); // rebuilt for what is left when a segment seals
+    private long pendingSkip;
+
+    // Guarded by this: where each cut not yet sealed ends, oldest first, and the sealing thread's state
+    private final Deque<Long> cuts = new ArrayDeque<>();
+    private boolean sealing;
+    private RuntimeException sealFailure;
+    private ExecutorService sealer; // created on first use
+
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private final List<Path> pendingDeletes = new ArrayList<>();
+
+    /**
+     * @param dir            directory holding the segment files and manifest
+     * @param hot            the in-memory hot segment (Store.logs)
+     * @param segmentEntries entries per segment before it is sealed
+     * @param retention      sealed segments older than this are deleted; zero keeps everything
+     */
+    public AuditArchive(Path dir, List<ActionLog> hot, int segmentEntries, Duration retention) {
+        this.dir = dir;
+        this.hot = hot;
+        this.segmentEntries = segmentEntries;
+        this.retention = retention;
+        try {
+            Files.createDirectories(dir);
+            segments = readManifest();
+            removeStrayFiles();
+            for (Segment s : segments) {
+                if (!Files.exists(dir.resolve(s.indexFileName()))) {
+                    try (Stream<ActionLog> entries = entries(s)) {
+                        writeIndex(s.firstSeq(), entries.toList()); // sealed before segments had indexes
+                    }
+                }
+            }
+            reindex();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open audit archive " + dir, e);
+        }
+    }
+
+    /**
+     * Lines the archive up with a checkpoint whose first hot entry had
+     * sequence number {@code checkpointBase}. Entries that were sealed after
+     * the checkpoint are dropped from the hot list, and the same number of
+     * replayed entries will be skipped until {@link #endReplay()}.
+     */
+    public synchronized void attach(long checkpointBase) {
+        long sealed = sealedThrough();
+        if (checkpointBase >= sealed) {
+            hotBase = checkpointBase;
+            reindex();
+            return;
+        }
+        long skip = sealed - checkpointBase;
+        int drop = (int) Math.min(skip, hot.size());
+        if (drop > 0) {
+            List<ActionLog> keep = new ArrayList<>(hot.subList(drop, hot.size()));
+            hot.clear();
+            hot.addAll(keep);
+        }
+        pendingSkip = skip - drop;
+        hotBase = sealed;
+        reindex();
+    }
+
+    /** Rebuilds the hot segment's index from the hot list. */
+    synchronized void reindex() {
+        AuditIndex index = new AuditIndex(hotBase);
+        for (int i = 0; i < hot.size(); i++) {
+            index.add(hotBase + i, hot.get(i));
+        }
+        hotIndex = index;
+    }
+
+    /** Called once journal replay is over; later entries are never skipped. */
+    public synchronized void endReplay() {
+        pendingSkip = 0;
+    }
+
+    /** Sequence number of the first entry in the hot segment. */
+    public synchronized long hotBase() {
+        return hotBase;
+    }
+
+    /** Sequence number the next appended entry will get. */
+    public synchronized long endSeq() {
+        return hotBase + hot.size();
+    }
+
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    // ---- Appends ----------------------------------------------------------------
+
+    /**
+     * Appends to the hot segment; returns the entry's sequence number, or -1
+     * if it was skipped. Throws, without appending, if the last background
+     * seal failed; its entries stay in the hot segment and the next append
+     * tries again.
+     */
+    public synchronized long append(ActionLog entry) {
+        if (pendingSkip > 0) {
+            pendingSkip--; // already sealed before the crash
+            return -1;
+        }
+        if (sealFailure != null) {
+            RuntimeException e = sealFailure;
+            sealFailure = null;
+            throw e;
+        }
+        long end = hotBase + hot.size();
+        long open = cuts.isEmpty() ? hotBase : cuts.peekLast();
+        if (end > open && (end - open >= segmentEntries || day(entry) != day(hot.get((int) (open - hotBase))))) {
+            cut(end);
+        }
+        hot.add(entry);
+        hotIndex.add(end, entry);
+        return end;
+    }
+
+    /** Seals the whole hot segment now and waits for it, e.g. before a shutdown. */
+    public void roll() {
+        synchronized (this) {
+            long end = hotBase + hot.size();
+            if (end > (cuts.isEmpty() ? hotBase : cuts.peekLast())) {
+                cut(end);
+            }
+        }
+        awaitSealed();
+    }
+
+    /** Waits until every segment cut so far is sealed; throws if a seal failed. */
+    public synchronized void awaitSealed() {
+        try {
+            while (sealing) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for audit segments to seal", e);
+        }
+        if (sealFailure != null) {
+            RuntimeException e = sealFailure;
+            sealFailure = null;
+            throw e;
+        }
+    }
+
+    // Called under this: the hot entries before end make a segment
+    private void cut(long end) {
+        cuts.addLast(end);
+        if (!sealing) {
+            sealing = true;
+            if (sealer == null) {
+                sealer = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "carehome-audit-seal");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            sealer.execute(this::sealCuts);
+        }
+    }
+
+    // Sealing thread: writes each cut segment, applies retention and compaction, then publishes
+    private void sealCuts() {
+        while (true) {
+            long firstSeq;
+            long end;
+            List<ActionLog> entries;
+            synchronized (this) {
+                if (cuts.isEmpty()) {
+                    sealing = false;
+                    notifyAll();
+                    return;
+                }
+                firstSeq = hotBase;
+                end = cuts.peekFirst();
+                entries = new ArrayList<>(hot.subList(0, (int) (end - firstSeq)));
+            }
+            try {
+                // Only this thread changes segments, so the list can be worked on unlocked
+                List<Segment> next = new ArrayList<>(segments);
+                next.add(writeSegment(firstSeq, entries));
+                List<Path> obsolete = new ArrayList<>();
+                applyRetention(next, obsolete);
+                compact(next, obsolete);
+                writeManifest(next);
+                synchronized (this) {
+                    segments = List.copyOf(next);
+                    cuts.removeFirst();
+                    List<ActionLog> rest = new ArrayList<>(hot.subList(entries.size(), hot.size()));
+                    hot.clear();
+                    hot.addAll(rest);
+                    hotBase = end;
+                    reindex();
+                }
+                retire(obsolete);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    cuts.clear(); // the entries stay hot; the next append cuts them again
+                    sealFailure = new RuntimeException("Failed to seal audit segment", e);
+                    sealing = false;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /** The hot segment's entries and the sequence number of the first, read together for a checkpoint. */
+    synchronized Hot hot() {
+        return new Hot(hotBase, new ArrayList<>(hot));
+    }
+
+    record Hot(long base, List<ActionLog> entries) { }
+
+    // Clamps instants outside the epoch-millis range (e.g. Instant.MAX)
+    private static long millis(Instant t) {
+        try {
+            return t.toEpochMilli();
+        } catch (ArithmeticException e) {
+            return t.isBefore(Instant.EPOCH) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    private static long day(ActionLog l) {
+        return Math.floorDiv(l.when().toEpochMilli(), DAY_MILLIS);
+    }
+
+    // ---- Retention and compaction -----------------------------------------------
+
+    private void applyRetention(List<Segment> next, List<Path> obsolete) {
+        if (retention.isZero()) {
+            return;
+        }
+        long cutoff = Instant.now().minus(retention).toEpochMilli();
+        for (Iterator<Segment> it = next.iterator(); it.hasNext(); ) {
+            Segment s = it.next();
+            if (s.toMillis() < cutoff) {
+                obsolete.add(dir.resolve(s.fileName()));
+                obsolete.add(dir.resolve(s.indexFileName()));
+                it.remove();
+            }
+        }
+    }
+
+    // Merges runs of adjacent segments whose combined size still fits in one segment
+    private void compact(List<Segment> next, List<Path> obsolete) throws IOException {
+        List<Segment> out = new ArrayList<>();
+        int i = 0;
+        while (i < next.size()) {
+            int j = i + 1;
+            long total = next.get(i).count();
+            while (j < next.size() && total + next.get(j).count() <= segmentEntries
+                    && next.get(j).toMillis() - next.get(i).fromMillis() <= MAX_COMPACTED_SPAN
+                    && next.get(j).firstSeq() == next.get(j - 1).firstSeq() + next.get(j - 1).count()) {
+                total += next.get(j).count();
+                j++;
+            }
+            if (j - i == 1) {
+                out.add(next.get(i));
+            } else {
+                List<ActionLog> merged = new ArrayList<>((int) total);
+                for (Segment s : next.subList(i, j)) {
+                    try (Stream<ActionLog> entries = entries(s)) {
+                        entries.forEach(merged::add);
+                    }
+                    obsolete.add(dir.resolve(s.fileName()));
+                    obsolete.add(dir.resolve(s.indexFileName()));
+                }
+                Segment m = writeSegment(next.get(i).firstSeq(), merged);
+                obsolete.remove(dir.resolve(m.fileName())); // rewritten in place under the same names
+                obsolete.remove(dir.resolve(m.indexFileName()));
+                out.add(m);
+            }
+            i = j;
+        }
+        next.clear();
+        next.addAll(out);
+    }
+
+    // Makes the new segment list durable, then deletes (or defers) the obsolete files
+    private void publish(List<Segment> next, List<Path> obsolete) throws IOException {
+        writeManifest(next);
+        segments = List.copyOf(next);
+        retire(obsolete);
+    }
+
+    private void retire(List<Path> obsolete) {
+        synchronized (pendingDeletes) {
+            pendingDeletes.addAll(obsolete);
+        }
+        deletePending();
+    }
+
+    private void deletePending() {
+        synchronized (pendingDeletes) {
+            if (openReaders.get() > 0) {
+                return;
+            }
+            for (Path p : pendingDeletes) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                    // left behind; removed as a stray file on the next open
+                }
+            }
+            pendingDeletes.clear();
+        }
+    }
+
+    /** Deletes every segment and empties the hot list. Appends must not race with it. */
+    public void clear() {
+        try {
+            awaitSealed();
+        } catch (RuntimeException e) {
+            // whatever failed to seal is about to be deleted anyway
+        }
+        clearNow();
+    }
+
+    private synchronized void clearNow() {
+        try {
+            List<Path> all = new ArrayList<>();
+            for (Segment s : segments) {
+                all.add(dir.resolve(s.fileName()));
+                all.add(dir.resolve(s.indexFileName()));
+            }
+            publish(new ArrayList<>(), all);
+            hot.clear();
+            hotBase = 0;
+            hotIndex = new AuditIndex();
+            cuts.clear();
+            sealFailure = null;
+            pendingSkip = 0;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to clear audit archive", e);
+        }
+    }
+
+    // ---- Queries ----------------------------------------------------------------
+
+    /**
+     * Streams entries with {@code from <= time < to}, optionally only those
+     * by {@code staffId}, oldest segment first. Sealed segments are read
+     * from disk one at a time; close the stream when done.
+     */
+    public Stream<ActionLog> read(Instant from, Instant to, String staffId) {
+        return read(from, to, staffId, Long.MAX_VALUE);
+    }
+
+    /** As {@link #read(Instant, Instant, String)}, but only entries with sequence numbers below {@code end}. */
+    public Stream<ActionLog> read(Instant from, Instant to, String staffId, long end) {
+        long lo = millis(from);
+        long hi = millis(to);
+        List<Segment> candidates = new ArrayList<>();
+        List<ActionLog> hotCopy;
+        synchronized (this) {
+            for (Segment s : segments) {
+                if (s.firstSeq() < end && s.overlaps(lo, hi) && (staffId == null || s.staffIds().contains(staffId))) {
+                    candidates.add(s);
+                }
+            }
+            hotCopy = new ArrayList<>(hot.subList(0, (int) Math.min(hot.size(), Math.max(0, end - hotBase))));
+            openReaders.incrementAndGet();
+        }
+        return Stream.concat(candidates.stream().flatMap(s -> entries(s).limit(end - s.firstSeq())), hotCopy.stream())
+                     .filter(l -> !l.when().isBefore(from) && l.when().isBefore(to))
+                     .filter(l -> staffId == null || staffId.equals(l.staffId()))
+                     .onClose(() -> {
+                         openReaders.decrementAndGet();
+                         deletePending();
+                     });
+    }
+
+    /**
+     * Sequence numbers of entries matching {@code q}, segment by segment and
+     * oldest first within each: from the saved index of every sealed segment
+     * whose time range and staff can match, then from the hot segment's.
+     */
+    public long[] search(AuditQuery q) {
+        long lo = millis(q.from());
+        long hi = millis(q.to());
+        List<Segment> candidates = new ArrayList<>();
+        AuditIndex hotNow;
+        synchronized (this) {
+            for (Segment s : segments) {
+                if (s.overlaps(lo, hi) && (q.staffId() == null || s.staffIds().contains(q.staffId()))) {
+                    candidates.add(s);
+                }
+            }
+            hotNow = hotIndex;
+            openReaders.incrementAndGet();
+        }
+        List<long[]> parts = new ArrayList<>();
+        try {
+            for (Segment s : candidates) {
+                parts.add(readIndex(s).search(q));
+            }
+        } finally {
+            openReaders.decrementAndGet();
+            deletePending();
+        }
+        parts.add(hotNow.search(q));
+        long[] out = new long[parts.stream().mapToInt(p -> p.length).sum()];
+        int n = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, out, n, part.length);
+            n += part.length;
+        }
+        return out;
+    }
+
+    /**
+     * Entries with the given sequence numbers (ascending), in that order.
+     * Sealed ones are read one segment at a time; entries already removed
+     * by retention are left out.
+     */
+    public List<ActionLog> fetch(long[] seqs) {
+        List<Segment> sealed;
+        Map<Long, ActionLog> found = new HashMap<>();
+        synchronized (this) {
+            sealed = segments;
+            for (long seq : seqs) {
+                if (seq >= hotBase && seq - hotBase < hot.size()) {
+                    found.put(seq, hot.get((int) (seq - hotBase)));
+                }
+            }
+            openReaders.incrementAndGet();
+        }
+        try {
+            int i = 0;
+            for (Segment s : sealed) {
+                long end = s.firstSeq() + s.count();
+                while (i < seqs.length && seqs[i] < s.firstSeq()) i++;
+                if (i == seqs.length || seqs[i] >= end) {
+                    continue;
+                }
+                try (Stream<ActionLog> entries = entries(s)) {
+                    Iterator<ActionLog> it = entries.iterator();
+                    for (long seq = s.firstSeq(); i < seqs.length && seqs[i] < end; seq++) {
+                        ActionLog l = it.next();
+                        if (seq == seqs[i]) {
+                            found.put(seq, l);
+                            i++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            openReaders.decrementAndGet();
+            deletePending();
+        }
+        List<ActionLog> out = new ArrayList<>(found.size());
+        for (long seq : seqs) {
+            ActionLog l = found.get(seq);
+            if (l != null) {
+                out.add(l);
+            }
+        }
+        return out;
+    }
+
+    private Stream<ActionLog> entries(Segment s) {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(dir.resolve(s.fileName())), 1 << 16)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open audit segment " + s.fileName(), e);
+        }
+        Iterator<ActionLog> it = new Iterator<>() {
+            int left = s.count();
+
+            public boolean hasNext() {
+                return left > 0;
+            }
+
+            public ActionLog next() {
+                if (left == 0) {
+                    throw new NoSuchElementException();
+                }
+                left--;
+                try {
+                    return Codec.readLog(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read audit segment " + s.fileName(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(it, s.count(), Spliterator.ORDERED), false)
+                            .onClose(() -> {
+                                try {
+                                    in.close();
+                                } catch (IOException ignored) {
+                                    // read-only stream
+                                }
+                            });
+    }
+
+    // ---- Files ------------------------------------------------------------------
+
+    private long sealedThrough() {
+        List<Segment> s = segments;
+        return s.isEmpty() ? 0 : s.get(s.size() - 1).firstSeq() + s.get(s.size() - 1).count();
+    }
+
+    private Segment writeSegment(long firstSeq, List<ActionLog> entries) throws IOException {
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        Set<String> staffIds = new TreeSet<>();
+        Path tmp = dir.resolve(String.format("%016d.tmp", firstSeq));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)))) {
+            for (ActionLog l : entries) {
+                long t = l.when().toEpochMilli();
+                from = Math.min(from, t);
+                to = Math.max(to, t);
+                if (l.staffId() != null) {
+                    staffIds.add(l.staffId());
+                }
+                Codec.writeLog(out, l);
+            }
+        }
+        force(tmp);
+        Segment s = new Segment(firstSeq, entries.size(), from, to, Collections.unmodifiableSet(staffIds));
+        writeIndex(firstSeq, entries);
+        Files.move(tmp, dir.resolve(s.fileName()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDir();
+        return s;
+    }
+
+    private void writeIndex(long firstSeq, List<ActionLog> entries) throws IOException {
+        AuditIndex index = new AuditIndex(firstSeq);
+        for (int i = 0; i < entries.size(); i++) {
+            index.add(firstSeq + i, entries.get(i));
+        }
+        Path tmp = dir.resolve(String.format("%016d.idx.tmp", firstSeq));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)))) {
+            index.writeTo(out);
+        }
+        force(tmp);
+        Files.move(tmp, dir.resolve(String.format("%016d.idx.gz", firstSeq)),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Before a rename, so it can never install a file whose contents are not on disk yet
+    private static void force(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+
+    // After a rename, so the new name is on disk too
+    private void forceDir() {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // some platforms cannot open a directory; the rename is as durable as they make it
+        }
+    }
+
+    private AuditIndex readIndex(Segment s) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(dir.resolve(s.indexFileName())), 1 << 16)))) {
+            return AuditIndex.readFrom(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read audit index " + s.indexFileName(), e);
+        }
+    }
+
+    private void writeManifest(List<Segment> list) throws IOException {
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(list.size());
+            for (Segment s : list) {
+                out.writeLong(s.firstSeq());
+                out.writeInt(s.count());
+                out.writeLong(s.fromMillis());
+                out.writeLong(s.toMillis());
+                out.writeInt(s.staffIds().size());
+                for (String id : s.staffIds()) {
+                    out.writeUTF(id);
+                }
+            }
+        }
+        force(tmp);
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDir();
+    }
+
+    private List<Segment> readManifest() throws IOException {
+        Path file = dir.resolve(MANIFEST);
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("Not an audit manifest: " + file);
+            }
+            int n = in.readInt();
+            List<Segment> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                long firstSeq = in.readLong();
+                int count = in.readInt();
+                long from = in.readLong();
+                long to = in.readLong();
+                int staff = in.readInt();
+                Set<String> ids = new TreeSet<>();
+                for (int k = 0; k < staff; k++) {
+                    ids.add(in.readUTF());
+                }
+                out.add(new Segment(firstSeq, count, from, to, Collections.unmodifiableSet(ids)));
+            }
+            return List.copyOf(out);
+        }
+    }
+
+    // Segments written but never published, or left behind by a compaction
+    private void removeStrayFiles() throws IOException {
+        Set<String> live = new HashSet<>();
+        for (Segment s : segments) {
+            live.add(s.fileName());
+            live.add(s.indexFileName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{seg.gz,idx.gz,tmp}")) {
+            for (Path p : files) {
+                if (!live.contains(p.getFileName().toString())) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+}
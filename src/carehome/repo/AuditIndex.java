@@ -0,0 +1,202 @@
+package carehome.repo;
+
+import carehome.domain.ActionLog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over the audit log.
+ *
+ * Every entry is identified by its log sequence number and posted under
+ * its staff ID, its type and each token of its details, in
+ * {@link TimePostings} lists sorted by time. A query takes the time slice
+ * of the rarest term and keeps the candidates that every other term's
+ * list also contains, galloping forward through those lists, so its cost
+ * depends on the rarest term rather than the size of the log.
+ *
+ * Postings hold positions relative to a base sequence number, so one index
+ * covers a stretch of the log that fits in an int: the whole log without an
+ * archive, otherwise one sealed segment (saved next to it by
+ * {@link AuditArchive}) or the hot segment.
+ *
+ * Tokens are maximal runs of letters, digits, '-', '_' and '.', lowercased,
+ * so IDs like "R-17" or "W1-R1-B2" stay whole.
+ */
+public final class AuditIndex {
+
+    private final Map<String, TimePostings> byStaff = new ConcurrentHashMap<>();
+    private final Map<String, TimePostings> byType = new ConcurrentHashMap<>();
+    private final Map<String, TimePostings> byToken = new ConcurrentHashMap<>();
+    private final TimePostings all = new TimePostings();
+    private volatile long base;
+
+    AuditIndex() {
+        this(0);
+    }
+
+    AuditIndex(long base) {
+        this.base = base;
+    }
+
+    void add(long seq, ActionLog l) {
+        long t = l.when().toEpochMilli();
+        int pos = Math.toIntExact(seq - base);
+        all.add(t, pos);
+        if (l.staffId() != null) {
+            byStaff.computeIfAbsent(l.staffId(), k -> new TimePostings()).add(t, pos);
+        }
+        if (l.type() != null) {
+            byType.computeIfAbsent(l.type(), k -> new TimePostings()).add(t, pos);
+        }
+        for (String token : tokens(l.details())) {
+            byToken.computeIfAbsent(token, k -> new TimePostings()).add(t, pos);
+        }
+    }
+
+    void clear() {
+        byStaff.clear();
+        byType.clear();
+        byToken.clear();
+        all.clear();
+    }
+
+    /** Empties the index and numbers positions from {@code base} on. */
+    void reset(long base) {
+        clear();
+        this.base = base;
+    }
+
+    // ---- Files ------------------------------------------------------------------
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(base);
+        all.writeTo(out);
+        for (Map<String, TimePostings> terms : List.of(byStaff, byType, byToken)) {
+            out.writeInt(terms.size());
+            for (Map.Entry<String, TimePostings> e : terms.entrySet()) {
+                out.writeUTF(e.getKey());
+                e.getValue().writeTo(out);
+            }
+        }
+    }
+
+    static AuditIndex readFrom(DataInputStream in) throws IOException {
+        AuditIndex index = new AuditIndex(in.readLong());
+        index.all.readFrom(in);
+        for (Map<String, TimePostings> terms : List.of(index.byStaff, index.byType, index.byToken)) {
+            for (int n = in.readInt(); n > 0; n--) {
+                String key = in.readUTF();
+                TimePostings p = new TimePostings();
+                p.readFrom(in);
+                terms.put(key, p);
+            }
+        }
+        return index;
+    }
+
+    /** Sequence numbers of matching entries, oldest first. */
+    public long[] search(AuditQuery q) {
+        List<TimePostings> terms = new ArrayList<>();
+        if (q.staffId() != null && !add(terms, byStaff.get(q.staffId()))) {
+            return new long[0];
+        }
+        if (q.type() != null && !add(terms, byType.get(q.type()))) {
+            return new long[0];
+        }
+        for (String token : tokens(q.text())) {
+            if (!add(terms, byToken.get(token))) {
+                return new long[0];
+            }
+        }
+        if (terms.isEmpty()) {
+            terms.add(all);
+        }
+
+        long from = millis(q.from());
+        long to = millis(q.to());
+        TimePostings rarest = terms.get(0);
+        for (TimePostings p : terms) {
+            if (p.count(from, to) < rarest.count(from, to)) {
+                rarest = p;
+            }
+        }
+        terms.remove(rarest);
+        long base = this.base;
+        TimePostings.Slice slice = rarest.slice(from, to);
+        int[] cursors = new int[terms.size()];
+        long[] out = new long[slice.positions().length];
+        int n = 0;
+        candidates:
+        for (int i = 0; i < out.length; i++) {
+            long t = slice.times()[i];
+            int pos = slice.positions()[i];
+            for (int k = 0; k < cursors.length; k++) {
+                int at = terms.get(k).seek(t, pos, cursors[k]);
+                cursors[k] = at >= 0 ? at : -at - 1;
+                if (at < 0) {
+                    continue candidates;
+                }
+            }
+            out[n++] = base + pos;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static boolean add(List<TimePostings> terms, TimePostings p) {
+        if (p == null) {
+            return false;
+        }
+        if (!terms.contains(p)) {
+            terms.add(p);
+        }
+        return true;
+    }
+
+    // Clamps instants outside the epoch-millis range (e.g. Instant.MAX)
+    private static long millis(Instant t) {
+        try {
+            return t.toEpochMilli();
+        } catch (ArithmeticException e) {
+            return t.isBefore(Instant.EPOCH) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    /** Distinct lowercase tokens of {@code text}; empty for null. */
+    static Set<String> tokens(String text) {
+        if (text == null) {
+            return Set.of();
+        }
+        Set<String> out = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean part = i < text.length() && isTokenChar(text.charAt(i));
+            if (part && start < 0) {
+                start = i;
+            } else if (!part && start >= 0) {
+                String token = trim(text.substring(start, i));
+                if (!token.isEmpty()) {
+                    out.add(token.toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.';
+    }
+
+    // Drops leading/trailing punctuation so "B2." and "->" don't become tokens
+    private static String trim(String s) {
+        int a = 0, b = s.length();
+        while (a < b && !Character.isLetterOrDigit(s.charAt(a))) a++;
+        while (b > a && !Character.isLetterOrDigit(s.charAt(b - 1))) b--;
+        return s.substring(a, b);
+    }
+}
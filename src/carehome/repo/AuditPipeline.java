@@ -0,0 +1,212 @@
+package carehome.repo;
+
+import carehome.domain.ActionLog;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous audit log.
+ *
+ * Producers claim a sequence number and copy the entry's fields into a
+ * preallocated ring slot, so publishing allocates nothing of its own. A
+ * single consumer thread drains published slots in batches and hands
+ * them to the sink (the Store's log). The pipeline keeps nothing on disk:
+ * in journal mode an entry is already in its commit's journal record
+ * before it is published, and replay restores it from there.
+ *
+ * When the ring is full, {@link BackPressure#BLOCK} makes producers wait
+ * for the consumer and {@link BackPressure#DROP} discards the entry and
+ * counts it. {@link #flush()} waits until everything published so far is
+ * in the log. If the consumer dies (the sink threw), publish and flush
+ * fail instead of waiting for it forever.
+ */
+public final class AuditPipeline implements Closeable {
+
+    public enum BackPressure { BLOCK, DROP }
+
+    private static final int MAX_BATCH = 1024;
+
+    private static final class Slot {
+        volatile long published = -1;
+        long epochSecond;
+        int nano;
+        String staffId;
+        String type;
+        String details;
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    private final BackPressure policy;
+    private final Consumer<ActionLog> sink;
+
+    private final AtomicLong next = new AtomicLong();
+    private volatile long consumed;
+    private final LongAdder dropped = new LongAdder();
+
+    private final Thread consumer;
+    private volatile Throwable failure; // what stopped the consumer
+    private volatile boolean consumerIdle;
+    private volatile boolean running = true;
+
+    /**
+     * @param sink     receives each entry on the consumer thread, in sequence order
+     * @param capacity ring size, rounded up to a power of two
+     */
+    public AuditPipeline(Consumer<ActionLog> sink, int capacity, BackPressure policy) {
+        int n = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new Slot[n];
+        for (int i = 0; i < n; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = n - 1;
+        this.policy = policy;
+        this.sink = sink;
+        this.consumer = new Thread(this::drain, "audit-consumer");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    // ---- Producers --------------------------------------------------------------
+
+    /**
+     * Publishes one entry. Returns false only if the ring was full and the
+     * policy is DROP; throws if the consumer has stopped.
+     */
+    public boolean publish(Instant when, String staffId, String type, String details) {
+        checkRunning();
+        long s;
+        if (policy == BackPressure.DROP) {
+            do {
+                s = next.get();
+                if (s >= consumed + ring.length) {
+                    dropped.increment();
+                    return false;
+                }
+            } while (!next.compareAndSet(s, s + 1));
+        } else {
+            s = next.getAndIncrement();
+            while (s >= consumed + ring.length) {
+                checkRunning(); // nobody else will free the slot
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(10_000);
+            }
+        }
+        Slot slot = ring[(int) (s & mask)];
+        slot.epochSecond = when.getEpochSecond();
+        slot.nano = when.getNano();
+        slot.staffId = staffId;
+        slot.type = type;
+        slot.details = details;
+        slot.published = s; // volatile write releases the fields to the consumer
+        if (consumerIdle) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /** Throws if the consumer thread has stopped, so entries published now would never reach the log. */
+    public void checkRunning() {
+        if (!consumer.isAlive()) {
+            throw new IllegalStateException("Audit consumer has stopped", failure);
+        }
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /** Entries published but not yet drained by the consumer. */
+    public long backlog() {
+        return next.get() - consumed;
+    }
+
+    // ---- Durability -------------------------------------------------------------
+
+    /** Waits until every entry published before this call is in the log. */
+    public void flush() {
+        if (!awaitDrained(false, 0)) {
+            throw new IllegalStateException("Audit consumer has stopped", failure);
+        }
+    }
+
+    /** Like flush(), but gives up after {@code timeout}; returns whether it completed. */
+    public boolean await(Duration timeout) {
+        return awaitDrained(true, System.nanoTime() + timeout.toNanos());
+    }
+
+    private boolean awaitDrained(boolean timed, long deadline) {
+        long upTo = next.get();
+        while (consumed < upTo) {
+            if (!consumer.isAlive() || (timed && System.nanoTime() - deadline > 0)) {
+                return false;
+            }
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(20_000);
+        }
+        return true;
+    }
+
+    // ---- Consumer ---------------------------------------------------------------
+
+    private void drain() {
+        try {
+            drainLoop();
+        } catch (Throwable t) {
+            failure = t; // publish() and flush() report it instead of waiting
+            throw t;
+        }
+    }
+
+    private void drainLoop() {
+        ActionLog[] batch = new ActionLog[MAX_BATCH];
+        while (running || consumed < next.get()) {
+            long s = consumed;
+            int n = 0;
+            while (n < MAX_BATCH) {
+                Slot slot = ring[(int) ((s + n) & mask)];
+                if (slot.published != s + n) {
+                    break;
+                }
+                batch[n++] = new ActionLog(Instant.ofEpochSecond(slot.epochSecond, slot.nano),
+                                           slot.staffId, slot.type, slot.details);
+                slot.staffId = slot.type = slot.details = null;
+            }
+            if (n == 0) {
+                if (next.get() == s) {
+                    consumerIdle = true;
+                    if (next.get() == s) {
+                        LockSupport.parkNanos(this, 1_000_000);
+                    }
+                    consumerIdle = false;
+                } else {
+                    Thread.onSpinWait(); // a producer has claimed the slot but not filled it yet
+                }
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                sink.accept(batch[i]);
+                batch[i] = null;
+            }
+            consumed = s + n; // frees the slots for producers
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package carehome.repo;
+
+import java.time.Instant;
+
+/**
+ * Conjunctive audit-log query: every non-null field must match.
+ * {@code text} is tokenized like ActionLog details, and every token must
+ * occur in an entry's details. Time range is {@code from <= when < to}.
+ */
+public record AuditQuery(String staffId, String type, String text, Instant from, Instant to) {
+
+    public AuditQuery {
+        if (from == null) from = Instant.EPOCH;
+        if (to == null) to = Instant.MAX;
+    }
+
+    public static AuditQuery between(Instant from, Instant to) {
+        return new AuditQuery(null, null, null, from, to);
+    }
+
+    public AuditQuery byStaff(String staffId) {
+        return new AuditQuery(staffId, type, text, from, to);
+    }
+
+    public AuditQuery ofType(String type) {
+        return new AuditQuery(staffId, type, text, from, to);
+    }
+
+    public AuditQuery mentioning(String text) {
+        return new AuditQuery(staffId, type, text, from, to);
+    }
+}
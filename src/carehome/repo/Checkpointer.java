@@ -0,0 +1,197 @@
+package carehome.repo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes Store checkpoints in two steps: a capture, which holds off commits
+ * only while the mutable collections are encoded and the journal is
+ * rotated, and the write of the partition files, which runs while commits
+ * carry on. {@link Store#save()} runs both on the caller's thread;
+ * {@link #runAsync()} and the schedule run them on a daemon thread. One
+ * checkpoint runs at a time.
+ *
+ * Scheduling is off by default. -Dcarehome.checkpoint.intervalSeconds=N
+ * checkpoints every N seconds if anything was committed since the last
+ * capture, and -Dcarehome.checkpoint.afterCommits=N checkpoints once N
+ * commits have piled up.
+ */
+public final class Checkpointer {
+
+    /** What a capture took: the partitions to write and where it leaves the journal. */
+    record Capture(Partitions.Plan plan, long journalEpoch, long commits, long atMillis) { }
+
+    private final Store db;
+    private final ReentrantLock running = new ReentrantLock();
+    private final AtomicReference<CompletableFuture<Void>> queued = new AtomicReference<>();
+    private ScheduledExecutorService executor; // guarded by this; created on first use
+    private volatile long afterCommits;
+
+    // Written by the thread holding running
+    private volatile long checkpoints;
+    private volatile long failures;
+    private volatile long lastPauseNanos;
+    private volatile long maxPauseNanos;
+    private volatile long lastWriteNanos;
+    private volatile long maxWriteNanos;
+    private volatile int lastWardsWritten;
+    private volatile long capturedCommits;
+    private volatile long durableCommits;
+    private volatile long durableAtMillis = -1;
+
+    Checkpointer(Store db) {
+        this.db = db;
+    }
+
+    /** Captures and writes a checkpoint on this thread, after any checkpoint already running. */
+    public void run() {
+        running.lock();
+        try {
+            long t0 = System.nanoTime();
+            Capture c = db.capture();
+            long t1 = System.nanoTime();
+            capturedCommits = c.commits();
+            c.plan().write();
+            db.checkpointWritten(c.journalEpoch());
+            long t2 = System.nanoTime();
+            lastPauseNanos = t1 - t0;
+            maxPauseNanos = Math.max(maxPauseNanos, t1 - t0);
+            lastWriteNanos = t2 - t1;
+            maxWriteNanos = Math.max(maxWriteNanos, t2 - t1);
+            lastWardsWritten = c.plan().wards();
+            durableCommits = c.commits();
+            durableAtMillis = c.atMillis();
+            checkpoints++;
+        } catch (RuntimeException e) {
+            failures++;
+            throw e;
+        } finally {
+            running.unlock();
+        }
+    }
+
+    /**
+     * Checkpoints on the background thread. A request made while another is
+     * still waiting to start shares that one's future, since its capture
+     * will include everything committed so far.
+     */
+    public CompletableFuture<Void> runAsync() {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        CompletableFuture<Void> waiting = queued.compareAndExchange(null, f);
+        if (waiting != null) {
+            return waiting;
+        }
+        executor().execute(() -> {
+            queued.set(null); // later commits need a capture of their own
+            try {
+                run();
+                f.complete(null);
+            } catch (RuntimeException e) {
+                f.completeExceptionally(e);
+            }
+        });
+        return f;
+    }
+
+    /** Starts the checkpoint policy; a zero argument leaves that trigger off. */
+    synchronized void schedule(long intervalSeconds, long afterCommits) {
+        this.afterCommits = afterCommits;
+        if (intervalSeconds > 0) {
+            executor().scheduleWithFixedDelay(() -> {
+                if (db.commitCount() > capturedCommits) {
+                    try {
+                        run();
+                    } catch (RuntimeException e) {
+                        // counted in failures(); the next interval tries again
+                    }
+                }
+            }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // Called by Store after each commit
+    void committed() {
+        long n = afterCommits;
+        if (n > 0 && queued.get() == null && db.commitCount() - capturedCommits >= n) {
+            runAsync();
+        }
+    }
+
+    /** Runs {@code body} with no checkpoint in progress. */
+    void whileIdle(Runnable body) {
+        running.lock();
+        try {
+            body.run();
+        } finally {
+            running.unlock();
+        }
+    }
+
+    /** Records that the store was just restored from the checkpoint in {@code from}. */
+    void restoredFrom(Path from) {
+        try {
+            durableAtMillis = Files.getLastModifiedTime(from).toMillis();
+        } catch (IOException e) {
+            durableAtMillis = -1;
+        }
+    }
+
+    private synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "carehome-checkpoint");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    // ---- Metrics ----------------------------------------------------------------
+
+    public long checkpoints() {
+        return checkpoints;
+    }
+
+    public long failures() {
+        return failures;
+    }
+
+    /** How long the last capture held off commits. */
+    public long lastPauseNanos() {
+        return lastPauseNanos;
+    }
+
+    public long maxPauseNanos() {
+        return maxPauseNanos;
+    }
+
+    /** How long the last snapshot took to encode and write after its capture. */
+    public long lastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    public long maxWriteNanos() {
+        return maxWriteNanos;
+    }
+
+    /** Ward files the last checkpoint rewrote; the others were unchanged and kept. */
+    public int lastWardsWritten() {
+        return lastWardsWritten;
+    }
+
+    /** Age of the state in the snapshot on disk, or -1 if there is none. */
+    public long lagMillis() {
+        long at = durableAtMillis;
+        return at < 0 ? -1 : System.currentTimeMillis() - at;
+    }
+
+    /** Commits made since the capture of the snapshot on disk; recovery replays these from the journal. */
+    public long pendingCommits() {
+        return db.commitCount() - durableCommits;
+    }
+}
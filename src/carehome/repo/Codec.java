@@ -0,0 +1,66 @@
+package carehome.repo;
+
+import carehome.domain.ActionLog;
+
+import java.io.*;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Small helpers for the binary formats used by the repository
+ * (nullable strings, instants, dates and audit entries on Data streams).
+ */
+final class Codec {
+
+    private Codec() { }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeInstant(DataOutput out, Instant t) throws IOException {
+        out.writeLong(t.getEpochSecond());
+        out.writeInt(t.getNano());
+    }
+
+    static Instant readInstant(DataInput in) throws IOException {
+        long sec = in.readLong();
+        int nano = in.readInt();
+        return Instant.ofEpochSecond(sec, nano);
+    }
+
+    static void writeDate(DataOutput out, LocalDate d) throws IOException {
+        out.writeLong(d.toEpochDay());
+    }
+
+    static LocalDate readDate(DataInput in) throws IOException {
+        return LocalDate.ofEpochDay(in.readLong());
+    }
+
+    static <E extends Enum<E>> void writeEnum(DataOutput out, E e) throws IOException {
+        out.writeByte(e == null ? -1 : e.ordinal());
+    }
+
+    static <E extends Enum<E>> E readEnum(DataInput in, Class<E> type) throws IOException {
+        int ord = in.readByte();
+        return ord < 0 ? null : type.getEnumConstants()[ord];
+    }
+
+    static void writeLog(DataOutput out, ActionLog l) throws IOException {
+        writeInstant(out, l.when());
+        writeString(out, l.staffId());
+        writeString(out, l.type());
+        writeString(out, l.details());
+    }
+
+    static ActionLog readLog(DataInput in) throws IOException {
+        return new ActionLog(readInstant(in), readString(in), readString(in), readString(in));
+    }
+}
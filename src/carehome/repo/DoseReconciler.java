@@ -0,0 +1,347 @@
+package carehome.repo;
+
+import carehome.domain.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reconciles compiled prescription schedules against the doses actually
+ * given, per resident.
+ *
+ * Each administration is matched as it is recorded to the nearest open
+ * scheduled slot of the same drug, between {@link #EARLY_LIMIT} before
+ * and {@link #LATE_LIMIT} after it is due. Doses given more than
+ * {@link #ON_TIME} after the slot are LATE. A dose with only filled slots
+ * in reach is a DUPLICATE, and one with no slot at all (and no PRN order)
+ * is UNSCHEDULED. Matching looks only at that resident's orders for the
+ * drug, so each administration costs O(1) however long the history is.
+ *
+ * Doses are matched as if they arrived in time order. One recorded before
+ * a later dose of the same drug (a back-dated entry) takes its slot first,
+ * and the later doses of that drug are matched again after it, so the
+ * result does not depend on arrival order and agrees with {@link #rebuild}.
+ *
+ * Missed doses are slots left unfilled once LATE_LIMIT has passed. They are
+ * found at query time from the schedule and the filled-slot set, without
+ * re-reading administrations.
+ *
+ * Only the horizon before each resident's latest dose is kept: older
+ * matches and findings are dropped, and filled slots once LATE_LIMIT
+ * further back, which no kept dose can reach. Queries start no earlier than
+ * the horizon, and doses recorded from before it are not reconciled.
+ *
+ * {@link #rebuild} replays the full history, one resident per task in parallel.
+ */
+public final class DoseReconciler {
+
+    static final Duration ON_TIME = Duration.ofMinutes(60);
+    static final Duration EARLY_LIMIT = Duration.ofMinutes(60);
+    static final Duration LATE_LIMIT = Duration.ofHours(4);
+
+    private record Order(String prescriptionId, int orderIndex, String drug, DoseSchedule schedule,
+                         LocalDateTime from, LocalDateTime until) {
+
+        // Slots exist from the prescription until the order is stopped
+        boolean covers(LocalDateTime due) {
+            return !due.isBefore(from) && (until == null || due.isBefore(until));
+        }
+    }
+
+    private record Slot(String prescriptionId, int orderIndex, LocalDateTime due) { }
+
+    // How one dose was matched: the slot it filled and/or its LATE, DUPLICATE or UNSCHEDULED finding
+    private record Match(String drug, LocalDateTime at, Slot slot, DoseFinding finding) { }
+
+    private static final class ResidentState {
+        final Map<String, List<Order>> orders = new HashMap<>(); // by drug key
+        final Set<Slot> filled = new HashSet<>();
+        final Map<String, NavigableMap<LocalDateTime, List<Match>>> doses = new HashMap<>(); // by drug key, then time
+        LocalDateTime latest = LocalDateTime.MIN;
+        LocalDateTime keepFrom = LocalDateTime.MIN; // start of the horizon kept
+    }
+
+    private final Map<String, ResidentState> residents = new ConcurrentHashMap<>();
+    private final DoseWheel wheel;
+    private final Duration horizon;
+
+    DoseReconciler(DoseWheel wheel, Duration horizon) {
+        this.wheel = wheel;
+        this.horizon = horizon;
+    }
+
+    // ---- Updates ----------------------------------------------------------------
+
+    void prescribed(Prescription p) {
+        LocalDateTime from = local(p.createdAt().toEpochMilli());
+        ResidentState st = state(p.residentId());
+        synchronized (st) {
+            List<Prescription.MedicationOrder> orders = p.orders();
+            for (int i = 0; i < orders.size(); i++) {
+                Prescription.MedicationOrder mo = orders.get(i);
+                DoseSchedule schedule;
+                try {
+                    schedule = mo.compiledSchedule();
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                LocalDateTime until = p.stopOf(i).map(stop -> local(stop.at().toEpochMilli())).orElse(null);
+                st.orders.computeIfAbsent(drugKey(mo.drug), d -> new ArrayList<>())
+                         .add(new Order(p.id(), i, mo.drug, schedule, from, until));
+            }
+        }
+    }
+
+    /** Ends the slots of an order at its stop time. */
+    void stopped(Prescription p, int orderIndex) {
+        Optional<OrderStop> stop = p.stopOf(orderIndex);
+        ResidentState st = residents.get(p.residentId());
+        if (stop.isEmpty() || st == null) {
+            return;
+        }
+        LocalDateTime until = local(stop.get().at().toEpochMilli());
+        synchronized (st) {
+            for (List<Order> orders : st.orders.values()) {
+                orders.replaceAll(o -> o.prescriptionId().equals(p.id()) && o.orderIndex() == orderIndex
+                        ? new Order(o.prescriptionId(), o.orderIndex(), o.drug(), o.schedule(), o.from(), until)
+                        : o);
+            }
+        }
+    }
+
+    void administered(AdministrationRecord r) {
+        ResidentState st = state(r.residentId());
+        synchronized (st) {
+            add(st, r.residentId(), r.drug(), local(r.time().toEpochMilli()));
+        }
+    }
+
+    private void add(ResidentState st, String residentId, String drug, LocalDateTime t) {
+        if (t.isBefore(st.keepFrom)) {
+            return;
+        }
+        NavigableMap<LocalDateTime, List<Match>> doses = st.doses.computeIfAbsent(drugKey(drug), d -> new TreeMap<>());
+        // Doses after t chose their slots without this one: take them back and match them again after it
+        List<Match> redo = new ArrayList<>();
+        NavigableMap<LocalDateTime, List<Match>> later = doses.tailMap(t, false);
+        later.values().forEach(redo::addAll);
+        later.clear();
+        for (Match m : redo) {
+            if (m.slot() != null) {
+                st.filled.remove(m.slot());
+            }
+        }
+        record(doses, match(st, residentId, drug, t));
+        for (Match m : redo) {
+            record(doses, match(st, residentId, m.drug(), m.at()));
+        }
+        if (t.isAfter(st.latest)) {
+            st.latest = t;
+            prune(st);
+        }
+    }
+
+    private static void record(NavigableMap<LocalDateTime, List<Match>> doses, Match m) {
+        doses.computeIfAbsent(m.at(), k -> new ArrayList<>(1)).add(m);
+    }
+
+    // Moves the horizon up once it trails the latest dose by a day, so pruning is at most daily
+    private void prune(ResidentState st) {
+        LocalDateTime keepFrom = st.latest.minus(horizon);
+        if (!keepFrom.isAfter(st.keepFrom.plusDays(1))) {
+            return;
+        }
+        st.keepFrom = keepFrom;
+        for (Iterator<NavigableMap<LocalDateTime, List<Match>>> it = st.doses.values().iterator(); it.hasNext(); ) {
+            NavigableMap<LocalDateTime, List<Match>> doses = it.next();
+            doses.headMap(keepFrom, false).clear();
+            if (doses.isEmpty()) {
+                it.remove();
+            }
+        }
+        LocalDateTime unreachable = keepFrom.minus(LATE_LIMIT);
+        st.filled.removeIf(slot -> slot.due().isBefore(unreachable));
+    }
+
+    private Match match(ResidentState st, String residentId, String drug, LocalDateTime t) {
+        Slot open = null, taken = null;
+        long openGap = Long.MAX_VALUE, takenGap = Long.MAX_VALUE;
+        boolean prn = false;
+        for (Order o : st.orders.getOrDefault(drugKey(drug), List.of())) {
+            if (o.schedule().isAsNeeded()) {
+                prn |= o.covers(t);
+                continue;
+            }
+            for (int day = -1; day <= 1; day++) {
+                LocalDateTime midnight = t.toLocalDate().plusDays(day).atStartOfDay();
+                for (int k = 0; k < o.schedule().size(); k++) {
+                    LocalDateTime due = midnight.plusMinutes(o.schedule().minute(k));
+                    long gap = Duration.between(due, t).toMinutes();
+                    if (!o.covers(due) || gap < -EARLY_LIMIT.toMinutes() || gap > LATE_LIMIT.toMinutes()) {
+                        continue;
+                    }
+                    Slot slot = new Slot(o.prescriptionId(), o.orderIndex(), due);
+                    if (!st.filled.contains(slot)) {
+                        if (Math.abs(gap) < Math.abs(openGap)) {
+                            open = slot;
+                            openGap = gap;
+                        }
+                    } else if (Math.abs(gap) < Math.abs(takenGap)) {
+                        taken = slot;
+                        takenGap = gap;
+                    }
+                }
+            }
+        }
+        if (open != null) {
+            st.filled.add(open);
+            DoseFinding late = openGap > ON_TIME.toMinutes()
+                    ? new DoseFinding(DoseFinding.Kind.LATE, residentId, drug, open.prescriptionId(), open.due(), t)
+                    : null;
+            return new Match(drug, t, open, late);
+        } else if (taken != null) {
+            return new Match(drug, t, null,
+                    new DoseFinding(DoseFinding.Kind.DUPLICATE, residentId, drug, taken.prescriptionId(), taken.due(), t));
+        } else if (!prn) {
+            return new Match(drug, t, null, new DoseFinding(DoseFinding.Kind.UNSCHEDULED, residentId, drug, null, null, t));
+        }
+        return new Match(drug, t, null, null);
+    }
+
+    /**
+     * Replays every prescription and administration from scratch, each
+     * resident's history in time order on its own task.
+     */
+    void rebuild(Collection<Prescription> prescriptions, AdministrationColumns administrations) {
+        clear();
+        for (Prescription p : prescriptions) {
+            prescribed(p);
+        }
+        Map<String, int[]> rowsByResident = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        int n = administrations.size();
+        for (int row = 0; row < n; row++) {
+            counts.merge(administrations.residentId(row), 1, Integer::sum);
+        }
+        counts.forEach((id, c) -> rowsByResident.put(id, new int[c]));
+        Map<String, Integer> filled = new HashMap<>();
+        for (int row = 0; row < n; row++) {
+            String id = administrations.residentId(row);
+            int i = filled.merge(id, 1, Integer::sum) - 1;
+            rowsByResident.get(id)[i] = row;
+        }
+        rowsByResident.entrySet().parallelStream().forEach(e -> {
+            int[] rows = e.getValue();
+            Integer[] order = new Integer[rows.length];
+            for (int i = 0; i < rows.length; i++) order[i] = rows[i];
+            Arrays.sort(order, Comparator.<Integer>comparingLong(administrations::millis).thenComparingInt(r -> r));
+            ResidentState st = state(e.getKey());
+            synchronized (st) {
+                for (int row : order) {
+                    add(st, e.getKey(), administrations.drug(row), local(administrations.millis(row)));
+                }
+            }
+        });
+    }
+
+    void clear() {
+        residents.clear();
+    }
+
+    // ---- Queries ----------------------------------------------------------------
+
+    /**
+     * Findings for one resident from {@code from} up to {@code asOf}, in time
+     * order. A slot only counts as missed once LATE_LIMIT has passed by asOf.
+     * Starts no earlier than the horizon kept for the resident.
+     */
+    public List<DoseFinding> findings(String residentId, LocalDateTime from, LocalDateTime asOf) {
+        ResidentState st = residents.get(residentId);
+        if (st == null) {
+            return List.of();
+        }
+        LocalDateTime cutoff = asOf.minus(LATE_LIMIT);
+        List<DoseFinding> out = new ArrayList<>();
+        synchronized (st) {
+            from = later(from, kept(st));
+            for (List<Order> orders : st.orders.values()) {
+                for (Order o : orders) {
+                    LocalDateTime start = later(from, o.from());
+                    for (LocalDate d = start.toLocalDate(); !d.atStartOfDay().isAfter(cutoff); d = d.plusDays(1)) {
+                        for (int k = 0; k < o.schedule().size(); k++) {
+                            LocalDateTime due = d.atStartOfDay().plusMinutes(o.schedule().minute(k));
+                            if (!due.isBefore(start) && due.isBefore(cutoff) && o.covers(due)
+                                    && !st.filled.contains(new Slot(o.prescriptionId(), o.orderIndex(), due))) {
+                                out.add(new DoseFinding(DoseFinding.Kind.MISSED, residentId, o.drug(),
+                                                        o.prescriptionId(), due, null));
+                            }
+                        }
+                    }
+                }
+            }
+            if (from.isBefore(asOf)) {
+                for (NavigableMap<LocalDateTime, List<Match>> doses : st.doses.values()) {
+                    for (List<Match> ms : doses.subMap(from, true, asOf, false).values()) {
+                        for (Match m : ms) {
+                            if (m.finding() != null) {
+                                out.add(m.finding());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        out.sort(Comparator.comparing(DoseFinding::at));
+        return out;
+    }
+
+    /**
+     * Missed doses across the facility from {@code from} up to {@code asOf},
+     * read off the dose wheel: O(doses due in the window). Slots before a
+     * resident's horizon are left out.
+     */
+    public List<DoseFinding> missed(LocalDateTime from, LocalDateTime asOf) {
+        List<DoseFinding> out = new ArrayList<>();
+        for (DueDose d : wheel.due(from, asOf.minus(LATE_LIMIT))) {
+            ResidentState st = residents.get(d.residentId());
+            boolean filled;
+            if (st == null) {
+                filled = false;
+            } else {
+                synchronized (st) {
+                    if (d.due().isBefore(kept(st))) {
+                        continue;
+                    }
+                    filled = st.filled.contains(new Slot(d.prescriptionId(), d.orderIndex(), d.due()));
+                }
+            }
+            if (!filled) {
+                out.add(new DoseFinding(DoseFinding.Kind.MISSED, d.residentId(), d.order().drug,
+                                        d.prescriptionId(), d.due(), null));
+            }
+        }
+        return out;
+    }
+
+    private ResidentState state(String residentId) {
+        return residents.computeIfAbsent(residentId, id -> new ResidentState());
+    }
+
+    // First slot every dose that could fill it is still kept for
+    private static LocalDateTime kept(ResidentState st) {
+        return st.keepFrom.equals(LocalDateTime.MIN) ? st.keepFrom : st.keepFrom.plus(EARLY_LIMIT);
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? b : a;
+    }
+
+    private static LocalDateTime local(long epochMilli) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault());
+    }
+
+    private static String drugKey(String drug) {
+        return drug.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,213 @@
+package carehome.repo;
+
+import carehome.domain.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Facility-wide timing wheel of scheduled doses.
+ *
+ * Compiled schedules recur daily, so the wheel has one slot per minute of
+ * the day holding every order due at that minute. Two levels of occupancy
+ * bits (hours, then minutes) let due() skip empty stretches of the day, so
+ * listing the doses in a window costs O(doses due + occupied hours in it)
+ * whatever the number of active orders.
+ *
+ * Orders whose schedule does not compile (free text from before schedules
+ * were checked) are left out. A stopped order comes off the wheel and goes
+ * to a list sorted by stop time, so windows before the stop still list its
+ * doses while later windows only touch orders stopped after they start.
+ * Slots left empty give their storage back.
+ */
+public final class DoseWheel {
+
+    private static final int MINUTES = 24 * 60;
+
+    private record Entry(Prescription prescription, int orderIndex, int minute, LocalDateTime from, LocalDateTime until) { }
+
+    private final List<List<Entry>> slots = new ArrayList<>(MINUTES);
+    private final BitSet hours = new BitSet(24);
+    private final BitSet minutes = new BitSet(MINUTES);
+    private final NavigableMap<LocalDateTime, List<Entry>> stopped = new TreeMap<>(); // by until
+    private final Map<String, List<Entry>> byPrescription = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public DoseWheel() {
+        for (int m = 0; m < MINUTES; m++) {
+            slots.add(new ArrayList<>(0));
+        }
+    }
+
+    void add(Prescription p) {
+        LocalDateTime from = local(p.createdAt());
+        List<Entry> added = new ArrayList<>();
+        List<Prescription.MedicationOrder> orders = p.orders();
+        for (int i = 0; i < orders.size(); i++) {
+            DoseSchedule schedule;
+            try {
+                schedule = orders.get(i).compiledSchedule();
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            LocalDateTime until = p.stopOf(i).map(stop -> local(stop.at())).orElse(null);
+            for (int k = 0; k < schedule.size(); k++) {
+                added.add(new Entry(p, i, schedule.minute(k), from, until));
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            remove(p.id());
+            for (Entry e : added) {
+                if (e.until() != null) {
+                    stopped.computeIfAbsent(e.until(), k -> new ArrayList<>()).add(e);
+                    continue;
+                }
+                slots.get(e.minute()).add(e);
+                minutes.set(e.minute());
+                hours.set(e.minute() / 60);
+            }
+            if (!added.isEmpty()) {
+                byPrescription.put(p.id(), added);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Takes every dose of a prescription off the wheel; add() it again after stopping one of its orders. */
+    void remove(String prescriptionId) {
+        lock.writeLock().lock();
+        try {
+            List<Entry> gone = byPrescription.remove(prescriptionId);
+            if (gone == null) {
+                return;
+            }
+            for (Entry e : gone) {
+                if (e.until() != null) {
+                    List<Entry> same = stopped.get(e.until());
+                    same.remove(e);
+                    if (same.isEmpty()) {
+                        stopped.remove(e.until());
+                    }
+                    continue;
+                }
+                List<Entry> slot = slots.get(e.minute());
+                slot.remove(e);
+                if (slot.isEmpty()) {
+                    slots.set(e.minute(), new ArrayList<>(0));
+                    minutes.clear(e.minute());
+                    int h = e.minute() / 60;
+                    int next = minutes.nextSetBit(h * 60);
+                    if (next < 0 || next >= h * 60 + 60) {
+                        hours.clear(h);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void rebuild(Collection<Prescription> prescriptions) {
+        clear();
+        for (Prescription p : prescriptions) {
+            add(p);
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int m = minutes.nextSetBit(0); m >= 0; m = minutes.nextSetBit(m + 1)) {
+                slots.set(m, new ArrayList<>(0));
+            }
+            minutes.clear();
+            hours.clear();
+            stopped.clear();
+            byPrescription.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Doses due with {@code from <= time < to}, in time order. A dose is
+     * never due before its prescription was written or after its order
+     * was stopped.
+     */
+    public List<DueDose> due(LocalDateTime from, LocalDateTime to) {
+        List<DueDose> out = new ArrayList<>();
+        LocalDateTime t = ceilMinute(from);
+        lock.readLock().lock();
+        try {
+            while (t.isBefore(to)) {
+                LocalDate date = t.toLocalDate();
+                LocalDateTime midnight = date.plusDays(1).atStartOfDay();
+                int m0 = t.getHour() * 60 + t.getMinute();
+                int m1 = to.isBefore(midnight) ? minuteOfDay(ceilMinute(to)) : MINUTES;
+                for (int h = hours.nextSetBit(m0 / 60); h >= 0 && h * 60 < m1; h = hours.nextSetBit(h + 1)) {
+                    int end = Math.min(m1, h * 60 + 60);
+                    for (int m = minutes.nextSetBit(Math.max(m0, h * 60)); m >= 0 && m < end; m = minutes.nextSetBit(m + 1)) {
+                        LocalDateTime due = date.atStartOfDay().plusMinutes(m);
+                        for (Entry e : slots.get(m)) {
+                            if (!due.isBefore(e.from())) {
+                                out.add(dose(e, due));
+                            }
+                        }
+                    }
+                }
+                t = midnight;
+            }
+            int active = out.size();
+            for (List<Entry> same : stopped.tailMap(from, false).values()) {
+                for (Entry e : same) {
+                    addStopped(e, from, to, out);
+                }
+            }
+            if (out.size() > active) {
+                out.sort(Comparator.comparing(DueDose::due));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    // A stopped order's doses in the window, a day at a time up to its stop
+    private static void addStopped(Entry e, LocalDateTime from, LocalDateTime to, List<DueDose> out) {
+        LocalDateTime lo = from.isAfter(e.from()) ? from : e.from();
+        LocalDateTime hi = to.isBefore(e.until()) ? to : e.until();
+        for (LocalDate day = lo.toLocalDate(); day.atStartOfDay().isBefore(hi); day = day.plusDays(1)) {
+            LocalDateTime due = day.atStartOfDay().plusMinutes(e.minute());
+            if (!due.isBefore(lo) && due.isBefore(hi)) {
+                out.add(dose(e, due));
+            }
+        }
+    }
+
+    private static DueDose dose(Entry e, LocalDateTime due) {
+        Prescription p = e.prescription();
+        return new DueDose(due, p.residentId(), p.id(), e.orderIndex(), p.orders().get(e.orderIndex()));
+    }
+
+    private static LocalDateTime local(Instant t) {
+        return LocalDateTime.ofInstant(t, ZoneId.systemDefault());
+    }
+
+    private static LocalDateTime ceilMinute(LocalDateTime t) {
+        LocalDateTime floor = t.truncatedTo(ChronoUnit.MINUTES);
+        return floor.equals(t) ? t : floor.plusMinutes(1);
+    }
+
+    // 1440 for the midnight that ends a day window
+    private static int minuteOfDay(LocalDateTime t) {
+        int m = t.getHour() * 60 + t.getMinute();
+        return m == 0 ? MINUTES : m;
+    }
+}
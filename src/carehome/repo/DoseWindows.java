@@ -0,0 +1,143 @@
+package carehome.repo;
+
+import carehome.domain.AdministrationRecord;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rolling 24-hour dose totals per (resident, drug, unit).
+ *
+ * Each key owns a ring of 15-minute buckets, each tagged with the bucket
+ * number it currently holds, so a stale slot is recognised and reused
+ * without a sweep. A window is the bucket of its end time and the 96
+ * before it, so it always covers at least the last 24 hours; a dose is
+ * counted up to 15 minutes longer than that, which errs on the safe side
+ * for limits. Scans of the history use the same buckets, through
+ * {@link #busiest}, so both paths agree on which doses a window holds.
+ *
+ * Adding a dose and reading a total are O(buckets), independent of
+ * history length. The ring can only answer for times at or after the
+ * newest dose it has seen; {@link #total} returns NaN for earlier times,
+ * and callers scan the administration index over {@link #windowStart} to
+ * {@link #windowEnd} (or {@link #lastWindowEnd}) instead.
+ */
+public final class DoseWindows {
+
+    static final int BUCKET_MINUTES = 15;
+    private static final int BUCKETS = 24 * 60 / BUCKET_MINUTES + 1;
+    private static final long BUCKET_MILLIS = BUCKET_MINUTES * 60_000L;
+
+    private static final class Ring {
+        final long[] bucket = new long[BUCKETS];
+        final double[] amount = new double[BUCKETS];
+        long head = Long.MIN_VALUE; // newest bucket written
+
+        Ring() {
+            Arrays.fill(bucket, Long.MIN_VALUE);
+        }
+    }
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    void add(AdministrationRecord r) {
+        long b = Math.floorDiv(r.time().toEpochMilli(), BUCKET_MILLIS);
+        Ring ring = rings.computeIfAbsent(key(r.residentId(), r.drug(), r.unit()), k -> new Ring());
+        synchronized (ring) {
+            if (ring.head != Long.MIN_VALUE && b <= ring.head - BUCKETS) {
+                return; // older than anything the ring can still answer for
+            }
+            int i = (int) Math.floorMod(b, (long) BUCKETS);
+            if (ring.bucket[i] != b) {
+                ring.bucket[i] = b;
+                ring.amount[i] = 0;
+            }
+            ring.amount[i] += r.dose();
+            ring.head = Math.max(ring.head, b);
+        }
+    }
+
+    void rebuild(AdministrationColumns administrations) {
+        clear();
+        for (AdministrationRecord r : administrations) {
+            add(r);
+        }
+    }
+
+    void clear() {
+        rings.clear();
+    }
+
+    /**
+     * Total given in the window ending with the bucket of {@code epochMilli},
+     * or NaN if that time is before the newest dose recorded for the key.
+     */
+    public double total(String residentId, String drug, String unit, long epochMilli) {
+        Ring ring = rings.get(key(residentId, drug, unit));
+        if (ring == null) {
+            return 0;
+        }
+        long b = Math.floorDiv(epochMilli, BUCKET_MILLIS);
+        synchronized (ring) {
+            if (b < ring.head) {
+                return Double.NaN;
+            }
+            double sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (ring.bucket[i] > b - BUCKETS) {
+                    sum += ring.amount[i];
+                }
+            }
+            return sum;
+        }
+    }
+
+    /** First millisecond of the window {@link #total} sums for {@code epochMilli}. */
+    public static long windowStart(long epochMilli) {
+        return (Math.floorDiv(epochMilli, BUCKET_MILLIS) - BUCKETS + 1) * BUCKET_MILLIS;
+    }
+
+    /** End (exclusive) of the window {@link #total} sums for {@code epochMilli}. */
+    public static long windowEnd(long epochMilli) {
+        return (Math.floorDiv(epochMilli, BUCKET_MILLIS) + 1) * BUCKET_MILLIS;
+    }
+
+    /** End (exclusive) of the last window that still contains {@code epochMilli}. */
+    public static long lastWindowEnd(long epochMilli) {
+        return windowEnd(epochMilli) + (BUCKETS - 1) * BUCKET_MILLIS;
+    }
+
+    /**
+     * Total of {@code doses}, all of one key, in the window {@link #total}
+     * sums for {@code epochMilli}; or with {@code orLater}, the most in any
+     * window containing it, up to the one ending at {@link #lastWindowEnd}.
+     * Doses outside those windows are ignored.
+     */
+    public static double busiest(Iterable<AdministrationRecord> doses, long epochMilli, boolean orLater) {
+        long first = Math.floorDiv(epochMilli, BUCKET_MILLIS) - BUCKETS + 1;
+        int ends = orLater ? BUCKETS : 1;
+        double[] amount = new double[BUCKETS + ends - 1];
+        for (AdministrationRecord r : doses) {
+            long i = Math.floorDiv(r.time().toEpochMilli(), BUCKET_MILLIS) - first;
+            if (i >= 0 && i < amount.length) {
+                amount[(int) i] += r.dose();
+            }
+        }
+        double busiest = 0;
+        for (int e = 0; e < ends; e++) {
+            double sum = 0;
+            for (int i = e; i < e + BUCKETS; i++) {
+                sum += amount[i];
+            }
+            busiest = Math.max(busiest, sum);
+        }
+        return busiest;
+    }
+
+    private static String key(String residentId, String drug, String unit) {
+        return residentId + '\u0000' + drug.toLowerCase(Locale.ROOT) + '\u0000'
+             + (unit == null ? "" : unit.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,217 @@
+package carehome.repo;
+
+import carehome.domain.Handles;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Entities of one type stored in an array indexed by their {@link Handles}
+ * handle, in the registry of the Store that owns the table. Inserting an
+ * entity interns its id and binds the entity to the Store's registries; the
+ * registry is looked up on each use, as the Store replaces its registries
+ * when it is cleared.
+ *
+ * Code that already holds a handle (a bed's room, a room's beds) reads
+ * {@link #get(int)}: an array load, with no hashing at all. The Map view
+ * keyed by string id is kept for the API edge; a string lookup costs one
+ * probe of the handle registry. Slots live in fixed-size chunks, so the
+ * table grows without copying. Reads are lock-free; iteration is in handle
+ * order, stops at the highest handle ever stored, and is weakly consistent.
+ */
+public final class EntityTable<T> extends AbstractMap<String, T> {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    // Slots are read with acquire and written atomically, so entities are safely published
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final Supplier<Handles> handles;
+    private final Function<Handles, Handles.Registry> registry;
+    private final BiConsumer<T, Handles> bind;
+    private volatile Object[][] chunks = new Object[4][];
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger end = new AtomicInteger(); // one past the highest handle stored
+
+    EntityTable(Supplier<Handles> handles, Function<Handles, Handles.Registry> registry, BiConsumer<T, Handles> bind) {
+        this.handles = handles;
+        this.registry = registry;
+        this.bind = bind;
+    }
+
+    /** The entity with handle {@code h}, or null. */
+    @SuppressWarnings("unchecked")
+    public T get(int h) {
+        Object[][] cs = chunks;
+        int c = h >>> CHUNK_BITS;
+        if (h < 0 || c >= cs.length || cs[c] == null) {
+            return null;
+        }
+        return (T) SLOT.getAcquire(cs[c], h & (CHUNK - 1));
+    }
+
+    @Override
+    public T get(Object id) {
+        return id instanceof String s ? get(registry().find(s)) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object id) {
+        return get(id) != null;
+    }
+
+    @Override
+    public T put(String id, T value) {
+        Objects.requireNonNull(value);
+        Handles hs = handles.get();
+        int h = registry.apply(hs).intern(id);
+        bind.accept(value, hs);
+        end.accumulateAndGet(h + 1, Math::max);
+        @SuppressWarnings("unchecked")
+        T old = (T) SLOT.getAndSet(chunk(h), h & (CHUNK - 1), value);
+        if (old == null) {
+            size.incrementAndGet();
+        }
+        return old;
+    }
+
+    @Override
+    public T putIfAbsent(String id, T value) {
+        Objects.requireNonNull(value);
+        Handles hs = handles.get();
+        int h = registry.apply(hs).intern(id);
+        T present = get(h);
+        if (present != null) {
+            return present; // this one stays unbound
+        }
+        bind.accept(value, hs);
+        end.accumulateAndGet(h + 1, Math::max);
+        Object[] chunk = chunk(h);
+        while (!SLOT.compareAndSet(chunk, h & (CHUNK - 1), null, value)) {
+            T current = get(h);
+            if (current != null) {
+                return current;
+            }
+        }
+        size.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public T remove(Object id) {
+        if (!(id instanceof String s)) {
+            return null;
+        }
+        int h = registry().find(s);
+        if (get(h) == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        T old = (T) SLOT.getAndSet(chunks[h >>> CHUNK_BITS], h & (CHUNK - 1), null);
+        if (old != null) {
+            size.decrementAndGet();
+        }
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Object[] chunk : chunks) {
+            if (chunk != null) {
+                for (int i = 0; i < CHUNK; i++) {
+                    if (SLOT.getAndSet(chunk, i, null) != null) {
+                        size.decrementAndGet();
+                    }
+                }
+            }
+        }
+        end.set(0);
+    }
+
+    @Override
+    public Set<Entry<String, T>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, T>> iterator() {
+                return new Iterator<>() {
+                    private final Handles.Registry ids = registry();
+                    private final int end = EntityTable.this.end.get();
+                    private int next = advance(0);
+                    private int last = -1;
+
+                    private int advance(int h) {
+                        while (h < end && EntityTable.this.get(h) == null) {
+                            h++;
+                        }
+                        return h;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < end;
+                    }
+
+                    @Override
+                    public Entry<String, T> next() {
+                        if (next >= end) {
+                            throw new NoSuchElementException();
+                        }
+                        T value = EntityTable.this.get(next);
+                        last = next;
+                        next = advance(next + 1);
+                        return new SimpleImmutableEntry<>(ids.id(last), value);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        EntityTable.this.remove(ids.id(last));
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return EntityTable.this.size();
+            }
+        };
+    }
+
+    private Handles.Registry registry() {
+        return registry.apply(handles.get());
+    }
+
+    // The chunk holding handle h, allocated on first use
+    private Object[] chunk(int h) {
+        int c = h >>> CHUNK_BITS;
+        Object[][] cs = chunks;
+        if (c < cs.length && cs[c] != null) {
+            return cs[c];
+        }
+        synchronized (this) {
+            cs = chunks;
+            if (c >= cs.length) {
+                cs = Arrays.copyOf(cs, Math.max(cs.length * 2, c + 1));
+            }
+            if (cs[c] == null) {
+                cs[c] = new Object[CHUNK];
+            }
+            chunks = cs; // volatile write publishes the new chunk
+            return cs[c];
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package carehome.repo;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only replica side of journal shipping: keeps this process's Store
+ * in step with a primary's {@link Replicator}.
+ *
+ * A daemon thread connects, proves it knows the replication secret and
+ * checks that the primary does too (see {@link Replicator}), says which
+ * stream and sequence number it has applied, and then applies what comes
+ * back, in order: a snapshot if it is
+ * new or too far behind, then the committed records, each through the same
+ * replay path as the journal. Reads (Service queries, read views) work as
+ * usual meanwhile; writes fail with ReadOnlyException. If the connection
+ * drops it reconnects every half second and resumes where it left off.
+ *
+ * Start with -Dcarehome.follow=host:port. {@link Store#promote()} stops
+ * following and makes the store a writable primary. That is only ever
+ * done by an operator who has made sure the old primary is gone: nothing
+ * here fences a primary that is merely unreachable, so promoting on a
+ * timeout could leave two primaries taking writes.
+ */
+public final class Follower implements AutoCloseable {
+
+    private static final long RETRY_MILLIS = 500;
+
+    private final Store db;
+    private final String host;
+    private final int port;
+    private final byte[] secret;
+    private final Thread thread;
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    private volatile long streamId;
+    private volatile long applied;
+    private volatile long primarySeq;
+    private volatile boolean connected;
+    private volatile long lastContactMillis = System.currentTimeMillis();
+    private final AtomicLong snapshots = new AtomicLong();
+
+    Follower(Store db, String host, int port) {
+        this.db = db;
+        this.host = host;
+        this.port = port;
+        this.secret = Replicator.secret();
+        this.thread = new Thread(this::run, "carehome-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** The primary, as host:port. */
+    public String source() {
+        return host + ":" + port;
+    }
+
+    private void run() {
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress(host, port), (int) RETRY_MILLIS);
+                s.setTcpNoDelay(true);
+                socket = s;
+                follow(s);
+            } catch (IOException e) {
+                // primary down or restarted; try again below
+            }
+            connected = false;
+            if (closed) {
+                return;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        if (in.readByte() != Replicator.CHALLENGE) {
+            throw new IOException("Unexpected greeting from " + source());
+        }
+        byte[] theirChallenge = in.readNBytes(Replicator.NONCE);
+        byte[] challenge = Replicator.nonce();
+        out.writeByte(Replicator.HELLO);
+        out.writeInt(Replicator.MAGIC);
+        out.write(challenge);
+        out.write(Replicator.mac(secret, Replicator.HELLO, theirChallenge));
+        out.writeLong(streamId);
+        out.writeLong(applied);
+        out.flush();
+        if (in.readByte() != Replicator.WELCOME) {
+            throw new IOException("Unexpected reply from " + source());
+        }
+        if (!MessageDigest.isEqual(in.readNBytes(Replicator.MAC), Replicator.mac(secret, Replicator.WELCOME, challenge))) {
+            throw new IOException(source() + " does not know the replication secret");
+        }
+        long stream = in.readLong();
+        connected = true;
+        while (!closed) {
+            byte frame = in.readByte();
+            lastContactMillis = System.currentTimeMillis();
+            switch (frame) {
+                case Replicator.SNAPSHOT -> {
+                    long seq = in.readLong();
+                    restore(in, in.readLong());
+                    streamId = stream;
+                    applied = seq;
+                    primarySeq = Math.max(primarySeq, seq);
+                    snapshots.incrementAndGet();
+                }
+                case Replicator.RECORD -> {
+                    long seq = in.readLong();
+                    in.readLong(); // commit time; the primary measures lag
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    if (seq != applied + 1) {
+                        throw new IOException("Expected record " + (applied + 1) + ", got " + seq);
+                    }
+                    db.applyReplicated(record);
+                    streamId = stream;
+                    applied = seq;
+                    primarySeq = Math.max(primarySeq, seq);
+                }
+                case Replicator.HEARTBEAT -> {
+                    primarySeq = in.readLong();
+                    in.readLong();
+                    out.writeByte(Replicator.ACK);
+                    out.writeLong(applied);
+                    out.flush();
+                }
+                default -> throw new IOException("Unknown replication frame " + frame);
+            }
+        }
+    }
+
+    private void restore(DataInputStream in, long length) throws IOException {
+        Path tmp = Files.createTempFile("carehome-replica", ".dat");
+        try {
+            try (OutputStream file = Files.newOutputStream(tmp)) {
+                byte[] buf = new byte[1 << 16];
+                for (long left = length; left > 0; ) {
+                    int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+                    if (n < 0) {
+                        throw new EOFException("Snapshot cut short");
+                    }
+                    file.write(buf, 0, n);
+                    left -= n;
+                }
+            }
+            db.restoreFromPrimary(tmp);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Waits until the record with sequence number {@code seq} is applied; false on timeout. */
+    public boolean awaitApplied(long seq, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (applied < seq) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    /** Stops following; called by {@link Store#promote()}. */
+    @Override
+    public void close() {
+        closed = true;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ---- Metrics ----------------------------------------------------------------
+
+    /** Sequence number of the last record applied here. */
+    public long appliedSeq() {
+        return applied;
+    }
+
+    /** Records the primary had committed at its last heartbeat that are not applied here yet. */
+    public long lagRecords() {
+        return Math.max(0, primarySeq - applied);
+    }
+
+    public boolean connected() {
+        return connected;
+    }
+
+    /** Time since anything was last heard from the primary. */
+    public long millisSinceContact() {
+        return System.currentTimeMillis() - lastContactMillis;
+    }
+
+    /** Snapshots received: one on first contact, and one after each fall too far behind. */
+    public long snapshots() {
+        return snapshots.get();
+    }
+}
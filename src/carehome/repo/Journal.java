@@ -0,0 +1,320 @@
+package carehome.repo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of committed mutations.
+ *
+ * Each record is framed as [length][crc32][payload], so a torn tail left
+ * behind by a crash is detected and cut off on the next open. Appends are
+ * group-committed: whichever caller reaches fsync first writes and forces
+ * every record buffered so far, and callers whose records were covered by
+ * that fsync return without touching the disk. If a write or fsync fails,
+ * the file is cut back to the last fsynced record and the journal fails
+ * for good: the records in the lost batch, and every later append, throw
+ * rather than report a record durable that is not.
+ *
+ * A file starts with a header naming its epoch. A checkpoint rotates the
+ * journal: the current file is renamed to {@code <name>.<epoch>} and a new
+ * one opens for the next epoch, so commits can carry on while the
+ * checkpoint is written. The checkpoint records the epoch it starts from;
+ * on open, rotated files from earlier epochs are deleted and the rest are
+ * replayed before the current file. Files written before epochs existed
+ * have no header and count as epoch 0.
+ */
+final class Journal implements Closeable {
+
+    private static final int HEADER = 8;
+    private static final int FILE_MAGIC = 0x43484A31; // "CHJ1"
+    private static final int FILE_HEADER = 12;
+
+    private final Path path;
+    private final long epoch;
+    private final long start; // first record; 0 in a file from before epochs
+    private final FileChannel channel;
+    private final Object syncLock = new Object();
+
+    // guarded by this
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appended;
+
+    // guarded by syncLock
+    private long synced;
+    private long syncedOffset; // file length once the last batch was forced
+
+    private volatile IOException failure;
+
+    private Journal(Path path, long epoch, long start, FileChannel channel, long end) {
+        this.path = path;
+        this.epoch = epoch;
+        this.start = start;
+        this.channel = channel;
+        this.syncedOffset = end;
+    }
+
+    /**
+     * Opens the journal at {@code path} for a store restored from a
+     * checkpoint that covers every epoch before {@code covered}. Intact
+     * records from later epochs are replayed into {@code db} first, oldest
+     * file first, and anything after the last intact record is truncated.
+     */
+    static Journal open(Path path, Store db, long covered) {
+        try {
+            long next = covered;
+            for (Path old : rotated(path)) {
+                long e = epochOf(old);
+                if (e < covered) {
+                    Files.deleteIfExists(old); // already in the checkpoint
+                    continue;
+                }
+                try (FileChannel ch = FileChannel.open(old, StandardOpenOption.READ)) {
+                    replay(ch, headerEpoch(ch) < 0 ? 0 : FILE_HEADER, db);
+                }
+                next = Math.max(next, e + 1);
+            }
+            FileChannel ch = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long header = headerEpoch(ch);
+            long epoch = Math.max(header, 0);
+            if (ch.size() < FILE_HEADER || epoch < next) {
+                // New, torn while being created, or left over from an epoch the checkpoint covers
+                ch.truncate(0);
+                writeHeader(ch, next);
+                return new Journal(path, next, FILE_HEADER, ch, FILE_HEADER);
+            }
+            long start = header < 0 ? 0 : FILE_HEADER;
+            long valid = replay(ch, start, db);
+            ch.truncate(valid);
+            ch.position(valid);
+            return new Journal(path, epoch, start, ch, valid);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open journal " + path, e);
+        }
+    }
+
+    /** Deletes the journal at {@code path} and its rotated files, e.g. before a follower takes over. */
+    static void discard(Path path) {
+        try {
+            for (Path old : rotated(path)) {
+                Files.deleteIfExists(old);
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to discard journal " + path, e);
+        }
+    }
+
+    // The epoch in the file header, or -1 for a file from before epochs
+    private static long headerEpoch(FileChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(FILE_HEADER);
+        while (buf.hasRemaining() && ch.read(buf, buf.position()) > 0) { }
+        return buf.position() == FILE_HEADER && buf.getInt(0) == FILE_MAGIC ? buf.getLong(4) : -1;
+    }
+
+    private static long epochOf(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return Math.max(headerEpoch(ch), 0);
+        }
+    }
+
+    private static void writeHeader(FileChannel ch, long epoch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(FILE_HEADER).putInt(FILE_MAGIC).putLong(epoch).flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        ch.force(true);
+    }
+
+    // Rotated files next to path, oldest epoch first
+    private static List<Path> rotated(Path path) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path f : files) {
+                String suffix = f.getFileName().toString().substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    out.add(f);
+                }
+            }
+        }
+        out.sort(Comparator.comparingLong(f -> Long.parseLong(f.getFileName().toString().substring(prefix.length()))));
+        return out;
+    }
+
+    private Path rotatedPath(long e) {
+        return path.resolveSibling(path.getFileName() + "." + e);
+    }
+
+    private static long replay(FileChannel ch, long start, Store db) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch.position(start))));
+        long size = ch.size();
+        long pos = start;
+        CRC32 crc = new CRC32();
+        while (pos + HEADER <= size) {
+            int len = in.readInt();
+            int sum = in.readInt();
+            if (len <= 0 || pos + HEADER + len > size) {
+                break;
+            }
+            byte[] payload = new byte[len];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != sum) {
+                break;
+            }
+            Mutation.replay(new DataInputStream(new ByteArrayInputStream(payload)), db);
+            pos += HEADER + len;
+        }
+        return pos;
+    }
+
+    /** Epoch of the file currently appended to. */
+    long epoch() {
+        return epoch;
+    }
+
+    /** Appends one record and returns once it is durable on disk. */
+    void append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        long seq;
+        synchronized (this) {
+            checkNotFailed();
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeInt(payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            seq = ++appended;
+        }
+        sync(seq);
+    }
+
+    private void sync(long seq) {
+        synchronized (syncLock) {
+            if (synced >= seq) {
+                return;  // an earlier group commit already covered this record
+            }
+            checkNotFailed(); // this record was in a batch that never reached the disk
+            byte[] batch;
+            long upTo;
+            synchronized (this) {
+                batch = pending.toByteArray();
+                upTo = appended;
+            }
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(batch);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                fail(e);
+                throw new RuntimeException("Failed to write journal " + path, e);
+            }
+            synchronized (this) {
+                // Only now is the batch durable; appends made meanwhile stay pending
+                byte[] rest = pending.toByteArray();
+                pending = new ByteArrayOutputStream();
+                pending.write(rest, batch.length, rest.length - batch.length);
+            }
+            syncedOffset += batch.length;
+            synced = upTo;
+        }
+    }
+
+    // Called under syncLock: no record past syncedOffset is durable, so none may survive to be replayed
+    private void fail(IOException e) {
+        synchronized (this) {
+            failure = e;
+            pending = new ByteArrayOutputStream();
+        }
+        try {
+            channel.truncate(syncedOffset);
+            channel.position(syncedOffset);
+        } catch (IOException suppressed) {
+            e.addSuppressed(suppressed); // replay still stops at the first torn frame
+        }
+    }
+
+    private void checkNotFailed() {
+        IOException e = failure;
+        if (e != null) {
+            throw new RuntimeException("Journal " + path + " failed on an earlier write; restart to recover", e);
+        }
+    }
+
+    /**
+     * Sets this file aside as {@code <name>.<epoch>} and returns a journal
+     * for the next epoch. Every append must have returned, and no new one
+     * may start, until the caller switches to the returned journal.
+     */
+    Journal rotate() {
+        synchronized (syncLock) {
+            checkNotFailed();
+            try {
+                channel.close();
+                Files.move(path, rotatedPath(epoch), StandardCopyOption.ATOMIC_MOVE);
+                FileChannel ch = FileChannel.open(path,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                writeHeader(ch, epoch + 1);
+                return new Journal(path, epoch + 1, FILE_HEADER, ch, FILE_HEADER);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to rotate journal " + path, e);
+            }
+        }
+    }
+
+    /** Deletes rotated files from epochs before {@code epoch}; called once a checkpoint covering them is installed. */
+    void dropBefore(long epoch) {
+        try {
+            for (Path old : rotated(path)) {
+                if (epochOf(old) < epoch) {
+                    Files.deleteIfExists(old);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to drop rotated journal files", e);
+        }
+    }
+
+    /** Drops every record, rotated files included. */
+    void truncate() {
+        synchronized (syncLock) {
+            checkNotFailed();
+            synchronized (this) {
+                pending = new ByteArrayOutputStream();
+                synced = appended;
+            }
+            try {
+                for (Path old : rotated(path)) {
+                    Files.deleteIfExists(old);
+                }
+                channel.truncate(start);
+                channel.position(start);
+                channel.force(true);
+                syncedOffset = start;
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to truncate journal", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,43 @@
+package carehome.repo;
+
+import carehome.domain.MedicationChart;
+import carehome.domain.Prescription;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Materialized current-medication chart per resident, kept up to date by
+ * the prescription mutations. Each update swaps in a new immutable chart,
+ * so {@link #of} hands out the current one as is, without copying or
+ * walking prescriptions.
+ */
+public final class MedicationCharts {
+
+    private final Map<String, MedicationChart> charts = new ConcurrentHashMap<>();
+
+    void attached(Prescription p) {
+        charts.compute(p.residentId(), (id, c) -> (c == null ? MedicationChart.empty(id) : c).with(p));
+    }
+
+    void stopped(Prescription p, int orderIndex) {
+        charts.computeIfPresent(p.residentId(), (id, c) -> c.without(p.id(), orderIndex));
+    }
+
+    void rebuild(Collection<Prescription> prescriptions) {
+        clear();
+        prescriptions.stream()
+                     .sorted(Comparator.comparing(Prescription::createdAt).thenComparing(Prescription::id))
+                     .forEach(this::attached);
+    }
+
+    void clear() {
+        charts.clear();
+    }
+
+    /** The resident's current chart; empty if nothing was ever prescribed. */
+    public MedicationChart of(String residentId) {
+        MedicationChart c = charts.get(residentId);
+        return c != null ? c : MedicationChart.empty(residentId);
+    }
+}
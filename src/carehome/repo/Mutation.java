@@ -0,0 +1,494 @@
+package carehome.repo;
+
+import carehome.domain.*;
+import carehome.domain.Prescription.MedicationOrder;
+
+import java.io.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * A single, already-validated state change produced by a Service operation.
+ * Mutations are the only thing written to the journal: applying them to a
+ * Store in commit order rebuilds exactly the same state.
+ */
+public sealed interface Mutation {
+
+    void apply(Store db);
+
+    void write(DataOutput out) throws IOException;
+
+    byte tag();
+
+    // ---- Layout -----------------------------------------------------------------
+
+    record AddWard(Ward ward) implements Mutation {
+        public void apply(Store db) {
+            db.wards.put(ward.id(), ward);
+            db.vacancies.addWard(ward);
+            db.partitions().wardChanged(ward.handle());
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(ward.id());
+            out.writeUTF(ward.name());
+        }
+
+        public byte tag() { return 9; }
+
+        static AddWard read(DataInput in) throws IOException {
+            return new AddWard(new Ward(in.readUTF(), in.readUTF()));
+        }
+    }
+
+    record AddRoom(Room room) implements Mutation {
+        public void apply(Store db) {
+            db.rooms.put(room.id(), room);
+            Ward w = db.wards.get(room.wardHandle());
+            if (w != null && !contains(w.roomHandles(), room.handle())) {
+                w.addRoom(room.id());
+            }
+            db.vacancies.addRoom(room);
+            db.partitions().wardChanged(room.wardHandle());
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(room.id());
+            out.writeUTF(room.wardId());
+        }
+
+        public byte tag() { return 10; }
+
+        static AddRoom read(DataInput in) throws IOException {
+            return new AddRoom(new Room(in.readUTF(), in.readUTF()));
+        }
+    }
+
+    record AddBed(Bed bed) implements Mutation {
+        public void apply(Store db) {
+            db.beds.put(bed.id(), bed);
+            Room r = db.rooms.get(bed.roomHandle());
+            if (r != null && !contains(r.bedHandles(), bed.handle())) {
+                r.addBed(bed.id());
+            }
+            db.vacancies.addBed(bed);
+            db.readModel.bedAdded(bed);
+            db.partitions().roomChanged(bed.roomHandle());
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(bed.id());
+            out.writeUTF(bed.roomId());
+        }
+
+        public byte tag() { return 11; }
+
+        static AddBed read(DataInput in) throws IOException {
+            return new AddBed(new Bed(in.readUTF(), in.readUTF()));
+        }
+    }
+
+    // ---- Staff, residents and care ---------------------------------------------
+
+    record AddStaff(Staff staff, String password) implements Mutation {
+        public void apply(Store db) {
+            staff.setPassword(password);
+            db.staff.put(staff.id(), staff);
+        }
+
+        public void write(DataOutput out) throws IOException {
+            Codec.writeEnum(out, staff.role());
+            out.writeUTF(staff.id());
+            out.writeUTF(staff.name());
+            out.writeUTF(password);
+        }
+
+        public byte tag() { return 1; }
+
+        static AddStaff read(DataInput in) throws IOException {
+            Role role = Codec.readEnum(in, Role.class);
+            String id = in.readUTF();
+            String name = in.readUTF();
+            return new AddStaff(newStaff(role, id, name), in.readUTF());
+        }
+    }
+
+    record ChangePassword(String staffId, String password) implements Mutation {
+        public void apply(Store db) {
+            db.staff.get(staffId).setPassword(password);
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(staffId);
+            out.writeUTF(password);
+        }
+
+        public byte tag() { return 2; }
+
+        static ChangePassword read(DataInput in) throws IOException {
+            return new ChangePassword(in.readUTF(), in.readUTF());
+        }
+    }
+
+    record AssignShift(String staffId, LocalDate date, ShiftType type) implements Mutation {
+        public void apply(Store db) {
+            Staff s = db.staff.get(staffId);
+            s.assignShift(date, type);
+            db.rosterIndex.assigned(s, date, type);
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(staffId);
+            Codec.writeDate(out, date);
+            Codec.writeEnum(out, type);
+        }
+
+        public byte tag() { return 3; }
+
+        static AssignShift read(DataInput in) throws IOException {
+            return new AssignShift(in.readUTF(), Codec.readDate(in), Codec.readEnum(in, ShiftType.class));
+        }
+    }
+
+    record RemoveShift(String staffId, LocalDate date, ShiftType type) implements Mutation {
+        public void apply(Store db) {
+            Staff s = db.staff.get(staffId);
+            s.removeShift(date, type);
+            db.rosterIndex.removed(s, date, type);
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(staffId);
+            Codec.writeDate(out, date);
+            Codec.writeEnum(out, type);
+        }
+
+        public byte tag() { return 4; }
+
+        static RemoveShift read(DataInput in) throws IOException {
+            return new RemoveShift(in.readUTF(), Codec.readDate(in), Codec.readEnum(in, ShiftType.class));
+        }
+    }
+
+    // One staff member's day: a shift taken off and another put on, either of which may be null
+    record ModifyShift(String staffId, LocalDate date, ShiftType remove, ShiftType add) implements Mutation {
+        public void apply(Store db) {
+            Staff s = db.staff.get(staffId);
+            if (remove != null) {
+                s.removeShift(date, remove);
+                db.rosterIndex.removed(s, date, remove);
+            }
+            if (add != null) {
+                s.assignShift(date, add);
+                db.rosterIndex.assigned(s, date, add);
+            }
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(staffId);
+            Codec.writeDate(out, date);
+            Codec.writeEnum(out, remove);
+            Codec.writeEnum(out, add);
+        }
+
+        public byte tag() { return 17; }
+
+        static ModifyShift read(DataInput in) throws IOException {
+            return new ModifyShift(in.readUTF(), Codec.readDate(in),
+                                   Codec.readEnum(in, ShiftType.class), Codec.readEnum(in, ShiftType.class));
+        }
+    }
+
+    record AssignShifts(List<ShiftAssignment> plan) implements Mutation {
+        public void apply(Store db) {
+            for (ShiftAssignment a : plan) {
+                Staff s = db.staff.get(a.staffId());
+                s.assignShift(a.date(), a.type());
+                db.rosterIndex.assigned(s, a.date(), a.type());
+            }
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeInt(plan.size());
+            for (ShiftAssignment a : plan) {
+                out.writeUTF(a.staffId());
+                Codec.writeDate(out, a.date());
+                Codec.writeEnum(out, a.type());
+            }
+        }
+
+        public byte tag() { return 12; }
+
+        static AssignShifts read(DataInput in) throws IOException {
+            int n = in.readInt();
+            List<ShiftAssignment> plan = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                plan.add(new ShiftAssignment(in.readUTF(), Codec.readDate(in), Codec.readEnum(in, ShiftType.class)));
+            }
+            return new AssignShifts(plan);
+        }
+    }
+
+    record AdmitResident(Resident resident, String bedId, Instant at) implements Mutation {
+        public AdmitResident {
+            Objects.requireNonNull(at);
+        }
+
+        public void apply(Store db) {
+            db.residents.put(resident.id(), resident);
+            Bed bed = db.beds.get(bedId);
+            bed.occupy(resident.id(), resident.gender());
+            db.vacancies.occupied(bedId, resident.gender());
+            resident.assignBed(bedId);
+            db.occupancy.admitted(resident.id(), bedId, at);
+            db.readModel.admitted(resident, bed);
+            db.partitions().bedChanged(bed.handle());
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(resident.id());
+            out.writeUTF(resident.name());
+            Codec.writeEnum(out, resident.gender());
+            out.writeUTF(bedId);
+            Codec.writeInstant(out, at);
+        }
+
+        public byte tag() { return 15; }
+
+        static AdmitResident read(DataInput in) throws IOException {
+            Resident r = new Resident(in.readUTF(), in.readUTF(), Codec.readEnum(in, Gender.class));
+            return new AdmitResident(r, in.readUTF(), Codec.readInstant(in));
+        }
+    }
+
+    record MoveResident(String residentId, String fromBedId, String toBedId, Instant at) implements Mutation {
+        public MoveResident {
+            Objects.requireNonNull(at);
+        }
+
+        public void apply(Store db) {
+            Resident r = db.residents.get(residentId);
+            Bed from = db.beds.get(fromBedId);
+            Bed to = db.beds.get(toBedId);
+            from.vacate();
+            db.vacancies.vacated(fromBedId, r.gender());
+            to.occupy(r.id(), r.gender());
+            db.vacancies.occupied(toBedId, r.gender());
+            r.assignBed(toBedId);
+            db.occupancy.moved(residentId, fromBedId, toBedId, at);
+            db.readModel.moved(r, from, to);
+            db.partitions().bedChanged(from.handle());
+            db.partitions().bedChanged(to.handle());
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(residentId);
+            out.writeUTF(fromBedId);
+            out.writeUTF(toBedId);
+            Codec.writeInstant(out, at);
+        }
+
+        public byte tag() { return 16; }
+
+        static MoveResident read(DataInput in) throws IOException {
+            return new MoveResident(in.readUTF(), in.readUTF(), in.readUTF(), Codec.readInstant(in));
+        }
+    }
+
+    record AttachPrescription(Prescription prescription) implements Mutation {
+        public void apply(Store db) {
+            db.prescriptions.put(prescription.id(), prescription);
+            Resident r = db.residents.get(prescription.residentHandle());
+            r.attachPrescription(prescription.id());
+            db.readModel.prescribed(r);
+            db.partitions().residentChanged(r.handle());
+            db.doseWheel.add(prescription);
+            db.doseReconciler.prescribed(prescription);
+            db.medicationCharts.attached(prescription);
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(prescription.id());
+            out.writeUTF(prescription.residentId());
+            out.writeUTF(prescription.doctorId());
+            Codec.writeInstant(out, prescription.createdAt());
+            out.writeInt(prescription.orders().size());
+            for (MedicationOrder mo : prescription.orders()) {
+                out.writeUTF(mo.drug);
+                out.writeDouble(mo.dose);
+                Codec.writeString(out, mo.unit);
+                Codec.writeString(out, mo.schedule);
+                Codec.writeString(out, mo.notes);
+            }
+        }
+
+        public byte tag() { return 7; }
+
+        static AttachPrescription read(DataInput in) throws IOException {
+            Prescription p = new Prescription(in.readUTF(), in.readUTF(), in.readUTF(), Codec.readInstant(in));
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                p.addOrder(new MedicationOrder(in.readUTF(), in.readDouble(),
+                        Codec.readString(in), Codec.readString(in), Codec.readString(in)));
+            }
+            return new AttachPrescription(p);
+        }
+    }
+
+    /** Stops one order of a prescription and optionally attaches the prescription that replaces it. */
+    record ReviseOrder(String prescriptionId, int orderIndex, OrderStop stop, Prescription replacement) implements Mutation {
+        public void apply(Store db) {
+            Prescription p = db.prescriptions.get(prescriptionId);
+            p.stopOrder(orderIndex, stop);
+            db.doseWheel.add(p);
+            db.doseReconciler.stopped(p, orderIndex);
+            db.medicationCharts.stopped(p, orderIndex);
+            db.partitions().residentChanged(p.residentHandle());
+            if (replacement != null) {
+                new AttachPrescription(replacement).apply(db);
+            }
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(prescriptionId);
+            out.writeInt(orderIndex);
+            Codec.writeInstant(out, stop.at());
+            out.writeUTF(stop.doctorId());
+            Codec.writeString(out, stop.replacedBy());
+            out.writeBoolean(replacement != null);
+            if (replacement != null) {
+                new AttachPrescription(replacement).write(out);
+            }
+        }
+
+        public byte tag() { return 14; }
+
+        static ReviseOrder read(DataInput in) throws IOException {
+            String pid = in.readUTF();
+            int index = in.readInt();
+            OrderStop stop = new OrderStop(Codec.readInstant(in), in.readUTF(), Codec.readString(in));
+            Prescription replacement = in.readBoolean() ? AttachPrescription.read(in).prescription() : null;
+            return new ReviseOrder(pid, index, stop, replacement);
+        }
+    }
+
+    record Administer(AdministrationRecord record) implements Mutation {
+        public void apply(Store db) {
+            int row = db.administrations.append(record);
+            db.administrationIndex.add(row);
+            db.doseReconciler.administered(record);
+            db.doseWindows.add(record);
+            db.partitions().residentChanged(db.handles().residents.find(record.residentId()));
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(record.residentId());
+            out.writeUTF(record.drug());
+            out.writeDouble(record.dose());
+            Codec.writeString(out, record.unit());
+            Codec.writeInstant(out, record.time());
+            out.writeUTF(record.nurseId());
+            Codec.writeString(out, record.notes());
+        }
+
+        public byte tag() { return 8; }
+
+        static Administer read(DataInput in) throws IOException {
+            return new Administer(new AdministrationRecord(
+                in.readUTF(), in.readUTF(), in.readDouble(), Codec.readString(in),
+                Codec.readInstant(in), in.readUTF(), Codec.readString(in)));
+        }
+    }
+
+    record SetDoseLimit(DoseLimit limit) implements Mutation {
+        public void apply(Store db) {
+            db.doseLimits.put(limit.drug().toLowerCase(Locale.ROOT), limit);
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(limit.drug());
+            out.writeDouble(limit.maxPer24h());
+            Codec.writeString(out, limit.unit());
+        }
+
+        public byte tag() { return 13; }
+
+        static SetDoseLimit read(DataInput in) throws IOException {
+            return new SetDoseLimit(new DoseLimit(in.readUTF(), in.readDouble(), Codec.readString(in)));
+        }
+    }
+
+    // ---- Journal record encoding -------------------------------------------------
+
+    /**
+     * Encodes one journal record: an optional mutation followed by the
+     * optional audit entry that was logged with it.
+     */
+    static byte[] encode(Mutation m, ActionLog entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(m == null ? 0 : m.tag());
+            if (m != null) {
+                m.write(out);
+            }
+            out.writeBoolean(entry != null);
+            if (entry != null) {
+                Codec.writeInstant(out, entry.when());
+                out.writeUTF(entry.staffId());
+                out.writeUTF(entry.type());
+                out.writeUTF(entry.details());
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Decodes one journal record and re-applies it to {@code db}. */
+    static void replay(DataInput in, Store db) throws IOException {
+        byte tag = in.readByte();
+        Mutation m = switch (tag) {
+            case 0 -> null;
+            case 1 -> AddStaff.read(in);
+            case 2 -> ChangePassword.read(in);
+            case 3 -> AssignShift.read(in);
+            case 4 -> RemoveShift.read(in);
+            case 7 -> AttachPrescription.read(in);
+            case 8 -> Administer.read(in);
+            case 9 -> AddWard.read(in);
+            case 10 -> AddRoom.read(in);
+            case 11 -> AddBed.read(in);
+            case 12 -> AssignShifts.read(in);
+            case 13 -> SetDoseLimit.read(in);
+            case 14 -> ReviseOrder.read(in);
+            case 15 -> AdmitResident.read(in);
+            case 16 -> MoveResident.read(in);
+            case 17 -> ModifyShift.read(in);
+            default -> throw new IOException("Unknown journal record tag: " + tag);
+        };
+        ActionLog entry = null;
+        if (in.readBoolean()) {
+            entry = new ActionLog(Codec.readInstant(in), in.readUTF(), in.readUTF(), in.readUTF());
+        }
+        db.applyCommitted(m, entry);
+    }
+
+    private static Staff newStaff(Role role, String id, String name) {
+        return switch (role) {
+            case MANAGER -> new Manager(id, name);
+            case DOCTOR -> new Doctor(id, name);
+            case NURSE -> new Nurse(id, name);
+        };
+    }
+
+    private static boolean contains(int[] handles, int h) {
+        for (int x : handles) {
+            if (x == h) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,222 @@
+package carehome.repo;
+
+import carehome.domain.Stay;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bed-occupancy history as time intervals, indexed per bed and per
+ * resident.
+ *
+ * Each key owns a timeline of [from, to) stays kept sorted by start. Stays
+ * on one timeline never overlap, so their ends are sorted too. A point
+ * query is one binary search on starts and a range query one binary
+ * search on ends followed by a walk over the k matching stays:
+ * O(log n) and O(log n + k). Moves nearly always arrive in time order,
+ * so inserts are appends.
+ */
+public final class OccupancyHistory {
+
+    private static final long OPEN = Long.MAX_VALUE;
+
+    private static final class Timeline {
+        long[] from = new long[4];
+        long[] to = new long[4];
+        String[] other = new String[4]; // bed on a resident's timeline, resident on a bed's
+        int size;
+
+        void insert(long start, long end, String id) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                other = Arrays.copyOf(other, size * 2);
+            }
+            int i = size;
+            while (i > 0 && from[i - 1] > start) {
+                i--;
+            }
+            System.arraycopy(from, i, from, i + 1, size - i);
+            System.arraycopy(to, i, to, i + 1, size - i);
+            System.arraycopy(other, i, other, i + 1, size - i);
+            from[i] = start;
+            to[i] = end;
+            other[i] = id;
+            size++;
+        }
+
+        // Closes the open stay of 'id' at 'end' (never before it began); returns its start
+        long close(String id, long end) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (to[i] == OPEN && (id == null || id.equals(other[i]))) {
+                    to[i] = Math.max(end, from[i]);
+                    return from[i];
+                }
+            }
+            return Long.MIN_VALUE;
+        }
+
+        // Index of the stay covering t, or -1
+        int at(long t) {
+            int lo = 0, hi = size - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (from[mid] <= t) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found >= 0 && to[found] > t ? found : -1;
+        }
+
+        // First stay ending after t
+        int firstEndingAfter(long t) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (to[mid] > t) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private final Map<String, Timeline> byBed = new ConcurrentHashMap<>();
+    private final Map<String, Timeline> byResident = new ConcurrentHashMap<>();
+
+    // ---- Updates ----------------------------------------------------------------
+
+    void admitted(String residentId, String bedId, Instant at) {
+        restore(residentId, bedId, at.toEpochMilli(), OPEN);
+    }
+
+    void moved(String residentId, String fromBedId, String toBedId, Instant at) {
+        long t = at.toEpochMilli();
+        Timeline bed = byBed.get(fromBedId);
+        if (bed != null) {
+            synchronized (bed) {
+                bed.close(residentId, t);
+            }
+        }
+        Timeline resident = byResident.get(residentId);
+        long start = Long.MIN_VALUE;
+        if (resident != null) {
+            synchronized (resident) {
+                start = resident.close(fromBedId, t);
+            }
+        }
+        restore(residentId, toBedId, Math.max(t, start), OPEN);
+    }
+
+    /** Adds one stay, open if {@code to} is Long.MAX_VALUE; used by snapshot loading. */
+    void restore(String residentId, String bedId, long from, long to) {
+        Timeline bed = byBed.computeIfAbsent(bedId, k -> new Timeline());
+        synchronized (bed) {
+            bed.insert(from, to, residentId);
+        }
+        Timeline resident = byResident.computeIfAbsent(residentId, k -> new Timeline());
+        synchronized (resident) {
+            resident.insert(from, to, bedId);
+        }
+    }
+
+    void clear() {
+        byBed.clear();
+        byResident.clear();
+    }
+
+    /** Takes over {@code other}'s stays, bed by bed and resident by resident, without emptying first. */
+    void replaceWith(OccupancyHistory other) {
+        byBed.putAll(other.byBed);
+        byBed.keySet().retainAll(other.byBed.keySet());
+        byResident.putAll(other.byResident);
+        byResident.keySet().retainAll(other.byResident.keySet());
+    }
+
+    boolean isEmpty() {
+        return byResident.isEmpty();
+    }
+
+    /** Every stay, once, grouped by resident. */
+    List<Stay> all() {
+        List<Stay> out = new ArrayList<>();
+        byResident.forEach((id, tl) -> {
+            synchronized (tl) {
+                collect(tl, id, true, 0, tl.size, Long.MIN_VALUE, OPEN, out);
+            }
+        });
+        return out;
+    }
+
+    // ---- Queries ----------------------------------------------------------------
+
+    /** Who was in {@code bedId} at {@code t}. */
+    public Optional<String> occupant(String bedId, Instant t) {
+        return pointQuery(byBed.get(bedId), t);
+    }
+
+    /** Which bed {@code residentId} was in at {@code t}. */
+    public Optional<String> bedOf(String residentId, Instant t) {
+        return pointQuery(byResident.get(residentId), t);
+    }
+
+    /** Stays in {@code bedId} overlapping [from, to), oldest first. */
+    public List<Stay> ofBed(String bedId, Instant from, Instant to) {
+        return rangeQuery(byBed.get(bedId), bedId, false, from, to);
+    }
+
+    /** Stays of {@code residentId} overlapping [from, to), oldest first. */
+    public List<Stay> ofResident(String residentId, Instant from, Instant to) {
+        return rangeQuery(byResident.get(residentId), residentId, true, from, to);
+    }
+
+    private static Optional<String> pointQuery(Timeline tl, Instant t) {
+        if (tl == null) {
+            return Optional.empty();
+        }
+        synchronized (tl) {
+            int i = tl.at(millis(t));
+            return i < 0 ? Optional.empty() : Optional.of(tl.other[i]);
+        }
+    }
+
+    private static List<Stay> rangeQuery(Timeline tl, String key, boolean byResident, Instant from, Instant to) {
+        if (tl == null) {
+            return List.of();
+        }
+        List<Stay> out = new ArrayList<>();
+        synchronized (tl) {
+            long a = millis(from), b = millis(to);
+            collect(tl, key, byResident, tl.firstEndingAfter(a), tl.size, a, b, out);
+        }
+        return out;
+    }
+
+    private static void collect(Timeline tl, String key, boolean byResident, int start, int end,
+                                long a, long b, List<Stay> out) {
+        for (int i = start; i < end && tl.from[i] < b; i++) {
+            if (tl.to[i] <= a) {
+                continue;
+            }
+            Instant s = Instant.ofEpochMilli(tl.from[i]);
+            Instant e = tl.to[i] == OPEN ? null : Instant.ofEpochMilli(tl.to[i]);
+            out.add(byResident ? new Stay(key, tl.other[i], s, e) : new Stay(tl.other[i], key, s, e));
+        }
+    }
+
+    private static long millis(Instant t) {
+        if (t.isAfter(Instant.ofEpochMilli(Long.MAX_VALUE - 1))) {
+            return Long.MAX_VALUE - 1;
+        }
+        if (t.isBefore(Instant.ofEpochMilli(Long.MIN_VALUE))) {
+            return Long.MIN_VALUE;
+        }
+        return t.toEpochMilli();
+    }
+}
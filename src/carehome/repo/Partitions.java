@@ -0,0 +1,484 @@
+package carehome.repo;
+
+import carehome.domain.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Ward-partitioned checkpoint files in one directory.
+ *
+ * Each ward's file holds its rooms and beds, the residents in those beds
+ * with their prescriptions and administrations, and the stays in its beds.
+ * The facility file holds the wards themselves, staff and rosters, dose
+ * limits, the audit log and the journal epoch, plus anything no ward owns
+ * (a resident without a bed, a room whose ward is gone). All of them are
+ * {@link Snapshot} files.
+ *
+ * A MANIFEST names the current file of every partition. Partition files
+ * are never overwritten: a checkpoint writes the files it changes under
+ * new names, in parallel, then replaces the manifest atomically, so a
+ * cross-ward move lands in both wards' files or in neither. Commits mark
+ * the wards they touch; a checkpoint rewrites only those wards and the
+ * facility file and keeps the rest. Changes made straight to the tables,
+ * not through {@link Store#commit}, reach disk once their ward is next
+ * rewritten.
+ *
+ * Loading reads the facility file, then the ward files in parallel, then
+ * puts administrations back in commit order. -Dcarehome.persist.threads
+ * sets the parallelism (default: one per core).
+ */
+final class Partitions {
+
+    static final int MAGIC = 0x43484D31; // "CHM1"
+    static final int VERSION = 1;
+
+    private static final String MANIFEST = "MANIFEST";
+
+    /** What a capture took, ready to write while commits carry on. */
+    final class Plan {
+        private final Snapshot.Image facility;
+        private final Map<String, Snapshot.Image> changed; // by ward id
+        private final Map<String, String> kept;            // ward id to its current file
+        private final Set<Integer> touched;
+
+        private Plan(Snapshot.Image facility, Map<String, Snapshot.Image> changed, Map<String, String> kept,
+                     Set<Integer> touched) {
+            this.facility = facility;
+            this.changed = changed;
+            this.kept = kept;
+            this.touched = touched;
+        }
+
+        /** Ward files this plan writes; the facility file is always written too. */
+        int wards() {
+            return changed.size();
+        }
+
+        /** Writes the changed partitions in parallel and installs the new manifest. */
+        void write() {
+            try {
+                writeNow(this);
+            } catch (RuntimeException e) {
+                dirty.addAll(touched); // the next checkpoint writes them again
+                throw e;
+            }
+        }
+    }
+
+    private final Store db;
+    private final Path dir;
+    private final int threads;
+
+    // Wards touched since the last capture, by handle; commits add, a capture swaps in a new set
+    private volatile Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+
+    // The installed manifest; only the checkpoint in progress changes these
+    private Map<String, String> files = Map.of();
+    private String facilityFile;
+    private long nextFile = -1;
+
+    Partitions(Store db, Path dir) {
+        this.db = db;
+        this.dir = dir;
+        this.threads = Integer.getInteger("carehome.persist.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    /** True if {@code dir} holds a partitioned store. */
+    static boolean exists(Path dir) {
+        return Files.exists(dir.resolve(MANIFEST));
+    }
+
+    /** The manifest, whose modification time is that of the last checkpoint. */
+    Path manifest() {
+        return dir.resolve(MANIFEST);
+    }
+
+    // ---- Routing (from Mutation.apply, under the commit read lock) ------------------
+
+    void wardChanged(int ward) {
+        Set<Integer> d = dirty;
+        if (ward >= 0 && !d.contains(ward)) {
+            d.add(ward);
+        }
+    }
+
+    void roomChanged(int room) {
+        Room r = db.rooms.get(room);
+        if (r != null) {
+            wardChanged(r.wardHandle());
+        }
+    }
+
+    void bedChanged(int bed) {
+        Bed b = db.beds.get(bed);
+        if (b != null) {
+            roomChanged(b.roomHandle());
+        }
+    }
+
+    void residentChanged(int resident) {
+        Resident r = db.residents.get(resident);
+        if (r != null) {
+            bedChanged(r.bedHandle());
+        }
+    }
+
+    // ---- Membership ---------------------------------------------------------------
+
+    // The ward owning each entity, or Handles.NONE if it goes in the facility file
+
+    private int wardOf(Room room) {
+        return db.wards.get(room.wardHandle()) != null ? room.wardHandle() : Handles.NONE;
+    }
+
+    private int wardOf(Bed bed) {
+        Room room = db.rooms.get(bed.roomHandle());
+        return room != null ? wardOf(room) : Handles.NONE;
+    }
+
+    private int wardOf(Resident r) {
+        Bed bed = db.beds.get(r.bedHandle());
+        return bed != null && bed.residentHandle() == r.handle() ? wardOf(bed) : Handles.NONE;
+    }
+
+    // ---- Checkpoint ---------------------------------------------------------------
+
+    /**
+     * Encodes the facility file and every ward touched since the last
+     * capture (or not yet on disk). The caller holds off commits.
+     */
+    Plan capture(long journalEpoch) {
+        Set<Integer> touched = dirty;
+        dirty = ConcurrentHashMap.newKeySet();
+
+        Map<Integer, Snapshot.Part> parts = new HashMap<>();
+        Map<String, String> kept = new HashMap<>();
+        for (Ward w : db.wards.values()) {
+            String file = files.get(w.id());
+            if (file == null || touched.contains(w.handle())) {
+                Snapshot.Part p = new Snapshot.Part();
+                p.wardRooms = List.of(w);
+                p.rooms = new ArrayList<>();
+                p.beds = new ArrayList<>();
+                p.residents = new ArrayList<>();
+                p.prescriptions = new ArrayList<>();
+                p.stays = new ArrayList<>();
+                p.administered = new ArrayList<>();
+                parts.put(w.handle(), p);
+            } else {
+                kept.put(w.id(), file);
+            }
+        }
+        Snapshot.Part facility = new Snapshot.Part();
+        facility.wards = db.wards.values();
+        facility.rooms = new ArrayList<>();
+        facility.beds = new ArrayList<>();
+        facility.residents = new ArrayList<>();
+        facility.prescriptions = new ArrayList<>();
+        facility.stays = new ArrayList<>();
+        facility.administered = new ArrayList<>();
+        facility.facility = true;
+
+        for (Room room : db.rooms.values()) {
+            int w = wardOf(room);
+            if (w == Handles.NONE) {
+                facility.rooms.add(room);
+            } else if (parts.containsKey(w)) {
+                parts.get(w).rooms.add(room);
+            }
+        }
+        for (Bed bed : db.beds.values()) {
+            int w = wardOf(bed);
+            Snapshot.Part p = w == Handles.NONE ? facility : parts.get(w);
+            if (p != null) {
+                p.beds.add(bed);
+                p.stays.addAll(db.occupancy.ofBed(bed.id(), Instant.MIN, Instant.MAX));
+            }
+        }
+        for (Resident r : db.residents.values()) {
+            int w = wardOf(r);
+            Snapshot.Part p = w == Handles.NONE ? facility : parts.get(w);
+            if (p != null) {
+                p.residents.add(r);
+                p.administered.add(r.id());
+            }
+        }
+        for (Prescription rx : db.prescriptions.values()) {
+            Resident r = db.residents.get(rx.residentHandle());
+            int w = r == null ? Handles.NONE : wardOf(r);
+            Snapshot.Part p = w == Handles.NONE ? facility : parts.get(w);
+            if (p != null) {
+                p.prescriptions.add(rx);
+            }
+        }
+        for (String residentId : db.administrationIndex.residentIds()) {
+            if (!db.residents.containsKey(residentId)) {
+                facility.administered.add(residentId);
+            }
+        }
+
+        Map<String, Snapshot.Image> changed = new HashMap<>();
+        List<Callable<Snapshot.Image>> encode = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        parts.forEach((handle, p) -> {
+            ids.add(db.wards.get(handle.intValue()).id());
+            encode.add(() -> Snapshot.capture(db, p, journalEpoch));
+        });
+        List<Snapshot.Image> images = inParallel(encode);
+        for (int i = 0; i < ids.size(); i++) {
+            changed.put(ids.get(i), images.get(i));
+        }
+        return new Plan(Snapshot.capture(db, facility, journalEpoch), changed, kept, touched);
+    }
+
+    private void writeNow(Plan plan) {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create " + dir, e);
+        }
+        String facility = newFile("facility");
+        Map<String, String> next = new TreeMap<>(plan.kept);
+        List<Callable<Void>> writes = new ArrayList<>();
+        writes.add(() -> {
+            plan.facility.writeTo(dir.resolve(facility));
+            return null;
+        });
+        plan.changed.forEach((wardId, image) -> {
+            String file = newFile("ward");
+            next.put(wardId, file);
+            writes.add(() -> {
+                image.writeTo(dir.resolve(file));
+                return null;
+            });
+        });
+        try {
+            inParallel(writes);
+            writeManifest(facility, next);
+        } catch (RuntimeException e) {
+            // Files the manifest never named are garbage
+            deleteAll(next.values().stream().filter(f -> !plan.kept.containsValue(f)).toList());
+            delete(facility);
+            throw e;
+        }
+        Set<String> live = new HashSet<>(next.values());
+        live.add(facility);
+        List<String> old = new ArrayList<>(files.values());
+        if (facilityFile != null) {
+            old.add(facilityFile);
+        }
+        old.removeIf(live::contains);
+        files = next;
+        facilityFile = facility;
+        deleteAll(old);
+    }
+
+    private String newFile(String kind) {
+        if (nextFile < 0) {
+            nextFile = 1 + maxFileNumber();
+        }
+        return kind + "-" + nextFile++ + ".dat";
+    }
+
+    // Highest number in a partition file name, including files a crashed checkpoint left behind
+    private long maxFileNumber() {
+        long max = 0;
+        try (DirectoryStream<Path> in = Files.newDirectoryStream(dir, "*.dat*")) {
+            for (Path p : in) {
+                String name = p.getFileName().toString();
+                int dash = name.indexOf('-');
+                int dot = name.indexOf('.');
+                if (dash > 0 && dot > dash) {
+                    try {
+                        max = Math.max(max, Long.parseLong(name.substring(dash + 1, dot)));
+                    } catch (NumberFormatException e) {
+                        // not one of ours
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // no directory yet
+        }
+        return max;
+    }
+
+    private void writeManifest(String facility, Map<String, String> wardFiles) {
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(facility);
+            out.writeInt(wardFiles.size());
+            for (Map.Entry<String, String> e : wardFiles.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write " + tmp, e);
+        }
+        try {
+            Files.move(tmp, manifest(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to install " + manifest(), e);
+        }
+    }
+
+    private void deleteAll(Collection<String> names) {
+        for (String name : names) {
+            delete(name);
+        }
+    }
+
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(dir.resolve(name));
+        } catch (IOException e) {
+            // an orphan costs disk space only; the next load ignores it
+        }
+    }
+
+    // ---- Loading ------------------------------------------------------------------
+
+    /** Reads the partitions named by the manifest into the (empty) store. */
+    void load() throws IOException {
+        Map<String, String> wardFiles = new TreeMap<>();
+        String facility;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a partition manifest: " + manifest());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported manifest version " + version);
+            }
+            facility = in.readUTF();
+            for (int i = in.readInt(); i > 0; i--) {
+                wardFiles.put(in.readUTF(), in.readUTF());
+            }
+        }
+
+        // Wards come from the facility file, so it goes first
+        Snapshot.Placed unplaced = new Snapshot.Placed();
+        Snapshot.read(dir.resolve(facility), db, unplaced);
+        List<Callable<Snapshot.Placed>> reads = new ArrayList<>();
+        for (String file : wardFiles.values()) {
+            reads.add(() -> {
+                Snapshot.Placed placed = new Snapshot.Placed();
+                Snapshot.read(dir.resolve(file), db, placed);
+                return placed;
+            });
+        }
+        List<Snapshot.Placed> placed = new ArrayList<>();
+        placed.add(unplaced);
+        try {
+            placed.addAll(inParallel(reads));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        restoreAdministrations(placed);
+
+        files = wardFiles;
+        facilityFile = facility;
+    }
+
+    // Every row was in exactly one file, so the rows fill 0..n-1; if they do not, keep file order
+    private void restoreAdministrations(List<Snapshot.Placed> placed) {
+        int n = 0;
+        for (Snapshot.Placed p : placed) {
+            n += p.records.size();
+        }
+        AdministrationRecord[] byRow = new AdministrationRecord[n];
+        boolean ordered = true;
+        for (Snapshot.Placed p : placed) {
+            for (int i = 0; i < p.records.size() && ordered; i++) {
+                int row = i < p.rows.length ? p.rows[i] : -1;
+                ordered = row >= 0 && row < n && byRow[row] == null;
+                if (ordered) {
+                    byRow[row] = p.records.get(i);
+                }
+            }
+        }
+        if (ordered) {
+            for (AdministrationRecord a : byRow) {
+                db.administrations.add(a);
+            }
+        } else {
+            for (Snapshot.Placed p : placed) {
+                db.administrations.addAll(p.records);
+            }
+        }
+    }
+
+    // ---- Parallelism --------------------------------------------------------------
+
+    /** Runs {@code tasks} on up to -Dcarehome.persist.threads threads; on this thread if that is one. */
+    void inParallel(Collection<Runnable> tasks) {
+        List<Callable<Void>> calls = new ArrayList<>(tasks.size());
+        for (Runnable r : tasks) {
+            calls.add(() -> {
+                r.run();
+                return null;
+            });
+        }
+        inParallel(calls);
+    }
+
+    /** As above, returning the tasks' results in order. */
+    private <T> List<T> inParallel(List<Callable<T>> tasks) {
+        if (threads <= 1 || tasks.size() <= 1) {
+            List<T> out = new ArrayList<>(tasks.size());
+            for (Callable<T> t : tasks) {
+                out.add(call(t));
+            }
+            return out;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), r -> {
+            Thread t = new Thread(r, "carehome-persist");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<T>> futures = pool.invokeAll(tasks);
+            List<T> out = new ArrayList<>(tasks.size());
+            for (Future<T> f : futures) {
+                out.add(f.get());
+            }
+            return out;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading or writing partitions", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException r) {
+            return r;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        if (t instanceof IOException io) {
+            return new UncheckedIOException(io);
+        }
+        return new RuntimeException(t);
+    }
+}
@@ -0,0 +1,133 @@
+package carehome.repo;
+
+import java.util.*;
+
+/**
+ * Immutable map from entity handle to value: a 32-way trie over the
+ * handle's bits. {@link #with} copies only the path to the changed slot
+ * (one 32-slot node per level, three levels for 32K handles), so versions
+ * share everything else and an old one is cheap to keep while readers
+ * still hold it.
+ */
+final class PersistentTable<T> extends AbstractCollection<T> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentTable<?> EMPTY = new PersistentTable<>(new Object[WIDTH], 0, 0);
+
+    private final Object[] root;
+    private final int shift; // root level covers handles below 1 << (shift + BITS)
+    private final int size;
+
+    private PersistentTable(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentTable<T> empty() {
+        return (PersistentTable<T>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int handle) {
+        if (handle < 0 || handle >= capacity(shift)) {
+            return null;
+        }
+        Object[] node = root;
+        for (int s = shift; s > 0; s -= BITS) {
+            node = (Object[]) node[(handle >>> s) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (T) node[handle & MASK];
+    }
+
+    /** This table with {@code handle} mapped to {@code value}, or unmapped if it is null. */
+    PersistentTable<T> with(int handle, T value) {
+        Object[] r = root;
+        int s = shift;
+        while (handle >= capacity(s)) {
+            Object[] grown = new Object[WIDTH];
+            grown[0] = r;
+            r = grown;
+            s += BITS;
+        }
+        boolean had = get(handle) != null;
+        int n = size + (value != null ? 1 : 0) - (had ? 1 : 0);
+        return new PersistentTable<>(set(r, s, handle, value), s, n);
+    }
+
+    private static long capacity(int shift) {
+        return 1L << (shift + BITS);
+    }
+
+    private static Object[] set(Object[] node, int shift, int handle, Object value) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        int i = (handle >>> shift) & MASK;
+        copy[i] = shift == 0 ? value : set((Object[]) copy[i], shift - BITS, handle, value);
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Values in handle order. */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            // Path from the root to the current leaf; index[d] is the next slot to look at in nodes[d]
+            private final Object[][] nodes = new Object[shift / BITS + 1][];
+            private final int[] index = new int[nodes.length];
+            private int depth;
+            private Object next;
+
+            {
+                nodes[0] = root;
+                advance();
+            }
+
+            private void advance() {
+                next = null;
+                while (depth >= 0) {
+                    if (index[depth] == WIDTH) {
+                        depth--;
+                        continue;
+                    }
+                    Object o = nodes[depth][index[depth]++];
+                    if (o == null) {
+                        continue;
+                    }
+                    if (depth == nodes.length - 1) {
+                        next = o;
+                        return;
+                    }
+                    nodes[++depth] = (Object[]) o;
+                    index[depth] = 0;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T out = (T) next;
+                advance();
+                return out;
+            }
+        };
+    }
+}
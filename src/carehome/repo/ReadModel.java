@@ -0,0 +1,115 @@
+package carehome.repo;
+
+import carehome.domain.Bed;
+import carehome.domain.Resident;
+import carehome.repo.ReadView.BedRow;
+import carehome.repo.ReadView.ResidentRow;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versioned copy of the resident and bed state behind {@link ReadView}s.
+ *
+ * Mutations that change a resident or bed publish a new immutable
+ * {@link Version} as part of their apply step, all rows they touch at
+ * once, so a version never shows half a move. Versions share unchanged
+ * rows through {@link PersistentTable}; publishing copies a few small
+ * nodes under this monitor, and readers never lock. A version stays
+ * reachable while an open view pins it and is garbage once the last view
+ * on it is closed and newer ones have been published.
+ */
+public final class ReadModel {
+
+    /** One published version. */
+    static final class Version {
+        final long number;
+        final PersistentTable<ResidentRow> residents;
+        final PersistentTable<BedRow> beds;
+
+        private Version(long number, PersistentTable<ResidentRow> residents, PersistentTable<BedRow> beds) {
+            this.number = number;
+            this.residents = residents;
+            this.beds = beds;
+        }
+    }
+
+    private volatile Version current = new Version(0, PersistentTable.empty(), PersistentTable.empty());
+
+    private final Set<ReadView> views = ConcurrentHashMap.newKeySet();
+
+    // ---- Publishing (from Mutation.apply and Store) -------------------------------
+
+    synchronized void bedAdded(Bed b) {
+        Version v = current;
+        publish(v.residents, v.beds.with(b.handle(), BedRow.of(b)));
+    }
+
+    synchronized void admitted(Resident r, Bed b) {
+        Version v = current;
+        publish(v.residents.with(r.handle(), ResidentRow.of(r)), v.beds.with(b.handle(), BedRow.of(b)));
+    }
+
+    synchronized void moved(Resident r, Bed from, Bed to) {
+        Version v = current;
+        publish(v.residents.with(r.handle(), ResidentRow.of(r)),
+                v.beds.with(from.handle(), BedRow.of(from)).with(to.handle(), BedRow.of(to)));
+    }
+
+    synchronized void prescribed(Resident r) {
+        Version v = current;
+        publish(v.residents.with(r.handle(), ResidentRow.of(r)), v.beds);
+    }
+
+    /** Replaces every row, e.g. after a load. */
+    synchronized void rebuild(Iterable<Resident> residents, Iterable<Bed> beds) {
+        PersistentTable<ResidentRow> rs = PersistentTable.empty();
+        for (Resident r : residents) {
+            rs = rs.with(r.handle(), ResidentRow.of(r));
+        }
+        PersistentTable<BedRow> bs = PersistentTable.empty();
+        for (Bed b : beds) {
+            bs = bs.with(b.handle(), BedRow.of(b));
+        }
+        publish(rs, bs);
+    }
+
+    synchronized void clear() {
+        publish(PersistentTable.empty(), PersistentTable.empty());
+    }
+
+    private void publish(PersistentTable<ResidentRow> residents, PersistentTable<BedRow> beds) {
+        current = new Version(current.number + 1, residents, beds);
+    }
+
+    // ---- Views ------------------------------------------------------------------
+
+    ReadView open(Store db, long logEnd) {
+        ReadView view = new ReadView(db, current, logEnd);
+        views.add(view);
+        return view;
+    }
+
+    void release(ReadView view) {
+        views.remove(view);
+    }
+
+    /** Number of the latest published version. */
+    public long version() {
+        return current.number;
+    }
+
+    /** Views opened and not yet closed. */
+    public int openViews() {
+        return views.size();
+    }
+
+    /** Number of the oldest version an open view still pins, or the current one if none does. */
+    public long oldestPinned() {
+        long oldest = current.number;
+        for (ReadView view : views) {
+            oldest = Math.min(oldest, view.pinned().number);
+        }
+        return oldest;
+    }
+}
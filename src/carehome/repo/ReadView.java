@@ -0,0 +1,105 @@
+package carehome.repo;
+
+import carehome.domain.*;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A consistent, immutable view of residents, beds and the audit log as of
+ * one committed version, for listings and lookups that must not block
+ * writers or see a move half-done. Obtain one with {@link Store#openView()},
+ * read it from one thread without locks, and close it when done so the
+ * version it pins can be reclaimed.
+ */
+public final class ReadView implements AutoCloseable {
+
+    /** A resident as of the view's version. */
+    public record ResidentRow(String id, String name, Gender gender, String bedId, List<String> prescriptions) {
+        static ResidentRow of(Resident r) {
+            return new ResidentRow(r.id(), r.name(), r.gender(), r.currentBedId().orElse(null),
+                    List.copyOf(r.prescriptions()));
+        }
+    }
+
+    /** A bed as of the view's version; residentId is null if it was vacant. */
+    public record BedRow(String id, String roomId, String residentId, Gender genderTag) {
+        static BedRow of(Bed b) {
+            return new BedRow(b.id(), b.roomId(), b.residentId(), b.genderTag());
+        }
+
+        public boolean isVacant() {
+            return residentId == null;
+        }
+    }
+
+    private final Store db;
+    private final ReadModel.Version version;
+    private final long logEnd;
+    private boolean closed;
+
+    ReadView(Store db, ReadModel.Version version, long logEnd) {
+        this.db = db;
+        this.version = version;
+        this.logEnd = logEnd;
+    }
+
+    /** The committed version this view shows; later views never show an older one. */
+    public long version() {
+        return open().number;
+    }
+
+    /** Every resident, in admission order. */
+    public Collection<ResidentRow> residents() {
+        return open().residents;
+    }
+
+    /** Every bed, in the order they were added. */
+    public Collection<BedRow> beds() {
+        return open().beds;
+    }
+
+    public Optional<ResidentRow> resident(String id) {
+        return Optional.ofNullable(open().residents.get(db.handles().residents.find(id)));
+    }
+
+    public Optional<BedRow> bed(String id) {
+        return Optional.ofNullable(open().beds.get(db.handles().beds.find(id)));
+    }
+
+    /** The resident in {@code bedId}, if the bed exists and was occupied. */
+    public Optional<ResidentRow> residentInBed(String bedId) {
+        return bed(bedId).filter(b -> !b.isVacant()).flatMap(b -> resident(b.residentId()));
+    }
+
+    /**
+     * Audit entries appended before the view was opened with
+     * {@code from <= time < to}, optionally only those by {@code staffId}.
+     * Close the stream when done.
+     */
+    public Stream<ActionLog> logs(Instant from, Instant to, String staffId) {
+        open();
+        return db.readLogs(from, to, staffId, logEnd);
+    }
+
+    private ReadModel.Version open() {
+        if (closed) {
+            throw new IllegalStateException("Read view is closed");
+        }
+        return version;
+    }
+
+    /** Releases the view; rows already taken from it stay valid. */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            db.readModel.release(this);
+        }
+    }
+
+    ReadModel.Version pinned() {
+        return version;
+    }
+}
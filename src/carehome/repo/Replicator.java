@@ -0,0 +1,357 @@
+package carehome.repo;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Primary side of journal shipping to {@link Follower}s on the same host.
+ *
+ * Every commit's journal record (the same bytes {@link Journal} appends)
+ * gets the next sequence number and is queued to each connected follower.
+ * A follower says which stream and sequence number it has applied when it
+ * connects. If the records after that are still in the backlog it gets
+ * just those; otherwise it first gets a snapshot captured at a known
+ * sequence number, then every record after it. A follower whose queue
+ * overflows is disconnected and catches up the same way when it
+ * reconnects.
+ *
+ * Both ends must hold the same secret, read from the file named by
+ * -Dcarehome.replication.secretFile. On connect each side sends a random
+ * challenge and the other answers with an HMAC of it under the secret,
+ * so nothing is shipped to, or taken from, a process that does not know
+ * it. The stream itself is not encrypted.
+ *
+ * Followers acknowledge what they have applied on every heartbeat, so lag
+ * is measured here, in records and in the age of the oldest record not yet
+ * applied. Start with -Dcarehome.replication.port=N or
+ * {@link Store#startReplication(int)}; the socket listens on loopback
+ * only. -Dcarehome.replication.backlog=N sets the backlog and per-follower
+ * queue length (default 65536 records).
+ */
+public final class Replicator implements AutoCloseable {
+
+    static final int MAGIC = 0x43485232; // "CHR2"
+
+    // Frames from the primary
+    static final byte CHALLENGE = 7; // nonce
+    static final byte WELCOME = 1;   // mac of the follower's nonce, stream id
+    static final byte SNAPSHOT = 2;  // seq, length, snapshot file bytes
+    static final byte RECORD = 3;    // seq, commit millis, length, record bytes
+    static final byte HEARTBEAT = 4; // latest seq, primary clock millis
+    // Frames from a follower
+    static final byte HELLO = 5;     // magic, nonce, mac of the primary's nonce, stream id, applied seq
+    static final byte ACK = 6;       // applied seq
+
+    static final long HEARTBEAT_MILLIS = 200;
+    static final int NONCE = 16;
+    static final int MAC = 32;
+    private static final int HANDSHAKE_MILLIS = 5_000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** One shipped record. */
+    private record Shipped(long seq, long millis, byte[] record) { }
+
+    private final Store db;
+    private final byte[] secret;
+    private final ServerSocket server;
+    private long streamId = ThreadLocalRandom.current().nextLong(); // guarded by this
+    private final Shipped[] backlog; // record seq lives at seq % length; guarded by this
+    private long seq;                // last assigned; guarded by this
+    private final List<Link> links = new CopyOnWriteArrayList<>();
+    private final Thread acceptor;
+    private volatile boolean closed;
+    private final AtomicLong snapshotsSent = new AtomicLong();
+
+    Replicator(Store db, int port) throws IOException {
+        this.db = db;
+        this.secret = secret();
+        this.backlog = new Shipped[Integer.getInteger("carehome.replication.backlog", 65_536)];
+        this.server = new ServerSocket(port, 8, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "carehome-replication");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** The shared secret from -Dcarehome.replication.secretFile; both ends refuse to start without one. */
+    static byte[] secret() {
+        String file = System.getProperty("carehome.replication.secretFile");
+        if (file == null) {
+            throw new IllegalStateException("Set -Dcarehome.replication.secretFile to a file holding the replication secret");
+        }
+        try {
+            byte[] secret = Files.readAllBytes(Path.of(file));
+            if (secret.length == 0) {
+                throw new IllegalStateException("Replication secret file is empty: " + file);
+            }
+            return secret;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read replication secret " + file, e);
+        }
+    }
+
+    static byte[] nonce() {
+        byte[] nonce = new byte[NONCE];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /** Proof of the secret for a challenge: HMAC-SHA256 of the answering frame type and the nonce. */
+    static byte[] mac(byte[] secret, byte frame, byte[] nonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            mac.update(frame);
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** The port followers connect to. */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    // Called by Store.commit under the commit read lock, once the record is applied
+    synchronized void publish(byte[] record) {
+        Shipped s = new Shipped(++seq, System.currentTimeMillis(), record);
+        backlog[(int) (s.seq % backlog.length)] = s;
+        for (Link l : links) {
+            l.offer(s);
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket s = server.accept();
+                s.setTcpNoDelay(true);
+                Link link = new Link(s);
+                Thread t = new Thread(link::run, "carehome-replication-" + s.getPort());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                // closed, or one failed accept; keep serving until close()
+            }
+        }
+    }
+
+    // Store.clear(): starts a new stream, so every follower reconnects and takes a snapshot
+    synchronized void reset() {
+        streamId = ThreadLocalRandom.current().nextLong();
+        seq = 0;
+        Arrays.fill(backlog, null);
+        for (Link l : links) {
+            l.close();
+        }
+    }
+
+    /** Stops accepting followers and disconnects the connected ones. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        for (Link l : links) {
+            l.close();
+        }
+    }
+
+    // ---- Metrics ----------------------------------------------------------------
+
+    /** Sequence number of the last committed record. */
+    public synchronized long seq() {
+        return seq;
+    }
+
+    public int followers() {
+        return links.size();
+    }
+
+    /** Full snapshots sent to followers that were new or too far behind. */
+    public long snapshotsSent() {
+        return snapshotsSent.get();
+    }
+
+    /** Records committed but not yet acknowledged by the furthest-behind follower. */
+    public synchronized long maxLagRecords() {
+        long lag = 0;
+        for (Link l : links) {
+            lag = Math.max(lag, seq - l.acked);
+        }
+        return lag;
+    }
+
+    /** Age of the oldest record some follower has not acknowledged, or 0 if all have caught up. */
+    public synchronized long maxLagMillis() {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        for (Link l : links) {
+            if (l.acked < seq) {
+                long next = Math.max(l.acked + 1, seq - backlog.length + 1);
+                Shipped s = backlog[(int) (next % backlog.length)];
+                lag = Math.max(lag, s == null ? 0 : now - s.millis);
+            }
+        }
+        return lag;
+    }
+
+    // ---- One follower -----------------------------------------------------------
+
+    private final class Link {
+        private final Socket socket;
+        private final BlockingQueue<Shipped> queue = new ArrayBlockingQueue<>(backlog.length);
+        private volatile long acked;
+        private volatile boolean overflowed;
+
+        Link(Socket socket) {
+            this.socket = socket;
+        }
+
+        void offer(Shipped s) {
+            if (!queue.offer(s)) {
+                overflowed = true;
+                close(); // it catches up from the backlog or a snapshot when it reconnects
+            }
+        }
+
+        void run() {
+            try (socket) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                socket.setSoTimeout(HANDSHAKE_MILLIS);
+                byte[] challenge = nonce();
+                out.writeByte(CHALLENGE);
+                out.write(challenge);
+                out.flush();
+                if (in.readByte() != HELLO || in.readInt() != MAGIC) {
+                    return;
+                }
+                byte[] theirChallenge = in.readNBytes(NONCE);
+                byte[] proof = in.readNBytes(MAC);
+                if (!MessageDigest.isEqual(proof, mac(secret, HELLO, challenge))) {
+                    return; // does not know the secret: nothing is sent
+                }
+                long theirStream = in.readLong();
+                long applied = in.readLong();
+                socket.setSoTimeout(0);
+                if (!resume(theirStream, applied, mac(secret, WELCOME, theirChallenge), out)) {
+                    sendSnapshot(out);
+                }
+                out.flush();
+                Thread acks = new Thread(() -> readAcks(in), Thread.currentThread().getName() + "-acks");
+                acks.setDaemon(true);
+                acks.start();
+                ship(out);
+            } catch (IOException | InterruptedException e) {
+                // follower gone or shut down; it reconnects on its own
+            } finally {
+                links.remove(this);
+            }
+        }
+
+        // Queues the backlog after the follower's position, if it is all still there
+        private boolean resume(long theirStream, long applied, byte[] proof, DataOutputStream out) throws IOException {
+            synchronized (Replicator.this) {
+                out.writeByte(WELCOME);
+                out.write(proof);
+                out.writeLong(streamId);
+                if (theirStream != streamId || applied > seq || applied < seq - backlog.length) {
+                    return false;
+                }
+                for (long s = applied + 1; s <= seq; s++) {
+                    queue.add(backlog[(int) (s % backlog.length)]);
+                }
+                acked = applied;
+                links.add(this);
+                return true;
+            }
+        }
+
+        private void sendSnapshot(DataOutputStream out) throws IOException {
+            long[] at = new long[1];
+            Snapshot.Image image = db.captureForFollower(() -> {
+                synchronized (Replicator.this) {
+                    at[0] = seq;
+                    acked = seq;
+                    links.add(this);
+                }
+            });
+            Path tmp = Files.createTempFile("carehome-replica", ".dat");
+            try {
+                image.writeTo(tmp);
+                out.writeByte(SNAPSHOT);
+                out.writeLong(at[0]);
+                out.writeLong(Files.size(tmp));
+                Files.copy(tmp, out);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            snapshotsSent.incrementAndGet();
+        }
+
+        private void ship(DataOutputStream out) throws IOException, InterruptedException {
+            List<Shipped> batch = new ArrayList<>();
+            long lastBeat = 0;
+            while (!closed && !overflowed) {
+                Shipped first = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, 4096);
+                    for (Shipped s : batch) {
+                        out.writeByte(RECORD);
+                        out.writeLong(s.seq);
+                        out.writeLong(s.millis);
+                        out.writeInt(s.record.length);
+                        out.write(s.record);
+                    }
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (first == null || now - lastBeat >= HEARTBEAT_MILLIS) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(seq());
+                    out.writeLong(now);
+                    lastBeat = now;
+                }
+                out.flush();
+            }
+        }
+
+        private void readAcks(DataInputStream in) {
+            try {
+                while (in.readByte() == ACK) {
+                    acked = in.readLong();
+                }
+            } catch (IOException e) {
+                // the shipping side notices on its next write
+            }
+            close();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package carehome.repo;
+
+import carehome.domain.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Facility-wide roster index: for each (day, shift) a bitmap of the staff
+ * on that shift, so "who is on duty at T" ORs a few words per shift
+ * instead of scanning every staff member's calendar.
+ *
+ * Staff get a dense slot the first time they are rostered. Bitmaps are
+ * stored per day in one array, indexed like {@link RosterCalendar}.
+ */
+public final class RosterIndex {
+
+    private static final int SHIFTS = ShiftType.values().length;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<Staff> bySlot = new ArrayList<>();
+
+    private long firstDay;
+    private long[][] days = new long[0][]; // [day - firstDay] -> SHIFTS bitmaps of 'words' longs each
+    private int words = 1;
+
+    synchronized void assigned(Staff s, LocalDate date, ShiftType t) {
+        int slot = slotOf(s);
+        long[] bits = day(date.toEpochDay(), true);
+        bits[t.ordinal() * words + (slot >>> 6)] |= 1L << slot;
+    }
+
+    synchronized void removed(Staff s, LocalDate date, ShiftType t) {
+        Integer slot = slots.get(s.id());
+        long[] bits = day(date.toEpochDay(), false);
+        if (slot != null && bits != null) {
+            bits[t.ordinal() * words + (slot >>> 6)] &= ~(1L << slot);
+        }
+    }
+
+    /** Rebuilds the index from every staff member's calendar. */
+    synchronized void rebuild(Collection<Staff> staff) {
+        clear();
+        for (Staff s : staff) {
+            RosterCalendar cal = s.roster();
+            for (long d = cal.nextDay(Long.MIN_VALUE); d != Long.MAX_VALUE; d = cal.nextDay(d + 1)) {
+                int mask = cal.mask(d);
+                for (ShiftType t : ShiftType.values()) {
+                    if ((mask & RosterCalendar.bit(t)) != 0) {
+                        assigned(s, LocalDate.ofEpochDay(d), t);
+                    }
+                }
+            }
+        }
+    }
+
+    synchronized void clear() {
+        slots.clear();
+        bySlot.clear();
+        days = new long[0][];
+        words = 1;
+    }
+
+    /** Staff whose shift window covers {@code when}, in the order they were first rostered. */
+    public synchronized List<Staff> onDuty(LocalDateTime when) {
+        long[] bits = day(when.toLocalDate().toEpochDay(), false);
+        int shifts = ShiftType.onDutyAt(when.getHour());
+        if (bits == null || shifts == 0) {
+            return List.of();
+        }
+        List<Staff> out = new ArrayList<>();
+        for (int w = 0; w < words; w++) {
+            long word = 0;
+            for (int t = 0; t < SHIFTS; t++) {
+                if ((shifts & (1 << t)) != 0) {
+                    word |= bits[t * words + w];
+                }
+            }
+            while (word != 0) {
+                out.add(bySlot.get((w << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+
+    /** Number of staff on shift {@code t} on {@code date}. */
+    public synchronized int count(LocalDate date, ShiftType t) {
+        long[] bits = day(date.toEpochDay(), false);
+        int n = 0;
+        if (bits != null) {
+            for (int w = 0; w < words; w++) {
+                n += Long.bitCount(bits[t.ordinal() * words + w]);
+            }
+        }
+        return n;
+    }
+
+    private int slotOf(Staff s) {
+        Integer slot = slots.get(s.id());
+        if (slot != null) {
+            bySlot.set(slot, s); // the same id may have been re-added as a new object
+            return slot;
+        }
+        int next = bySlot.size();
+        slots.put(s.id(), next);
+        bySlot.add(s);
+        if (next >>> 6 >= words) {
+            widen(words * 2);
+        }
+        return next;
+    }
+
+    // Re-lays every day's bitmaps for a larger staff count
+    private void widen(int newWords) {
+        for (int i = 0; i < days.length; i++) {
+            long[] old = days[i];
+            if (old == null) continue;
+            long[] grown = new long[SHIFTS * newWords];
+            for (int t = 0; t < SHIFTS; t++) {
+                System.arraycopy(old, t * words, grown, t * newWords, words);
+            }
+            days[i] = grown;
+        }
+        words = newWords;
+    }
+
+    private long[] day(long epochDay, boolean create) {
+        if (!create) {
+            long i = epochDay - firstDay;
+            return i >= 0 && i < days.length ? days[(int) i] : null;
+        }
+        if (days.length == 0) {
+            firstDay = epochDay;
+            days = new long[32][];
+        } else if (epochDay < firstDay) {
+            int shift = (int) Math.max(firstDay - epochDay, days.length / 2);
+            long[][] grown = new long[days.length + shift][];
+            System.arraycopy(days, 0, grown, shift, days.length);
+            days = grown;
+            firstDay -= shift;
+        } else if (epochDay - firstDay >= days.length) {
+            days = Arrays.copyOf(days, (int) Math.max(epochDay - firstDay + 1, days.length + days.length / 2));
+        }
+        int i = (int) (epochDay - firstDay);
+        if (days[i] == null) {
+            days[i] = new long[SHIFTS * words];
+        }
+        return days[i];
+    }
+}
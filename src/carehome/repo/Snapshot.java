@@ -0,0 +1,609 @@
+package carehome.repo;
+
+import carehome.domain.*;
+import carehome.domain.Prescription.MedicationOrder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary snapshot of a Store.
+ *
+ * Layout: a file header (magic, version, section count) followed by one
+ * section per collection. Each section header carries its id, row count,
+ * row width, byte length and CRC32. Every string is stored once in the
+ * STRINGS section and referenced by index, so all other sections have
+ * fixed-width rows that are decoded straight out of a memory-mapped file.
+ * Files are written to a temp file, forced, and atomically renamed.
+ * save() splits a store over several such files, one per ward; see
+ * {@link Partitions}.
+ */
+final class Snapshot {
+
+    static final int MAGIC = 0x43485331; // "CHS1"
+    static final int VERSION = 1;
+
+    private static final int FILE_HEADER = 12;
+    private static final int SECTION_HEADER = 24;
+
+    // Section ids; sections are written so that every reference resolves to an earlier one
+    private static final int STRINGS = 0;
+    private static final int WARDS = 1;
+    private static final int ROOMS = 2;
+    private static final int BEDS = 3;
+    private static final int WARD_ROOMS = 4;
+    private static final int ROOM_BEDS = 5;
+    private static final int STAFF = 6;
+    private static final int ROSTER = 7;
+    private static final int RESIDENTS = 8;
+    private static final int PRESCRIPTIONS = 9;
+    private static final int ORDERS = 10;
+    private static final int RESIDENT_PRESCRIPTIONS = 11;
+    private static final int ADMINISTRATIONS = 12;
+    private static final int LOGS = 13;
+    private static final int LOG_BASE = 14;
+    private static final int DOSE_LIMITS = 15;
+    private static final int ORDER_STOPS = 16;
+    private static final int OCCUPANCY = 17;
+    private static final int JOURNAL_EPOCH = 18;
+    private static final int ADMINISTRATION_ROWS = 19;
+
+    private Snapshot() { }
+
+    /** True if {@code file} starts with the snapshot magic number. */
+    static boolean isSnapshot(Path file) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // ---- Writing ----------------------------------------------------------------
+
+    static void write(Store db, Path file) {
+        capture(db, Part.all(db), 0).writeTo(file);
+    }
+
+    /**
+     * What one snapshot file holds. {@link #all} is the whole store in one
+     * file; {@link Partitions} splits it into a facility part and one part
+     * per ward.
+     */
+    static final class Part {
+        Collection<Ward> wards = List.of();
+        Collection<Ward> wardRooms = List.of(); // wards whose room lists go in this file
+        Collection<Room> rooms = List.of();
+        Collection<Bed> beds = List.of();
+        Collection<Resident> residents = List.of();
+        Collection<Prescription> prescriptions = List.of();
+        Collection<Stay> stays = List.of();
+        // Residents whose administrations go in this file, with their rows; null for every row in row order
+        Collection<String> administered;
+        // Staff, rosters, dose limits, the audit log and the journal epoch
+        boolean facility;
+
+        static Part all(Store db) {
+            Part p = new Part();
+            p.wards = db.wards.values();
+            p.wardRooms = db.wards.values();
+            p.rooms = db.rooms.values();
+            p.beds = db.beds.values();
+            p.residents = db.residents.values();
+            p.prescriptions = db.prescriptions.values();
+            p.stays = db.occupancy.all();
+            p.facility = true;
+            return p;
+        }
+    }
+
+    /**
+     * A store captured for writing. capture() encodes the mutable
+     * collections and must run while commits are held off; administrations
+     * and (unarchived) logs are append-only, so only their lengths are
+     * taken then, and writeTo() encodes those rows later while commits
+     * carry on.
+     */
+    static final class Image {
+        private final Writer w;
+        private final Section administrationRows;
+        private final Section administrations;
+        private final Section logs;
+        private final Store db;
+        private final Collection<String> administered;
+        private final int administrationCount;
+        private final List<ActionLog> logSource;
+        private final int logCount;
+
+        private Image(Writer w, Section administrationRows, Section administrations, Section logs, Store db,
+                      Collection<String> administered, List<ActionLog> logSource) {
+            this.w = w;
+            this.administrationRows = administrationRows;
+            this.administrations = administrations;
+            this.logs = logs;
+            this.db = db;
+            this.administered = administered;
+            this.administrationCount = db.administrations.size();
+            this.logSource = logSource;
+            this.logCount = logSource.size();
+        }
+
+        /** Encodes the append-only histories up to their captured lengths and installs the file. */
+        void writeTo(Path file) {
+            if (administered == null) {
+                for (int i = 0; i < administrationCount; i++) {
+                    administration(db.administrations.get(i));
+                }
+            } else {
+                for (String residentId : administered) {
+                    for (int row : db.administrationIndex.rowsOf(residentId)) {
+                        if (row < administrationCount) {
+                            administrationRows.i32(row).row();
+                            administration(db.administrations.get(row));
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < logCount; i++) {
+                ActionLog l = logSource.get(i);
+                logs.instant(l.when()).str(l.staffId()).str(l.type()).str(l.details()).row();
+            }
+            w.writeTo(file);
+        }
+
+        private void administration(AdministrationRecord a) {
+            administrations.str(a.residentId()).str(a.drug()).f64(a.dose()).str(a.unit())
+                           .instant(a.time()).str(a.nurseId()).str(a.notes()).row();
+        }
+    }
+
+    /**
+     * Captures {@code part} of {@code db} for a checkpoint that makes
+     * journal files before {@code journalEpoch} redundant. The caller must
+     * hold off commits.
+     */
+    static Image capture(Store db, Part part, long journalEpoch) {
+        Writer w = new Writer();
+
+        Section wards = w.section(WARDS, 8);
+        for (Ward ward : part.wards) {
+            wards.str(ward.id()).str(ward.name()).row();
+        }
+        Section wardRooms = w.section(WARD_ROOMS, 8);
+        for (Ward ward : part.wardRooms) {
+            for (String roomId : ward.roomIds()) {
+                wardRooms.str(ward.id()).str(roomId).row();
+            }
+        }
+
+        Section rooms = w.section(ROOMS, 8);
+        Section roomBeds = w.section(ROOM_BEDS, 8);
+        for (Room room : part.rooms) {
+            rooms.str(room.id()).str(room.wardId()).row();
+            for (String bedId : room.bedIds()) {
+                roomBeds.str(room.id()).str(bedId).row();
+            }
+        }
+
+        Section beds = w.section(BEDS, 13);
+        for (Bed bed : part.beds) {
+            beds.str(bed.id()).str(bed.roomId()).str(bed.residentId()).ordinal(bed.genderTag()).row();
+        }
+
+        Section staff = w.section(STAFF, 13);
+        Section roster = w.section(ROSTER, 13);
+        for (Staff s : part.facility ? db.staff.values() : List.<Staff>of()) {
+            staff.str(s.id()).str(s.name()).ordinal(s.role()).str(s.password()).row();
+            RosterCalendar cal = s.roster();
+            for (long d = cal.nextDay(Long.MIN_VALUE); d != Long.MAX_VALUE; d = cal.nextDay(d + 1)) {
+                roster.str(s.id()).i64(d).i8(cal.mask(d)).row();
+            }
+        }
+
+        Section residents = w.section(RESIDENTS, 13);
+        Section residentPrescriptions = w.section(RESIDENT_PRESCRIPTIONS, 8);
+        for (Resident r : part.residents) {
+            residents.str(r.id()).str(r.name()).ordinal(r.gender()).str(r.currentBedId().orElse(null)).row();
+            for (String pid : r.prescriptions()) {
+                residentPrescriptions.str(r.id()).str(pid).row();
+            }
+        }
+
+        Section prescriptions = w.section(PRESCRIPTIONS, 24);
+        Section orders = w.section(ORDERS, 28);
+        for (Prescription p : part.prescriptions) {
+            prescriptions.str(p.id()).str(p.residentId()).str(p.doctorId()).instant(p.createdAt()).row();
+            for (MedicationOrder mo : p.orders()) {
+                orders.str(p.id()).str(mo.drug).f64(mo.dose).str(mo.unit).str(mo.schedule).str(mo.notes).row();
+            }
+        }
+
+        Section administrationRows = part.administered == null ? null : w.section(ADMINISTRATION_ROWS, 4);
+        Section administrations = w.section(ADMINISTRATIONS, 40);
+        Section logs = w.section(LOGS, 24);
+        List<ActionLog> logSource = List.of();
+        if (part.facility) {
+            // An archive drops entries from the hot segment as it seals them, so take them with their base
+            AuditArchive archive = db.auditArchive();
+            AuditArchive.Hot hot = archive != null ? archive.hot() : new AuditArchive.Hot(db.logBase(), db.logs);
+            logSource = hot.entries();
+            w.section(LOG_BASE, 8).i64(hot.base()).row();
+        }
+
+        Section doseLimits = w.section(DOSE_LIMITS, 16);
+        for (DoseLimit l : part.facility ? db.doseLimits.values() : List.<DoseLimit>of()) {
+            doseLimits.str(l.drug()).f64(l.maxPer24h()).str(l.unit()).row();
+        }
+
+        Section orderStops = w.section(ORDER_STOPS, 28);
+        for (Prescription p : part.prescriptions) {
+            for (int i = 0; i < p.orders().size(); i++) {
+                int index = i;
+                p.stopOf(i).ifPresent(stop -> orderStops.str(p.id()).i32(index).instant(stop.at())
+                                                        .str(stop.doctorId()).str(stop.replacedBy()).row());
+            }
+        }
+
+        Section occupancy = w.section(OCCUPANCY, 24);
+        for (Stay stay : part.stays) {
+            occupancy.str(stay.residentId()).str(stay.bedId()).i64(stay.from().toEpochMilli())
+                     .i64(stay.to() == null ? Long.MAX_VALUE : stay.to().toEpochMilli()).row();
+        }
+
+        if (part.facility) {
+            w.section(JOURNAL_EPOCH, 8).i64(journalEpoch).row();
+        }
+        return new Image(w, administrationRows, administrations, logs, db, part.administered, logSource);
+    }
+
+    /** Interns strings and collects fixed-width rows per section. */
+    private static final class Writer {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final List<Section> sections = new ArrayList<>();
+
+        Section section(int id, int width) {
+            Section s = new Section(this, id, width);
+            sections.add(s);
+            return s;
+        }
+
+        int intern(String s) {
+            if (s == null) {
+                return -1;
+            }
+            return ids.computeIfAbsent(s, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+        }
+
+        void writeTo(Path file) {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+                header.putInt(MAGIC).putInt(VERSION).putInt(sections.size() + 1).flip();
+                writeFully(ch, header);
+                writeSection(ch, STRINGS, strings.size(), 0, stringTable());
+                for (Section s : sections) {
+                    writeSection(ch, s.id, s.count, s.width, ByteBuffer.wrap(s.bytes.toByteArray()));
+                }
+                ch.force(true);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write snapshot " + file, e);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to install snapshot " + file, e);
+            }
+        }
+
+        // [offsets: int x (n+1)][utf-8 bytes]
+        private ByteBuffer stringTable() {
+            List<byte[]> encoded = new ArrayList<>(strings.size());
+            int total = 0;
+            for (String s : strings) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                encoded.add(b);
+                total += b.length;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(4 * (strings.size() + 1) + total);
+            int off = 0;
+            for (byte[] b : encoded) {
+                buf.putInt(off);
+                off += b.length;
+            }
+            buf.putInt(off);
+            for (byte[] b : encoded) {
+                buf.put(b);
+            }
+            return buf.flip();
+        }
+
+        private static void writeSection(FileChannel ch, int id, int count, int width, ByteBuffer body)
+                throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER);
+            header.putInt(id).putInt(count).putInt(width).putLong(body.remaining())
+                  .putInt((int) crc.getValue()).flip();
+            writeFully(ch, header);
+            writeFully(ch, body);
+        }
+
+        private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+    /** One fixed-width section being built; row() checks the declared width. */
+    private static final class Section {
+        private final Writer writer;
+        final int id;
+        final int width;
+        int count;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Section(Writer writer, int id, int width) {
+            this.writer = writer;
+            this.id = id;
+            this.width = width;
+        }
+
+        Section str(String s) { return i32(writer.intern(s)); }
+
+        Section ordinal(Enum<?> e) { return i8(e == null ? -1 : e.ordinal()); }
+
+        Section instant(Instant t) { return i64(t.getEpochSecond()).i32(t.getNano()); }
+
+        Section i8(int v) {
+            try { out.writeByte(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+            return this;
+        }
+
+        Section i32(int v) {
+            try { out.writeInt(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+            return this;
+        }
+
+        Section i64(long v) {
+            try { out.writeLong(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+            return this;
+        }
+
+        Section f64(double v) {
+            try { out.writeDouble(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+            return this;
+        }
+
+        void row() {
+            count++;
+            if (bytes.size() != count * width) {
+                throw new IllegalStateException("Section " + id + " row width mismatch");
+            }
+        }
+    }
+
+    // ---- Reading ----------------------------------------------------------------
+
+    /** Rebuilds {@code db} from the memory-mapped snapshot at {@code file}. */
+    static void read(Path file, Store db) throws IOException {
+        read(file, db, null);
+    }
+
+    /**
+     * Administrations read from partition files, held back so that rows
+     * from every file can be put back in the order they were committed.
+     */
+    static final class Placed {
+        final List<AdministrationRecord> records = new ArrayList<>();
+        int[] rows = new int[0];
+    }
+
+    /**
+     * Reads the snapshot at {@code file} into {@code db}, except that its
+     * administrations go to {@code placed} if that is not null. Partition
+     * files may be read into one store from several threads at once.
+     */
+    static void read(Path file, Store db, Placed placed) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            int version = header.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int sectionCount = header.getInt(8);
+
+            String[] strings = new String[0];
+            long pos = FILE_HEADER;
+            for (int s = 0; s < sectionCount; s++) {
+                MappedByteBuffer sh = ch.map(FileChannel.MapMode.READ_ONLY, pos, SECTION_HEADER);
+                int id = sh.getInt(0);
+                int count = sh.getInt(4);
+                int width = sh.getInt(8);
+                long length = sh.getLong(12);
+                int crc = sh.getInt(20);
+                MappedByteBuffer body = ch.map(FileChannel.MapMode.READ_ONLY, pos + SECTION_HEADER, length);
+                CRC32 check = new CRC32();
+                check.update(body.duplicate());
+                if ((int) check.getValue() != crc) {
+                    throw new IOException("Checksum mismatch in snapshot section " + id);
+                }
+                if (id == STRINGS) {
+                    strings = readStrings(body, count);
+                } else {
+                    new Rows(body, width, strings).load(id, count, db, placed);
+                }
+                pos += SECTION_HEADER + length;
+            }
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer body, int count) {
+        String[] out = new String[count];
+        int base = 4 * (count + 1);
+        for (int i = 0; i < count; i++) {
+            int from = body.getInt(4 * i);
+            int to = body.getInt(4 * (i + 1));
+            byte[] b = new byte[to - from];
+            body.get(base + from, b);
+            out[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        return out;
+    }
+
+    /** Absolute-offset reader over one fixed-width section. */
+    private static final class Rows {
+        private final ByteBuffer buf;
+        private final int width;
+        private final String[] strings;
+        private int off;
+
+        Rows(ByteBuffer buf, int width, String[] strings) {
+            this.buf = buf;
+            this.width = width;
+            this.strings = strings;
+        }
+
+        private void at(int row) { off = row * width; }
+
+        private String str() {
+            int idx = buf.getInt(off);
+            off += 4;
+            return idx < 0 ? null : strings[idx];
+        }
+
+        private int i8() { return buf.get(off++); }
+
+        private int i32() { int v = buf.getInt(off); off += 4; return v; }
+
+        private long i64() { long v = buf.getLong(off); off += 8; return v; }
+
+        private double f64() { double v = buf.getDouble(off); off += 8; return v; }
+
+        private Instant instant() {
+            long sec = i64();
+            int nano = buf.getInt(off);
+            off += 4;
+            return Instant.ofEpochSecond(sec, nano);
+        }
+
+        private static <E extends Enum<E>> E enumOf(Class<E> type, int ordinal) {
+            return ordinal < 0 ? null : type.getEnumConstants()[ordinal];
+        }
+
+        void load(int section, int count, Store db, Placed placed) {
+            if (section == ADMINISTRATION_ROWS) {
+                if (placed == null) {
+                    return; // rows only matter when merging partitions
+                }
+                placed.rows = new int[count];
+                for (int i = 0; i < count; i++) {
+                    at(i);
+                    placed.rows[i] = i32();
+                }
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                at(i);
+                switch (section) {
+                    case WARDS -> {
+                        Ward w = new Ward(str(), str());
+                        db.wards.put(w.id(), w);
+                    }
+                    case ROOMS -> {
+                        Room r = new Room(str(), str());
+                        db.rooms.put(r.id(), r);
+                    }
+                    case BEDS -> {
+                        Bed b = new Bed(str(), str());
+                        String resident = str();
+                        Gender g = enumOf(Gender.class, i8());
+                        if (resident != null) {
+                            b.occupy(resident, g);
+                        }
+                        db.beds.put(b.id(), b);
+                    }
+                    case WARD_ROOMS -> db.wards.get(str()).addRoom(str());
+                    case ROOM_BEDS -> db.rooms.get(str()).addBed(str());
+                    case STAFF -> {
+                        String id = str();
+                        String name = str();
+                        Role role = enumOf(Role.class, i8());
+                        String pwd = str();
+                        Staff s = switch (role) {
+                            case MANAGER -> new Manager(id, name);
+                            case DOCTOR -> new Doctor(id, name);
+                            case NURSE -> new Nurse(id, name);
+                        };
+                        if (pwd != null) {
+                            s.setPassword(pwd);
+                        }
+                        db.staff.put(id, s);
+                    }
+                    case ROSTER -> {
+                        Staff s = db.staff.get(str());
+                        LocalDate day = LocalDate.ofEpochDay(i64());
+                        int mask = i8();
+                        for (ShiftType t : ShiftType.values()) {
+                            if ((mask & (1 << t.ordinal())) != 0) {
+                                s.assignShift(day, t);
+                            }
+                        }
+                    }
+                    case RESIDENTS -> {
+                        Resident r = new Resident(str(), str(), enumOf(Gender.class, i8()));
+                        String bed = str();
+                        if (bed != null) {
+                            r.assignBed(bed);
+                        }
+                        db.residents.put(r.id(), r);
+                    }
+                    case PRESCRIPTIONS -> {
+                        Prescription p = new Prescription(str(), str(), str(), instant());
+                        db.prescriptions.put(p.id(), p);
+                    }
+                    case ORDERS -> db.prescriptions.get(str()).addOrder(
+                            new MedicationOrder(str(), f64(), str(), str(), str()));
+                    case RESIDENT_PRESCRIPTIONS -> db.residents.get(str()).attachPrescription(str());
+                    case ADMINISTRATIONS -> {
+                        AdministrationRecord a = new AdministrationRecord(
+                                str(), str(), f64(), str(), instant(), str(), str());
+                        if (placed != null) {
+                            placed.records.add(a);
+                        } else {
+                            db.administrations.add(a);
+                        }
+                    }
+                    case LOGS -> db.logs.add(new ActionLog(instant(), str(), str(), str()));
+                    case LOG_BASE -> db.logBase = i64();
+                    case DOSE_LIMITS -> {
+                        DoseLimit l = new DoseLimit(str(), f64(), str());
+                        db.doseLimits.put(l.drug().toLowerCase(Locale.ROOT), l);
+                    }
+                    case OCCUPANCY -> db.occupancy.restore(str(), str(), i64(), i64());
+                    case ORDER_STOPS -> db.prescriptions.get(str()).stopOrder(i32(),
+                            new OrderStop(instant(), str(), str()));
+                    case JOURNAL_EPOCH -> db.journalEpoch = i64();
+                    default -> { return; } // section from a newer writer; nothing to rebuild
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package carehome.repo;
+
+import java.nio.file.*;
+
+/**
+ * One-shot converter from a Java-serialized store.dat to the binary
+ * snapshot format. The original file is kept alongside as *.legacy.
+ *
+ * Usage: java carehome.repo.SnapshotConverter [store.dat]
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() { }
+
+    public static void main(String[] args) throws Exception {
+        Path file = Path.of(args.length > 0 ? args[0] : "store.dat");
+        if (Snapshot.isSnapshot(file)) {
+            System.out.println(file + " is already a binary snapshot.");
+            return;
+        }
+        Store db = Store.loadLegacy(file)
+                        .orElseThrow(() -> new IllegalArgumentException("Cannot read legacy store: " + file));
+        Path backup = file.resolveSibling(file.getFileName() + ".legacy");
+        Files.copy(file, backup, StandardCopyOption.REPLACE_EXISTING);
+        db.writeSnapshot(file);
+        System.out.println("Converted " + file + " (" + db.residents.size() + " residents, "
+                + db.administrations.size() + " administrations, " + db.logs.size()
+                + " logs); original kept as " + backup);
+    }
+}
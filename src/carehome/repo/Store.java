@@ -1,52 +1,686 @@
 package carehome.repo;
 
 import java.io.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 import carehome.domain.*;
+import carehome.exception.ReadOnlyException;
 
 /**
  * Singleton repository that stores all in-memory objects
  * (residents, staff, wards, rooms, beds, prescriptions, logs).
- * Provides simple serialization to save/load state to a file.
+ * State is saved to and loaded from the store directory, one
+ * {@link Snapshot} file per ward plus one for the rest of the facility,
+ * written and read in parallel (see {@link Partitions}). A single-file
+ * store.dat, binary or Java-serialized, is still readable and is replaced
+ * by the directory on the next save(). These files, the journal and the
+ * audit archive live in the working directory, or in -Dcarehome.dir.
+ *
+ * In journal mode (-Dcarehome.journal=true) every Service mutation is also
+ * appended to a write-ahead journal; get() rebuilds state from the last
+ * checkpoint plus the journal tail. Checkpoints are written by save(), or
+ * in the background by the {@link Checkpointer}.
+ *
+ * The store is safe for concurrent Service calls: maps are concurrent,
+ * history lists are append-only, and Service serializes work on the same
+ * bed or staff member through {@link #bedLocks} and {@link #staffLocks}.
+ * A checkpoint blocks commits only while it captures the mutable state;
+ * clear() blocks them for its whole run. Listings and lookups that must be
+ * consistent without blocking writers go through {@link #openView()}.
+ *
+ * With -Dcarehome.audit.async=true audit entries are handed to an
+ * {@link AuditPipeline} instead of being appended on the caller's thread;
+ * call {@link #flushAudit()} before reading {@link #logs} if every entry
+ * must be visible.
+ *
+ * With -Dcarehome.replication.port=N every committed record is also
+ * shipped to read-only {@link Follower} processes through a
+ * {@link Replicator}. A store started with -Dcarehome.follow=host:port is
+ * such a follower: it loads nothing locally, takes its state from the
+ * primary and rejects writes until {@link #promote()}. Both ends need
+ * -Dcarehome.replication.secretFile naming a file with a shared secret.
+ *
+ * With -Dcarehome.audit.archive=true {@link #logs} only holds the hot
+ * segment of the audit log; older entries roll into compressed files
+ * managed by an {@link AuditArchive} and are read back with
+ * {@link #readLogs}.
  */
-public final class Store implements Serializable {
-
-    private static final long serialVersionUID = 1L;
+public final class Store {
 
     private static final String FILE = "store.dat";
+    private static final String DIR = "store";
+    private static final String JOURNAL_FILE = "store.journal";
+    private static final String ARCHIVE_DIR = "audit";
+
+    // Where the files above live: -Dcarehome.dir, default the working directory
+    private static Path home(String name) {
+        return Path.of(System.getProperty("carehome.dir", ".")).resolve(name);
+    }
     private static Store INSTANCE;
 
-    public final Map<String, Resident> residents = new HashMap<>();
-    public final Map<String, Staff> staff = new HashMap<>();
-    public final Map<String, Ward> wards = new HashMap<>();
-    public final Map<String, Room> rooms = new HashMap<>();
-    public final Map<String, Bed> beds = new HashMap<>();
-    public final Map<String, Prescription> prescriptions = new HashMap<>();
-    public final List<AdministrationRecord> administrations = new ArrayList<>();
-    public final List<ActionLog> logs = new ArrayList<>();
+    // Indexed by int handle; handles maps string ids to handles at the API edge and is replaced by clear()
+    private volatile Handles handles;
+    public final EntityTable<Resident> residents;
+    public final EntityTable<Staff> staff;
+    public final EntityTable<Ward> wards;
+    public final EntityTable<Room> rooms;
+    public final EntityTable<Bed> beds;
+    public final EntityTable<Prescription> prescriptions;
+    public final AdministrationColumns administrations = new AdministrationColumns();
+    public final AppendOnlyList<ActionLog> logs = new AppendOnlyList<>(); // hot segment only when archiving
+    public final Map<String, DoseLimit> doseLimits = new ConcurrentHashMap<>(); // by lower-cased drug
+    public final OccupancyHistory occupancy = new OccupancyHistory();
+
+    // Derived from wards/rooms/beds; kept current by layout and occupancy mutations
+    public final VacancyIndex vacancies = new VacancyIndex();
+    public final AdministrationIndex administrationIndex = new AdministrationIndex(administrations);
+    public final AuditIndex auditIndex = new AuditIndex(); // the whole log, unless the archive indexes its own segments
+    public final RosterIndex rosterIndex = new RosterIndex();
+    public final DoseWheel doseWheel = new DoseWheel();
+    public final DoseReconciler doseReconciler = new DoseReconciler(doseWheel,
+            Duration.ofDays(Integer.getInteger("carehome.reconcile.horizonDays", 92)));
+    public final DoseWindows doseWindows = new DoseWindows();
+    public final MedicationCharts medicationCharts = new MedicationCharts();
+    public final ReadModel readModel = new ReadModel(); // versioned residents and beds behind openView()
+
+    // A bed's lock also guards the resident occupying it
+    public final StripedLock bedLocks = new StripedLock(256);
+    public final StripedLock staffLocks = new StripedLock(64);
 
-    private Store() { }
+    // Commits share the read side; checkpoint captures and clear() take the write side
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final LongAdder commits = new LongAdder();
+    private final Partitions partitions = new Partitions(this, home(DIR));
+    private final Checkpointer checkpointer = new Checkpointer(this);
+
+    private Journal journal;
+    private AuditPipeline audit;
+    private AuditArchive archive;
+    private volatile Replicator replicator;
+    private volatile Follower follower;
+
+    // Sequence number of logs.get(0), as read from the checkpoint
+    long logBase;
+
+    // First journal epoch not included in the checkpoint
+    long journalEpoch;
+
+    private Store() {
+        this(new Handles());
+    }
+
+    // A store sharing handles with another, so entities move between the two as they are
+    private Store(Handles handles) {
+        this.handles = handles;
+        residents = new EntityTable<>(this::handles, h -> h.residents, Resident::bind);
+        staff = new EntityTable<>(this::handles, h -> h.staff, (s, h) -> { });
+        wards = new EntityTable<>(this::handles, h -> h.wards, Ward::bind);
+        rooms = new EntityTable<>(this::handles, h -> h.rooms, Room::bind);
+        beds = new EntityTable<>(this::handles, h -> h.beds, Bed::bind);
+        prescriptions = new EntityTable<>(this::handles, h -> h.prescriptions, Prescription::bind);
+    }
+
+    /**
+     * The registries the entities in this store are bound to. Replaced by
+     * clear(), so read it again rather than keeping it.
+     */
+    public Handles handles() {
+        return handles;
+    }
 
     public static synchronized Store get() {
         if (INSTANCE == null) {
-            INSTANCE = load().orElse(new Store());
+            String follow = System.getProperty("carehome.follow");
+            if (follow != null) {
+                Store db = new Store();
+                int colon = follow.lastIndexOf(':');
+                db.follower = new Follower(db, follow.substring(0, colon), Integer.parseInt(follow.substring(colon + 1)));
+                INSTANCE = db;
+                return db;
+            }
+            Store db = load().orElse(new Store());
+            if (Boolean.getBoolean("carehome.audit.archive")) {
+                db.archive = new AuditArchive(home(ARCHIVE_DIR), db.logs,
+                        Integer.getInteger("carehome.audit.segmentEntries", 65_536),
+                        Duration.ofDays(Integer.getInteger("carehome.audit.retentionDays", 0)));
+                db.archive.attach(db.logBase);
+                db.reindexAudit();
+            }
+            if (Boolean.getBoolean("carehome.journal")) {
+                db.journal = Journal.open(home(JOURNAL_FILE), db, db.journalEpoch);
+            }
+            if (db.archive != null) {
+                db.archive.endReplay();
+            }
+            if (Boolean.getBoolean("carehome.audit.async")) {
+                db.audit = new AuditPipeline(db::appendLog,
+                        Integer.getInteger("carehome.audit.capacity", 8192),
+                        AuditPipeline.BackPressure.valueOf(
+                                System.getProperty("carehome.audit.backpressure", "BLOCK")));
+            }
+            db.checkpointer.schedule(Long.getLong("carehome.checkpoint.intervalSeconds", 0),
+                    Long.getLong("carehome.checkpoint.afterCommits", 0));
+            Integer port = Integer.getInteger("carehome.replication.port");
+            if (port != null) {
+                db.startReplication(port);
+            }
+            INSTANCE = db;
         }
         return INSTANCE;
     }
 
+    /**
+     * The store saved on disk, or empty if none was ever saved. A store that
+     * exists but cannot be read fails the load: starting empty instead would
+     * let the next checkpoint overwrite it.
+     */
     public static Optional<Store> load() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(FILE))) {
-            return Optional.of((Store) ois.readObject());
-        } catch (Exception e) {
+        if (Partitions.exists(home(DIR))) {
+            try {
+                Store db = new Store();
+                db.partitions.load();
+                db.reindex();
+                db.seedOccupancy();
+                db.checkpointer.restoredFrom(db.partitions.manifest());
+                return Optional.of(db);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load store " + home(DIR) + "; refusing to start without it", e);
+            }
+        }
+        Path file = home(FILE);
+        if (!Files.exists(file)) {
             return Optional.empty();
         }
+        if (!Snapshot.isSnapshot(file)) {
+            return loadLegacy(file);
+        }
+        try {
+            Store db = new Store();
+            Snapshot.read(file, db);
+            db.reindex();
+            db.seedOccupancy();
+            db.checkpointer.restoredFrom(file);
+            return Optional.of(db);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load store " + file + "; refusing to start without it", e);
+        }
+    }
+
+    /** Reads a store.dat written by the old Java-serialization save(). */
+    static Optional<Store> loadLegacy(Path file) {
+        try {
+            var old = carehome.repo.legacy.Store.read(file);
+            Store db = new Store();
+            db.residents.putAll(old.residents);
+            old.staff.forEach((id, s) -> db.staff.put(id, s.toStaff()));
+            db.wards.putAll(old.wards);
+            db.rooms.putAll(old.rooms);
+            db.beds.putAll(old.beds);
+            db.prescriptions.putAll(old.prescriptions);
+            db.administrations.addAll(old.administrations);
+            db.logs.addAll(old.logs);
+            db.reindex();
+            db.seedOccupancy();
+            return Optional.of(db);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load legacy store " + file + "; refusing to start without it", e);
+        }
+    }
+
+    // Files from before occupancy history: current residents get an open stay since the epoch
+    private void seedOccupancy() {
+        if (!occupancy.isEmpty()) {
+            return;
+        }
+        for (Resident r : residents.values()) {
+            r.currentBedId().ifPresent(bed -> occupancy.admitted(r.id(), bed, Instant.EPOCH));
+        }
+    }
+
+    /** Rebuilds every derived index from the collections, e.g. after a load; independent ones in parallel. */
+    private void reindex() {
+        partitions.inParallel(List.of(
+                () -> vacancies.rebuild(this),
+                administrationIndex::rebuild,
+                () -> rosterIndex.rebuild(staff.values()),
+                () -> {
+                    doseWheel.rebuild(prescriptions.values());
+                    doseReconciler.rebuild(prescriptions.values(), administrations);
+                },
+                () -> doseWindows.rebuild(administrations),
+                () -> medicationCharts.rebuild(prescriptions.values()),
+                () -> readModel.rebuild(residents.values(), beds.values()),
+                this::reindexAudit));
+    }
+
+    private void reindexAudit() {
+        auditIndex.reset(logBase);
+        if (archive != null) {
+            archive.reindex();
+        } else {
+            for (int i = 0; i < logs.size(); i++) {
+                auditIndex.add(logBase + i, logs.get(i));
+            }
+        }
+    }
+
+    /**
+     * Recomputes dose reconciliation from the whole prescription and
+     * administration history, one resident per task in parallel. Commits
+     * wait until it is done.
+     */
+    public void rebuildDoseReconciliation() {
+        checkpointLock.writeLock().lock();
+        try {
+            doseReconciler.rebuild(prescriptions.values(), administrations);
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
     }
 
+    /** Writes this store as a binary snapshot to {@code file}. */
+    void writeSnapshot(Path file) {
+        Snapshot.write(this, file);
+    }
+
+    /**
+     * Writes a checkpoint and returns once it is on disk: the facility file
+     * and the files of wards changed since the last one. Commits are held
+     * off only while the state is captured, not during the write. In
+     * journal mode the journal is rotated at the capture, and the files
+     * before it are deleted once the checkpoint is installed.
+     */
     public void save() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE))) {
-            oos.writeObject(this);
+        checkpointer.run();
+    }
+
+    /** Writes a checkpoint on the background checkpoint thread. */
+    public CompletableFuture<Void> checkpointAsync() {
+        return checkpointer.runAsync();
+    }
+
+    /** Checkpoint policy and metrics. */
+    public Checkpointer checkpointer() {
+        return checkpointer;
+    }
+
+    // Called by the Checkpointer, which lets one capture run at a time
+    Checkpointer.Capture capture() {
+        checkpointLock.writeLock().lock();
+        try {
+            flushAudit();
+            long epoch = 0;
+            if (journal != null) {
+                journal = journal.rotate();
+                epoch = journal.epoch();
+            }
+            return new Checkpointer.Capture(partitions.capture(epoch), epoch, commits.sum(),
+                    System.currentTimeMillis());
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    void checkpointWritten(long journalEpoch) {
+        if (journal != null) {
+            journal.dropBefore(journalEpoch);
+        }
+        try {
+            Files.deleteIfExists(home(FILE)); // superseded by the partitions
+        } catch (IOException e) {
+            // load() prefers the partitions anyway
+        }
+    }
+
+    /** Partitioned persistence; mutations report the wards they change here. */
+    Partitions partitions() {
+        return partitions;
+    }
+
+    /** Mutations committed through this store since it was created. */
+    long commitCount() {
+        return commits.sum();
+    }
+
+    /** Empties every collection (and the journal, if one is open). */
+    public void clear() {
+        checkpointer.whileIdle(this::clearNow);
+    }
+
+    private void clearNow() {
+        checkpointLock.writeLock().lock();
+        try {
+            flushAudit();
+            residents.clear();
+            staff.clear();
+            wards.clear();
+            rooms.clear();
+            beds.clear();
+            prescriptions.clear();
+            administrations.clear();
+            logs.clear();
+            doseLimits.clear();
+            occupancy.clear();
+            if (archive != null) {
+                archive.clear();
+            }
+            if (replicator != null) {
+                replicator.reset();
+            }
+            vacancies.clear();
+            administrationIndex.clear();
+            auditIndex.clear();
+            rosterIndex.clear();
+            doseWheel.clear();
+            doseReconciler.clear();
+            doseWindows.clear();
+            medicationCharts.clear();
+            readModel.clear();
+            handles = new Handles();
+            if (journal != null) {
+                journal.truncate();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    // ---- Layout -----------------------------------------------------------------
+
+    /** Registers a ward. Layout changes are journaled like any other mutation. */
+    public void addWard(Ward w) {
+        commit(new Mutation.AddWard(w));
+    }
+
+    /** Registers a room and links it into its ward. */
+    public void addRoom(Room r) {
+        commit(new Mutation.AddRoom(r));
+    }
+
+    /** Registers a bed and links it into its room. */
+    public void addBed(Bed b) {
+        commit(new Mutation.AddBed(b));
+    }
+
+    // ---- Mutations ---------------------------------------------------------------
+
+    /** Commits a validated mutation that has no audit entry of its own. */
+    public void commit(Mutation m) {
+        commit(m, null, null, null);
+    }
+
+    /** Records an audit entry without changing any state. */
+    public void log(String staffId, String type, String details) {
+        commit(null, staffId, type, details);
+    }
+
+    /**
+     * Commits a validated mutation together with its audit entry. Either may be
+     * absent (null mutation, or null type). In journal mode the record is
+     * durable before the change is applied.
+     */
+    public void commit(Mutation m, String staffId, String type, String details) {
+        Follower f = follower;
+        if (f != null) {
+            throw new ReadOnlyException("Read-only follower of " + f.source() + "; write to the primary");
+        }
+        Instant now = Instant.now();
+        checkpointLock.readLock().lock();
+        try {
+            Replicator r = replicator;
+            byte[] record = null;
+            if (audit != null && type != null) {
+                audit.checkRunning(); // fail before anything is journaled or applied
+            }
+            if (journal != null || r != null) {
+                ActionLog entry = type == null ? null : new ActionLog(now, staffId, type, details);
+                record = Mutation.encode(m, entry);
+            }
+            if (journal != null) {
+                journal.append(record);
+            }
+            if (m != null) {
+                m.apply(this);
+            }
+            if (type != null) {
+                if (audit != null) {
+                    audit.publish(now, staffId, type, details);
+                } else {
+                    appendLog(new ActionLog(now, staffId, type, details));
+                }
+            }
+            if (r != null) {
+                r.publish(record);
+            }
+            commits.increment();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        checkpointer.committed();
+    }
+
+    /** Waits until every audit entry published so far is in {@link #logs}. */
+    public void flushAudit() {
+        if (audit != null) {
+            audit.flush();
+        }
+    }
+
+    /**
+     * Audit entries with {@code from <= time < to}, optionally only those by
+     * {@code staffId}. With an archive, sealed segments are streamed from
+     * disk; close the stream when done.
+     */
+    public Stream<ActionLog> readLogs(Instant from, Instant to, String staffId) {
+        flushAudit();
+        return readLogs(from, to, staffId, Long.MAX_VALUE);
+    }
+
+    // As above, but only entries with sequence numbers below end
+    Stream<ActionLog> readLogs(Instant from, Instant to, String staffId, long end) {
+        if (archive != null) {
+            return archive.read(from, to, staffId, end);
+        }
+        return logs.subList(0, (int) Math.min(logs.size(), Math.max(0, end - logBase))).stream()
+                   .filter(l -> !l.when().isBefore(from) && l.when().isBefore(to))
+                   .filter(l -> staffId == null || staffId.equals(l.staffId()));
+    }
+
+    /**
+     * A consistent view of residents, beds and the audit log as of the last
+     * committed change, read without locks while writers carry on. Close it
+     * when done.
+     */
+    public ReadView openView() {
+        return readModel.open(this, logEnd());
+    }
+
+    // Sequence number the next audit entry will get
+    private long logEnd() {
+        return archive != null ? archive.endSeq() : logBase + logs.size();
+    }
+
+    /**
+     * Entries matching every field of {@code q}, oldest first, answered from
+     * {@link #auditIndex} or, with an archive, from its per-segment indexes.
+     */
+    public List<ActionLog> searchLogs(AuditQuery q) {
+        flushAudit();
+        if (archive != null) {
+            return archive.fetch(archive.search(q));
+        }
+        long[] seqs = auditIndex.search(q);
+        List<ActionLog> out = new ArrayList<>(seqs.length);
+        for (long seq : seqs) {
+            out.add(logs.get((int) (seq - logBase)));
+        }
+        return out;
+    }
+
+    /** Sequence number of the first entry in {@link #logs}; non-zero once segments have rolled. */
+    long logBase() {
+        return archive != null ? archive.hotBase() : logBase;
+    }
+
+    /** The audit archive, or null when the whole log stays in {@link #logs}. */
+    public AuditArchive auditArchive() {
+        return archive;
+    }
+
+    private void appendLog(ActionLog entry) {
+        if (archive != null) {
+            archive.append(entry); // indexed by the archive
+        } else {
+            auditIndex.add(logBase + logs.append(entry), entry);
+        }
+    }
+
+    /** The async audit pipeline, or null when audit entries are appended synchronously. */
+    public AuditPipeline auditPipeline() {
+        return audit;
+    }
+
+    // ---- Replication --------------------------------------------------------------
+
+    /**
+     * Starts shipping every commit to followers connecting to {@code port}
+     * on loopback (0 picks a free port).
+     */
+    public synchronized Replicator startReplication(int port) {
+        if (follower != null) {
+            throw new ReadOnlyException("A follower cannot serve followers until it is promoted");
+        }
+        if (replicator != null) {
+            throw new IllegalStateException("Already replicating on port " + replicator.port());
+        }
+        try {
+            replicator = new Replicator(this, port);
         } catch (IOException e) {
-            throw new RuntimeException("Failed to save data", e);
+            throw new UncheckedIOException("Failed to listen for followers on port " + port, e);
+        }
+        return replicator;
+    }
+
+    /** Disconnects followers and stops listening; they keep what they have applied. */
+    public synchronized void stopReplication() {
+        if (replicator != null) {
+            replicator.close();
+            replicator = null;
+        }
+    }
+
+    /** The replicator, or null when no followers are served. */
+    public Replicator replicator() {
+        return replicator;
+    }
+
+    /** The follower, or null when this store is a primary. */
+    public Follower follower() {
+        return follower;
+    }
+
+    /**
+     * Makes a follower the primary: stops following, then, as a primary
+     * started with the same flags would, opens a fresh journal (checkpointing
+     * the state it took over) and serves followers of its own. Only call it
+     * once the old primary is known to be down; it is not fenced off.
+     */
+    public synchronized void promote() {
+        Follower f = follower;
+        if (f == null) {
+            throw new IllegalStateException("Not a follower");
+        }
+        f.close();
+        follower = null;
+        if (Boolean.getBoolean("carehome.journal")) {
+            Journal.discard(home(JOURNAL_FILE));
+            journal = Journal.open(home(JOURNAL_FILE), this, 0);
+            save();
+        }
+        Integer port = Integer.getInteger("carehome.replication.port");
+        if (port != null) {
+            startReplication(port);
+        }
+    }
+
+    // Called by the Replicator for a follower that needs a full copy; attach runs while commits are held off
+    Snapshot.Image captureForFollower(Runnable attach) {
+        checkpointLock.writeLock().lock();
+        try {
+            flushAudit();
+            Snapshot.Image image = Snapshot.capture(this, Snapshot.Part.all(this), 0);
+            attach.run();
+            return image;
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Follower side: a snapshot from the primary replaces everything. It is
+     * read into a store of its own first, then swapped in under the write
+     * lock without emptying anything on the way: entities are replaced id by
+     * id, and open views see the old rows until the new ones are published
+     * as one version. The two stores share handles, so the entities keep the
+     * ones they were given on the way in.
+     */
+    void restoreFromPrimary(Path snapshot) throws IOException {
+        Store next = new Store(handles);
+        Snapshot.read(snapshot, next);
+        next.seedOccupancy();
+        checkpointLock.writeLock().lock();
+        try {
+            flushAudit();
+            replace(residents, next.residents);
+            replace(staff, next.staff);
+            replace(wards, next.wards);
+            replace(rooms, next.rooms);
+            replace(beds, next.beds);
+            replace(prescriptions, next.prescriptions);
+            replace(doseLimits, next.doseLimits);
+            occupancy.replaceWith(next.occupancy);
+            administrations.clear();
+            administrations.addAll(next.administrations);
+            logs.clear();
+            logs.addAll(next.logs);
+            logBase = next.logBase;
+            reindex();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    private static <T> void replace(Map<String, T> into, Map<String, T> from) {
+        into.putAll(from);
+        into.keySet().retainAll(from.keySet());
+    }
+
+    // Follower side: one committed record from the primary
+    void applyReplicated(byte[] record) throws IOException {
+        checkpointLock.readLock().lock();
+        try {
+            Mutation.replay(new DataInputStream(new ByteArrayInputStream(record)), this);
+            commits.increment();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    // Journal replay: entries go straight to the log, in journal order
+
+    void applyCommitted(Mutation m, ActionLog entry) {
+        if (m != null) {
+            m.apply(this);
+        }
+        if (entry != null) {
+            appendLog(entry);
         }
     }
 }
@@ -0,0 +1,42 @@
+package carehome.repo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense int codes to distinct strings (null is -1). Decoding is
+ * lock-free; encoding a new string takes a short lock.
+ */
+final class StringDictionary {
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final AppendOnlyList<String> values = new AppendOnlyList<>();
+
+    int encode(String s) {
+        if (s == null) {
+            return -1;
+        }
+        Integer c = codes.get(s);
+        if (c != null) {
+            return c;
+        }
+        synchronized (this) {
+            c = codes.get(s);
+            if (c == null) {
+                c = values.size();
+                values.add(s);
+                codes.put(s, c);
+            }
+            return c;
+        }
+    }
+
+    String decode(int code) {
+        return code < 0 ? null : values.get(code);
+    }
+
+    synchronized void clear() {
+        codes.clear();
+        values.clear();
+    }
+}
@@ -0,0 +1,77 @@
+package carehome.repo;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed pool of locks shared by key hash. Entities whose ids land on
+ * different stripes can be updated in parallel; lockBoth() and lockAll()
+ * always take stripes in index order, so two callers locking overlapping
+ * sets in different orders cannot deadlock.
+ */
+public final class StripedLock {
+
+    private final ReentrantLock[] stripes;
+
+    public StripedLock(int count) {
+        int n = Integer.highestOneBit(Math.max(1, count - 1)) << 1;
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    private int index(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    public ReentrantLock of(String key) {
+        return stripes[index(key)];
+    }
+
+    public void lock(String key) {
+        of(key).lock();
+    }
+
+    public void unlock(String key) {
+        of(key).unlock();
+    }
+
+    public void lockBoth(String a, String b) {
+        int i = index(a);
+        int j = index(b);
+        stripes[Math.min(i, j)].lock();
+        if (i != j) {
+            stripes[Math.max(i, j)].lock();
+        }
+    }
+
+    public void unlockBoth(String a, String b) {
+        int i = index(a);
+        int j = index(b);
+        if (i != j) {
+            stripes[Math.max(i, j)].unlock();
+        }
+        stripes[Math.min(i, j)].unlock();
+    }
+
+    /** Locks the stripes of every key, each once, in index order; returns them for unlockAll(). */
+    public BitSet lockAll(Collection<String> keys) {
+        BitSet held = new BitSet(stripes.length);
+        for (String key : keys) {
+            held.set(index(key));
+        }
+        for (int i = held.nextSetBit(0); i >= 0; i = held.nextSetBit(i + 1)) {
+            stripes[i].lock();
+        }
+        return held;
+    }
+
+    public void unlockAll(BitSet held) {
+        for (int i = held.previousSetBit(stripes.length - 1); i >= 0; i = held.previousSetBit(i - 1)) {
+            stripes[i].unlock();
+        }
+    }
+}
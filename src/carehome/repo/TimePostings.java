@@ -0,0 +1,129 @@
+package carehome.repo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Posting list of (epoch-millis, position) pairs in two primitive arrays
+ * kept sorted by time, then position. Entries almost always arrive in that
+ * order, so an append is O(1); a late entry is placed by binary search and
+ * only shifts the few entries after it.
+ */
+final class TimePostings {
+
+    private long[] millis = new long[8];
+    private int[] positions = new int[8];
+    private int size;
+
+    synchronized void add(long t, int position) {
+        if (size == positions.length) {
+            millis = Arrays.copyOf(millis, size * 2);
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        int at = size;
+        if (size > 0 && (millis[size - 1] > t || millis[size - 1] == t && positions[size - 1] > position)) {
+            at = lowerBound(t, position);
+            System.arraycopy(millis, at, millis, at + 1, size - at);
+            System.arraycopy(positions, at, positions, at + 1, size - at);
+        }
+        millis[at] = t;
+        positions[at] = position;
+        size++;
+    }
+
+    synchronized void clear() {
+        millis = new long[8];
+        positions = new int[8];
+        size = 0;
+    }
+
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(millis[i]);
+            out.writeInt(positions[i]);
+        }
+    }
+
+    /** Replaces the contents with a list written by {@link #writeTo}. */
+    synchronized void readFrom(DataInputStream in) throws IOException {
+        size = in.readInt();
+        millis = new long[Math.max(8, size)];
+        positions = new int[Math.max(8, size)];
+        for (int i = 0; i < size; i++) {
+            millis[i] = in.readLong();
+            positions[i] = in.readInt();
+        }
+    }
+
+    /** Positions with {@code from <= time < to}, oldest first. */
+    synchronized int[] range(long from, long to) {
+        int lo = lowerBound(from);
+        int hi = lowerBound(to);
+        return Arrays.copyOfRange(positions, lo, Math.max(lo, hi));
+    }
+
+    record Slice(long[] times, int[] positions) { }
+
+    /** Like {@link #range}, with each position's time alongside it. */
+    synchronized Slice slice(long from, long to) {
+        int lo = lowerBound(from);
+        int hi = Math.max(lo, lowerBound(to));
+        return new Slice(Arrays.copyOfRange(millis, lo, hi), Arrays.copyOfRange(positions, lo, hi));
+    }
+
+    /** Number of entries with {@code from <= time < to}. */
+    synchronized int count(long from, long to) {
+        return Math.max(0, lowerBound(to) - lowerBound(from));
+    }
+
+    /**
+     * Looks for (t, position) at or after index {@code from}, galloping
+     * forward so a run of ascending lookups touches each list only near
+     * where the last one ended. Returns the index if found, otherwise
+     * {@code -(insertion point) - 1}. Entries only ever shift to higher
+     * indexes, so a cursor from an earlier call stays a valid start.
+     */
+    synchronized int seek(long t, int position, int from) {
+        int lo = Math.min(from, size);
+        int step = 1;
+        int hi = lo;
+        while (hi < size && before(hi, t, position)) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, size);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (before(mid, t, position)) lo = mid + 1; else hi = mid;
+        }
+        return lo < size && millis[lo] == t && positions[lo] == position ? lo : -lo - 1;
+    }
+
+    private boolean before(int i, long t, int position) {
+        return millis[i] < t || millis[i] == t && positions[i] < position;
+    }
+
+    // first index with millis >= t
+    private int lowerBound(long t) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (millis[mid] < t) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // first index with (millis, position) >= (t, position)
+    private int lowerBound(long t, int position) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (before(mid, t, position)) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,215 @@
+package carehome.repo;
+
+import carehome.domain.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incrementally maintained index of vacant beds per ward.
+ *
+ * Each bed gets a dense slot within its ward. Per ward we keep bitsets of
+ * vacant slots, of slots in rooms that are empty, and of slots in rooms
+ * occupied by only one gender; per room we keep occupant counts by gender.
+ * Admissions and moves update a few bits, so counting vacancies is O(1)
+ * and finding a gender-compatible bed is O(words) instead of a scan over
+ * every Bed.
+ */
+public final class VacancyIndex {
+
+    private static final int GENDERS = Gender.values().length;
+
+    private final Map<String, WardSlots> wards = new ConcurrentHashMap<>();
+    private final Map<String, RoomSlots> rooms = new ConcurrentHashMap<>();
+    private final Map<String, BedSlot> beds = new ConcurrentHashMap<>();
+
+    private static final class WardSlots {
+        final List<String> bedIds = new ArrayList<>();
+        long[] vacant = new long[1];
+        long[] emptyRoom = new long[1];
+        long[][] sameGender = new long[GENDERS][1];
+        int vacancies;
+
+        void grow(int slot) {
+            int words = (slot >>> 6) + 1;
+            if (words > vacant.length) {
+                int n = Math.max(words, vacant.length * 2);
+                vacant = Arrays.copyOf(vacant, n);
+                emptyRoom = Arrays.copyOf(emptyRoom, n);
+                for (int g = 0; g < GENDERS; g++) {
+                    sameGender[g] = Arrays.copyOf(sameGender[g], n);
+                }
+            }
+        }
+    }
+
+    private static final class RoomSlots {
+        final WardSlots ward;
+        final List<Integer> slots = new ArrayList<>();
+        final int[] occupants = new int[GENDERS];
+
+        RoomSlots(WardSlots ward) {
+            this.ward = ward;
+        }
+    }
+
+    private record BedSlot(RoomSlots room, int slot) { }
+
+    // ---- Layout -----------------------------------------------------------------
+
+    void addWard(Ward w) {
+        wards.putIfAbsent(w.id(), new WardSlots());
+    }
+
+    void addRoom(Room r) {
+        WardSlots ward = wards.get(r.wardId());
+        if (ward != null) {
+            rooms.putIfAbsent(r.id(), new RoomSlots(ward));
+        }
+    }
+
+    void addBed(Bed b) {
+        RoomSlots room = rooms.get(b.roomId());
+        if (room == null || beds.containsKey(b.id())) {
+            return;
+        }
+        WardSlots ward = room.ward;
+        synchronized (ward) {
+            int slot = ward.bedIds.size();
+            ward.bedIds.add(b.id());
+            ward.grow(slot);
+            room.slots.add(slot);
+            beds.put(b.id(), new BedSlot(room, slot));
+            if (b.isVacant()) {
+                set(ward.vacant, slot, true);
+                ward.vacancies++;
+            } else if (b.genderTag() != null) {
+                room.occupants[b.genderTag().ordinal()]++;
+            }
+            refresh(room);
+        }
+    }
+
+    /** Rebuilds the whole index from the Store's layout maps. */
+    void rebuild(Store db) {
+        clear();
+        db.wards.values().forEach(this::addWard);
+        db.rooms.values().forEach(this::addRoom);
+        for (Ward w : db.wards.values()) {
+            for (int room : w.roomHandles()) {
+                Room r = db.rooms.get(room);
+                if (r == null) continue;
+                for (int bed : r.bedHandles()) {
+                    Bed b = db.beds.get(bed);
+                    if (b != null) addBed(b);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        wards.clear();
+        rooms.clear();
+        beds.clear();
+    }
+
+    // ---- Occupancy changes ------------------------------------------------------
+
+    void occupied(String bedId, Gender g) {
+        change(bedId, g, false);
+    }
+
+    void vacated(String bedId, Gender g) {
+        change(bedId, g, true);
+    }
+
+    private void change(String bedId, Gender g, boolean nowVacant) {
+        BedSlot b = beds.get(bedId);
+        if (b == null) {
+            return;
+        }
+        WardSlots ward = b.room.ward;
+        synchronized (ward) {
+            if (get(ward.vacant, b.slot) == nowVacant) {
+                return;
+            }
+            set(ward.vacant, b.slot, nowVacant);
+            ward.vacancies += nowVacant ? 1 : -1;
+            if (g != null) {
+                b.room.occupants[g.ordinal()] += nowVacant ? -1 : 1;
+                refresh(b.room);
+            }
+        }
+    }
+
+    // Re-derives the room-level bits for every bed in the room (rooms are small)
+    private static void refresh(RoomSlots room) {
+        int total = 0;
+        for (int c : room.occupants) total += c;
+        for (int slot : room.slots) {
+            set(room.ward.emptyRoom, slot, total == 0);
+            for (int g = 0; g < GENDERS; g++) {
+                set(room.ward.sameGender[g], slot, total > 0 && room.occupants[g] == total);
+            }
+        }
+    }
+
+    // ---- Queries ----------------------------------------------------------------
+
+    public boolean knowsWard(String wardId) {
+        return wards.containsKey(wardId);
+    }
+
+    public int countVacancies(String wardId) {
+        WardSlots ward = wards.get(wardId);
+        if (ward == null) {
+            return 0;
+        }
+        synchronized (ward) {
+            return ward.vacancies;
+        }
+    }
+
+    /**
+     * A vacant bed in the ward for a resident of gender {@code g}: preferably
+     * in a room already holding only that gender, otherwise in an empty room.
+     * Rooms occupied by another gender are never offered.
+     */
+    public Optional<String> findVacantBed(String wardId, Gender g) {
+        WardSlots ward = wards.get(wardId);
+        if (ward == null) {
+            return Optional.empty();
+        }
+        synchronized (ward) {
+            int slot = firstCommon(ward.vacant, ward.sameGender[g.ordinal()]);
+            if (slot < 0) {
+                slot = firstCommon(ward.vacant, ward.emptyRoom);
+            }
+            return slot < 0 ? Optional.empty() : Optional.of(ward.bedIds.get(slot));
+        }
+    }
+
+    // ---- Bit helpers ------------------------------------------------------------
+
+    private static int firstCommon(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            long w = a[i] & b[i];
+            if (w != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(w);
+            }
+        }
+        return -1;
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i, boolean on) {
+        if (on) {
+            bits[i >>> 6] |= 1L << i;
+        } else {
+            bits[i >>> 6] &= ~(1L << i);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package carehome.repo.legacy;
+
+/** Mirror of carehome.domain.Doctor for reading legacy store.dat files. */
+public final class Doctor extends Staff {
+
+    // Computed default of the original class, which declared none
+    private static final long serialVersionUID = -1264914581211734397L;
+}
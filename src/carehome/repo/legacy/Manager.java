@@ -0,0 +1,8 @@
+package carehome.repo.legacy;
+
+/** Mirror of carehome.domain.Manager for reading legacy store.dat files. */
+public final class Manager extends Staff {
+
+    // Computed default of the original class, which declared none
+    private static final long serialVersionUID = 3793353466254430879L;
+}
@@ -0,0 +1,8 @@
+package carehome.repo.legacy;
+
+/** Mirror of carehome.domain.Nurse for reading legacy store.dat files. */
+public final class Nurse extends Staff {
+
+    // Computed default of the original class, which declared none
+    private static final long serialVersionUID = -1160211194701770543L;
+}
@@ -0,0 +1,38 @@
+package carehome.repo.legacy;
+
+import carehome.domain.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Mirror of carehome.domain.Staff as it was serialized by the old save(),
+ * when the roster was a map of dates to shift sets.
+ */
+public abstract class Staff implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+    private String name;
+    private Role role;
+    private String password;
+    private Map<LocalDate, EnumSet<ShiftType>> roster;
+
+    /** Rebuilds the live domain object, roster included. */
+    public carehome.domain.Staff toStaff() {
+        carehome.domain.Staff s = switch (role) {
+            case MANAGER -> new carehome.domain.Manager(id, name);
+            case DOCTOR -> new carehome.domain.Doctor(id, name);
+            case NURSE -> new carehome.domain.Nurse(id, name);
+        };
+        if (password != null) {
+            s.setPassword(password);
+        }
+        if (roster != null) {
+            roster.forEach((day, shifts) -> shifts.forEach(t -> s.assignShift(day, t)));
+        }
+        return s;
+    }
+}
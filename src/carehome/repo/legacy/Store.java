@@ -0,0 +1,50 @@
+package carehome.repo.legacy;
+
+import carehome.domain.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Field-for-field mirror of carehome.repo.Store as it was written by the
+ * old ObjectOutputStream-based save(). Java serialization looks classes up
+ * by the fully qualified name recorded in the stream and checks their
+ * serialVersionUID, so {@link #read} overrides resolveClass() to map the
+ * old carehome.repo.Store and staff class names onto this class and the
+ * mirrors next to it, leaving the live Store and Staff free to change
+ * shape.
+ */
+public final class Store implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public Map<String, Resident> residents;
+    public Map<String, Staff> staff;
+    public Map<String, Ward> wards;
+    public Map<String, Room> rooms;
+    public Map<String, Bed> beds;
+    public Map<String, Prescription> prescriptions;
+    public List<AdministrationRecord> administrations;
+    public List<ActionLog> logs;
+
+    private Store() { }
+
+    public static Store read(Path file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(file)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                return switch (desc.getName()) {
+                    case "carehome.repo.Store" -> Store.class;
+                    case "carehome.domain.Staff" -> Staff.class;
+                    case "carehome.domain.Manager" -> Manager.class;
+                    case "carehome.domain.Doctor" -> Doctor.class;
+                    case "carehome.domain.Nurse" -> Nurse.class;
+                    default -> super.resolveClass(desc);
+                };
+            }
+        }) {
+            return (Store) ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package carehome.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR-style latency histogram: log-linear buckets with 16 linear steps per
+ * power of two, so any recorded value is reported within 1/16 (about 6%)
+ * of what was measured, from 1 ns up to about two hours. Recording is
+ * one bucket increment and two updates for the total and maximum, without
+ * locks or allocation.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 42;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(v));
+        total.addAndGet(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /** Mean in nanoseconds, or 0 if nothing was recorded. */
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * The value at quantile {@code q} (0..1) in nanoseconds: the upper
+     * edge of the bucket holding it, capped at the maximum seen.
+     */
+    public long percentile(double q) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperEdge(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    // Values below SUB map to themselves; above, SUB linear steps per power of two
+    static int bucket(long v) {
+        if (v < SUB) {
+            return (int) v;
+        }
+        int exp = Math.min(63 - Long.numberOfLeadingZeros(v), MAX_EXPONENT);
+        int sub = (int) (Math.min(v, (2L << MAX_EXPONENT) - 1) >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    static long upperEdge(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int exp = bucket / SUB + SUB_BITS - 1;
+        long sub = bucket % SUB;
+        return ((SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
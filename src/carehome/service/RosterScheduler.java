@@ -0,0 +1,342 @@
+package carehome.service;
+
+import carehome.domain.*;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Automatic roster generator.
+ *
+ * Builds a plan that puts at least {@code nursesPerWard} nurses on every
+ * NURSE_AM and NURSE_PM shift for each ward, and {@code doctorsPerDay}
+ * doctors on DOCTOR_1H, over {@code days} days. Rules: at most one shift
+ * per person per day (what the 8h nurse / 1h doctor limits allow), no
+ * more than {@code maxConsecutiveDays} working days in a row and
+ * {@code maxShiftsPerWeek} shifts in any plan week. Shifts already on the
+ * roster are kept and count toward coverage, the weekly limit and each
+ * person's fairness totals.
+ *
+ * Fairness is the objective: the sum of squared shift counts per person
+ * (and of weekend shifts), which is smallest when work is spread evenly.
+ * Each fork/join worker repeatedly builds a greedy plan from its own
+ * random seed and improves it by moving single shifts from busier to less
+ * busy staff, publishing any plan better than the best so far. The search
+ * stops at the time budget or as soon as a plan is perfectly balanced.
+ */
+public final class RosterScheduler {
+
+    public record Request(LocalDate start, int days, int nursesPerWard, int doctorsPerDay,
+                          int maxConsecutiveDays, int maxShiftsPerWeek, Duration budget) {
+
+        /** Defaults: one doctor a day, at most 5 days in a row and 5 shifts a week, 2s budget. */
+        public static Request weeks(LocalDate start, int weeks, int nursesPerWard) {
+            return new Request(start, weeks * 7, nursesPerWard, 1, 5, 5, Duration.ofSeconds(2));
+        }
+
+        public Request withBudget(Duration budget) {
+            return new Request(start, days, nursesPerWard, doctorsPerDay, maxConsecutiveDays, maxShiftsPerWeek, budget);
+        }
+    }
+
+    /**
+     * The best plan found. {@code shortfall} counts shift places that could
+     * not be filled within the rules; the plan is still the fairest found.
+     * The shift statistics count each person's existing shifts as well.
+     */
+    public record Result(List<ShiftAssignment> plan, int shortfall, IntSummaryStatistics nurseShifts,
+                         IntSummaryStatistics doctorShifts, int restarts) { }
+
+    private static final ShiftType[] TYPES = ShiftType.values();
+    private static final int SHORTFALL_WEIGHT = 1_000_000;
+
+    private final Request req;
+    private final Staff[] staff;
+    private final int n;
+    private final int days;
+    private final long startDay;
+    private final int[] need = new int[TYPES.length];    // per day, per shift type
+    private final boolean[][] canWork;                     // [staff][type]
+    private final boolean[][] booked;                      // [staff][day] already on the roster
+    private final int[][] preCovered;                      // [day][type] covered by existing shifts
+    private final int[] preCount;                          // [staff] existing shifts in the period
+    private final int[] preWeekendCount;                   // [staff] of which on weekends
+    private final int[][] preWeekCount;                    // [staff][plan week]
+    private final boolean[] weekend;
+
+    public RosterScheduler(Collection<Staff> staff, int wards, Request req) {
+        this.req = req;
+        this.staff = staff.stream()
+                          .filter(s -> s.role() == Role.NURSE || s.role() == Role.DOCTOR)
+                          .sorted(Comparator.comparing(Staff::id))
+                          .toArray(Staff[]::new);
+        this.n = this.staff.length;
+        this.days = req.days();
+        this.startDay = req.start().toEpochDay();
+        need[ShiftType.NURSE_AM.ordinal()] = req.nursesPerWard() * wards;
+        need[ShiftType.NURSE_PM.ordinal()] = req.nursesPerWard() * wards;
+        need[ShiftType.DOCTOR_1H.ordinal()] = req.doctorsPerDay();
+
+        canWork = new boolean[n][TYPES.length];
+        booked = new boolean[n][days];
+        preCovered = new int[days][TYPES.length];
+        preCount = new int[n];
+        preWeekendCount = new int[n];
+        preWeekCount = new int[n][(days + 6) / 7];
+        weekend = new boolean[days];
+        for (int d = 0; d < days; d++) {
+            DayOfWeek dow = req.start().plusDays(d).getDayOfWeek();
+            weekend[d] = dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY;
+        }
+        for (int s = 0; s < n; s++) {
+            Role role = this.staff[s].role();
+            canWork[s][ShiftType.NURSE_AM.ordinal()] = role == Role.NURSE;
+            canWork[s][ShiftType.NURSE_PM.ordinal()] = role == Role.NURSE;
+            canWork[s][ShiftType.DOCTOR_1H.ordinal()] = role == Role.DOCTOR;
+            RosterCalendar cal = this.staff[s].roster();
+            for (int d = 0; d < days; d++) {
+                int mask = cal.mask(startDay + d);
+                booked[s][d] = mask != 0;
+                int shifts = Integer.bitCount(mask);
+                preCount[s] += shifts;
+                preWeekCount[s][d / 7] += shifts;
+                if (weekend[d]) preWeekendCount[s] += shifts;
+                for (ShiftType t : TYPES) {
+                    if ((mask & RosterCalendar.bit(t)) != 0) preCovered[d][t.ordinal()]++;
+                }
+            }
+        }
+    }
+
+    // ---- Search -----------------------------------------------------------------
+
+    public Result solve() {
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        long deadline = System.nanoTime() + req.budget().toNanos();
+        Shared shared = new Shared();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            pool.invoke(new Search(shared, 0, workers, workers, deadline));
+        } finally {
+            pool.shutdown();
+        }
+        Plan best = shared.best;
+        return best == null ? result(new Plan(), 0) : result(best, shared.restarts.get());
+    }
+
+    private final class Shared {
+        volatile Plan best;
+        volatile boolean balanced;
+        final AtomicInteger restarts = new AtomicInteger();
+
+        synchronized void offer(Plan p) {
+            if (best == null || p.score < best.score) {
+                best = p.copy();
+                balanced = p.shortfall == 0 && p.isBalanced();
+            }
+        }
+    }
+
+    private final class Search extends RecursiveAction {
+        final Shared shared;
+        final int lo, hi, stride;
+        final long deadline;
+
+        Search(Shared shared, int lo, int hi, int stride, long deadline) {
+            this.shared = shared;
+            this.lo = lo;
+            this.hi = hi;
+            this.stride = stride;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Search(shared, lo, mid, stride, deadline),
+                          new Search(shared, mid, hi, stride, deadline));
+                return;
+            }
+            for (long seed = lo; !shared.balanced && System.nanoTime() < deadline; seed += stride) {
+                Random rnd = new Random(seed * 0x9E3779B97F4A7C15L + startDay);
+                Plan p = construct(rnd);
+                improve(p, rnd, deadline, shared);
+                shared.restarts.incrementAndGet();
+                shared.offer(p);
+            }
+        }
+    }
+
+    // ---- Plan state -------------------------------------------------------------
+
+    private final class Plan {
+        final byte[][] shift = new byte[n][days];   // -1 none, else ShiftType ordinal (new shifts only)
+        final int[] count = new int[n];             // existing shifts included
+        final int[] weekendCount = new int[n];
+        final int[][] weekCount = new int[n][(days + 6) / 7];
+        int shortfall;
+        long score;
+
+        Plan() {
+            for (int s = 0; s < n; s++) {
+                Arrays.fill(shift[s], (byte) -1);
+                weekCount[s] = preWeekCount[s].clone();
+            }
+            System.arraycopy(preCount, 0, count, 0, n);
+            System.arraycopy(preWeekendCount, 0, weekendCount, 0, n);
+        }
+
+        Plan copy() {
+            Plan c = new Plan();
+            for (int s = 0; s < n; s++) {
+                c.shift[s] = shift[s].clone();
+                c.weekCount[s] = weekCount[s].clone();
+            }
+            System.arraycopy(count, 0, c.count, 0, n);
+            System.arraycopy(weekendCount, 0, c.weekendCount, 0, n);
+            c.shortfall = shortfall;
+            c.score = score;
+            return c;
+        }
+
+        boolean working(int s, int d) {
+            return booked[s][d] || shift[s][d] >= 0;
+        }
+
+        boolean feasible(int s, int d, int t) {
+            if (!canWork[s][t] || working(s, d) || weekCount[s][d / 7] >= req.maxShiftsPerWeek()) {
+                return false;
+            }
+            int run = 1;
+            for (int x = d - 1; x >= 0 && working(s, x); x--) run++;
+            for (int x = d + 1; x < days && working(s, x); x++) run++;
+            return run <= req.maxConsecutiveDays();
+        }
+
+        void assign(int s, int d, int t) {
+            shift[s][d] = (byte) t;
+            count[s]++;
+            weekCount[s][d / 7]++;
+            if (weekend[d]) weekendCount[s]++;
+        }
+
+        void unassign(int s, int d) {
+            shift[s][d] = -1;
+            count[s]--;
+            weekCount[s][d / 7]--;
+            if (weekend[d]) weekendCount[s]--;
+        }
+
+        void rescore() {
+            long sq = 0;
+            for (int s = 0; s < n; s++) {
+                sq += (long) count[s] * count[s] + (long) weekendCount[s] * weekendCount[s];
+            }
+            score = (long) shortfall * SHORTFALL_WEIGHT + sq;
+        }
+
+        // Counts differ by at most one within each role, overall and on weekends
+        boolean isBalanced() {
+            for (Role role : new Role[] { Role.NURSE, Role.DOCTOR }) {
+                int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+                int wmin = Integer.MAX_VALUE, wmax = Integer.MIN_VALUE;
+                for (int s = 0; s < n; s++) {
+                    if (staff[s].role() != role) continue;
+                    min = Math.min(min, count[s]);
+                    max = Math.max(max, count[s]);
+                    wmin = Math.min(wmin, weekendCount[s]);
+                    wmax = Math.max(wmax, weekendCount[s]);
+                }
+                if (max - min > 1 || wmax - wmin > 1) return false;
+            }
+            return true;
+        }
+    }
+
+    // Greedy: each day, each shift goes to the eligible staff with the fewest shifts so far
+    private Plan construct(Random rnd) {
+        Plan p = new Plan();
+        Integer[] order = new Integer[n];
+        int[] tie = new int[n];
+        for (int d = 0; d < days; d++) {
+            for (int s = 0; s < n; s++) {
+                order[s] = s;
+                tie[s] = rnd.nextInt();
+            }
+            boolean we = weekend[d];
+            Arrays.sort(order, Comparator.<Integer>comparingInt(s -> p.count[s])
+                                         .thenComparingInt(s -> we ? p.weekendCount[s] : 0)
+                                         .thenComparingInt(s -> tie[s]));
+            for (int t = 0; t < TYPES.length; t++) {
+                int missing = need[t] - preCovered[d][t];
+                for (int i = 0; i < n && missing > 0; i++) {
+                    int s = order[i];
+                    if (p.feasible(s, d, t)) {
+                        p.assign(s, d, t);
+                        missing--;
+                    }
+                }
+                p.shortfall += Math.max(0, missing);
+            }
+        }
+        p.rescore();
+        return p;
+    }
+
+    // Local search: move one shift from a busier to a less busy colleague when that lowers the score
+    private void improve(Plan p, Random rnd, long deadline, Shared shared) {
+        if (n < 2) return;
+        int stale = 0;
+        int patience = Math.max(10_000, n * days);
+        for (int iter = 0; stale < patience; iter++) {
+            if ((iter & 1023) == 0 && (System.nanoTime() >= deadline || shared.balanced)) {
+                break;
+            }
+            int a = rnd.nextInt(n);
+            int d = rnd.nextInt(days);
+            int t = p.shift[a][d];
+            if (t < 0) {
+                stale++;
+                continue;
+            }
+            int b = rnd.nextInt(n);
+            if (b == a || !p.feasible(b, d, t)) {
+                stale++;
+                continue;
+            }
+            long delta = 2L * (p.count[b] - p.count[a]) + 2;
+            if (weekend[d]) {
+                delta += 2L * (p.weekendCount[b] - p.weekendCount[a]) + 2;
+            }
+            if (delta < 0 || delta == 0 && rnd.nextInt(8) == 0) {
+                p.unassign(a, d);
+                p.assign(b, d, t);
+                p.score += delta;
+                stale = delta < 0 ? 0 : stale + 1;
+            } else {
+                stale++;
+            }
+        }
+    }
+
+    private Result result(Plan p, int restarts) {
+        List<ShiftAssignment> plan = new ArrayList<>();
+        IntSummaryStatistics nurses = new IntSummaryStatistics();
+        IntSummaryStatistics doctors = new IntSummaryStatistics();
+        for (int s = 0; s < n; s++) {
+            for (int d = 0; d < days; d++) {
+                if (p.shift[s][d] >= 0) {
+                    plan.add(new ShiftAssignment(staff[s].id(), LocalDate.ofEpochDay(startDay + d), TYPES[p.shift[s][d]]));
+                }
+            }
+            (staff[s].role() == Role.NURSE ? nurses : doctors).accept(p.count[s]);
+        }
+        return new Result(plan, p.shortfall, nurses, doctors, restarts);
+    }
+}
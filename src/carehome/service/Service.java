@@ -2,24 +2,43 @@ package carehome.service;
 
 import carehome.domain.*;
 import carehome.exception.*;
+import carehome.repo.DoseWindows;
+import carehome.repo.Mutation;
+import carehome.repo.ReadView;
 import carehome.repo.Store;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Business logic façade for the system.
  * Contains methods for staff management, shift allocation,
  * resident/bed management, prescriptions, and administration.
+ *
+ * Safe to call from many threads: each operation holds the stripe lock
+ * of the bed(s) or staff member it reads and changes, so work on
+ * different wards runs in parallel.
+ *
+ * Every public method is timed and its failures counted by exception type
+ * in {@link ServiceMetrics} (off with -Dcarehome.metrics=false).
  */
 public class Service {
 
+    private static final AtomicLong lastPrescriptionId = new AtomicLong();
+
     private final Store db = Store.get();
+    private final ServiceMetrics metrics = ServiceMetrics.get();
 
     // ---- Logging & lookup helpers ------------------------------------------------
 
     private void log(String staffId, String type, String details) {
-        db.logs.add(new ActionLog(Instant.now(), staffId, type, details));
+        db.log(staffId, type, details);
+    }
+
+    /** Applies a validated mutation and logs it as one journal record. */
+    private void commit(Mutation m, String staffId, String type, String details) {
+        db.commit(m, staffId, type, details);
     }
 
     private <T> T get(Map<String, T> map, String id, String what) {
@@ -30,98 +49,346 @@ public class Service {
     // ---- Staff management --------------------------------------------------------
 
     public void addStaff(Manager manager, Staff newStaff, String password) {
-        requireManager(manager);
-        newStaff.setPassword(password);
-        db.staff.put(newStaff.id(), newStaff);
-        log(manager.id(), "ADD_STAFF", newStaff.toString());
+        metrics.timed("addStaff", () -> {
+            requireManager(manager);
+            Objects.requireNonNull(password);
+            db.staffLocks.lock(newStaff.id());
+            try {
+                if (db.staff.get(newStaff.id()) != null) {
+                    throw new IllegalArgumentException("Staff ID already in use: " + newStaff.id());
+                }
+                commit(new Mutation.AddStaff(newStaff, password), manager.id(), "ADD_STAFF", newStaff.toString());
+            } finally {
+                db.staffLocks.unlock(newStaff.id());
+            }
+        });
+    }
+
+    /**
+     * Adds the first manager to a store with no staff at all, e.g. from a
+     * setup script. Once anyone is on staff, only a manager can add staff.
+     */
+    public void addFirstManager(Manager manager, String password) {
+        metrics.timed("addFirstManager", () -> {
+            Objects.requireNonNull(password);
+            synchronized (db.staff) { // two first managers must not both see an empty staff
+                if (db.staff.size() > 0) {
+                    throw new AuthorizationException("Staff exist already; a manager must add new staff");
+                }
+                commit(new Mutation.AddStaff(manager, password), manager.id(), "ADD_STAFF", manager.toString());
+            }
+        });
     }
 
     public void modifyStaffPassword(Manager manager, String staffId, String newPassword) {
-        requireManager(manager);
-        Staff s = get(db.staff, staffId, "Staff");
-        s.setPassword(newPassword);
-        log(manager.id(), "MODIFY_STAFF_PWD", s.toString());
+        metrics.timed("modifyStaffPassword", () -> {
+            requireManager(manager);
+            Staff s = get(db.staff, staffId, "Staff");
+            Objects.requireNonNull(newPassword);
+            db.staffLocks.lock(staffId);
+            try {
+                commit(new Mutation.ChangePassword(staffId, newPassword), manager.id(), "MODIFY_STAFF_PWD", s.toString());
+            } finally {
+                db.staffLocks.unlock(staffId);
+            }
+        });
     }
 
     // ---- Shifts -----------------------------------------------------------------
 
     public void allocateShift(Manager manager, String staffId, LocalDate date, ShiftType type) {
-        requireManager(manager);
-        Staff s = get(db.staff, staffId, "Staff");
-        s.assignShift(date, type);
+        metrics.timed("allocateShift", () -> {
+            requireManager(manager);
+            Staff s = get(db.staff, staffId, "Staff");
+
+            db.staffLocks.lock(staffId);
+            try {
+                // Enforce per-day hour limits before touching the roster
+                int hours = s.hoursOn(date) + (s.hasShift(date, type) ? 0 : type.hours);
+                String violation = hourLimitViolation(s, date, hours);
+                if (violation != null) {
+                    throw new RosterException(violation);
+                }
+                commit(new Mutation.AssignShift(staffId, date, type),
+                       manager.id(), "ALLOCATE_SHIFT", staffId + " " + date + " " + type);
+            } finally {
+                db.staffLocks.unlock(staffId);
+            }
+        });
+    }
+
+    /**
+     * Applies a whole roster plan atomically. Every assignment is checked
+     * against the same per-day limits as allocateShift() in one pass, and
+     * all violations are reported together in a single RosterException; if
+     * there are none, the plan is committed as one mutation with one
+     * summarizing audit entry.
+     */
+    public void allocateShifts(Manager manager, Collection<ShiftAssignment> plan) {
+        metrics.timed("allocateShifts", () -> {
+            requireManager(manager);
+            applyShifts(manager, plan);
+        });
+    }
 
-        // Enforce per-day hour limits
-        int hours = s.hoursOn(date);
+    // allocateShifts() without its own timing, for operations that apply a plan as one step of theirs
+    private void applyShifts(Manager manager, Collection<ShiftAssignment> plan) {
+        if (plan.isEmpty()) {
+            return;
+        }
+        Set<String> staffIds = new HashSet<>();
+        for (ShiftAssignment a : plan) {
+            staffIds.add(a.staffId());
+        }
+
+        BitSet held = db.staffLocks.lockAll(staffIds);
+        try {
+            // staff -> epoch day -> resulting shift mask, seeded from the current roster
+            Map<String, Map<Long, Integer>> masks = new LinkedHashMap<>();
+            Set<String> violations = new LinkedHashSet<>();
+            LocalDate first = null, last = null;
+            for (ShiftAssignment a : plan) {
+                Staff s = db.staff.get(a.staffId());
+                if (s == null) {
+                    violations.add("Staff not found: " + a.staffId());
+                    staffIds.remove(a.staffId());
+                    continue;
+                }
+                long day = a.date().toEpochDay();
+                masks.computeIfAbsent(s.id(), id -> new TreeMap<>())
+                     .merge(day, s.roster().mask(day) | RosterCalendar.bit(a.type()), (x, y) -> x | y);
+                first = first == null || a.date().isBefore(first) ? a.date() : first;
+                last = last == null || a.date().isAfter(last) ? a.date() : last;
+            }
+            masks.forEach((id, days) -> days.forEach((day, mask) -> {
+                String violation = hourLimitViolation(db.staff.get(id), LocalDate.ofEpochDay(day),
+                                                      RosterCalendar.hoursOf(mask));
+                if (violation != null) {
+                    violations.add(id + ": " + violation);
+                }
+            }));
+            if (!violations.isEmpty()) {
+                throw new RosterException(List.copyOf(violations));
+            }
+            commit(new Mutation.AssignShifts(List.copyOf(plan)), manager.id(), "ALLOCATE_SHIFTS",
+                   plan.size() + " shifts for " + staffIds.size() + " staff, " + first + ".." + last);
+        } finally {
+            db.staffLocks.unlockAll(held);
+        }
+    }
+
+    /**
+     * Generates a roster for the request's period with RosterScheduler and
+     * applies the best plan found as allocateShifts() would. Places the
+     * solver could not fill are reported in the result's shortfall.
+     */
+    public RosterScheduler.Result generateRoster(Manager manager, RosterScheduler.Request request) {
+        return metrics.timed("generateRoster", () -> {
+            requireManager(manager);
+            RosterScheduler.Result result = new RosterScheduler(db.staff.values(), db.wards.size(), request).solve();
+            applyShifts(manager, result.plan());
+            if (result.shortfall() > 0) {
+                log(manager.id(), "ROSTER_SHORTFALL", result.shortfall() + " shift places unfilled from " + request.start());
+            }
+            return result;
+        });
+    }
+
+    // Per-day hour limits by role; null if {@code hours} is allowed
+    private static String hourLimitViolation(Staff s, LocalDate date, int hours) {
         if (s.role() == Role.NURSE && hours > 8) {
-            s.removeShift(date, type);
-            throw new RosterException("Nurse exceeds 8h on " + date);
+            return "Nurse exceeds 8h on " + date;
         }
         if (s.role() == Role.DOCTOR && hours > 1) {
-            s.removeShift(date, type);
-            throw new RosterException("Doctor exceeds 1h on " + date);
+            return "Doctor exceeds 1h on " + date;
         }
-        log(manager.id(), "ALLOCATE_SHIFT", staffId + " " + date + " " + type);
+        return null;
     }
 
+    /**
+     * Swaps one shift for another on a day; either may be null. The day's
+     * hours are checked as they will be after both changes, and the two
+     * are committed as one mutation, so a refused add leaves the removed
+     * shift in place.
+     */
     public void modifyShift(Manager manager, String staffId,
                             LocalDate date, ShiftType remove, ShiftType add) {
-        requireManager(manager);
-        Staff s = get(db.staff, staffId, "Staff");
+        metrics.timed("modifyShift", () -> {
+            requireManager(manager);
+            Staff s = get(db.staff, staffId, "Staff");
+
+            db.staffLocks.lock(staffId);
+            try {
+                ShiftType removed = remove != null && s.hasShift(date, remove) ? remove : null;
+                ShiftType added = add != null && (add == removed || !s.hasShift(date, add)) ? add : null;
+                if (added != null) {
+                    int hours = s.hoursOn(date) - (removed == null ? 0 : removed.hours) + added.hours;
+                    String violation = hourLimitViolation(s, date, hours);
+                    if (violation != null) {
+                        throw new RosterException(violation);
+                    }
+                }
+                commit(new Mutation.ModifyShift(staffId, date, removed, added),
+                       manager.id(), "MODIFY_SHIFT", staffId + " " + date + " -" + remove + " +" + add);
+            } finally {
+                db.staffLocks.unlock(staffId);
+            }
+        });
+    }
 
-        if (remove != null) {
-            s.removeShift(date, remove);
-        }
-        if (add != null) {
-            allocateShift(manager, staffId, date, add);
-        }
-        log(manager.id(), "MODIFY_SHIFT", staffId + " " + date + " -" + remove + " +" + add);
+    /** Staff whose shift window covers {@code when}, answered from the facility roster index. */
+    public List<Staff> whoIsOnDuty(LocalDateTime when) {
+        return metrics.timed("whoIsOnDuty", () -> {
+            return db.rosterIndex.onDuty(when);
+        });
     }
 
     // ---- Residents & beds -------------------------------------------------------
 
     public void addResidentToVacantBed(Manager manager, Resident r, String bedId) {
-        requireManager(manager);
+        metrics.timed("addResidentToVacantBed", () -> {
+            requireManager(manager);
+
+            Bed b = get(db.beds, bedId, "Bed");
+            db.bedLocks.lock(bedId);
+            try {
+                if (!b.isVacant()) {
+                    throw new AllocationException("Bed occupied: " + bedId);
+                }
+                commit(new Mutation.AdmitResident(r, bedId, Instant.now()), manager.id(), "ADD_RESIDENT", r.id() + " -> " + bedId);
+            } finally {
+                db.bedLocks.unlock(bedId);
+            }
+        });
+    }
 
-        Bed b = get(db.beds, bedId, "Bed");
-        if (!b.isVacant()) {
-            throw new AllocationException("Bed occupied: " + bedId);
-        }
+    public void moveResident(Nurse nurse, String fromBedId, String toBedId, LocalDateTime when) {
+        metrics.timed("moveResident", () -> {
+            requireRoleAndRoster(nurse, Role.NURSE, when);
+
+            Bed from = get(db.beds, fromBedId, "Bed");
+            Bed to   = get(db.beds, toBedId,   "Bed");
+
+            // Both beds are held for the whole check-and-move; lockBoth orders the stripes
+            db.bedLocks.lockBoth(fromBedId, toBedId);
+            try {
+                if (from.isVacant()) {
+                    throw new AllocationException("Source bed empty: " + fromBedId);
+                }
+                if (!to.isVacant()) {
+                    throw new AllocationException("Target bed occupied: " + toBedId);
+                }
+
+                Resident r = get(db.residents, from.residentId(), "Resident");
+
+                commit(new Mutation.MoveResident(r.id(), fromBedId, toBedId, toInstant(when)),
+                       nurse.id(), "MOVE_RESIDENT", r.id() + " " + fromBedId + " -> " + toBedId);
+            } finally {
+                db.bedLocks.unlockBoth(fromBedId, toBedId);
+            }
+        });
+    }
 
-        db.residents.put(r.id(), r);
-        b.occupy(r.id(), r.gender());
-        r.assignBed(b.id());
+    // ---- Occupancy history ------------------------------------------------------
 
-        log(manager.id(), "ADD_RESIDENT", r.id() + " -> " + bedId);
+    /** Who was in {@code bedId} at {@code when}. */
+    public Optional<String> occupantAt(String bedId, LocalDateTime when) {
+        return metrics.timed("occupantAt", () -> {
+            get(db.beds, bedId, "Bed");
+            return db.occupancy.occupant(bedId, toInstant(when));
+        });
     }
 
-    public void moveResident(Nurse nurse, String fromBedId, String toBedId, LocalDateTime when) {
-        requireRoleAndRoster(nurse, Role.NURSE, when);
+    /** Which bed {@code residentId} was in at {@code when}. */
+    public Optional<String> bedOfResidentAt(String residentId, LocalDateTime when) {
+        return metrics.timed("bedOfResidentAt", () -> {
+            get(db.residents, residentId, "Resident");
+            return db.occupancy.bedOf(residentId, toInstant(when));
+        });
+    }
 
-        Bed from = get(db.beds, fromBedId, "Bed");
-        Bed to   = get(db.beds, toBedId,   "Bed");
+    /** Stays in a bed overlapping [from, to), oldest first. */
+    public List<Stay> bedHistory(String bedId, LocalDateTime from, LocalDateTime to) {
+        return metrics.timed("bedHistory", () -> {
+            return db.occupancy.ofBed(bedId, toInstant(from), toInstant(to));
+        });
+    }
 
-        if (from.isVacant()) {
-            throw new AllocationException("Source bed empty: " + fromBedId);
-        }
-        if (!to.isVacant()) {
-            throw new AllocationException("Target bed occupied: " + toBedId);
-        }
+    /** A resident's stays overlapping [from, to), oldest first. */
+    public List<Stay> residentHistory(String residentId, LocalDateTime from, LocalDateTime to) {
+        return metrics.timed("residentHistory", () -> {
+            return db.occupancy.ofResident(residentId, toInstant(from), toInstant(to));
+        });
+    }
 
-        Resident r = get(db.residents, from.residentId(), "Resident");
+    /**
+     * Infection-control contact tracing: every resident who shared a room
+     * with {@code residentId} between {@code from} and {@code to}, one
+     * entry per overlapping stay, in time order.
+     */
+    public List<Contact> contactTrace(String residentId, LocalDateTime from, LocalDateTime to) {
+        return metrics.timed("contactTrace", () -> {
+            get(db.residents, residentId, "Resident");
+            Instant a = toInstant(from), b = toInstant(to);
+            List<Contact> out = new ArrayList<>();
+            for (Stay stay : db.occupancy.ofResident(residentId, a, b)) {
+                Instant s = later(stay.from(), a);
+                Instant e = stay.to() == null || stay.to().isAfter(b) ? b : stay.to();
+                Bed bed = db.beds.get(stay.bedId());
+                Room room = bed == null ? null : db.rooms.get(bed.roomHandle());
+                if (room == null) {
+                    continue;
+                }
+                for (int otherHandle : room.bedHandles()) {
+                    if (otherHandle == bed.handle()) {
+                        continue;
+                    }
+                    String other = db.handles().beds.id(otherHandle);
+                    for (Stay o : db.occupancy.ofBed(other, s, e)) {
+                        Instant oe = o.to() == null || o.to().isAfter(e) ? e : o.to();
+                        out.add(new Contact(o.residentId(), room.id(), other, later(o.from(), s), oe));
+                    }
+                }
+            }
+            out.sort(Comparator.comparing(Contact::from));
+            return out;
+        });
+    }
 
-        from.vacate();
-        to.occupy(r.id(), r.gender());
-        r.assignBed(to.id());
+    private static Instant later(Instant x, Instant y) {
+        return x.isAfter(y) ? x : y;
+    }
 
-        log(nurse.id(), "MOVE_RESIDENT", r.id() + " " + fromBedId + " -> " + toBedId);
+    /**
+     * A vacant bed in {@code wardId} suitable for a resident of gender {@code g}
+     * (a room with only that gender, else an empty room), from the vacancy index.
+     */
+    public Optional<String> findVacantBed(String wardId, Gender g) {
+        return metrics.timed("findVacantBed", () -> {
+            get(db.wards, wardId, "Ward");
+            return db.vacancies.findVacantBed(wardId, g);
+        });
+    }
+
+    public int countVacancies(String wardId) {
+        return metrics.timed("countVacancies", () -> {
+            get(db.wards, wardId, "Ward");
+            return db.vacancies.countVacancies(wardId);
+        });
     }
 
     public Resident checkResidentDetails(Staff staff, String bedId) {
-        Bed b = get(db.beds, bedId, "Bed");
-        if (b.isVacant()) {
-            throw new NotFoundException("No resident in bed: " + bedId);
-        }
-        return get(db.residents, b.residentId(), "Resident");
+        return metrics.timed("checkResidentDetails", () -> {
+            // Read from a view so a concurrent move can't be seen half-done, without taking the bed lock
+            try (ReadView view = db.openView()) {
+                ReadView.BedRow b = view.bed(bedId)
+                                        .orElseThrow(() -> new NotFoundException("Bed not found: " + bedId));
+                if (b.isVacant()) {
+                    throw new NotFoundException("No resident in bed: " + bedId);
+                }
+                return get(db.residents, b.residentId(), "Resident");
+            }
+        });
     }
 
     // ---- Prescriptions ----------------------------------------------------------
@@ -129,52 +396,277 @@ public class Service {
     public String doctorAttachPrescription(Doctor doctor, String bedId,
                                            List<Prescription.MedicationOrder> orders,
                                            LocalDateTime when) {
+        return metrics.timed("doctorAttachPrescription", () -> {
+            requireRoleAndRoster(doctor, Role.DOCTOR, when);
+
+            Bed b = get(db.beds, bedId, "Bed");
+            db.bedLocks.lock(bedId);
+            try {
+                if (b.isVacant()) {
+                    throw new NotFoundException("No resident in bed: " + bedId);
+                }
+
+                Resident r = get(db.residents, b.residentId(), "Resident");
+
+                String pid = "P-" + nextPrescriptionNumber();
+                Prescription p = new Prescription(pid, r.id(), doctor.id());
+                for (var mo : orders) {
+                    p.addOrder(compiled(mo));
+                }
+
+                commit(new Mutation.AttachPrescription(p),
+                       doctor.id(), "ADD_PRESCRIPTION", r.id() + " " + pid + " orders=" + orders.size());
+                return pid;
+            } finally {
+                db.bedLocks.unlock(bedId);
+            }
+        });
+    }
+
+    /** Stops one active order on the resident's chart. */
+    public void stopMedication(Doctor doctor, String bedId, String prescriptionId, int orderIndex,
+                               LocalDateTime when) {
+        metrics.timed("stopMedication", () -> {
+            reviseOrder(doctor, bedId, prescriptionId, orderIndex, null, when);
+        });
+    }
+
+    /**
+     * Replaces one active order with {@code replacement}: the old order is
+     * stopped and a new prescription holding the replacement is attached,
+     * in one commit. Returns the new prescription's id.
+     */
+    public String modifyMedication(Doctor doctor, String bedId, String prescriptionId, int orderIndex,
+                                   Prescription.MedicationOrder replacement, LocalDateTime when) {
+        return metrics.timed("modifyMedication", () -> {
+            return reviseOrder(doctor, bedId, prescriptionId, orderIndex, Objects.requireNonNull(replacement), when);
+        });
+    }
+
+    private String reviseOrder(Doctor doctor, String bedId, String prescriptionId, int orderIndex,
+                               Prescription.MedicationOrder replacement, LocalDateTime when) {
         requireRoleAndRoster(doctor, Role.DOCTOR, when);
 
         Bed b = get(db.beds, bedId, "Bed");
-        if (b.isVacant()) {
-            throw new NotFoundException("No resident in bed: " + bedId);
+        db.bedLocks.lock(bedId);
+        try {
+            if (b.isVacant()) {
+                throw new NotFoundException("No resident in bed: " + bedId);
+            }
+            Resident r = get(db.residents, b.residentId(), "Resident");
+            Prescription p = get(db.prescriptions, prescriptionId, "Prescription");
+            if (!p.residentId().equals(r.id()) || orderIndex < 0 || orderIndex >= p.orders().size()
+                    || !p.isActive(orderIndex)) {
+                throw new NotFoundException("No active order " + prescriptionId + "#" + orderIndex + " for " + r.id());
+            }
+
+            Instant now = Instant.now();
+            Prescription next = null;
+            if (replacement != null) {
+                next = new Prescription("P-" + nextPrescriptionNumber(), r.id(), doctor.id(), now);
+                next.addOrder(compiled(replacement));
+            }
+            String nextId = next == null ? null : next.id();
+            commit(new Mutation.ReviseOrder(prescriptionId, orderIndex, new OrderStop(now, doctor.id(), nextId), next),
+                   doctor.id(), next == null ? "STOP_MEDICATION" : "MODIFY_MEDICATION",
+                   r.id() + " " + prescriptionId + "#" + orderIndex + (next == null ? "" : " -> " + nextId + " " + replacement));
+            return nextId;
+        } finally {
+            db.bedLocks.unlock(bedId);
         }
+    }
 
-        Resident r = get(db.residents, b.residentId(), "Resident");
+    /** The resident's current medication chart; served as is, without copying. */
+    public MedicationChart medicationChart(String residentId) {
+        return metrics.timed("medicationChart", () -> {
+            get(db.residents, residentId, "Resident");
+            return db.medicationCharts.of(residentId);
+        });
+    }
 
-        String pid = "P-" + System.nanoTime();
-        Prescription p = new Prescription(pid, r.id(), doctor.id());
-        for (var mo : orders) {
-            p.addOrder(mo);
-        }
+    /** Charts of every resident in a ward, in room and bed order, for a ward round. */
+    public List<MedicationChart> wardRound(String wardId) {
+        return metrics.timed("wardRound", () -> {
+            Ward w = get(db.wards, wardId, "Ward");
+            List<MedicationChart> out = new ArrayList<>();
+            for (int roomHandle : w.roomHandles()) {
+                Room room = db.rooms.get(roomHandle);
+                for (int bedHandle : room == null ? new int[0] : room.bedHandles()) {
+                    Bed bed = db.beds.get(bedHandle);
+                    if (bed != null && !bed.isVacant()) {
+                        out.add(db.medicationCharts.of(bed.residentId()));
+                    }
+                }
+            }
+            return out;
+        });
+    }
 
-        db.prescriptions.put(pid, p);
-        r.attachPrescription(pid);
+    // Compiles the schedule once here; the dose wheel and reconciliation reuse it
+    private static Prescription.MedicationOrder compiled(Prescription.MedicationOrder mo) {
+        try {
+            mo.compiledSchedule();
+        } catch (IllegalArgumentException e) {
+            throw new ScheduleException(mo.drug + ": " + e.getMessage());
+        }
+        return mo;
+    }
 
-        log(doctor.id(), "ADD_PRESCRIPTION", r.id() + " " + pid + " orders=" + orders.size());
-        return pid;
+    // nanoTime-based like before, but never handing out the same number twice
+    private static long nextPrescriptionNumber() {
+        long now = System.nanoTime();
+        return lastPrescriptionId.accumulateAndGet(now, (last, t) -> Math.max(last + 1, t));
     }
 
     public void administer(Nurse nurse, String bedId,
                            String drug, double dose, String unit, String notes,
                            LocalDateTime when) {
-        requireRoleAndRoster(nurse, Role.NURSE, when);
+        metrics.timed("administer", () -> {
+            requireRoleAndRoster(nurse, Role.NURSE, when);
+
+            Bed b = get(db.beds, bedId, "Bed");
+            db.bedLocks.lock(bedId);
+            try {
+                if (b.isVacant()) {
+                    throw new NotFoundException("No resident in bed: " + bedId);
+                }
+
+                Resident r = get(db.residents, b.residentId(), "Resident");
+
+                var rec = new AdministrationRecord(
+                    r.id(),
+                    drug,
+                    dose,
+                    unit,
+                    toInstant(when),
+                    nurse.id(),
+                    notes
+                );
+                checkDoseLimit(rec);
+
+                commit(new Mutation.Administer(rec), nurse.id(), "ADMINISTER", r.id() + " " + drug + " " + dose + unit);
+            } finally {
+                db.bedLocks.unlock(bedId);
+            }
+        });
+    }
 
-        Bed b = get(db.beds, bedId, "Bed");
-        if (b.isVacant()) {
-            throw new NotFoundException("No resident in bed: " + bedId);
+    /** Doses due facility-wide with {@code from <= time < from + window}, in time order. */
+    public List<DueDose> dosesDue(LocalDateTime from, Duration window) {
+        return metrics.timed("dosesDue", () -> {
+            return db.doseWheel.due(from, from.plus(window));
+        });
+    }
+
+    /**
+     * Missed, late, duplicate and unscheduled doses for a resident from
+     * {@code from} up to {@code asOf}, in time order.
+     */
+    public List<DoseFinding> reconcileResident(String residentId, LocalDateTime from, LocalDateTime asOf) {
+        return metrics.timed("reconcileResident", () -> {
+            get(db.residents, residentId, "Resident");
+            return db.doseReconciler.findings(residentId, from, asOf);
+        });
+    }
+
+    /** Doses missed across the facility from {@code from} up to {@code asOf}, in time order. */
+    public List<DoseFinding> missedDoses(LocalDateTime from, LocalDateTime asOf) {
+        return metrics.timed("missedDoses", () -> {
+            return db.doseReconciler.missed(from, asOf);
+        });
+    }
+
+    // ---- Dose limits -------------------------------------------------------------
+
+    /** Sets the most of {@code drug} any resident may be given in 24 hours. */
+    public void setDailyDoseLimit(Manager manager, String drug, double maxPer24h, String unit) {
+        metrics.timed("setDailyDoseLimit", () -> {
+            requireManager(manager);
+            if (!(maxPer24h > 0)) {
+                throw new IllegalArgumentException("Daily limit must be positive: " + maxPer24h);
+            }
+            commit(new Mutation.SetDoseLimit(new DoseLimit(drug, maxPer24h, unit)),
+                   manager.id(), "SET_DOSE_LIMIT", drug + " " + maxPer24h + unit + "/24h");
+        });
+    }
+
+    /**
+     * Amount of {@code drug} in {@code unit} given to a resident in the 24h
+     * window ending at {@code when}, in the 15-minute buckets of DoseWindows:
+     * from the rolling window counters, or a history scan for times before
+     * the resident's latest dose of it.
+     */
+    public double doseInLast24h(String residentId, String drug, String unit, LocalDateTime when) {
+        return metrics.timed("doseInLast24h", () -> {
+            return busiestWindow(residentId, drug, unit, toInstant(when).toEpochMilli(), false);
+        });
+    }
+
+    // Caller holds the resident's bed lock, so the total cannot change before the commit
+    private void checkDoseLimit(AdministrationRecord rec) {
+        DoseLimit limit = db.doseLimits.get(rec.drug().toLowerCase(Locale.ROOT));
+        if (limit == null) {
+            return;
+        }
+        if (!Objects.equals(lower(limit.unit()), lower(rec.unit()))) {
+            throw new DoseLimitException("Daily limit for " + limit.drug() + " is in " + limit.unit()
+                                         + ", dose given in " + rec.unit());
+        }
+        double already = busiestWindow(rec.residentId(), rec.drug(), rec.unit(), rec.time().toEpochMilli(), true);
+        if (already + rec.dose() > limit.maxPer24h() + 1e-9) {
+            throw new DoseLimitException(rec.residentId() + " has had " + already + rec.unit() + " of " + rec.drug()
+                                         + " in 24h; " + rec.dose() + " more exceeds the limit of "
+                                         + limit.maxPer24h() + limit.unit());
+        }
+    }
+
+    /*
+     * Total in the window ending at millis or, with orLater, the most in any
+     * window that contains millis, i.e. any ending from millis up to a day
+     * later: a back-dated dose also counts towards the windows running past
+     * it. With no dose on record after millis the window ending at millis
+     * is the busiest, and the ring answers; otherwise the history around
+     * millis is summed over the ring's buckets.
+     */
+    private double busiestWindow(String residentId, String drug, String unit, long millis, boolean orLater) {
+        double total = db.doseWindows.total(residentId, drug, unit, millis);
+        if (!Double.isNaN(total)) {
+            return total;
+        }
+        long end = orLater ? DoseWindows.lastWindowEnd(millis) : DoseWindows.windowEnd(millis);
+        List<AdministrationRecord> near = new ArrayList<>();
+        for (AdministrationRecord a : db.administrationIndex.forResident(residentId,
+                Instant.ofEpochMilli(DoseWindows.windowStart(millis)), Instant.ofEpochMilli(end))) {
+            if (a.drug().equalsIgnoreCase(drug) && Objects.equals(lower(a.unit()), lower(unit))) {
+                near.add(a);
+            }
         }
+        return DoseWindows.busiest(near, millis, orLater);
+    }
 
-        Resident r = get(db.residents, b.residentId(), "Resident");
+    private static String lower(String s) {
+        return s == null ? null : s.toLowerCase(Locale.ROOT);
+    }
 
-        var rec = new AdministrationRecord(
-            r.id(),
-            drug,
-            dose,
-            unit,
-            Instant.from(when.atZone(ZoneId.systemDefault())),
-            nurse.id(),
-            notes
-        );
+    // ---- Administration history -------------------------------------------------
 
-        db.administrations.add(rec);
-        log(nurse.id(), "ADMINISTER", r.id() + " " + drug + " " + dose + unit);
+    /** Doses given to a resident with {@code from <= time < to}, oldest first. */
+    public List<AdministrationRecord> administrationsForResident(String residentId,
+                                                                 LocalDateTime from, LocalDateTime to) {
+        return metrics.timed("administrationsForResident", () -> {
+            return db.administrationIndex.forResident(residentId, toInstant(from), toInstant(to));
+        });
+    }
+
+    /** Doses of a drug (any resident, case-insensitive) with {@code from <= time < to}, oldest first. */
+    public List<AdministrationRecord> administrationsOfDrug(String drug, LocalDateTime from, LocalDateTime to) {
+        return metrics.timed("administrationsOfDrug", () -> {
+            return db.administrationIndex.forDrug(drug, toInstant(from), toInstant(to));
+        });
+    }
+
+    private static Instant toInstant(LocalDateTime when) {
+        return Instant.from(when.atZone(ZoneId.systemDefault()));
     }
 
     // ---- Role/roster guards -----------------------------------------------------
@@ -189,7 +681,14 @@ public class Service {
         if (who == null || who.role() != role) {
             throw new AuthorizationException("Must be " + role);
         }
-        if (!who.isRosteredAt(when)) {
+        boolean rostered;
+        db.staffLocks.lock(who.id());
+        try {
+            rostered = who.isRosteredAt(when);
+        } finally {
+            db.staffLocks.unlock(who.id());
+        }
+        if (!rostered) {
             throw new AuthorizationException("Not rostered at " + when);
         }
     }
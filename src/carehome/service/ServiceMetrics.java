@@ -0,0 +1,244 @@
+package carehome.service;
+
+import carehome.repo.Checkpointer;
+import carehome.repo.Follower;
+import carehome.repo.Replicator;
+import carehome.repo.Store;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Per-operation latency histograms and outcome counters for the public
+ * Service methods, plus gauges for the Store's collection sizes.
+ *
+ * On by default; -Dcarehome.metrics=false turns it off entirely, leaving
+ * only a constant check in each Service call. When on, a call costs two
+ * nanoTime() reads, a map lookup and a few uncontended atomic updates,
+ * and the metrics are registered with the platform MBean server.
+ */
+public final class ServiceMetrics implements ServiceMetricsMXBean {
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("carehome.metrics", "true"));
+
+    private static final ServiceMetrics INSTANCE = new ServiceMetrics();
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                                 .registerMBean(INSTANCE, new ObjectName("carehome:type=ServiceMetrics"));
+            } catch (JMException e) {
+                // Already registered by another class loader; this instance still counts
+            }
+        }
+    }
+
+    /** Counters and latencies of one Service method. */
+    public static final class Operation {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<String, LongAdder> failures = new ConcurrentHashMap<>(); // by exception simple name
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        public long calls() {
+            return latency.count();
+        }
+
+        public long failures() {
+            return failures.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        public long failures(Class<? extends Throwable> type) {
+            LongAdder n = failures.get(type.getSimpleName());
+            return n == null ? 0 : n.sum();
+        }
+
+        public LatencyHistogram latency() {
+            return latency;
+        }
+    }
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private ServiceMetrics() { }
+
+    public static ServiceMetrics get() {
+        return INSTANCE;
+    }
+
+    /** Runs {@code body} as one call of {@code operation}, timing it and counting its outcome. */
+    <T> T timed(String operation, Supplier<T> body) {
+        if (!ENABLED) {
+            return body.get();
+        }
+        Operation op = operations.computeIfAbsent(operation, Operation::new);
+        long t0 = System.nanoTime();
+        try {
+            return body.get();
+        } catch (RuntimeException | Error e) {
+            op.failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+            throw e;
+        } finally {
+            op.latency.record(System.nanoTime() - t0);
+        }
+    }
+
+    void timed(String operation, Runnable body) {
+        timed(operation, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /** Metrics of one Service method, if it has been called. */
+    public Optional<Operation> operation(String name) {
+        return Optional.ofNullable(operations.get(name));
+    }
+
+    // ---- MBean ------------------------------------------------------------------
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        Map<String, Long> out = new TreeMap<>();
+        operations.forEach((name, op) -> out.put(name, op.calls()));
+        return out;
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> out = new TreeMap<>();
+        operations.forEach((name, op) -> op.failures.forEach((type, n) -> out.put(name + ":" + type, n.sum())));
+        return out;
+    }
+
+    @Override
+    public Map<String, Double> getMeanMicros() {
+        return latencies(h -> h.mean());
+    }
+
+    @Override
+    public Map<String, Double> getP50Micros() {
+        return latencies(h -> (double) h.percentile(0.50));
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+        return latencies(h -> (double) h.percentile(0.99));
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+        return latencies(h -> (double) h.max());
+    }
+
+    private Map<String, Double> latencies(ToDoubleFunction<LatencyHistogram> nanos) {
+        Map<String, Double> out = new TreeMap<>();
+        operations.forEach((name, op) -> out.put(name, nanos.applyAsDouble(op.latency) / 1000));
+        return out;
+    }
+
+    @Override
+    public Map<String, Long> getStoreSizes() {
+        Store db = Store.get();
+        Map<String, Long> out = new LinkedHashMap<>();
+        out.put("residents", (long) db.residents.size());
+        out.put("staff", (long) db.staff.size());
+        out.put("wards", (long) db.wards.size());
+        out.put("rooms", (long) db.rooms.size());
+        out.put("beds", (long) db.beds.size());
+        out.put("prescriptions", (long) db.prescriptions.size());
+        out.put("administrations", (long) db.administrations.size());
+        out.put("logs", (long) db.logs.size());
+        out.put("doseLimits", (long) db.doseLimits.size());
+        out.put("openViews", (long) db.readModel.openViews());
+        out.put("viewVersionsPinned", db.readModel.version() - db.readModel.oldestPinned());
+        return out;
+    }
+
+    @Override
+    public Map<String, Long> getCheckpoints() {
+        Checkpointer c = Store.get().checkpointer();
+        Map<String, Long> out = new LinkedHashMap<>();
+        out.put("written", c.checkpoints());
+        out.put("failed", c.failures());
+        out.put("lastPauseMicros", c.lastPauseNanos() / 1000);
+        out.put("maxPauseMicros", c.maxPauseNanos() / 1000);
+        out.put("lastWriteMillis", c.lastWriteNanos() / 1_000_000);
+        out.put("maxWriteMillis", c.maxWriteNanos() / 1_000_000);
+        out.put("lastWardsWritten", (long) c.lastWardsWritten());
+        out.put("lagMillis", c.lagMillis());
+        out.put("pendingCommits", c.pendingCommits());
+        return out;
+    }
+
+    @Override
+    public Map<String, Long> getReplication() {
+        Store db = Store.get();
+        Map<String, Long> out = new LinkedHashMap<>();
+        Follower f = db.follower();
+        if (f != null) {
+            out.put("connected", f.connected() ? 1L : 0L);
+            out.put("appliedSeq", f.appliedSeq());
+            out.put("lagRecords", f.lagRecords());
+            out.put("millisSinceContact", f.millisSinceContact());
+            out.put("snapshots", f.snapshots());
+        }
+        Replicator r = db.replicator();
+        if (r != null) {
+            out.put("followers", (long) r.followers());
+            out.put("seq", r.seq());
+            out.put("lagRecords", r.maxLagRecords());
+            out.put("lagMillis", r.maxLagMillis());
+            out.put("snapshotsSent", r.snapshotsSent());
+        }
+        return out;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        if (!ENABLED) {
+            sb.append("Service metrics are off (-Dcarehome.metrics=false)\n");
+        } else {
+            sb.append(String.format("%-26s %9s %7s %10s %10s %10s %10s %10s%n",
+                    "operation", "calls", "failed", "mean us", "p50 us", "p90 us", "p99 us", "max us"));
+            new TreeMap<>(operations).forEach((name, op) -> {
+                LatencyHistogram h = op.latency;
+                sb.append(String.format("%-26s %9d %7d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, op.calls(),
+                        op.failures(), h.mean() / 1000, h.percentile(0.50) / 1000.0, h.percentile(0.90) / 1000.0,
+                        h.percentile(0.99) / 1000.0, h.max() / 1000.0));
+                new TreeMap<>(op.failures).forEach((type, n) ->
+                        sb.append(String.format("%-26s %9s %7d%n", "  " + type, "", n.sum())));
+            });
+        }
+        sb.append("store:");
+        getStoreSizes().forEach((k, v) -> sb.append(' ').append(k).append('=').append(v));
+        sb.append("\ncheckpoints:");
+        getCheckpoints().forEach((k, v) -> sb.append(' ').append(k).append('=').append(v));
+        Map<String, Long> replication = getReplication();
+        if (!replication.isEmpty()) {
+            sb.append(Store.get().follower() != null ? "\nfollowing:" : "\nreplication:");
+            replication.forEach((k, v) -> sb.append(' ').append(k).append('=').append(v));
+        }
+        return sb.append('\n').toString();
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+    }
+}
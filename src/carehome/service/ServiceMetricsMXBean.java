@@ -0,0 +1,49 @@
+package carehome.service;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ServiceMetrics}, registered as
+ * {@code carehome:type=ServiceMetrics}. Maps are keyed by Service method
+ * name; latencies are in microseconds.
+ */
+public interface ServiceMetricsMXBean {
+
+    boolean isEnabled();
+
+    /** Calls per operation, failed ones included. */
+    Map<String, Long> getCalls();
+
+    /** Failed calls keyed "operation:ExceptionType". */
+    Map<String, Long> getFailures();
+
+    Map<String, Double> getMeanMicros();
+
+    Map<String, Double> getP50Micros();
+
+    Map<String, Double> getP99Micros();
+
+    Map<String, Double> getMaxMicros();
+
+    /** Current sizes of the Store's collections, and how many read views are open and how far back they pin. */
+    Map<String, Long> getStoreSizes();
+
+    /**
+     * Checkpoint counts, last and worst commit pause and write time, ward
+     * files the last one rewrote, and how far the snapshot on disk lags.
+     */
+    Map<String, Long> getCheckpoints();
+
+    /**
+     * On a primary serving followers: followers, last record seq, records
+     * and millis the furthest-behind one lags, snapshots sent. On a
+     * follower: whether connected, seq applied, records behind, millis
+     * since the primary was heard from, snapshots received. Empty otherwise.
+     */
+    Map<String, Long> getReplication();
+
+    /** Everything above as the table the CLI prints. */
+    String getReport();
+
+    void reset();
+}
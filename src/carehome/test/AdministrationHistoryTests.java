@@ -0,0 +1,36 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+
+import java.time.*;
+
+/**
+ * Administration history: range queries by resident and by drug, oldest first.
+ */
+public class AdministrationHistoryTests extends FacilityFixture {
+
+    @Test
+    void administrationHistory_rangeQueriesByResidentAndDrug() {
+        LocalDate today = LocalDate.now();
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        svc.allocateShift(mgr, nurse.id(), today, ShiftType.NURSE_AM);
+        for (int h = 8; h < 16; h++) {
+            svc.administer(nurse, b1.id(), h % 2 == 0 ? "DrugA" : "DrugB", 1, "tab", "",
+                           LocalDateTime.of(today, LocalTime.of(h, 0)));
+        }
+
+        var morning = svc.administrationsForResident("R1",
+            LocalDateTime.of(today, LocalTime.of(8, 0)), LocalDateTime.of(today, LocalTime.of(12, 0)));
+        assertEquals(4, morning.size());
+        assertTrue(morning.get(0).time().isBefore(morning.get(3).time()));
+
+        var drugA = svc.administrationsOfDrug("druga",
+            LocalDateTime.of(today, LocalTime.MIN), LocalDateTime.of(today.plusDays(1), LocalTime.MIN));
+        assertEquals(4, drugA.size());
+        assertTrue(svc.administrationsForResident("nobody",
+            LocalDateTime.of(today, LocalTime.MIN), LocalDateTime.of(today.plusDays(1), LocalTime.MIN)).isEmpty());
+    }
+}
@@ -0,0 +1,307 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.ActionLog;
+import carehome.repo.AuditArchive;
+import carehome.repo.AuditPipeline;
+import carehome.repo.AuditPipeline.BackPressure;
+import carehome.repo.AuditQuery;
+import carehome.repo.Store;
+
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tests for the asynchronous audit pipeline.
+ * Covers:
+ *  - many producers, nothing lost, per-producer order kept
+ *  - flush() makes entries visible in the log
+ *  - DROP back-pressure discards and counts instead of blocking
+ *  - a dead consumer fails BLOCK producers instead of hanging them
+ *  - the rolling archive: sealing, window queries, compaction, retention
+ *    and lining up with an older checkpoint after a restart
+ *  - indexed search by staff, type, details words and time range, from
+ *    per-segment indexes saved with the archive
+ */
+public class AuditTests {
+
+    static final Instant DAY1 = Instant.parse("2026-09-01T08:00:00Z");
+
+    Path archiveDir;
+
+    @BeforeEach
+    void setup() throws Exception {
+        archiveDir = Files.createTempDirectory("archive");
+    }
+
+    @AfterEach
+    void cleanup() throws Exception {
+        try (var files = Files.walk(archiveDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    void manyProducers_flushKeepsEverythingInOrder() throws Exception {
+        int producers = 4;
+        int each = 20_000;
+        List<ActionLog> log = Collections.synchronizedList(new ArrayList<>());
+        try (AuditPipeline audit = new AuditPipeline(log::add, 256, BackPressure.BLOCK)) {
+            ExecutorService pool = Executors.newFixedThreadPool(producers);
+            List<Future<?>> done = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                String staffId = "S" + p;
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < each; i++) {
+                        assertTrue(audit.publish(Instant.now(), staffId, "TEST", Integer.toString(i)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+            audit.flush();
+
+            assertEquals(producers * each, log.size());
+            assertEquals(0, audit.backlog());
+            assertEquals(0, audit.dropped());
+            assertInProducerOrder(log, producers, each);
+        }
+    }
+
+    @Test
+    void dropPolicy_countsWhatItDiscards() throws Exception {
+        List<ActionLog> log = new CopyOnWriteArrayList<>();
+        // a slow target keeps the consumer behind so the ring fills up
+        List<ActionLog> slow = new SlowList(log);
+        int sent = 5_000;
+        int accepted = 0;
+        try (AuditPipeline audit = new AuditPipeline(slow::add, 16, BackPressure.DROP)) {
+            for (int i = 0; i < sent; i++) {
+                if (audit.publish(Instant.now(), "S", "TEST", Integer.toString(i))) {
+                    accepted++;
+                }
+            }
+            audit.flush();
+            assertTrue(audit.dropped() > 0, "expected some entries to be dropped");
+            assertEquals(sent, accepted + audit.dropped());
+            assertEquals(accepted, log.size());
+        }
+    }
+
+    @Test
+    void deadConsumer_failsBlockedProducersInsteadOfHangingThem() throws Exception {
+        AuditPipeline audit = new AuditPipeline(l -> { throw new IllegalStateException("sink broken"); },
+                4, BackPressure.BLOCK);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> producer = pool.submit(() -> {
+            for (int i = 0; i < 100; i++) {
+                audit.publish(Instant.now(), "S", "TEST", Integer.toString(i));
+            }
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> producer.get(10, TimeUnit.SECONDS));
+        assertEquals("Audit consumer has stopped", e.getCause().getMessage());
+        assertEquals("sink broken", e.getCause().getCause().getMessage());
+        assertThrows(IllegalStateException.class, audit::flush);
+        pool.shutdown();
+    }
+
+    @Test
+    void archive_rollsSegmentsAndStreamsAWindow() {
+        List<ActionLog> hot = new ArrayList<>();
+        AuditArchive archive = new AuditArchive(archiveDir, hot, 100, Duration.ZERO);
+        for (int i = 0; i < 1_000; i++) {
+            archive.append(new ActionLog(DAY1.plusSeconds(i * 10L), "S" + (i % 4), "TEST", Integer.toString(i)));
+        }
+        archive.awaitSealed();
+
+        assertEquals(9, archive.segments().size());
+        assertEquals(100, hot.size());
+        assertEquals(900, archive.hotBase());
+
+        // entries 150..449, staff S1 only: spans four sealed segments
+        try (var window = archive.read(DAY1.plusSeconds(1_500), DAY1.plusSeconds(4_500), "S1")) {
+            List<String> got = window.map(ActionLog::details).toList();
+            assertEquals(75, got.size());
+            assertEquals("153", got.get(0));
+            assertEquals("449", got.get(got.size() - 1));
+        }
+        try (var all = archive.read(Instant.EPOCH, Instant.MAX, null)) {
+            assertEquals(1_000, all.count());
+        }
+    }
+
+    @Test
+    void archive_compactsSmallDailySegmentsAndAppliesRetention() {
+        List<ActionLog> hot = new ArrayList<>();
+        Instant now = Instant.now();
+        AuditArchive archive = new AuditArchive(archiveDir, hot, 1_000, Duration.ofDays(30));
+        // ten entries a day for 60 days: each day rolls, small days are merged
+        for (int d = 60; d >= 1; d--) {
+            for (int i = 0; i < 10; i++) {
+                archive.append(new ActionLog(now.minus(Duration.ofDays(d)).plusSeconds(i), "S", "TEST", d + "/" + i));
+            }
+        }
+        archive.roll();
+
+        // about 30 retained days in week-long compacted segments, not 30 daily ones
+        List<AuditArchive.Segment> segs = archive.segments();
+        assertTrue(segs.size() <= 6, "adjacent small segments are compacted: " + segs.size());
+        Instant oldest = now.minus(Duration.ofDays(30 + 7 + 1));
+        try (var all = archive.read(Instant.EPOCH, Instant.MAX, null)) {
+            List<ActionLog> kept = all.toList();
+            assertTrue(kept.size() >= 300, "nothing inside the retention period is dropped");
+            assertTrue(kept.stream().noneMatch(l -> l.when().isBefore(oldest)), "segments past retention are gone");
+        }
+        assertEquals(0, hot.size());
+        assertEquals(segs.size(), indexFiles(), "retention and compaction drop segment indexes too");
+    }
+
+    @Test
+    void archive_searchesSavedSegmentIndexesAfterReopening() {
+        List<ActionLog> hot = new ArrayList<>();
+        AuditArchive archive = new AuditArchive(archiveDir, hot, 100, Duration.ZERO);
+        long base = 3_000_000_000L; // past int positions
+        archive.attach(base);
+        for (int i = 0; i < 1_000; i++) {
+            archive.append(new ActionLog(DAY1.plusSeconds(i), "S" + (i % 4), "TEST", "R-" + (i % 10)));
+        }
+        archive.awaitSealed();
+        assertEquals(9, indexFiles());
+
+        AuditArchive reopened = new AuditArchive(archiveDir, new ArrayList<>(hot), 100, Duration.ZERO);
+        reopened.attach(base + 900);
+        AuditQuery q = AuditQuery.between(DAY1.plusSeconds(150), DAY1.plusSeconds(950)).byStaff("S1").mentioning("r-5");
+        long[] seqs = reopened.search(q);
+        assertEquals(40, seqs.length); // i = 165, 185, ..., 945
+        assertEquals(base + 165, seqs[0]);
+        assertEquals(base + 945, seqs[seqs.length - 1]);
+        for (ActionLog l : reopened.fetch(seqs)) {
+            assertEquals("S1", l.staffId());
+            assertEquals("R-5", l.details());
+        }
+    }
+
+    private long indexFiles() {
+        try (var files = Files.list(archiveDir)) {
+            return files.filter(p -> p.toString().endsWith(".idx.gz")).count();
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void archive_dropsEntriesSealedAfterTheCheckpoint() {
+        List<ActionLog> hot = new ArrayList<>();
+        AuditArchive archive = new AuditArchive(archiveDir, hot, 10, Duration.ZERO);
+        for (int i = 0; i < 25; i++) {
+            archive.append(new ActionLog(DAY1.plusSeconds(i), "S", "TEST", Integer.toString(i)));
+        }
+        archive.awaitSealed();
+        // restart from a checkpoint taken when entries 0..14 were hot (base 0) and replay the rest
+        List<ActionLog> restored = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            restored.add(new ActionLog(DAY1.plusSeconds(i), "S", "TEST", Integer.toString(i)));
+        }
+        AuditArchive reopened = new AuditArchive(archiveDir, restored, 10, Duration.ZERO);
+        reopened.attach(0);
+        for (int i = 15; i < 25; i++) {
+            reopened.append(new ActionLog(DAY1.plusSeconds(i), "S", "TEST", Integer.toString(i)));
+        }
+        reopened.endReplay();
+
+        try (var all = reopened.read(Instant.EPOCH, Instant.MAX, null)) {
+            List<String> got = all.map(ActionLog::details).toList();
+            assertEquals(25, got.size());
+            for (int i = 0; i < 25; i++) {
+                assertEquals(Integer.toString(i), got.get(i));
+            }
+        }
+    }
+
+    @Test
+    void search_matchesALinearScan() throws Exception {
+        Store db = TempStore.get();
+        db.clear();
+        for (int i = 0; i < 5_000; i++) {
+            if (i == 2_500) {
+                Thread.sleep(5);
+            }
+            String type = i % 3 == 0 ? "MOVE_RESIDENT" : "ADMINISTER";
+            db.log("N-" + (i % 5), type, "R-" + (i % 50) + " W1-R1-B" + (i % 7) + " -> W1-R1-B" + (i % 11) + ".");
+        }
+        List<ActionLog> everything;
+        try (var all = db.readLogs(Instant.EPOCH, Instant.MAX, null)) {
+            everything = all.toList();
+        }
+        Instant mid = everything.get(2_500).when();
+
+        AuditQuery q = AuditQuery.between(Instant.EPOCH, Instant.MAX)
+                                 .byStaff("N-2").ofType("MOVE_RESIDENT").mentioning("r-17");
+        List<ActionLog> expected = everything.stream()
+                .filter(l -> l.staffId().equals("N-2") && l.type().equals("MOVE_RESIDENT")
+                          && l.details().startsWith("R-17 "))
+                .toList();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, db.searchLogs(q));
+
+        // time window plus two detail words
+        List<ActionLog> late = db.searchLogs(AuditQuery.between(mid, Instant.MAX).mentioning("W1-R1-B3 R-3"));
+        assertEquals(everything.stream()
+                        .filter(l -> !l.when().isBefore(mid))
+                        .filter(l -> l.details().startsWith("R-3 ") && words(l).contains("W1-R1-B3"))
+                        .toList(),
+                late);
+
+        assertTrue(db.searchLogs(AuditQuery.between(Instant.EPOCH, Instant.MAX).byStaff("nobody")).isEmpty());
+        assertEquals(5_000, db.searchLogs(AuditQuery.between(Instant.EPOCH, Instant.MAX)).size());
+        db.clear();
+    }
+
+    private static List<String> words(ActionLog l) {
+        return Arrays.asList(l.details().replace(".", "").split(" "));
+    }
+
+    private static void assertInProducerOrder(List<ActionLog> log, int producers, int each) {
+        int[] expected = new int[producers];
+        for (ActionLog l : log) {
+            int p = Integer.parseInt(l.staffId().substring(1));
+            assertEquals(Integer.toString(expected[p]++), l.details(), "out of order for " + l.staffId());
+        }
+        for (int n : expected) {
+            assertEquals(each, n);
+        }
+    }
+
+    /** Delegating list whose add() is deliberately slow. */
+    private static final class SlowList extends AbstractList<ActionLog> {
+        private final List<ActionLog> inner;
+
+        SlowList(List<ActionLog> inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public boolean add(ActionLog l) {
+            LockSupport.parkNanos(50_000);
+            return inner.add(l);
+        }
+
+        @Override
+        public ActionLog get(int i) {
+            return inner.get(i);
+        }
+
+        @Override
+        public int size() {
+            return inner.size();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.repo.AuditQuery;
+import carehome.view.cli.Batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.List;
+
+/**
+ * CLI batch scripts: quoting, rest-of-line fields, per-line errors,
+ * bootstrapping an empty store.
+ */
+public class BatchTests extends FacilityFixture {
+
+    @Test
+    void batchScript_runsEveryLineAndReportsTheFailingOnes() throws Exception {
+        String script = String.join("\n",
+                "# roster first",
+                "ALLOCATE_SHIFT M N 2026-09-02 NURSE_AM",
+                "ALLOCATE_SHIFT M D 2026-09-02 DOCTOR_1H\r",
+                "",
+                "ADMIT M R2 F B1 \"Rita Smith\"",
+                "PRESCRIBE D B1 2026-09-02 09:05 Paracetamol 500 mg \"8am, 8pm\" after food",
+                "ADMINISTER N B1 2026-09-02 10:30 Paracetamol 500 mg first dose",
+                "ADMINISTER N B2 2026-09-02 10:31 Paracetamol 500 mg",
+                "MOVE N B1 B2 2026-09-02 10:45",
+                "MOVE D B2 B1 2026-09-02 10:46",
+                "FLY N B2",
+                "ADMINISTER N B2 2026-09-02 1100 Paracetamol 2.5 mg",
+                "ADMINISTER\tN B2 2026-09-02 11:00 Paracetamol 0.5 mg");   // no final newline
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Batch.Result r = new Batch(db, svc, new PrintStream(errors, true, StandardCharsets.UTF_8))
+                .run(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(13L, r.lines());
+        assertEquals(11L, r.commands());
+        assertEquals(4L, r.failed());
+        String[] reported = errors.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(4, reported.length);
+        assertTrue(reported[0].startsWith("line 8: ERROR: NotFoundException"), reported[0]);
+        assertTrue(reported[1].startsWith("line 10: ERROR: AuthorizationException"), reported[1]);
+        assertTrue(reported[2].startsWith("line 11: ERROR: IllegalArgumentException - Unknown command"), reported[2]);
+        assertTrue(reported[3].startsWith("line 12: ERROR: IllegalArgumentException - Not an HH:mm time"), reported[3]);
+
+        Resident rita = db.residents.get("R2");
+        assertEquals("Rita Smith", rita.name());
+        assertEquals("B2", rita.currentBedId().orElse("?"));
+        Prescription.MedicationOrder order = svc.medicationChart("R2").active().get(0).order();
+        assertEquals("8am, 8pm", order.schedule);
+        assertEquals("after food", order.notes);
+        List<AdministrationRecord> given = svc.administrationsForResident("R2",
+                LocalDateTime.of(2026, 9, 2, 0, 0), LocalDateTime.of(2026, 9, 3, 0, 0));
+        assertEquals(2, given.size());
+        assertEquals("first dose", given.get(0).notes());
+        assertEquals(0.5, given.get(1).dose(), 1e-9);
+    }
+
+    @Test
+    void batchScript_keepsTheRestOfTheLineAsWritten() throws Exception {
+        String script = String.join("\n",
+                "ADMIT M R3 F B1 Jane \"Doe Smith\"  ",
+                "ADMIT M R4 F B2 \"Rita Smith\"",
+                "");
+        Batch.Result r = new Batch(db, svc, new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8))
+                .run(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(0L, r.failed());
+        assertEquals("Jane \"Doe Smith\"", db.residents.get("R3").name());
+        assertEquals("Rita Smith", db.residents.get("R4").name());
+    }
+
+    @Test
+    void batchScript_bootstrapsAnEmptyStoreOnlyOnce() throws Exception {
+        db.clear();
+        String script = String.join("\n",
+                "ADD_MANAGER M-1 secret \"Alice Manager\"",
+                "ADD_WARD W2 East Wing",
+                "ADD_ROOM W2-R1 W2",
+                "ADD_BED W2-R1-B1 W2-R1",
+                "ADD_NURSE M-1 N-1 pwd Nina",
+                "ADD_MANAGER M-2 mine Mallory",
+                "ADD_DOCTOR M-1 M-1 pwd Takeover",
+                "ADD_NURSE M-1 N-1 other Nina Again",
+                "");
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Batch.Result r = new Batch(db, svc, new PrintStream(errors, true, StandardCharsets.UTF_8))
+                .run(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3L, r.failed());
+        String[] reported = errors.toString(StandardCharsets.UTF_8).split("\n");
+        assertTrue(reported[0].startsWith("line 6: ERROR: AuthorizationException"), reported[0]);
+        assertTrue(reported[1].startsWith("line 7: ERROR: IllegalArgumentException - Staff ID already in use"), reported[1]);
+        assertTrue(reported[2].startsWith("line 8: ERROR: IllegalArgumentException - Staff ID already in use"), reported[2]);
+
+        Staff alice = db.staff.get("M-1");
+        assertEquals(Role.MANAGER, alice.role());
+        assertEquals("Alice Manager", alice.name());
+        assertTrue(alice.checkPassword("secret"));
+        assertTrue(db.staff.get("N-1").checkPassword("pwd"));
+        assertNull(db.staff.get("M-2"));
+        assertEquals("East Wing", db.wards.get("W2").name());
+        assertEquals("W2-R1", db.beds.get("W2-R1-B1").roomId());
+        assertEquals(1, svc.countVacancies("W2"));
+
+        // The first manager went through a commit, so it is audited like any other staff change
+        db.flushAudit();
+        assertEquals(2, db.searchLogs(new AuditQuery("M-1", "ADD_STAFF", null, Instant.EPOCH, Instant.MAX)).size());
+    }
+}
@@ -0,0 +1,351 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.service.Service;
+import carehome.repo.ReadView;
+import carehome.repo.Store;
+import carehome.exception.*;
+
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Multi-threaded tests for the concurrent Store/Service.
+ * Covers:
+ *  - no lost administrations or log entries under parallel writers
+ *  - moveResident never double-books a bed and never deadlocks
+ *  - background checkpoints capture a point in time while commits continue
+ *  - checkpoints rewrite only the wards that changed; a cross-ward move survives a reload whole
+ *  - a saved store that cannot be read fails the load instead of coming back empty
+ *  - read views never show a move half-done and keep their version while open
+ */
+public class ConcurrencyTests {
+
+    static final int BEDS_PER_WARD = 16;
+    static final LocalDate DAY = LocalDate.of(2026, 9, 2);
+    static final LocalDateTime TEN_AM = LocalDateTime.of(DAY, LocalTime.of(10, 0));
+
+    Store db;
+    Service svc;
+    Manager mgr;
+    List<Nurse> nurses;
+
+    @BeforeEach
+    void setup() {
+        db = TempStore.get();
+        db.clear();
+        svc = new Service();
+        mgr = new Manager("M", "Mgr");
+        db.staff.put(mgr.id(), mgr);
+        nurses = new ArrayList<>();
+    }
+
+    /** Seeds {@code wards} wards of one room each, fully occupied, with one rostered nurse per ward. */
+    private void seedWards(int wards) {
+        for (int w = 0; w < wards; w++) {
+            Ward ward = new Ward("W" + w, "Ward " + w);
+            db.addWard(ward);
+            Room room = new Room(ward.id() + "-R1", ward.id());
+            db.addRoom(room);
+            for (int b = 0; b < BEDS_PER_WARD; b++) {
+                Bed bed = new Bed(room.id() + "-B" + b, room.id());
+                db.addBed(bed);
+                svc.addResidentToVacantBed(mgr, new Resident(bed.id() + "-res", "Res", Gender.F), bed.id());
+            }
+            Nurse n = new Nurse("N" + w, "Nurse " + w);
+            svc.addStaff(mgr, n, "pwd");
+            svc.allocateShift(mgr, n.id(), DAY, ShiftType.NURSE_AM);
+            nurses.add(n);
+        }
+    }
+
+    // every audit entry, including any that rolled into the archive
+    private long logCount() {
+        try (var all = db.readLogs(Instant.EPOCH, Instant.MAX, null)) {
+            return all.count();
+        }
+    }
+
+    private static String bed(int ward, int b) {
+        return "W" + ward + "-R1-B" + b;
+    }
+
+    /** Runs {@code opsPerThread} administrations on each of {@code threads} wards, all starting together. */
+    private void administerInParallel(int threads, int opsPerThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int ward = t;
+            done.add(pool.submit(() -> {
+                start.await();
+                Nurse n = nurses.get(ward);
+                for (int i = 0; i < opsPerThread; i++) {
+                    svc.administer(n, bed(ward, i % BEDS_PER_WARD), "Paracetamol", 500, "mg", "", TEN_AM);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : done) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void parallelAdministrations_loseNothing() throws Exception {
+        int threads = 8;
+        int ops = 2_000;
+        seedWards(threads);
+        long logsBefore = logCount();
+
+        administerInParallel(threads, ops);
+        db.flushAudit();
+
+        assertEquals(threads * ops, db.administrations.size());
+        assertEquals(logsBefore + threads * ops, logCount());
+        for (int w = 0; w < threads; w++) {
+            String nurseId = "N" + w;
+            long mine = db.administrations.stream().filter(a -> a.nurseId().equals(nurseId)).count();
+            assertEquals(ops, mine);
+        }
+    }
+
+    @Test
+    void concurrentMoves_neverDoubleBookOrDeadlock() throws Exception {
+        // one ward, 16 beds, every other bed occupied
+        db.addWard(new Ward("W0", "Ward 0"));
+        Room room = new Room("W0-R1", "W0");
+        db.addRoom(room);
+        for (int b = 0; b < BEDS_PER_WARD; b++) {
+            Bed bed = new Bed(bed(0, b), room.id());
+            db.addBed(bed);
+            if (b % 2 == 0) {
+                svc.addResidentToVacantBed(mgr, new Resident("R" + b, "Res", Gender.M), bed.id());
+            }
+        }
+        Nurse n = new Nurse("N0", "Nurse");
+        svc.addStaff(mgr, n, "pwd");
+        svc.allocateShift(mgr, n.id(), DAY, ShiftType.NURSE_AM);
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            done.add(pool.submit(() -> {
+                Random rnd = new Random(seed);
+                for (int i = 0; i < 5_000; i++) {
+                    String from = bed(0, rnd.nextInt(BEDS_PER_WARD));
+                    String to = bed(0, rnd.nextInt(BEDS_PER_WARD));
+                    if (from.equals(to)) continue;
+                    try {
+                        svc.moveResident(n, from, to, TEN_AM);
+                    } catch (AllocationException expected) {
+                        // source empty or target taken by another thread
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : done) {
+            f.get(60, TimeUnit.SECONDS); // a deadlock would time out here
+        }
+        pool.shutdown();
+
+        Set<String> seen = new HashSet<>();
+        for (Bed b : db.beds.values()) {
+            if (!b.isVacant()) {
+                assertTrue(seen.add(b.residentId()), "resident in two beds: " + b.residentId());
+                assertEquals(b.id(), db.residents.get(b.residentId()).currentBedId().orElse("?"));
+            }
+        }
+        assertEquals(BEDS_PER_WARD / 2, seen.size());
+        assertEquals(BEDS_PER_WARD / 2, db.vacancies.countVacancies("W0"));
+    }
+
+    @Test
+    void backgroundCheckpoint_capturesAPointInTimeWhileCommitsContinue() throws Exception {
+        seedWards(4);
+        administerInParallel(4, 5_000);
+        int before = db.administrations.size();
+
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<Integer> writer = pool.submit(() -> {
+            int n = 0;
+            while (!stop.get()) {
+                svc.administer(nurses.get(0), bed(0, n++ % BEDS_PER_WARD), "Paracetamol", 500, "mg", "", TEN_AM);
+            }
+            return n;
+        });
+        db.checkpointAsync().get(60, TimeUnit.SECONDS);
+        stop.set(true);
+        writer.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        int after = db.administrations.size();
+
+        var c = db.checkpointer();
+
+        // the snapshot holds exactly the history up to some point during the run
+        Store saved = Store.load().orElseThrow();
+        int captured = saved.administrations.size();
+        assertTrue(captured >= before && captured <= after, captured + " not in [" + before + ", " + after + "]");
+        for (int i = 0; i < captured; i++) {
+            assertEquals(db.administrations.get(i), saved.administrations.get(i));
+        }
+        assertEquals((long) (after - captured), c.pendingCommits());
+    }
+
+    @Test
+    void partitionedCheckpoint_rewritesChangedWardsOnly() {
+        seedWards(3);
+        db.addBed(new Bed("W1-R1-B" + BEDS_PER_WARD, "W1-R1")); // the one vacancy, in ward 1
+        var c = db.checkpointer();
+        db.save();
+        assertEquals(3, c.lastWardsWritten());
+
+        svc.administer(nurses.get(0), bed(0, 0), "Paracetamol", 500, "mg", "", TEN_AM);
+        db.save();
+        assertEquals(1, c.lastWardsWritten());
+
+        svc.moveResident(nurses.get(0), bed(0, 1), "W1-R1-B" + BEDS_PER_WARD, TEN_AM);
+        svc.administer(nurses.get(1), "W1-R1-B" + BEDS_PER_WARD, "Paracetamol", 500, "mg", "", TEN_AM.plusHours(1));
+        db.save();
+        assertEquals(2, c.lastWardsWritten());
+        db.save();
+        assertEquals(0, c.lastWardsWritten());
+
+        Store saved = Store.load().orElseThrow();
+        String moved = bed(0, 1) + "-res";
+        assertEquals(db.residents.size(), saved.residents.size());
+        assertTrue(saved.beds.get(bed(0, 1)).isVacant());
+        assertEquals(moved, saved.beds.get("W1-R1-B" + BEDS_PER_WARD).residentId());
+        assertEquals("W1-R1-B" + BEDS_PER_WARD, saved.residents.get(moved).currentBedId().orElseThrow());
+        assertEquals(2, saved.occupancy.ofResident(moved, Instant.MIN, Instant.MAX).size());
+        assertEquals(1, saved.vacancies.countVacancies("W0"));
+        assertEquals(0, saved.vacancies.countVacancies("W1"));
+        // administrations from every ward file come back in commit order
+        assertEquals(db.administrations.size(), saved.administrations.size());
+        for (int i = 0; i < db.administrations.size(); i++) {
+            assertEquals(db.administrations.get(i), saved.administrations.get(i));
+        }
+        assertEquals(db.staff.keySet(), saved.staff.keySet());
+    }
+
+    @Test
+    void load_failsOnADamagedStoreInsteadOfStartingEmpty() throws Exception {
+        seedWards(2);
+        db.save();
+        Path ward;
+        try (var files = Files.list(Path.of(System.getProperty("carehome.dir"), "store"))) {
+            ward = files.filter(f -> f.getFileName().toString().startsWith("ward-")).findFirst().orElseThrow();
+        }
+        byte[] good = Files.readAllBytes(ward);
+        byte[] bad = good.clone();
+        bad[bad.length - 1] ^= 1;
+        Files.write(ward, bad);
+        try {
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, Store::load);
+            assertTrue(e.getCause().getMessage().startsWith("Checksum mismatch"), e.getCause().getMessage());
+        } finally {
+            Files.write(ward, good);
+        }
+        assertEquals(db.residents.size(), Store.load().orElseThrow().residents.size());
+    }
+
+    @Test
+    void readViews_neverSeeAMoveHalfDone() throws Exception {
+        db.addWard(new Ward("W0", "Ward 0"));
+        Room room = new Room("W0-R1", "W0");
+        db.addRoom(room);
+        for (int b = 0; b < BEDS_PER_WARD; b++) {
+            db.addBed(new Bed(bed(0, b), room.id()));
+            if (b % 2 == 0) {
+                svc.addResidentToVacantBed(mgr, new Resident("R" + b, "Res", Gender.M), bed(0, b));
+            }
+        }
+        Nurse n = new Nurse("N0", "Nurse");
+        svc.addStaff(mgr, n, "pwd");
+        svc.allocateShift(mgr, n.id(), DAY, ShiftType.NURSE_AM);
+        db.flushAudit();
+        long logsAtFirst = logCount();
+        ReadView first = db.openView();
+
+        int movers = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(movers + 2);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Future<?>> moves = new ArrayList<>();
+        for (int t = 0; t < movers; t++) {
+            long seed = t;
+            moves.add(pool.submit(() -> {
+                Random rnd = new Random(seed);
+                for (int i = 0; i < 3_000; i++) {
+                    String from = bed(0, rnd.nextInt(BEDS_PER_WARD));
+                    String to = bed(0, rnd.nextInt(BEDS_PER_WARD));
+                    if (from.equals(to)) continue;
+                    try {
+                        svc.moveResident(n, from, to, TEN_AM);
+                    } catch (AllocationException expected) {
+                        // source empty or target taken by another thread
+                    }
+                }
+                return null;
+            }));
+        }
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            readers.add(pool.submit(() -> {
+                int views = 0;
+                long last = 0;
+                while (!done.get()) {
+                    try (ReadView v = db.openView()) {
+                        assertTrue(v.version() >= last, "versions go back");
+                        last = v.version();
+                        Set<String> seen = new HashSet<>();
+                        for (ReadView.BedRow b : v.beds()) {
+                            if (!b.isVacant()) {
+                                assertTrue(seen.add(b.residentId()), "resident in two beds: " + b.residentId());
+                                assertEquals(b.id(), v.resident(b.residentId()).orElseThrow().bedId());
+                            }
+                        }
+                        assertEquals(BEDS_PER_WARD / 2, seen.size());
+                        views++;
+                    }
+                }
+                return views;
+            }));
+        }
+        for (Future<?> f : moves) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        done.set(true);
+        for (Future<Integer> f : readers) {
+            assertTrue(f.get(60, TimeUnit.SECONDS) > 0);
+        }
+        pool.shutdown();
+
+        // the first view still shows the layout and log from before the moves
+        for (int b = 0; b < BEDS_PER_WARD; b++) {
+            assertEquals(b % 2 == 0 ? "R" + b : null, first.bed(bed(0, b)).orElseThrow().residentId());
+        }
+        db.flushAudit();
+        assertTrue(logCount() > logsAtFirst);
+        try (var logs = first.logs(Instant.EPOCH, Instant.MAX, null)) {
+            assertEquals(logsAtFirst, logs.count());
+        }
+        assertTrue(db.readModel.oldestPinned() <= first.version());
+        first.close();
+        assertEquals(0, db.readModel.openViews());
+        assertEquals(db.readModel.version(), db.readModel.oldestPinned());
+        assertThrows(IllegalStateException.class, first::beds);
+    }
+}
@@ -0,0 +1,82 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.exception.*;
+
+import java.time.*;
+
+/**
+ * Rolling 24h dose limits in administer(), from the window counters and
+ * from history.
+ */
+public class DoseLimitTests extends FacilityFixture {
+
+    @Test
+    void administer_enforcesRolling24hDoseLimits() {
+        LocalDate day = LocalDate.now().plusDays(1);
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        Nurse late = new Nurse("N2", "Late Nurse");
+        svc.addStaff(mgr, late, "n");
+        svc.allocateShift(mgr, nurse.id(), day, ShiftType.NURSE_AM);
+        svc.allocateShift(mgr, late.id(), day, ShiftType.NURSE_PM);
+        svc.allocateShift(mgr, nurse.id(), day.plusDays(1), ShiftType.NURSE_AM);
+        svc.setDailyDoseLimit(mgr, "Paracetamol", 4000, "mg");
+
+        for (int hour = 8; hour <= 14; hour += 2) {
+            Nurse n = hour < 14 ? nurse : late;
+            svc.administer(n, b1.id(), "paracetamol", 1000, "mg", "", LocalDateTime.of(day, LocalTime.of(hour, 0)));
+        }
+        assertThrows(DoseLimitException.class, () -> svc.administer(late, b1.id(), "Paracetamol", 500, "mg", "",
+            LocalDateTime.of(day, LocalTime.of(15, 0))));
+        assertThrows(DoseLimitException.class, () -> svc.administer(late, b1.id(), "Paracetamol", 1, "g", "",
+            LocalDateTime.of(day, LocalTime.of(15, 0))));
+        assertEquals(4000.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", LocalDateTime.of(day, LocalTime.of(15, 0))));
+
+        // The 08:00 dose has left the window by 08:30 next day
+        svc.administer(nurse, b1.id(), "Paracetamol", 1000, "mg", "", LocalDateTime.of(day.plusDays(1), LocalTime.of(8, 30)));
+        assertEquals(4000.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", LocalDateTime.of(day.plusDays(1), LocalTime.of(9, 0))));
+
+        // Times before the latest dose are answered from history
+        assertEquals(3000.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", LocalDateTime.of(day, LocalTime.of(12, 5))));
+
+        // A back-dated dose counts towards the later windows it falls in, not just the one ending at it
+        svc.allocateShift(mgr, late.id(), day.minusDays(1), ShiftType.NURSE_PM);
+        assertEquals(0.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", LocalDateTime.of(day.minusDays(1), LocalTime.of(20, 0))));
+        assertThrows(DoseLimitException.class, () -> svc.administer(late, b1.id(), "Paracetamol", 500, "mg", "",
+            LocalDateTime.of(day.minusDays(1), LocalTime.of(20, 0))));
+        // 24h before the 14:00 dose is still the bucket that window starts with
+        assertThrows(DoseLimitException.class, () -> svc.administer(late, b1.id(), "Paracetamol", 500, "mg", "",
+            LocalDateTime.of(day.minusDays(1), LocalTime.of(14, 0))));
+    }
+
+    @Test
+    void doseLimits_countTheSameWindowFromCountersAndFromHistory() {
+        LocalDate day = LocalDate.now().plusDays(2);
+        LocalDate before = day.minusDays(1);
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        Nurse late = new Nurse("N2", "Late Nurse");
+        svc.addStaff(mgr, late, "n");
+        svc.allocateShift(mgr, nurse.id(), before, ShiftType.NURSE_AM);
+        svc.allocateShift(mgr, nurse.id(), day, ShiftType.NURSE_AM);
+        svc.allocateShift(mgr, late.id(), day, ShiftType.NURSE_PM);
+        svc.setDailyDoseLimit(mgr, "Paracetamol", 1500, "mg");
+        LocalDateTime edge = LocalDateTime.of(day, LocalTime.of(9, 14));
+        LocalDateTime past = LocalDateTime.of(day, LocalTime.of(9, 15));
+        svc.administer(nurse, b1.id(), "Paracetamol", 1000, "mg", "", LocalDateTime.of(before, LocalTime.of(9, 0)));
+
+        // 24h14m later the 09:00 dose is still in the window, which starts at the bucket 24h before 09:14
+        assertEquals(1000.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", edge));
+        assertEquals(0.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", past));
+        assertThrows(DoseLimitException.class, () -> svc.administer(nurse, b1.id(), "Paracetamol", 600, "mg", "", edge));
+
+        // With a later dose on record the same times are answered from history, with the same buckets
+        svc.administer(late, b1.id(), "Paracetamol", 100, "mg", "", LocalDateTime.of(day, LocalTime.of(20, 0)));
+        assertEquals(1000.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", edge));
+        assertEquals(0.0, svc.doseInLast24h(res.id(), "Paracetamol", "mg", past));
+        assertThrows(DoseLimitException.class, () -> svc.administer(nurse, b1.id(), "Paracetamol", 600, "mg", "", edge));
+        svc.administer(nurse, b1.id(), "Paracetamol", 600, "mg", "", past);
+    }
+}
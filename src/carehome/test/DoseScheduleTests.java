@@ -0,0 +1,84 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.repo.DoseWheel;
+import carehome.repo.Store;
+import carehome.exception.*;
+
+import java.time.*;
+import java.util.List;
+
+/**
+ * Compiled medication schedules and the facility-wide due-dose wheel.
+ */
+public class DoseScheduleTests extends FacilityFixture {
+
+    @Test
+    void doseSchedule_compilesCommonForms() {
+        assertEquals("08:00, 20:30", DoseSchedule.parse("8am, 8:30 pm").toString());
+        assertEquals("00:00, 06:00, 12:00, 18:00", DoseSchedule.parse("q6h").toString());
+        assertEquals("08:00, 14:00, 20:00", DoseSchedule.parse("TDS").toString());
+        assertEquals("12:00, 22:00", DoseSchedule.parse("noon and nocte").toString());
+        assertTrue(DoseSchedule.parse("prn").isAsNeeded());
+        assertThrows(IllegalArgumentException.class, () -> DoseSchedule.parse("after lunch"));
+        assertThrows(IllegalArgumentException.class, () -> DoseSchedule.parse("every 5 hours"));
+    }
+
+    @Test
+    void dosesDue_listsTheWindowAcrossResidentsInTimeOrder() {
+        LocalDate today = LocalDate.now();
+        LocalDate tomorrow = today.plusDays(1);
+        Resident res2 = new Resident("R2", "Rita", Gender.F);
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        svc.addResidentToVacantBed(mgr, res2, b2.id());
+        svc.allocateShift(mgr, doc.id(), today, ShiftType.DOCTOR_1H);
+        LocalDateTime rounds = LocalDateTime.of(today, LocalTime.of(9, 5));
+
+        String p1 = svc.doctorAttachPrescription(doc, b1.id(), List.of(
+            new Prescription.MedicationOrder("DrugA", 1, "tab", "8am, 8pm", ""),
+            new Prescription.MedicationOrder("DrugB", 5, "ml", "q6h", "")), rounds);
+        String p2 = svc.doctorAttachPrescription(doc, b2.id(), List.of(
+            new Prescription.MedicationOrder("DrugC", 10, "mg", "tds", "")), rounds);
+
+        List<DueDose> due = svc.dosesDue(LocalDateTime.of(tomorrow, LocalTime.of(7, 0)), Duration.ofHours(14));
+        assertEquals(List.of("08:00 DrugA", "08:00 DrugC", "12:00 DrugB", "14:00 DrugC",
+                             "18:00 DrugB", "20:00 DrugA", "20:00 DrugC"),
+                     due.stream().map(d -> d.due().toLocalTime() + " " + d.order().drug).toList());
+        assertEquals(p2, due.get(1).prescriptionId());
+        assertEquals("R2", due.get(1).residentId());
+
+        // Wraps past midnight into the next day
+        List<DueDose> overnight = svc.dosesDue(LocalDateTime.of(tomorrow, LocalTime.of(22, 30)), Duration.ofHours(2));
+        assertEquals(1, overnight.size());
+        assertEquals(LocalDateTime.of(tomorrow.plusDays(1), LocalTime.MIDNIGHT), overnight.get(0).due());
+        assertEquals(p1, overnight.get(0).prescriptionId());
+
+        // Unreadable schedules are rejected before anything is stored
+        int before = db.prescriptions.size();
+        assertThrows(ScheduleException.class, () -> svc.doctorAttachPrescription(doc, b1.id(),
+            List.of(new Prescription.MedicationOrder("DrugD", 1, "tab", "whenever", "")), rounds));
+        assertEquals(before, db.prescriptions.size());
+    }
+
+    @Test
+    void dosesDue_listsAStoppedOrderOnlyBeforeItsStop() {
+        LocalDate today = LocalDate.now();
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        // Written yesterday and stopped this morning; the service stamps both with the current time
+        ZoneId zone = ZoneId.systemDefault();
+        Prescription p = new Prescription("P-old", res.id(), doc.id(), today.minusDays(1).atStartOfDay(zone).toInstant());
+        p.addOrder(new Prescription.MedicationOrder("DrugB", 2, "tab", "noon", ""));
+        p.stopOrder(0, new OrderStop(today.atTime(9, 0).atZone(zone).toInstant(), doc.id(), null));
+        db.prescriptions.put(p.id(), p);
+        res.attachPrescription(p.id());
+        db.save();
+
+        DoseWheel wheel = Store.load().orElseThrow().doseWheel;
+        List<DueDose> due = wheel.due(today.minusDays(2).atStartOfDay(), today.plusDays(2).atStartOfDay());
+        assertEquals(List.of(today.minusDays(1).atTime(12, 0)), due.stream().map(DueDose::due).toList());
+        assertTrue(wheel.due(today.atStartOfDay(), today.plusDays(1).atStartOfDay()).isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Int entity handles: lookups by handle and by id agree.
+ */
+public class EntityHandleTests extends FacilityFixture {
+
+    @Test
+    void entityHandles_resolveTheSameObjectsAsStringIds() {
+        svc.addResidentToVacantBed(mgr, res, b2.id());
+
+        assertEquals(db.handles().beds.find("B2"), b2.handle());
+        assertSame(b2, db.beds.get(b2.handle()));
+        assertSame(b2, db.beds.get("B2"));
+        assertSame(res, db.residents.get(b2.residentHandle()));
+        assertEquals(b2.handle(), res.bedHandle());
+        Room room = db.rooms.get(b2.roomHandle());
+        assertSame(db.wards.get("W"), db.wards.get(room.wardHandle()));
+        assertEquals(List.of("B1", "B2"), room.bedIds());
+
+        assertNull(db.beds.get("no-such-bed"));
+        assertNull(db.beds.get(Handles.NONE));
+        assertEquals(List.of("B1", "B2"), new ArrayList<>(db.beds.keySet()));
+
+        Bed spare = new Bed("B9", "R");
+        assertEquals(Handles.NONE, spare.handle());
+        assertEquals(Handles.NONE, db.handles().beds.find("B9")); // ids get handles on insert, not before
+
+        db.clear();
+        assertTrue(db.beds.isEmpty());
+        assertNull(db.beds.get(b2.handle()));
+        assertEquals(Handles.NONE, db.handles().beds.find("B2")); // clear() starts new registries
+        assertEquals("B2", b2.id()); // and b2 still decodes through the old ones
+        db.addWard(new Ward("W", "Ward"));
+        db.addRoom(new Room("R", "W"));
+        db.addBed(spare);
+        assertEquals(0, spare.handle());
+        assertSame(spare, db.beds.get(0));
+        assertEquals(List.of("B9"), db.rooms.get("R").bedIds());
+    }
+}
@@ -0,0 +1,46 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+
+import carehome.domain.*;
+import carehome.service.Service;
+import carehome.repo.Store;
+
+/**
+ * The facility the feature tests start from, as in M2Tests: a manager, a
+ * nurse and a doctor, one ward with one two-bed room, and a resident not
+ * yet admitted. Nobody is rostered.
+ */
+abstract class FacilityFixture {
+
+    Store db;
+    Service svc;
+    Manager mgr;
+    Nurse nurse;
+    Doctor doc;
+    Bed b1, b2;
+    Resident res;
+
+    @BeforeEach
+    void setup() {
+        db = TempStore.get();
+        db.clear();
+        svc = new Service();
+
+        mgr = new Manager("M", "Mgr");
+        nurse = new Nurse("N", "Nurse");
+        doc = new Doctor("D", "Doc");
+        db.staff.put(mgr.id(), mgr);
+        svc.addStaff(mgr, nurse, "n");
+        svc.addStaff(mgr, doc, "d");
+
+        db.addWard(new Ward("W", "Ward"));
+        db.addRoom(new Room("R", "W"));
+        b1 = new Bed("B1", "R");
+        b2 = new Bed("B2", "R");
+        db.addBed(b1);
+        db.addBed(b2);
+
+        res = new Resident("R1", "Rob", Gender.M);
+    }
+}
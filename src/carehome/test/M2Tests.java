@@ -32,17 +32,10 @@ public class M2Tests {
 
     @BeforeEach
     void setup() {
-        db = Store.get();
+        db = TempStore.get();
 
         // Reset all collections to start fresh
-        db.residents.clear();
-        db.staff.clear();
-        db.wards.clear();
-        db.rooms.clear();
-        db.beds.clear();
-        db.prescriptions.clear();
-        db.logs.clear();
-        db.administrations.clear();
+        db.clear();
 
         svc = new Service();
 
@@ -55,19 +48,13 @@ public class M2Tests {
         svc.addStaff(mgr, doc, "d");
 
         // Seed layout
-        Ward w1 = new Ward("W", "Ward");
-        db.wards.put(w1.id(), w1);
-
-        Room r = new Room("R", "W");
-        db.rooms.put(r.id(), r);
-        w1.addRoom(r.id());
+        db.addWard(new Ward("W", "Ward"));
+        db.addRoom(new Room("R", "W"));
 
         b1 = new Bed("B1", "R");
         b2 = new Bed("B2", "R");
-        db.beds.put(b1.id(), b1);
-        db.beds.put(b2.id(), b2);
-        r.addBed("B1");
-        r.addBed("B2");
+        db.addBed(b1);
+        db.addBed(b2);
 
         // Seed resident
         res = new Resident("R1", "Rob", Gender.M);
@@ -0,0 +1,50 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.exception.*;
+
+import java.time.*;
+import java.util.List;
+
+/**
+ * Materialized medication charts, kept current through attach, stop and modify.
+ */
+public class MedicationChartTests extends FacilityFixture {
+
+    @Test
+    void medicationChart_followsAttachStopAndModify() {
+        LocalDate today = LocalDate.now();
+        LocalDate tomorrow = today.plusDays(1);
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        svc.allocateShift(mgr, doc.id(), today, ShiftType.DOCTOR_1H);
+        LocalDateTime rounds = LocalDateTime.of(today, LocalTime.of(9, 5));
+        String p1 = svc.doctorAttachPrescription(doc, b1.id(), List.of(
+            new Prescription.MedicationOrder("DrugA", 1, "tab", "8am", ""),
+            new Prescription.MedicationOrder("DrugB", 2, "tab", "noon", "")), rounds);
+
+        MedicationChart chart = svc.medicationChart(res.id());
+        assertEquals(List.of("DrugA", "DrugB"), chart.active().stream().map(e -> e.order().drug).toList());
+        assertEquals(doc.id(), chart.active().get(0).prescriberId());
+        assertSame(chart, svc.medicationChart(res.id()));
+        assertThrows(UnsupportedOperationException.class, () -> chart.active().clear());
+
+        String p2 = svc.modifyMedication(doc, b1.id(), p1, 0,
+            new Prescription.MedicationOrder("DrugA", 2, "tab", "8pm", "raised"), rounds);
+        svc.stopMedication(doc, b1.id(), p1, 1, rounds);
+
+        MedicationChart now = svc.medicationChart(res.id());
+        assertEquals(1, now.active().size());
+        assertEquals(p2, now.active().get(0).prescriptionId());
+        assertEquals(2.0, now.active().get(0).order().dose);
+        assertEquals(List.of(now), svc.wardRound("W"));
+        assertEquals(p2, db.prescriptions.get(p1).stopOf(0).orElseThrow().replacedBy());
+        assertThrows(NotFoundException.class, () -> svc.stopMedication(doc, b1.id(), p1, 1, rounds));
+
+        // Stopped orders no longer come due
+        List<DueDose> due = svc.dosesDue(tomorrow.atStartOfDay(), Duration.ofDays(1));
+        assertEquals(List.of("20:00 " + p2), due.stream().map(d -> d.due().toLocalTime() + " " + d.prescriptionId()).toList());
+    }
+}
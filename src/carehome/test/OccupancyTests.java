@@ -0,0 +1,46 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+
+import java.time.*;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bed-occupancy history: point-in-time, ranges and contact tracing.
+ */
+public class OccupancyTests extends FacilityFixture {
+
+    @Test
+    void occupancyHistory_answersPointInTimeAndContactQueries() {
+        LocalDateTime admitted = LocalDateTime.now().minusMinutes(1);
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        LocalDateTime moved = LocalDateTime.of(tomorrow, LocalTime.of(10, 0));
+        Resident res2 = new Resident("R2", "Rita", Gender.M);
+        db.addRoom(new Room("R-B", "W"));
+        db.addBed(new Bed("B3", "R-B"));
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        svc.addResidentToVacantBed(mgr, res2, b2.id());
+        svc.allocateShift(mgr, nurse.id(), tomorrow, ShiftType.NURSE_AM);
+        svc.moveResident(nurse, b1.id(), "B3", moved);
+
+        assertEquals(Optional.of(res.id()), svc.occupantAt(b1.id(), moved.minusHours(1)));
+        assertEquals(Optional.empty(), svc.occupantAt(b1.id(), moved.plusHours(1)));
+        assertEquals(Optional.of("B3"), svc.bedOfResidentAt(res.id(), moved));
+        assertEquals(Optional.of(b1.id()), svc.bedOfResidentAt(res.id(), moved.minusNanos(1_000_000)));
+
+        List<Stay> stays = svc.residentHistory(res.id(), admitted, moved.plusDays(1));
+        assertEquals(List.of(b1.id(), "B3"), stays.stream().map(Stay::bedId).toList());
+        assertNull(stays.get(1).to());
+        assertTrue(svc.bedHistory(b1.id(), moved, moved.plusDays(1)).isEmpty());
+
+        List<Contact> contacts = svc.contactTrace(res.id(), admitted, moved.plusHours(2));
+        assertEquals(1, contacts.size());
+        assertEquals(res2.id(), contacts.get(0).residentId());
+        assertEquals("R", contacts.get(0).roomId());
+        assertEquals(moved.atZone(ZoneId.systemDefault()).toInstant(), contacts.get(0).to());
+    }
+}
@@ -0,0 +1,80 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+
+import java.time.*;
+import java.util.List;
+
+/**
+ * Dose reconciliation: missed, late, duplicate and unscheduled doses,
+ * incrementally and from a full rebuild, whatever order doses arrive in.
+ */
+public class ReconciliationTests extends FacilityFixture {
+
+    @Test
+    void reconciliation_flagsDoseProblemsIncrementallyAndAgreesWithRebuild() {
+        LocalDate today = LocalDate.now();
+        LocalDate tomorrow = today.plusDays(1);
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        svc.allocateShift(mgr, doc.id(), today, ShiftType.DOCTOR_1H);
+        svc.doctorAttachPrescription(doc, b1.id(), List.of(
+            new Prescription.MedicationOrder("DrugA", 1, "tab", "8am, 8pm", ""),
+            new Prescription.MedicationOrder("DrugB", 2, "tab", "noon", "")),
+            LocalDateTime.of(today, LocalTime.of(9, 5)));
+        Nurse late = new Nurse("N2", "Late Nurse");
+        svc.addStaff(mgr, late, "n");
+        svc.allocateShift(mgr, nurse.id(), tomorrow, ShiftType.NURSE_AM);
+        svc.allocateShift(mgr, late.id(), tomorrow, ShiftType.NURSE_PM);
+
+        svc.administer(nurse, b1.id(), "DrugA", 1, "tab", "", LocalDateTime.of(tomorrow, LocalTime.of(8, 10)));
+        svc.administer(nurse, b1.id(), "druga", 1, "tab", "", LocalDateTime.of(tomorrow, LocalTime.of(8, 30)));
+        svc.administer(nurse, b1.id(), "DrugZ", 1, "tab", "", LocalDateTime.of(tomorrow, LocalTime.of(12, 0)));
+        svc.administer(late, b1.id(), "DrugB", 2, "tab", "", LocalDateTime.of(tomorrow, LocalTime.of(14, 30)));
+        // the 8pm DrugA is never given
+
+        LocalDateTime from = tomorrow.atStartOfDay();
+        LocalDateTime asOf = LocalDateTime.of(tomorrow.plusDays(1), LocalTime.of(9, 0));
+        List<DoseFinding> findings = svc.reconcileResident(res.id(), from, asOf);
+        assertEquals(List.of("DUPLICATE 08:30", "UNSCHEDULED 12:00", "LATE 14:30", "MISSED 20:00"),
+                     findings.stream().map(f -> f.kind() + " " + f.at().toLocalTime()).toList());
+        assertEquals(LocalDateTime.of(tomorrow, LocalTime.NOON), findings.get(2).due());
+
+        List<DoseFinding> missed = svc.missedDoses(from, asOf);
+        assertEquals(1, missed.size());
+        assertEquals(findings.get(3), missed.get(0));
+
+        db.rebuildDoseReconciliation();
+        assertEquals(findings, svc.reconcileResident(res.id(), from, asOf));
+    }
+
+    @Test
+    void reconciliation_matchesBackDatedDosesAsIfGivenInTimeOrder() {
+        LocalDate today = LocalDate.now();
+        LocalDate tomorrow = today.plusDays(1);
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        svc.allocateShift(mgr, doc.id(), today, ShiftType.DOCTOR_1H);
+        svc.doctorAttachPrescription(doc, b1.id(), List.of(
+            new Prescription.MedicationOrder("DrugB", 2, "tab", "noon", "")),
+            LocalDateTime.of(today, LocalTime.of(9, 5)));
+        Nurse late = new Nurse("N2", "Late Nurse");
+        svc.addStaff(mgr, late, "n");
+        svc.allocateShift(mgr, nurse.id(), tomorrow, ShiftType.NURSE_AM);
+        svc.allocateShift(mgr, late.id(), tomorrow, ShiftType.NURSE_PM);
+
+        svc.administer(late, b1.id(), "DrugB", 2, "tab", "", LocalDateTime.of(tomorrow, LocalTime.of(14, 30)));
+        // Recorded afterwards but given first: it takes the noon slot, and the 14:30 dose becomes the duplicate
+        svc.administer(nurse, b1.id(), "DrugB", 2, "tab", "", LocalDateTime.of(tomorrow, LocalTime.of(12, 5)));
+
+        LocalDateTime from = tomorrow.atStartOfDay();
+        LocalDateTime asOf = tomorrow.plusDays(1).atStartOfDay();
+        List<DoseFinding> findings = svc.reconcileResident(res.id(), from, asOf);
+        assertEquals(List.of("DUPLICATE 14:30"), findings.stream().map(f -> f.kind() + " " + f.at().toLocalTime()).toList());
+        assertTrue(svc.missedDoses(from, asOf).isEmpty());
+
+        db.rebuildDoseReconciliation();
+        assertEquals(findings, svc.reconcileResident(res.id(), from, asOf));
+    }
+}
@@ -0,0 +1,255 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.service.Service;
+import carehome.repo.ReadView;
+import carehome.repo.Replicator;
+import carehome.repo.Store;
+import carehome.exception.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Journal shipping between two processes on localhost: this JVM is the
+ * primary, {@link FollowerProcess} runs in a child JVM started with
+ * -Dcarehome.follow.
+ * Covers:
+ *  - a follower that joins while commits continue catches up from a snapshot plus the tail
+ *  - lag drops to zero once it has applied everything
+ *  - writes on a follower fail; after promote() they succeed
+ *  - a follower with the wrong secret gets nothing
+ */
+public class ReplicationTests {
+
+    static final int BEDS = 8;
+    static final LocalDate DAY = LocalDate.of(2026, 9, 2);
+    static final LocalDateTime TEN_AM = LocalDateTime.of(DAY, LocalTime.of(10, 0));
+
+    Store db;
+    Service svc;
+    Manager mgr;
+    Nurse nurse;
+    Replicator rep;
+    FollowerHandle follower;
+
+    @BeforeEach
+    void setup() throws IOException {
+        System.setProperty("carehome.replication.secretFile", secretFile("primary-secret").toString());
+        db = TempStore.get();
+        db.stopReplication();
+        db.clear();
+        svc = new Service();
+        mgr = new Manager("M", "Mgr");
+        db.staff.put(mgr.id(), mgr);
+        rep = db.startReplication(0);
+
+        // One room, every bed but the last occupied
+        Ward ward = new Ward("W0", "Ward 0");
+        db.addWard(ward);
+        Room room = new Room("W0-R1", ward.id());
+        db.addRoom(room);
+        for (int b = 0; b < BEDS; b++) {
+            Bed bed = new Bed(bed(b), room.id());
+            db.addBed(bed);
+            if (b < BEDS - 1) {
+                svc.addResidentToVacantBed(mgr, new Resident(bed.id() + "-res", "Res", Gender.F), bed.id());
+            }
+        }
+        nurse = new Nurse("N0", "Nurse 0");
+        svc.addStaff(mgr, nurse, "pwd");
+        svc.allocateShift(mgr, nurse.id(), DAY, ShiftType.NURSE_AM);
+    }
+
+    @AfterEach
+    void teardown() {
+        if (follower != null) {
+            follower.close();
+        }
+        db.stopReplication();
+    }
+
+    private static Path secretFile(String secret) throws IOException {
+        Path file = Files.createTempFile("carehome-secret", ".txt");
+        file.toFile().deleteOnExit();
+        return Files.writeString(file, secret);
+    }
+
+    private static String bed(int b) {
+        return "W0-R1-B" + b;
+    }
+
+    /** Beds and who is in them, plus collection sizes; equal on primary and follower once caught up. */
+    static String digest(Store db) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("residents=").append(db.residents.size()).append(" wards=").append(db.wards.size());
+        try (ReadView view = db.openView()) {
+            for (ReadView.BedRow b : view.beds()) {
+                sb.append(' ').append(b.id()).append('=').append(b.residentId());
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void follower_catchesUpFromSnapshotAndTail_whileCommitsContinue() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            // Keep moving the resident next to the empty bed into it
+            int vacant = BEDS - 1;
+            while (!stop.get()) {
+                int from = (vacant + 1) % BEDS;
+                svc.moveResident(nurse, bed(from), bed(vacant), TEN_AM);
+                vacant = from;
+            }
+        });
+        writer.start();
+        try {
+            follower = FollowerHandle.start(rep.port());
+            // It joined mid-stream; wait until it follows the live tail
+            assertEquals("true", follower.ask("await " + (rep.seq() + 200)));
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+        long last = rep.seq();
+        assertEquals("true", follower.ask("await " + last));
+        assertEquals(digest(db), follower.ask("digest"));
+        assertEquals("1", follower.ask("snapshots"), "one snapshot, then only records");
+        assertEquals("0", follower.ask("lag"));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (rep.maxLagRecords() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0L, rep.maxLagRecords(), "acknowledged on the next heartbeat");
+        assertEquals(1, rep.followers());
+
+        assertEquals(ReadOnlyException.class.getSimpleName(), follower.ask("write"));
+    }
+
+    @Test
+    void promotedFollower_acceptsWrites() throws Exception {
+        follower = FollowerHandle.start(rep.port());
+        assertEquals("true", follower.ask("await " + rep.seq()));
+        svc.moveResident(nurse, bed(0), bed(BEDS - 1), TEN_AM);
+        assertEquals("true", follower.ask("await " + rep.seq()));
+        String before = digest(db);
+
+        // The primary goes away; the follower keeps what it applied and takes over
+        db.stopReplication();
+        assertEquals("ok", follower.ask("promote"));
+        assertEquals(before, follower.ask("digest"));
+        assertEquals("ok", follower.ask("write"));
+        assertEquals(before.replace("wards=1", "wards=2"), follower.ask("digest"));
+    }
+
+    @Test
+    void followerWithTheWrongSecret_isNeverServed() throws Exception {
+        follower = FollowerHandle.start(rep.port(), secretFile("guessed"));
+        Thread.sleep(1_500); // a few connection attempts
+        assertEquals("0", follower.ask("snapshots"));
+        assertEquals("residents=0 wards=0", follower.ask("digest"));
+        assertEquals(0, rep.followers());
+        assertEquals(0L, rep.snapshotsSent());
+    }
+
+    // ---- The follower process ---------------------------------------------------
+
+    /** The child JVM, driven a line at a time over its stdin and stdout. */
+    static final class FollowerHandle implements AutoCloseable {
+        private final Process process;
+        private final Path dir;
+        private final BufferedWriter in;
+        private final BufferedReader out;
+
+        private FollowerHandle(Process process, Path dir) {
+            this.process = process;
+            this.dir = dir;
+            this.in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            this.out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        static FollowerHandle start(int port) throws IOException {
+            return start(port, Path.of(System.getProperty("carehome.replication.secretFile")));
+        }
+
+        static FollowerHandle start(int port, Path secretFile) throws IOException {
+            Path dir = Files.createTempDirectory("carehome-follower");
+            Process p = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    "-Dcarehome.follow=127.0.0.1:" + port,
+                    "-Dcarehome.replication.secretFile=" + secretFile,
+                    FollowerProcess.class.getName())
+                    .directory(dir.toFile())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            return new FollowerHandle(p, dir);
+        }
+
+        String ask(String command) throws IOException {
+            in.write(command);
+            in.newLine();
+            in.flush();
+            String reply = out.readLine();
+            if (reply == null) {
+                throw new EOFException("Follower exited on: " + command);
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() {
+            process.destroy();
+            try {
+                process.waitFor(10, TimeUnit.SECONDS);
+                try (var files = Files.walk(dir)) {
+                    files.sorted(java.util.Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+                }
+            } catch (InterruptedException | IOException e) {
+                // best effort
+            }
+        }
+    }
+
+    /** Entry point of the child JVM; answers one line per command until stdin closes. */
+    public static final class FollowerProcess {
+        public static void main(String[] args) throws Exception {
+            Store db = Store.get();
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            PrintStream out = System.out;
+            for (String line; (line = in.readLine()) != null; ) {
+                String[] cmd = line.split(" ");
+                String reply;
+                switch (cmd[0]) {
+                    case "await" -> reply = String.valueOf(db.follower().awaitApplied(Long.parseLong(cmd[1]), 30, TimeUnit.SECONDS));
+                    case "digest" -> reply = digest(db);
+                    case "snapshots" -> reply = String.valueOf(db.follower().snapshots());
+                    case "lag" -> reply = String.valueOf(db.follower().lagRecords());
+                    case "promote" -> {
+                        db.promote();
+                        reply = "ok";
+                    }
+                    case "write" -> {
+                        try {
+                            db.addWard(new Ward("W1", "Ward 1"));
+                            reply = "ok";
+                        } catch (RuntimeException e) {
+                            reply = e.getClass().getSimpleName();
+                        }
+                    }
+                    default -> reply = "unknown " + cmd[0];
+                }
+                out.println(reply);
+                out.flush();
+            }
+        }
+    }
+}
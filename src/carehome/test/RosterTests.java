@@ -0,0 +1,164 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.service.RosterScheduler;
+import carehome.exception.*;
+
+import java.time.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rostering beyond the per-day limits.
+ * Covers:
+ *  - the roster calendar and the facility-wide on-duty index
+ *  - modifyShift: one change, nothing applied if refused
+ *  - bulk roster plans: all-or-nothing, every violation reported
+ *  - generated rosters: coverage, consecutive-day limit, fair spread, shifts already booked
+ */
+public class RosterTests extends FacilityFixture {
+
+    @Test
+    void whoIsOnDuty_followsTheRoster() {
+        LocalDate day = LocalDate.of(2027, 3, 1);
+        Nurse late = new Nurse("N2", "Late");
+        svc.addStaff(mgr, late, "n2");
+        svc.allocateShift(mgr, nurse.id(), day, ShiftType.NURSE_AM);
+        svc.allocateShift(mgr, late.id(), day, ShiftType.NURSE_PM);
+        svc.allocateShift(mgr, doc.id(), day, ShiftType.DOCTOR_1H);
+        svc.allocateShift(mgr, nurse.id(), day.plusYears(1), ShiftType.NURSE_PM);
+
+        assertEquals(List.of(nurse, doc), svc.whoIsOnDuty(LocalDateTime.of(day, LocalTime.of(9, 30))));
+        assertEquals(List.of(nurse, late), svc.whoIsOnDuty(LocalDateTime.of(day, LocalTime.of(15, 0))));
+        assertEquals(List.of(), svc.whoIsOnDuty(LocalDateTime.of(day, LocalTime.of(23, 0))));
+        assertEquals(List.of(nurse), svc.whoIsOnDuty(LocalDateTime.of(day.plusYears(1), LocalTime.of(20, 0))));
+        assertEquals(8, nurse.hoursOn(day));
+        assertEquals(0, nurse.hoursOn(day.minusYears(5)));
+
+        svc.modifyShift(mgr, nurse.id(), day, ShiftType.NURSE_AM, null);
+        assertEquals(List.of(doc), svc.whoIsOnDuty(LocalDateTime.of(day, LocalTime.of(9, 30))));
+        assertFalse(nurse.isRosteredAt(LocalDateTime.of(day, LocalTime.of(9, 30))));
+    }
+
+    @Test
+    void modifyShift_swapsAsOneChangeAndKeepsTheOldShiftWhenRefused() {
+        LocalDate day = LocalDate.of(2027, 3, 1);
+        svc.allocateShift(mgr, nurse.id(), day, ShiftType.NURSE_AM);
+        svc.allocateShift(mgr, doc.id(), day, ShiftType.DOCTOR_1H);
+        db.flushAudit();
+        int logsBefore = db.logs.size();
+
+        svc.modifyShift(mgr, nurse.id(), day, ShiftType.NURSE_AM, ShiftType.NURSE_PM);
+        assertFalse(nurse.hasShift(day, ShiftType.NURSE_AM));
+        assertTrue(nurse.hasShift(day, ShiftType.NURSE_PM));
+        db.flushAudit();
+        assertEquals(logsBefore + 1, db.logs.size());
+        assertEquals("MODIFY_SHIFT", db.logs.get(db.logs.size() - 1).type());
+
+        // 8h is over a doctor's limit: nothing changes and nothing is logged
+        assertThrows(RosterException.class,
+            () -> svc.modifyShift(mgr, doc.id(), day, ShiftType.DOCTOR_1H, ShiftType.NURSE_AM));
+        assertTrue(doc.hasShift(day, ShiftType.DOCTOR_1H));
+        assertFalse(doc.hasShift(day, ShiftType.NURSE_AM));
+        db.flushAudit();
+        assertEquals(logsBefore + 1, db.logs.size());
+    }
+
+    @Test
+    void allocateShifts_appliesWholePlanWithOneLogEntry() {
+        LocalDate monday = LocalDate.of(2027, 3, 1);
+        List<ShiftAssignment> plan = new ArrayList<>();
+        for (int d = 0; d < 28; d++) {
+            plan.add(new ShiftAssignment(nurse.id(), monday.plusDays(d), d % 2 == 0 ? ShiftType.NURSE_AM : ShiftType.NURSE_PM));
+            plan.add(new ShiftAssignment(doc.id(), monday.plusDays(d), ShiftType.DOCTOR_1H));
+        }
+        db.flushAudit();
+        int logsBefore = db.logs.size();
+
+        svc.allocateShifts(mgr, plan);
+
+        db.flushAudit();
+        assertEquals(logsBefore + 1, db.logs.size());
+        assertEquals("ALLOCATE_SHIFTS", db.logs.get(db.logs.size() - 1).type());
+        assertTrue(nurse.hasShift(monday.plusDays(27), ShiftType.NURSE_PM));
+        assertEquals(List.of(nurse, doc), svc.whoIsOnDuty(LocalDateTime.of(monday, LocalTime.of(9, 0))));
+    }
+
+    @Test
+    void allocateShifts_reportsEveryViolationAndAppliesNothing() {
+        LocalDate day = LocalDate.of(2027, 3, 1);
+        svc.allocateShift(mgr, nurse.id(), day, ShiftType.NURSE_AM);
+        List<ShiftAssignment> plan = List.of(
+            new ShiftAssignment(nurse.id(), day, ShiftType.NURSE_PM),          // 16h with the existing AM
+            new ShiftAssignment(doc.id(), day.plusDays(1), ShiftType.DOCTOR_1H),
+            new ShiftAssignment(doc.id(), day.plusDays(1), ShiftType.NURSE_AM), // doctor over 1h
+            new ShiftAssignment("ghost", day, ShiftType.NURSE_AM),
+            new ShiftAssignment(nurse.id(), day.plusDays(2), ShiftType.NURSE_AM)); // fine on its own
+        db.flushAudit();
+        int logsBefore = db.logs.size();
+
+        RosterException e = assertThrows(RosterException.class, () -> svc.allocateShifts(mgr, plan));
+
+        assertEquals(3, e.violations().size(), e.getMessage());
+        assertFalse(nurse.hasShift(day, ShiftType.NURSE_PM));
+        assertFalse(nurse.hasShift(day.plusDays(2), ShiftType.NURSE_AM));
+        assertEquals(0, doc.hoursOn(day.plusDays(1)));
+        db.flushAudit();
+        assertEquals(logsBefore, db.logs.size());
+    }
+
+    @Test
+    void generateRoster_coversEveryShiftAndSpreadsWorkEvenly() {
+        LocalDate monday = LocalDate.of(2027, 3, 1);
+        List<Staff> nurses = new ArrayList<>(List.of(nurse));
+        for (int i = 1; i <= 6; i++) {
+            Nurse n = new Nurse("N" + i, "Nurse " + i);
+            svc.addStaff(mgr, n, "n");
+            nurses.add(n);
+        }
+        svc.addStaff(mgr, new Doctor("D2", "Doc 2"), "d");
+        svc.allocateShift(mgr, nurse.id(), monday, ShiftType.NURSE_AM); // kept and counted
+
+        RosterScheduler.Result result = svc.generateRoster(mgr, new RosterScheduler.Request(
+            monday, 28, 2, 1, 5, 5, Duration.ofSeconds(5)));
+
+        assertEquals(0, result.shortfall());
+        for (int d = 0; d < 28; d++) {
+            LocalDate day = monday.plusDays(d);
+            assertEquals(2, db.rosterIndex.count(day, ShiftType.NURSE_AM), day.toString());
+            assertEquals(2, db.rosterIndex.count(day, ShiftType.NURSE_PM), day.toString());
+            assertEquals(1, db.rosterIndex.count(day, ShiftType.DOCTOR_1H), day.toString());
+        }
+        assertTrue(nurse.hasShift(monday, ShiftType.NURSE_AM));
+        assertTrue(result.nurseShifts().getMax() - result.nurseShifts().getMin() <= 1, result.toString());
+        for (Staff s : nurses) {
+            int run = 0;
+            for (int d = 0; d < 28; d++) {
+                run = s.hoursOn(monday.plusDays(d)) > 0 ? run + 1 : 0;
+                assertTrue(run <= 5, s.id() + " works more than 5 days in a row");
+                assertTrue(s.hoursOn(monday.plusDays(d)) <= 8);
+            }
+        }
+    }
+
+    @Test
+    void generateRoster_countsShiftsAlreadyBookedTowardLimitsAndFairness() {
+        LocalDate monday = LocalDate.of(2027, 3, 1);
+        svc.addStaff(mgr, new Nurse("N1", "Nurse 1"), "n");
+        svc.addStaff(mgr, new Nurse("N2", "Nurse 2"), "n");
+        for (int d = 0; d < 5; d++) {
+            svc.allocateShift(mgr, nurse.id(), monday.plusDays(d), ShiftType.NURSE_AM); // a full week already
+        }
+
+        RosterScheduler.Result result = svc.generateRoster(mgr, new RosterScheduler.Request(
+            monday, 7, 1, 0, 5, 5, Duration.ofSeconds(5)));
+
+        assertEquals(0, result.shortfall());
+        assertTrue(result.plan().stream().noneMatch(a -> a.staffId().equals(nurse.id())), result.plan().toString());
+        assertEquals(5, result.nurseShifts().getMax(), result.toString());
+        assertEquals(4, result.nurseShifts().getMin(), result.toString());
+    }
+}
@@ -0,0 +1,63 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.service.LatencyHistogram;
+import carehome.service.RosterScheduler;
+import carehome.service.ServiceMetrics;
+import carehome.exception.*;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.*;
+
+/**
+ * Service metrics: call and failure counters, latency histograms, the MBean.
+ */
+public class ServiceMetricsTests extends FacilityFixture {
+
+    @Test
+    void serviceMetrics_countCallsAndFailuresByTypeAndExposeThemOverJmx() throws Exception {
+        ServiceMetrics metrics = ServiceMetrics.get();
+        metrics.reset();
+
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        assertThrows(AllocationException.class,
+                () -> svc.addResidentToVacantBed(mgr, new Resident("R2", "Rita", Gender.M), b1.id()));
+        assertThrows(AuthorizationException.class,
+                () -> svc.administer(nurse, b1.id(), "Paracetamol", 500, "mg", null, LocalDateTime.now()));
+        if (!metrics.isEnabled()) {
+            assertTrue(metrics.operation("addResidentToVacantBed").isEmpty()); // -Dcarehome.metrics=false
+            return;
+        }
+
+        ServiceMetrics.Operation admit = metrics.operation("addResidentToVacantBed").orElseThrow();
+        assertEquals(2L, admit.calls());
+        assertEquals(1L, admit.failures(AllocationException.class));
+        assertTrue(admit.latency().max() > 0);
+        assertEquals(Long.valueOf(1), metrics.getFailures().get("administer:AuthorizationException"));
+        assertEquals(Long.valueOf(1), metrics.getStoreSizes().get("residents"));
+
+        // An operation made of others is timed once, under its own name
+        svc.generateRoster(mgr, new RosterScheduler.Request(LocalDate.of(2027, 3, 1), 1, 1, 1, 5, 5, Duration.ofSeconds(1)));
+        svc.modifyShift(mgr, nurse.id(), LocalDate.of(2027, 3, 2), null, ShiftType.NURSE_AM);
+        assertEquals(1L, metrics.operation("generateRoster").orElseThrow().calls());
+        assertEquals(1L, metrics.operation("modifyShift").orElseThrow().calls());
+        assertTrue(metrics.operation("allocateShifts").isEmpty());
+        assertTrue(metrics.operation("allocateShift").isEmpty());
+
+        ObjectName name = new ObjectName("carehome:type=ServiceMetrics");
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        assertEquals(Boolean.TRUE, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Enabled"));
+
+        LatencyHistogram h = new LatencyHistogram();
+        for (long us = 1; us <= 10_000; us++) {
+            h.record(us * 1000);
+        }
+        assertEquals(5_000_000.0, (double) h.percentile(0.50), 5_000_000.0 / 16);
+        assertEquals(9_900_000.0, (double) h.percentile(0.99), 9_900_000.0 / 16);
+        assertEquals(10_000_000L, h.max());
+    }
+}
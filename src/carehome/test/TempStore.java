@@ -0,0 +1,43 @@
+package carehome.test;
+
+import carehome.repo.Store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.Comparator;
+
+/**
+ * The Store under test, with its files (snapshots, journal, audit archive)
+ * in a temp directory removed on exit, so tests never touch a store in the
+ * working directory. Call it instead of Store.get() before anything else
+ * touches the Store.
+ */
+final class TempStore {
+
+    private static boolean ready;
+
+    private TempStore() { }
+
+    static synchronized Store get() {
+        if (!ready && System.getProperty("carehome.dir") == null) {
+            try {
+                Path dir = Files.createTempDirectory("carehome-test");
+                System.setProperty("carehome.dir", dir.toString());
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ready = true;
+        return Store.get();
+    }
+
+    private static void delete(Path dir) {
+        try (var files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package carehome.test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import carehome.domain.*;
+import carehome.exception.*;
+
+import java.time.*;
+
+/**
+ * The vacancy index: counts by gender kept current by admissions and moves,
+ * and a bed search that never puts a resident in a room with the other gender.
+ */
+public class VacancyTests extends FacilityFixture {
+
+    @Test
+    void vacancyIndex_tracksAdmissionsAndMoves() {
+        assertEquals(2, svc.countVacancies("W"));
+        svc.addResidentToVacantBed(mgr, res, b1.id());
+        assertEquals(1, svc.countVacancies("W"));
+
+        LocalDate today = LocalDate.now();
+        svc.allocateShift(mgr, nurse.id(), today, ShiftType.NURSE_AM);
+        svc.moveResident(nurse, b1.id(), b2.id(), LocalDateTime.of(today, LocalTime.of(10, 0)));
+        assertEquals(1, svc.countVacancies("W"));
+        assertEquals("B1", svc.findVacantBed("W", Gender.M).orElse("?"));
+    }
+
+    @Test
+    void findVacantBed_neverMixesGendersInARoom() {
+        db.addRoom(new Room("R2", "W"));
+        db.addBed(new Bed("B3", "R2"));
+
+        svc.addResidentToVacantBed(mgr, res, b1.id());          // R now male-only
+        assertEquals("B2", svc.findVacantBed("W", Gender.M).orElse("?"));
+        assertEquals("B3", svc.findVacantBed("W", Gender.F).orElse("?"));
+
+        svc.addResidentToVacantBed(mgr, new Resident("R2", "Rita", Gender.F), "B3");
+        assertTrue(svc.findVacantBed("W", Gender.F).isEmpty());
+        assertThrows(NotFoundException.class, () -> svc.countVacancies("nope"));
+    }
+}
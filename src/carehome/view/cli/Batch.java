@@ -0,0 +1,406 @@
+package carehome.view.cli;
+
+import carehome.repo.Store;
+import carehome.service.Service;
+import carehome.domain.*;
+import carehome.domain.Prescription.MedicationOrder;
+import carehome.exception.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Non-interactive CLI: runs a command script, one command per line, from a
+ * file or stdin ({@code Main --batch <file>|-}).
+ *
+ * Fields are separated by spaces or tabs; a field with spaces goes in
+ * double quotes. Blank lines and lines starting with # are skipped. The
+ * last field of a command marked ... takes the rest of the line. Acting
+ * staff are looked up by ID, so they must have been added (and rostered)
+ * before they act. Dates are yyyy-MM-dd, times HH:mm.
+ *
+ * <pre>
+ * ADD_WARD       wardId name...
+ * ADD_ROOM       roomId wardId
+ * ADD_BED        bedId roomId
+ * ADD_MANAGER    staffId password name...   (only into a store with no staff yet)
+ * ADD_NURSE      managerId staffId password name...
+ * ADD_DOCTOR     managerId staffId password name...
+ * ALLOCATE_SHIFT managerId staffId date NURSE_AM|NURSE_PM|DOCTOR_1H
+ * SET_DOSE_LIMIT managerId drug maxPer24h unit
+ * ADMIT          managerId residentId M|F bedId name...
+ * PRESCRIBE      doctorId bedId date time drug dose unit schedule notes...
+ * ADMINISTER     nurseId bedId date time drug dose unit notes...
+ * MOVE           nurseId fromBedId toBedId date time
+ * SAVE
+ * </pre>
+ *
+ * The input is read in large blocks and parsed in place: fields are
+ * offsets into the block, numbers, dates and times are read straight from
+ * the bytes, and repeated IDs map to one shared String, so a line costs
+ * little beyond what the Service call itself allocates. A failing line is
+ * reported with its line number and the script carries on; errors are
+ * written out once per block. The store is saved at the end.
+ */
+public class Batch {
+
+    private static final int BLOCK = 1 << 16;
+    private static final int MAX_FIELDS = 32;
+
+    /** What a run did. */
+    public record Result(long lines, long commands, long failed, long nanos) {
+        public double perSecond() {
+            return nanos == 0 ? 0 : commands * 1e9 / nanos;
+        }
+    }
+
+    private final Store db;
+    private final Service svc;
+    private final PrintStream out;
+
+    // The current line: fields are [start, end) offsets into buf
+    private byte[] buf = new byte[BLOCK];
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private int fields;
+    private final int[] tokens = new int[MAX_FIELDS]; // where each field's token starts, opening quote included
+    private int tokensEnd;                            // where the last token ends, closing quote included
+    private boolean overflow;
+    private int lineEnd;
+
+    private final Strings strings = new Strings();
+    private int lastDateKey = -1;
+    private LocalDate lastDate;
+    private int lastMinute = -1;
+    private LocalDateTime lastDateTime;
+
+    public Batch(Store db, Service svc, PrintStream out) {
+        this.db = db;
+        this.svc = svc;
+        this.out = out;
+    }
+
+    /** Runs the script at {@code path}, or stdin for "-", against the persistent store; the exit status. */
+    public static int runScript(String path) throws IOException {
+        Store db = Store.get();
+        Batch batch = new Batch(db, new Service(), System.out);
+        Result r;
+        try (InputStream in = path.equals("-") ? System.in : Files.newInputStream(Path.of(path))) {
+            r = batch.run(in);
+        }
+        db.flushAudit();
+        db.save();
+        System.out.printf("%d command(s), %d failed, %.0f/s%n", r.commands(), r.failed(), r.perSecond());
+        return r.failed() == 0 ? 0 : 1;
+    }
+
+    /** Runs every command in {@code in}; failures are reported to the output stream and skipped. */
+    public Result run(InputStream in) throws IOException {
+        StringBuilder errors = new StringBuilder();
+        long lines = 0, commands = 0, failed = 0;
+        long start = System.nanoTime();
+        int filled = 0;
+        boolean eof = false;
+        while (!eof || filled > 0) {
+            if (!eof) {
+                if (filled == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2); // a line longer than a block
+                }
+                int n = in.read(buf, filled, buf.length - filled);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    filled += n;
+                }
+            }
+            // Every complete line in the block; at EOF the last one may lack its newline
+            int pos = 0;
+            while (pos < filled) {
+                int nl = indexOf(buf, '\n', pos, filled);
+                if (nl < 0 && !eof) {
+                    break;
+                }
+                lineEnd = nl < 0 ? filled : nl;
+                lines++;
+                if (split(pos)) {
+                    commands++;
+                    try {
+                        execute();
+                    } catch (RuntimeException ex) {
+                        failed++;
+                        errors.append("line ").append(lines).append(": ERROR: ")
+                              .append(ex.getClass().getSimpleName()).append(" - ").append(ex.getMessage()).append('\n');
+                    }
+                }
+                pos = nl < 0 ? filled : nl + 1;
+            }
+            System.arraycopy(buf, pos, buf, 0, filled - pos);
+            filled -= pos;
+            if (errors.length() > 0) {
+                out.print(errors);
+                errors.setLength(0);
+            }
+        }
+        return new Result(lines, commands, failed, System.nanoTime() - start);
+    }
+
+    private static int indexOf(byte[] b, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Splits buf[from, lineEnd) into fields; false for a blank or comment line
+    private boolean split(int from) {
+        int end = lineEnd;
+        if (end > from && buf[end - 1] == '\r') {
+            end--;
+            lineEnd = end;
+        }
+        fields = 0;
+        overflow = false;
+        int i = from;
+        while (true) {
+            while (i < end && (buf[i] == ' ' || buf[i] == '\t')) {
+                i++;
+            }
+            if (i == end || (fields == 0 && buf[i] == '#')) {
+                return fields > 0;
+            }
+            tokens[fields] = i;
+            if (fields == MAX_FIELDS) {
+                overflow = true; // reported as this line's error
+                return true;
+            }
+            if (buf[i] == '"') {
+                int close = indexOf(buf, '"', i + 1, end);
+                starts[fields] = i + 1;
+                ends[fields] = close < 0 ? end : close;
+                i = close < 0 ? end : close + 1;
+            } else {
+                starts[fields] = i;
+                while (i < end && buf[i] != ' ' && buf[i] != '\t') {
+                    i++;
+                }
+                ends[fields] = i;
+            }
+            tokensEnd = i;
+            fields++;
+        }
+    }
+
+    private void execute() {
+        if (overflow) {
+            throw new IllegalArgumentException("More than " + MAX_FIELDS + " fields");
+        }
+        String command = str(0);
+        switch (command) {
+            case "ADD_WARD" -> {
+                need(2, "wardId name...");
+                db.addWard(new Ward(str(1), rest(2)));
+            }
+            case "ADD_ROOM" -> {
+                need(2, "roomId wardId");
+                db.addRoom(new Room(str(1), str(2)));
+            }
+            case "ADD_BED" -> {
+                need(2, "bedId roomId");
+                db.addBed(new Bed(str(1), str(2)));
+            }
+            case "ADD_MANAGER" -> {
+                need(3, "staffId password name...");
+                svc.addFirstManager(new Manager(str(1), rest(3)), str(2));
+            }
+            case "ADD_NURSE" -> {
+                need(4, "managerId staffId password name...");
+                svc.addStaff(staff(1, Manager.class), new Nurse(str(2), rest(4)), str(3));
+            }
+            case "ADD_DOCTOR" -> {
+                need(4, "managerId staffId password name...");
+                svc.addStaff(staff(1, Manager.class), new Doctor(str(2), rest(4)), str(3));
+            }
+            case "ALLOCATE_SHIFT" -> {
+                need(4, "managerId staffId date shiftType");
+                svc.allocateShift(staff(1, Manager.class), str(2), date(3), ShiftType.valueOf(str(4)));
+            }
+            case "SET_DOSE_LIMIT" -> {
+                need(4, "managerId drug maxPer24h unit");
+                svc.setDailyDoseLimit(staff(1, Manager.class), str(2), number(3), str(4));
+            }
+            case "ADMIT" -> {
+                need(4, "managerId residentId M|F bedId name...");
+                svc.addResidentToVacantBed(staff(1, Manager.class),
+                        new Resident(str(2), rest(5), Gender.valueOf(str(3))), str(4));
+            }
+            case "PRESCRIBE" -> {
+                need(8, "doctorId bedId date time drug dose unit schedule notes...");
+                MedicationOrder order = new MedicationOrder(str(5), number(6), str(7), str(8), rest(9));
+                svc.doctorAttachPrescription(staff(1, Doctor.class), str(2), List.of(order), dateTime(3, 4));
+            }
+            case "ADMINISTER" -> {
+                need(7, "nurseId bedId date time drug dose unit notes...");
+                svc.administer(staff(1, Nurse.class), str(2), str(5), number(6), str(7), rest(8), dateTime(3, 4));
+            }
+            case "MOVE" -> {
+                need(5, "nurseId fromBedId toBedId date time");
+                svc.moveResident(staff(1, Nurse.class), str(2), str(3), dateTime(4, 5));
+            }
+            case "SAVE" -> db.save();
+            default -> throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+
+    // ---------------- Fields ----------------
+
+    private void need(int args, String usage) {
+        if (fields - 1 < args) {
+            throw new IllegalArgumentException("Usage: " + str(0) + " " + usage);
+        }
+    }
+
+    private <T extends Staff> T staff(int field, Class<T> type) {
+        String id = str(field);
+        Staff s = db.staff.get(id);
+        if (s == null) {
+            throw new NotFoundException("Staff not found: " + id);
+        }
+        if (!type.isInstance(s)) {
+            throw new AuthorizationException(id + " is not a " + type.getSimpleName());
+        }
+        return type.cast(s);
+    }
+
+    private String str(int field) {
+        return strings.get(buf, starts[field], ends[field]);
+    }
+
+    // The rest of the line from field on, as written, quotes and all; "" if there is none, one field unquoted
+    private String rest(int field) {
+        if (field >= fields) {
+            return "";
+        }
+        if (field == fields - 1) {
+            return str(field);
+        }
+        return new String(buf, tokens[field], tokensEnd - tokens[field], StandardCharsets.UTF_8);
+    }
+
+    private int digits(int from, int to, int field) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new IllegalArgumentException("Not a number: " + str(field));
+            }
+            n = n * 10 + d;
+        }
+        return n;
+    }
+
+    // Plain decimals (e.g. 500, 2.5) are read from the bytes; anything else goes to Double.parseDouble
+    private double number(int field) {
+        int s = starts[field], e = ends[field];
+        int dot = indexOf(buf, '.', s, e);
+        int intEnd = dot < 0 ? e : dot;
+        if (intEnd > s && intEnd - s <= 9 && (dot < 0 || e - dot - 1 <= 9)) {
+            boolean plain = true;
+            for (int i = s; i < e && plain; i++) {
+                plain = i == dot || (buf[i] >= '0' && buf[i] <= '9');
+            }
+            if (plain) {
+                double v = digits(s, intEnd, field);
+                if (dot >= 0 && e > dot + 1) {
+                    v += digits(dot + 1, e, field) / Math.pow(10, e - dot - 1);
+                }
+                return v;
+            }
+        }
+        try {
+            return Double.parseDouble(str(field));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not a number: " + str(field));
+        }
+    }
+
+    private LocalDate date(int field) {
+        int s = starts[field];
+        if (ends[field] - s != 10 || buf[s + 4] != '-' || buf[s + 7] != '-') {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + str(field));
+        }
+        int key = digits(s, s + 4, field) * 10_000 + digits(s + 5, s + 7, field) * 100 + digits(s + 8, s + 10, field);
+        if (key != lastDateKey) {
+            try {
+                lastDate = LocalDate.of(key / 10_000, key / 100 % 100, key % 100);
+            } catch (DateTimeException ex) {
+                throw new IllegalArgumentException("Not a date: " + str(field));
+            }
+            lastDateKey = key;
+        }
+        return lastDate;
+    }
+
+    private LocalDateTime dateTime(int dateField, int timeField) {
+        int s = starts[timeField];
+        if (ends[timeField] - s != 5 || buf[s + 2] != ':') {
+            throw new IllegalArgumentException("Not an HH:mm time: " + str(timeField));
+        }
+        int hour = digits(s, s + 2, timeField), minute = digits(s + 3, s + 5, timeField);
+        LocalDate date = date(dateField);
+        // Scripts in time order repeat the same minute many times over
+        if (lastDateTime == null || !lastDateTime.toLocalDate().equals(date) || lastMinute != hour * 60 + minute) {
+            try {
+                lastDateTime = date.atTime(hour, minute);
+            } catch (DateTimeException ex) {
+                throw new IllegalArgumentException("Not a time: " + str(timeField));
+            }
+            lastMinute = hour * 60 + minute;
+        }
+        return lastDateTime;
+    }
+
+    /**
+     * Direct-mapped cache from field bytes to String: the IDs a script repeats
+     * (staff, beds, drugs, commands) come back as the same instance without
+     * decoding. Non-ASCII fields are decoded every time.
+     */
+    static final class Strings {
+        private final String[] slots = new String[1 << 12];
+
+        String get(byte[] b, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) {
+                if (b[i] < 0) {
+                    return new String(b, from, to - from, StandardCharsets.UTF_8);
+                }
+                h = 31 * h + b[i]; // String.hashCode() for ASCII
+            }
+            int slot = (h ^ (h >>> 16)) & (slots.length - 1);
+            String s = slots[slot];
+            if (s != null && matches(s, b, from, to)) {
+                return s;
+            }
+            s = new String(b, from, to - from, StandardCharsets.ISO_8859_1);
+            slots[slot] = s;
+            return s;
+        }
+
+        private static boolean matches(String s, byte[] b, int from, int to) {
+            if (s.length() != to - from) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (s.charAt(i - from) != b[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
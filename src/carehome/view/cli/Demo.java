@@ -27,31 +27,18 @@ public class Demo {
 	    Runtime.getRuntime().addShutdownHook(new Thread(db::save));
 
 	    // --- reset state for a clean demo run ---
-	    db.residents.clear();
-	    db.staff.clear();
-	    db.wards.clear();
-	    db.rooms.clear();
-	    db.beds.clear();
-	    db.prescriptions.clear();
-	    db.administrations.clear();
-	    db.logs.clear();
+	    db.clear();
 
         Service svc = new Service();
 
         // ----- Seed layout (ward/room/beds) -----
-        Ward w1 = new Ward("W1", "Ward 1");
-        db.wards.put(w1.id(), w1);
-
-        Room r1 = new Room("W1-R1", "W1");
-        db.rooms.put(r1.id(), r1);
-        w1.addRoom(r1.id());
+        db.addWard(new Ward("W1", "Ward 1"));
+        db.addRoom(new Room("W1-R1", "W1"));
 
         Bed b1 = new Bed("W1-R1-B1", "W1-R1");
         Bed b2 = new Bed("W1-R1-B2", "W1-R1");
-        db.beds.put(b1.id(), b1);
-        db.beds.put(b2.id(), b2);
-        r1.addBed(b1.id());
-        r1.addBed(b2.id());
+        db.addBed(b1);
+        db.addBed(b2);
 
         // ----- Staff setup -----
         Manager mgr = new Manager("M-1", "Alice Manager");
@@ -96,6 +83,7 @@ public class Demo {
 
         // ----- Print action logs -----
         System.out.println("\n--- Action Logs ---");
+        db.flushAudit();
         db.logs.forEach(l ->
             System.out.println(l.when() + " | " + l.staffId() + " | " + l.type() + " | " + l.details())
         );
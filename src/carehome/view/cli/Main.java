@@ -1,7 +1,10 @@
 package carehome.view.cli;
 
+import carehome.repo.AuditQuery;
+import carehome.repo.ReadView;
 import carehome.repo.Store;
 import carehome.service.Service;
+import carehome.service.ServiceMetrics;
 import carehome.domain.*;
 import carehome.domain.Prescription.MedicationOrder;
 import carehome.exception.*;
@@ -16,30 +19,31 @@ public class Main {
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+        // --batch <file>|- runs a command script against the saved store instead of the menu
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(Batch.runScript(args.length > 1 ? args[1] : "-"));
+        }
+
         Store db = Store.get();
 
         // start clean each run (optional: comment these lines if you want persistence)
-        db.residents.clear();
-        db.staff.clear();
-        db.wards.clear();
-        db.rooms.clear();
-        db.beds.clear();
-        db.prescriptions.clear();
-        db.administrations.clear();
-        db.logs.clear();
+        db.clear();
 
         // seed: one ward/room with 2 beds
-        Ward w1 = new Ward("W1", "Ward 1"); db.wards.put(w1.id(), w1);
-        Room r1 = new Room("W1-R1", "W1"); db.rooms.put(r1.id(), r1); w1.addRoom(r1.id());
-        Bed b1 = new Bed("W1-R1-B1", "W1-R1"); Bed b2 = new Bed("W1-R1-B2", "W1-R1");
-        db.beds.put(b1.id(), b1); db.beds.put(b2.id(), b2); r1.addBed(b1.id()); r1.addBed(b2.id());
+        db.addWard(new Ward("W1", "Ward 1"));
+        db.addRoom(new Room("W1-R1", "W1"));
+        db.addBed(new Bed("W1-R1-B1", "W1-R1"));
+        db.addBed(new Bed("W1-R1-B2", "W1-R1"));
 
         // seed: one manager (acts as "admin")
         Manager mgr = new Manager("M-1", "Alice Manager");
         db.staff.put(mgr.id(), mgr);
         mgr.setPassword("admin");
 
+        // checkpoint the seeded layout so a journal (if enabled) replays on top of it
+        db.save();
+
         Service svc = new Service();
 
         System.out.println("CareHome CLI (Milestone 2-2) — simple menu. Type numbers and press Enter.");
@@ -61,6 +65,12 @@ public class Main {
                     case 10 -> showLogs(db);
                     case 11 -> listResidents(db);
                     case 12 -> listBeds(db);
+                    case 13 -> findVacantBed(svc, db);
+                    case 14 -> searchLogs(db);
+                    case 15 -> showDosesDue(svc, db);
+                    case 16 -> showMedicationChart(svc);
+                    case 17 -> doctorReviseMedication(svc);
+                    case 18 -> showServiceMetrics();
                     case 0 -> {
                         db.save();
                         System.out.println("Saved. Bye!");
@@ -93,6 +103,12 @@ public class Main {
                 10. Show Action Logs
                 11. List Residents
                 12. List Beds
+                13. Find Vacant Bed (by ward & gender)
+                14. Search Action Logs (staff, type, words, dates)
+                15. Doses Due (next few hours)
+                16. Medication Chart by Bed
+                17. Doctor: Stop or Change Medication
+                18. Service Metrics (latency, failures, store sizes)
                 0. Save & Exit
                 """);
     }
@@ -200,23 +216,113 @@ public class Main {
     }
 
     private static void showLogs(Store db) {
+        Instant[] window = readDayWindow();
+        String staffId = readLine("Staff ID (blank = all): ");
+
         System.out.println("\n--- Action Logs ---");
-        db.logs.forEach(l -> System.out.println(l.when() + " | " + l.staffId() + " | " + l.type() + " | " + l.details()));
+        db.flushAudit();
+        try (ReadView view = db.openView(); var logs = view.logs(window[0], window[1], blankToNull(staffId))) {
+            logs.forEach(Main::printLog);
+        }
+    }
+
+    private static void searchLogs(Store db) {
+        String staffId = readLine("Staff ID (blank = any): ");
+        String type = readLine("Type, e.g. MOVE_RESIDENT (blank = any): ");
+        String words = readLine("Details contain words (blank = any): ");
+        Instant[] window = readDayWindow();
+
+        List<ActionLog> hits = db.searchLogs(new AuditQuery(
+                blankToNull(staffId), blankToNull(type), blankToNull(words), window[0], window[1]));
+        System.out.println("\n--- " + hits.size() + " matching log entries ---");
+        hits.forEach(Main::printLog);
+    }
+
+    private static void printLog(ActionLog l) {
+        System.out.println(l.when() + " | " + l.staffId() + " | " + l.type() + " | " + l.details());
     }
 
     private static void listResidents(Store db) {
         System.out.println("\n--- Residents ---");
-        if (db.residents.isEmpty()) System.out.println("(none)");
-        db.residents.values().forEach(r -> System.out.println(r.id() + " | " + r.name() + " | " + r.gender() + " | bed=" + r.currentBedId().orElse("-")));
+        try (ReadView view = db.openView()) {
+            if (view.residents().isEmpty()) System.out.println("(none)");
+            view.residents().forEach(r -> System.out.println(r.id() + " | " + r.name() + " | " + r.gender() + " | bed=" + Objects.requireNonNullElse(r.bedId(), "-")));
+        }
     }
 
     private static void listBeds(Store db) {
         System.out.println("\n--- Beds ---");
-        if (db.beds.isEmpty()) System.out.println("(none)");
-        db.beds.values().forEach(b -> {
-            String occ = b.isVacant() ? "(vacant)" : "occupied by " + b.residentId();
-            System.out.println(b.id() + " | room=" + b.roomId() + " | " + occ);
-        });
+        try (ReadView view = db.openView()) {
+            if (view.beds().isEmpty()) System.out.println("(none)");
+            view.beds().forEach(b -> {
+                String occ = b.isVacant() ? "(vacant)" : "occupied by " + b.residentId();
+                System.out.println(b.id() + " | room=" + b.roomId() + " | " + occ);
+            });
+        }
+    }
+
+    private static void findVacantBed(Service svc, Store db) {
+        System.out.println("Wards: " + String.join(", ", db.wards.keySet()));
+        String wardId = readLine("Ward ID: ");
+        Gender g = readGender();
+        System.out.println("Vacant beds in " + wardId + ": " + svc.countVacancies(wardId));
+        System.out.println(svc.findVacantBed(wardId, g)
+                              .map(b -> "Suggested bed: " + b)
+                              .orElse("No suitable vacant bed."));
+    }
+
+    private static void showDosesDue(Service svc, Store db) {
+        LocalDate date = readDate("From date (yyyy-MM-dd): ");
+        LocalTime time = readTime("From time (HH:mm): ");
+        int hours = readInt("Window (hours): ");
+        List<DueDose> due = svc.dosesDue(LocalDateTime.of(date, time), Duration.ofHours(hours));
+        for (DueDose d : due) {
+            Resident r = db.residents.get(d.residentId());
+            String bed = r == null ? "-" : r.currentBedId().orElse("-");
+            System.out.println(d.due().format(TIME_FMT) + " " + d.due().toLocalDate() + " | bed=" + bed
+                    + " | " + d.residentId() + " | " + d.order() + " | " + d.prescriptionId());
+        }
+        System.out.println(due.size() + " dose(s) due.");
+    }
+
+    private static void showMedicationChart(Service svc) {
+        String bedId = readLine("Bed ID: ");
+        Resident r = svc.checkResidentDetails(fakeStaffForCheck(), bedId);
+        MedicationChart chart = svc.medicationChart(r.id());
+        System.out.println("Chart for " + r.name() + " (" + r.id() + "):");
+        for (MedicationChart.Entry e : chart.active()) {
+            System.out.println(e.prescriptionId() + "#" + e.orderIndex() + " | " + e.order()
+                    + " | since " + e.started() + " | by " + e.prescriberId());
+        }
+        System.out.println(chart.active().size() + " active order(s).");
+    }
+
+    private static void doctorReviseMedication(Service svc) {
+        String docId = readLine("Doctor ID: ");
+        String bedId = readLine("Bed ID: ");
+        LocalDate date = readDate("Date (yyyy-MM-dd): ");
+        LocalTime time = readTime("Time (HH:mm) [doctor window 09:00–10:00]: ");
+        String pid = readLine("Prescription ID: ");
+        int index = readInt("Order # (from the chart): ");
+        String drug = readLine("New drug (empty to just stop): ");
+
+        Doctor doc = new Doctor(docId, "Doctor");
+        LocalDateTime when = LocalDateTime.of(date, time);
+        if (drug.isBlank()) {
+            svc.stopMedication(doc, bedId, pid, index, when);
+            System.out.println("Stopped " + pid + "#" + index);
+            return;
+        }
+        double dose = readDouble("Dose (number): ");
+        String unit = readLine("Unit (e.g., mg, tab): ");
+        String sched = readLine("Schedule (e.g., 8am, 8pm): ");
+        String notes = readLine("Notes (optional): ");
+        String next = svc.modifyMedication(doc, bedId, pid, index, new MedicationOrder(drug, dose, unit, sched, notes), when);
+        System.out.println("Replaced " + pid + "#" + index + " with " + next);
+    }
+
+    private static void showServiceMetrics() {
+        System.out.print(ServiceMetrics.get().getReport());
     }
 
     // ---------------- Helpers ----------------
@@ -242,6 +348,20 @@ public class Main {
         };
     }
 
+    /** Reads an inclusive date range as [start of first day, start of the day after the last). */
+    private static Instant[] readDayWindow() {
+        String from = readLine("From date (yyyy-MM-dd, blank = all): ");
+        String to = readLine("To date inclusive (yyyy-MM-dd, blank = today): ");
+        ZoneId zone = ZoneId.systemDefault();
+        Instant start = from.isEmpty() ? Instant.EPOCH : LocalDate.parse(from, DATE_FMT).atStartOfDay(zone).toInstant();
+        LocalDate last = to.isEmpty() ? LocalDate.now() : LocalDate.parse(to, DATE_FMT);
+        return new Instant[] { start, last.plusDays(1).atStartOfDay(zone).toInstant() };
+    }
+
+    private static String blankToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
     private static LocalDate readDate(String prompt) {
         String s = readLine(prompt);
         return LocalDate.parse(s, DATE_FMT);